@@ -0,0 +1,126 @@
+package com.Daad.ecommerce.aspect;
+
+import com.Daad.ecommerce.metrics.RequestMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times every controller call into RequestMetrics. Arguments are only logged for a
+ * sampled fraction of calls, never for the excluded (hot read) paths, and are summarised
+ * rather than toString()'d so multipart bodies and large maps are not rendered.
+ */
+@Aspect
+@Component
+@Slf4j
+public class RequestTimingAspect {
+
+    private static final int MAX_ARG_LENGTH = 200;
+
+    private final RequestMetrics requestMetrics;
+    private final double argsSampleRate;
+    private final List<String> argsExcludedPaths;
+    private final long slowThresholdMicros;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public RequestTimingAspect(RequestMetrics requestMetrics,
+                               @Value("${request-logging.args-sample-rate:0.01}") double argsSampleRate,
+                               @Value("${request-logging.args-excluded-paths:/,/ping,/api/products/**,/api/categories/**,/api/brands/**,/api/hero-images/**,/api/cart/**,/api/ratings/**}") String argsExcludedPaths,
+                               @Value("${request-logging.slow-threshold-ms:1000}") long slowThresholdMillis) {
+        this.requestMetrics = requestMetrics;
+        this.argsSampleRate = argsSampleRate;
+        this.argsExcludedPaths = new ArrayList<>();
+        for (String pattern : argsExcludedPaths.split(",")) {
+            if (!pattern.isBlank()) this.argsExcludedPaths.add(pattern.trim());
+        }
+        this.slowThresholdMicros = slowThresholdMillis * 1000L;
+    }
+
+    @Around("execution(* com.Daad.ecommerce.controller..*(..))")
+    public Object timeControllerCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        RequestMetrics.Outcome outcome = RequestMetrics.Outcome.EXCEPTION;
+        try {
+            Object result = joinPoint.proceed();
+            outcome = outcomeOf(result);
+            return result;
+        } finally {
+            long micros = (System.nanoTime() - start) / 1000L;
+            HttpServletRequest request = currentRequest();
+            long payloadBytes = request != null ? request.getContentLengthLong() : -1L;
+            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+            requestMetrics.recordMethod(signature.getMethod(), micros, outcome, payloadBytes);
+
+            if (micros >= slowThresholdMicros) {
+                log.warn("Slow request {}.{} took {}ms outcome={} payloadBytes={}",
+                        signature.getDeclaringType().getSimpleName(), signature.getName(), micros / 1000L, outcome, payloadBytes);
+            }
+            if (shouldLogArgs(request)) {
+                log.info("Sampled request {}.{} took {}us outcome={} args={}",
+                        signature.getDeclaringType().getSimpleName(), signature.getName(), micros, outcome, describeArgs(joinPoint.getArgs()));
+            }
+        }
+    }
+
+    private RequestMetrics.Outcome outcomeOf(Object result) {
+        if (result instanceof ResponseEntity) {
+            int status = ((ResponseEntity<?>) result).getStatusCode().value();
+            if (status >= 500) return RequestMetrics.Outcome.SERVER_ERROR;
+            if (status >= 400) return RequestMetrics.Outcome.CLIENT_ERROR;
+        }
+        return RequestMetrics.Outcome.SUCCESS;
+    }
+
+    private boolean shouldLogArgs(HttpServletRequest request) {
+        if (argsSampleRate <= 0 || !log.isInfoEnabled()) return false;
+        if (argsSampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= argsSampleRate) return false;
+        if (request == null) return true;
+        String path = request.getRequestURI();
+        for (String pattern : argsExcludedPaths) {
+            if (pathMatcher.match(pattern, path)) return false;
+        }
+        return true;
+    }
+
+    private String describeArgs(Object[] args) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) sb.append(", ");
+            Object arg = args[i];
+            if (arg == null) {
+                sb.append("null");
+            } else if (arg instanceof MultipartFile) {
+                MultipartFile file = (MultipartFile) arg;
+                sb.append("file(").append(file.getOriginalFilename()).append(", ").append(file.getSize()).append(" bytes)");
+            } else if (arg instanceof MultipartFile[]) {
+                sb.append("files(").append(((MultipartFile[]) arg).length).append(")");
+            } else if (arg instanceof HttpServletRequest || arg instanceof jakarta.servlet.ServletResponse) {
+                sb.append(arg.getClass().getSimpleName());
+            } else {
+                String text = String.valueOf(arg);
+                sb.append(text.length() > MAX_ARG_LENGTH ? text.substring(0, MAX_ARG_LENGTH) + "..." : text);
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    private HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest() : null;
+    }
+}
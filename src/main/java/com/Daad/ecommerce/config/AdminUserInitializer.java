@@ -3,7 +3,6 @@ package com.Daad.ecommerce.config;
 import com.Daad.ecommerce.model.User;
 import com.Daad.ecommerce.repository.UserRepository;
 import jakarta.annotation.PostConstruct;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
@@ -13,10 +12,11 @@ import java.util.Optional;
 public class AdminUserInitializer {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final PasswordEncoder passwordEncoder;
 
-    public AdminUserInitializer(UserRepository userRepository) {
+    public AdminUserInitializer(UserRepository userRepository, PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @PostConstruct
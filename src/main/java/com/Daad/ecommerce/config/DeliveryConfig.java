@@ -0,0 +1,24 @@
+package com.Daad.ecommerce.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class DeliveryConfig {
+
+    @Value("${delivery.create.pool-size:8}")
+    private int poolSize;
+
+    @Bean(name = "deliveryTaskExecutor")
+    public ThreadPoolTaskExecutor deliveryTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("Delivery-");
+        executor.initialize();
+        return executor;
+    }
+}
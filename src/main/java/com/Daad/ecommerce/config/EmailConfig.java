@@ -5,14 +5,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.Properties;
-import java.util.concurrent.Executor;
 
 @Configuration
-@EnableAsync
 public class EmailConfig {
 
     @Value("${spring.mail.host}")
@@ -46,15 +42,4 @@ public class EmailConfig {
 
         return mailSender;
     }
-
-    @Bean(name = "emailTaskExecutor")
-    public Executor emailTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2);
-        executor.setMaxPoolSize(5);
-        executor.setQueueCapacity(100);
-        executor.setThreadNamePrefix("Email-");
-        executor.initialize();
-        return executor;
-    }
 }
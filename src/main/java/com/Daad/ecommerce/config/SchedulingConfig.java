@@ -0,0 +1,26 @@
+package com.Daad.ecommerce.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sizes the scheduler behind @Scheduled. Spring's default is one thread, so a long job
+ * (payout run, reconciliation, delivery status sync) would delay token refresh and the
+ * outbox and webhook ticks. Customizing keeps Boot's auto-configured scheduler.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    @Value("${spring.task.scheduling.pool.size:4}")
+    private int poolSize;
+
+    @Bean
+    public ThreadPoolTaskSchedulerCustomizer schedulerPoolSizeCustomizer() {
+        return scheduler -> {
+            scheduler.setPoolSize(Math.max(1, poolSize));
+            scheduler.setThreadNamePrefix("Scheduled-");
+        };
+    }
+}
@@ -1,8 +1,10 @@
 package com.Daad.ecommerce.config;
 
+import com.Daad.ecommerce.metrics.EndpointMetricsInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.boot.web.servlet.MultipartConfigFactory;
 import org.springframework.util.unit.DataSize;
@@ -13,13 +15,16 @@ import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerF
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    @Autowired
+    private EndpointMetricsInterceptor endpointMetricsInterceptor;
+
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:uploads/")
-                .setCachePeriod(3600);
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(endpointMetricsInterceptor).addPathPatterns("/api/**");
     }
 
+    // /uploads/** is served by LocalMediaController (ranges, conditional GETs, sendfile)
+
     @Bean
     public MultipartConfigElement multipartConfigElement() {
         MultipartConfigFactory factory = new MultipartConfigFactory();
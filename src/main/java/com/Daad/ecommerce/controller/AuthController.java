@@ -4,13 +4,11 @@ import com.Daad.ecommerce.dto.AuthDtos;
 import com.Daad.ecommerce.model.User;
 import com.Daad.ecommerce.model.Vendor;
 import com.Daad.ecommerce.repository.UserRepository;
-import com.Daad.ecommerce.repository.VendorRepository;
 import com.Daad.ecommerce.service.JwtService;
+import com.Daad.ecommerce.service.LoginService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
@@ -21,14 +19,11 @@ import java.util.*;
 @CrossOrigin(origins = "*")
 public class AuthController {
 
-    private final UserRepository userRepository;
-    private final VendorRepository vendorRepository;
+    private final LoginService loginService;
     private final JwtService jwtService;
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
-    public AuthController(UserRepository userRepository, VendorRepository vendorRepository, JwtService jwtService) {
-        this.userRepository = userRepository;
-        this.vendorRepository = vendorRepository;
+    public AuthController(LoginService loginService, JwtService jwtService) {
+        this.loginService = loginService;
         this.jwtService = jwtService;
     }
 
@@ -37,21 +32,18 @@ public class AuthController {
         if (body.email == null || body.password == null) {
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Email and password are required"));
         }
-        Optional<User> userOpt = userRepository.findByEmail(body.email.toLowerCase());
-        if (userOpt.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid credentials"));
-        }
-        User user = userOpt.get();
-        if (!passwordEncoder.matches(body.password, user.getPassword())) {
+        Optional<UserRepository.UserWithVendor> account = loginService.authenticate(body.email, body.password);
+        if (account.isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid credentials"));
         }
+        User user = account.get().user;
+        Vendor vendorProfile = account.get().vendor;
 
         if ("vendor".equals(user.getRole())) {
-            Optional<Vendor> v = vendorRepository.findByUser(user);
-            if (v.isEmpty()) {
+            if (vendorProfile == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "Vendor profile not found. Please contact support."));
             }
-            String status = v.get().getStatus();
+            String status = vendorProfile.getStatus();
             if ("rejected".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account has been rejected. Please contact support for more information.", "vendorStatus", "rejected"));
             if ("suspended".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account has been suspended. Please contact support to resolve this issue.", "vendorStatus", "suspended"));
             if ("pending".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account is pending approval. You will be notified once your account is reviewed.", "vendorStatus", "pending"));
@@ -71,15 +63,13 @@ public class AuthController {
         userData.put("profilePicUrl", user.getProfilePicUrl());
 
         if ("vendor".equals(user.getRole())) {
-            vendorRepository.findByUser(user).ifPresent(v -> {
-                Map<String, Object> vendor = new LinkedHashMap<>();
-                vendor.put("businessName", v.getBusinessName());
-                vendor.put("businessType", v.getBusinessType());
-                vendor.put("status", v.getStatus());
-                vendor.put("profileCompleted", v.getProfileCompleted());
-                vendor.put("rating", v.getRating());
-                userData.put("vendor", vendor);
-            });
+            Map<String, Object> vendor = new LinkedHashMap<>();
+            vendor.put("businessName", vendorProfile.getBusinessName());
+            vendor.put("businessType", vendorProfile.getBusinessType());
+            vendor.put("status", vendorProfile.getStatus());
+            vendor.put("profileCompleted", vendorProfile.getProfileCompleted());
+            vendor.put("rating", vendorProfile.getRating());
+            userData.put("vendor", vendor);
         }
 
         return ResponseEntity.ok(Map.of(
@@ -1,10 +1,12 @@
 package com.Daad.ecommerce.controller;
 
 import com.Daad.ecommerce.dto.Cart;
+import com.Daad.ecommerce.dto.PriceQuote;
 import com.Daad.ecommerce.dto.Product;
 import com.Daad.ecommerce.repository.CartRepository;
 import com.Daad.ecommerce.repository.ProductRepository;
 import com.Daad.ecommerce.security.SecurityUtils;
+import com.Daad.ecommerce.service.PricingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -13,7 +15,6 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/cart")
@@ -23,6 +24,7 @@ public class CartController {
 
 	@Autowired private CartRepository cartRepository;
 	@Autowired private ProductRepository productRepository;
+	@Autowired private PricingService pricingService;
 
 	// Helper method to get user ID or cart ID
 	private String getCartIdentifier(String guestCartId) {
@@ -51,17 +53,6 @@ public class CartController {
 		}
 	}
 
-	// Separate method to enrich cart with products without mixing JPA and JDBC transactions
-	@Transactional(propagation = Propagation.REQUIRES_NEW)
-	public List<Product> enrichCartWithProducts(List<String> productIds) {
-		try {
-			return productRepository.findByIds(productIds);
-		} catch (Exception e) {
-			System.err.println("Error in separate transaction for product enrichment: " + e.getMessage());
-			return new ArrayList<>();
-		}
-	}
-
 	// Separate method to validate product without mixing JPA and JDBC transactions
 	@Transactional(propagation = Propagation.REQUIRES_NEW)
 	public Product validateProductForCart(String productId) {
@@ -94,42 +85,35 @@ public class CartController {
 		// Filter out inactive/unapproved products and enrich with product details
 		cart.setItems(new ArrayList<>(cart.getItems()));
 		
-		// Get all product IDs from cart items
-		List<String> productIds = cart.getItems().stream()
-			.map(Cart.CartItem::getProductId)
-			.distinct()
-			.collect(Collectors.toList());
-		
-		// Fetch all products to enrich cart items - do this in a separate transaction
-		final Map<String, Product> productMap = new HashMap<>();
-		if (!productIds.isEmpty()) {
+		// Re-price every item from one bulk lookup so expired discounts and price changes show up
+		PriceQuote quote = null;
+		if (!cart.getItems().isEmpty()) {
 			try {
-				// Use a separate method that doesn't mix with JDBC transactions
-				List<Product> products = enrichCartWithProducts(productIds);
-				productMap.putAll(products.stream()
-					.collect(Collectors.toMap(Product::getId, p -> p)));
+				quote = pricingService.priceOnly(toLineRequests(cart), isLoggedIn ? cartIdentifier : null);
 			} catch (Exception e) {
-				System.err.println("Error fetching products for cart enrichment: " + e.getMessage());
+				System.err.println("Error pricing cart items: " + e.getMessage());
 			}
 		}
-		
-		cart.getItems().removeIf(item -> {
-			Product product = productMap.get(item.getProductId());
-			if (product == null) {
-				return true; // Remove if product no longer exists
-			}
-			
-			// Enrich cart item with product details
-			item.setProductName(product.getName());
-			item.setProductDescription(product.getDescription());
-			
-			// Set the first default image URL
-			if (product.getDefaultImages() != null && !product.getDefaultImages().isEmpty()) {
-				item.setDefaultImageUrl(product.getDefaultImages().get(0).getUrl());
+
+		if (quote != null) {
+			final List<PriceQuote.Line> lines = quote.getLines();
+			for (int i = cart.getItems().size() - 1; i >= 0; i--) {
+				Cart.CartItem item = cart.getItems().get(i);
+				PriceQuote.Line line = lines.get(i);
+				if (line.getProductName() == null) {
+					cart.getItems().remove(i); // Remove if product no longer exists
+					continue;
+				}
+				// Enrich cart item with product details
+				item.setProductName(line.getProductName());
+				item.setProductDescription(line.getProductDescription());
+				if (line.getDefaultImageUrl() != null) {
+					item.setDefaultImageUrl(line.getDefaultImageUrl());
+				}
+				item.setPrice(line.getFinalUnitPrice());
+				item.setTotalPrice(line.getLineTotal());
 			}
-			
-			return false; // Keep the item
-		});
+		}
 		
 		cart.calculateTotals();
 		
@@ -145,6 +129,64 @@ public class CartController {
 		return ResponseEntity.ok(response);
 	}
 
+	// Price a set of lines (or the current cart) server-side in one call: line prices, voucher discount, shipping and totals.
+	// The returned quote token can be passed to order creation so checkout reuses these prices.
+	@PostMapping("/quote")
+	public ResponseEntity<Map<String, Object>> quote(@RequestBody Map<String, Object> body) {
+		String guestCartId = Objects.toString(body.get("cartId"), null);
+		String cartIdentifier = getCartIdentifier(guestCartId);
+		boolean isLoggedIn = isUserLoggedIn();
+		String voucherCode = Objects.toString(body.get("voucherCode"), null);
+
+		if (!isLoggedIn && voucherCode != null && !voucherCode.isBlank()) {
+			return ResponseEntity.status(401).body(Map.of("success", false, "message", "Please log in to use voucher codes", "requiresLogin", true));
+		}
+
+		List<PriceQuote.LineRequest> lineRequests = new ArrayList<>();
+		if (body.get("items") instanceof List) {
+			for (Object o : (List<?>) body.get("items")) {
+				if (!(o instanceof Map)) continue;
+				Map<?, ?> item = (Map<?, ?>) o;
+				if (item.get("productId") == null || item.get("color") == null || item.get("size") == null) {
+					return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Product ID, color, and size are required"));
+				}
+				lineRequests.add(new PriceQuote.LineRequest(
+						item.get("productId").toString(),
+						item.get("color").toString(),
+						item.get("size").toString(),
+						Integer.parseInt(Objects.toString(item.get("quantity"), "1"))));
+			}
+		} else {
+			Cart cart = cartRepository.findByIdentifier(cartIdentifier, isLoggedIn).orElse(null);
+			if (cart != null) {
+				lineRequests = toLineRequests(cart);
+			}
+		}
+
+		String country = null;
+		if (body.get("shippingAddress") instanceof Map) {
+			country = Objects.toString(((Map<?, ?>) body.get("shippingAddress")).get("country"), null);
+		}
+
+		PriceQuote quote = pricingService.quote(lineRequests, isLoggedIn ? cartIdentifier : null, voucherCode, country);
+
+		Map<String, Object> response = new HashMap<>();
+		response.put("success", true);
+		response.put("data", quote);
+		if (!isLoggedIn) {
+			response.put("cartId", cartIdentifier);
+		}
+		return ResponseEntity.ok(response);
+	}
+
+	private List<PriceQuote.LineRequest> toLineRequests(Cart cart) {
+		List<PriceQuote.LineRequest> lineRequests = new ArrayList<>();
+		for (Cart.CartItem item : cart.getItems()) {
+			lineRequests.add(new PriceQuote.LineRequest(item.getProductId(), item.getColor(), item.getSize(), item.getQuantity()));
+		}
+		return lineRequests;
+	}
+
 	// Add item to cart
 	@PostMapping("/add")
 	public ResponseEntity<Map<String, Object>> addToCart(@RequestBody Map<String, Object> body) {
@@ -185,15 +227,8 @@ public class CartController {
 
 		Cart cart = cartRepository.getOrCreate(cartIdentifier, isLoggedIn);
 
-		// price with discount
-		double basePrice = product.getPrice().doubleValue();
-		double finalPrice = basePrice;
-		if (product.getDiscount() != null && product.getDiscount().getDiscountValue() != null && product.getDiscount().getDiscountType() != null) {
-			// Support percentage discount type "percentage"
-			if ("percentage".equalsIgnoreCase(product.getDiscount().getDiscountType())) {
-				finalPrice = basePrice * (1.0 - product.getDiscount().getDiscountValue().doubleValue() / 100.0);
-			}
-		}
+		// price with discount (same rule as checkout)
+		double finalPrice = pricingService.unitPrice(product);
 
 		// Get the first default image URL
 		String defaultImageUrl = null;
@@ -413,23 +448,14 @@ public class CartController {
 
 		Map<String, Object> shippingAddress = (Map<String, Object>) body.get("shippingAddress");
 
-		double shippingCost = 0.0; int minDays = 3, maxDays = 7;
-		if (shippingAddress != null) {
-			String country = Objects.toString(shippingAddress.get("country"), "");
-			if ("Pakistan".equalsIgnoreCase(country)) {
-				shippingCost = cart.getSubtotal() > 5000 ? 0.0 : 200.0;
-				minDays = 2; maxDays = 5;
-			} else {
-				shippingCost = 500.0; minDays = 7; maxDays = 14;
-			}
-		}
-
-		double taxRate = (shippingAddress != null && "Pakistan".equalsIgnoreCase(Objects.toString(shippingAddress.get("country"), ""))) ? 0.05 : 0.0;
-		double taxAmount = cart.getSubtotal() * taxRate;
+		PricingService.ShippingEstimate estimate = pricingService.estimateShipping(
+				shippingAddress != null ? Objects.toString(shippingAddress.get("country"), "") : null, cart.getSubtotal());
+		double shippingCost = estimate.shipping;
+		double taxAmount = estimate.tax;
 
 		cart.setShipping(shippingCost);
 		cart.setTax(taxAmount);
-		cart.setEstimatedDelivery(new Cart.EstimatedDelivery(minDays, maxDays));
+		cart.setEstimatedDelivery(new Cart.EstimatedDelivery(estimate.minDays, estimate.maxDays));
 		if (shippingAddress != null) {
 			Cart.ShippingAddress sa = new Cart.ShippingAddress();
 			sa.setType(Objects.toString(shippingAddress.get("type"), "home"));
@@ -2,7 +2,6 @@ package com.Daad.ecommerce.controller;
 
 import com.Daad.ecommerce.dto.Product;
 import com.Daad.ecommerce.repository.CategoryRepository;
-import com.Daad.ecommerce.repository.ProductRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -21,9 +20,6 @@ public class CategoryController {
     @Autowired
     private CategoryRepository categoryRepository;
 
-    @Autowired
-    private ProductRepository productRepository;
-
     // Get all categories
     @GetMapping("/")
     public ResponseEntity<Map<String, Object>> getAllCategories(
@@ -58,12 +54,8 @@ public class CategoryController {
         int end = Math.min(total, start + limit);
         List<Product.Category> paginated = start < end ? filtered.subList(start, end) : new ArrayList<>();
 
-        // Stats (product counts by category) - avoid loading products (which triggers image queries)
-        Map<String, Long> countsByCategory = new HashMap<>();
-        for (Product.Category cat : filtered) {
-            long count = categoryRepository.countProductsInCategory(cat.getId());
-            countsByCategory.put(cat.getId(), count);
-        }
+        // Stats (product counts by category) - one grouped count instead of loading products
+        Map<String, Long> countsByCategory = categoryRepository.countActiveProductsByCategory();
 
         List<Map<String, Object>> categoryStats = filtered.stream().map(c -> {
             Map<String, Object> m = new HashMap<>();
@@ -183,9 +175,7 @@ public class CategoryController {
         }
 
         // has subcategories?
-        boolean hasSub = categoryRepository.findAll().stream()
-                .anyMatch(c -> Objects.equals(c.getParentCategoryId(), categoryId));
-        if (hasSub) {
+        if (categoryRepository.hasSubcategories(categoryId)) {
             return ResponseEntity.status(400).body(Map.of(
                     "success", false,
                     "message", "Cannot delete category that has subcategories. Please delete subcategories first."
@@ -193,9 +183,7 @@ public class CategoryController {
         }
 
         // has products?
-        boolean hasProducts = productRepository.findAll().stream()
-                .anyMatch(p -> p.getCategory() != null && Objects.equals(p.getCategory().getId(), categoryId));
-        if (hasProducts) {
+        if (categoryRepository.hasProducts(categoryId)) {
             return ResponseEntity.status(400).body(Map.of(
                     "success", false,
                     "message", "Cannot delete category that has products. Please reassign or delete products first."
@@ -318,8 +306,7 @@ public class CategoryController {
         }
 
         Product.Category category = categoryOpt.get();
-        List<Product.Category> subcategories = categoryRepository.findAll().stream()
-                .filter(c -> Objects.equals(c.getParentCategoryId(), categoryId))
+        List<Product.Category> subcategories = categoryRepository.findByParentCategoryId(category.getId()).stream()
                 .map(c -> {
                     Product.Category sc = new Product.Category();
                     sc.setId(c.getId());
@@ -332,9 +319,7 @@ public class CategoryController {
                 })
                 .collect(Collectors.toList());
 
-        long productCount = productRepository.findAll().stream()
-                .filter(p -> p.getCategory() != null && Objects.equals(p.getCategory().getId(), categoryId))
-                .count();
+        long productCount = categoryRepository.countProductsInCategory(category.getId());
 
         Map<String, Object> data = new HashMap<>();
         data.put("id", category.getId());
@@ -221,13 +221,7 @@ public class DeliveryController {
     public ResponseEntity<List<Map<String, Object>>> getDeliveryAreas(
             @RequestParam(required = false) String city) {
         try {
-            List<Map<String, Object>> areas;
-            if (city != null) {
-                areas = deliveryRepository.getAreasByCity(city);
-            } else {
-                areas = deliveryRepository.getAvailableDeliveryAreas();
-            }
-            return ResponseEntity.ok(areas);
+            return ResponseEntity.ok(deliveryService.getAvailableDeliveryAreas(city));
         } catch (Exception e) {
             log.error("Error getting delivery areas for city: {}", city, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
@@ -2,7 +2,7 @@ package com.Daad.ecommerce.controller;
 
 import com.Daad.ecommerce.service.DeliveryService;
 import com.Daad.ecommerce.service.FincartApiService;
-import com.Daad.ecommerce.repository.DeliveryRepository;
+import com.Daad.ecommerce.service.WebhookEventService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +24,7 @@ public class DeliveryWebhookController {
     private FincartApiService fincartApiService;
     
     @Autowired
-    private DeliveryRepository deliveryRepository;
+    private WebhookEventService webhookEventService;
     
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -53,22 +53,14 @@ public class DeliveryWebhookController {
                 return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Missing orderId"));
             }
             
-            // Check for duplicate processing
-            String eventType = (String) webhookData.get("action");
-            if (deliveryRepository.isWebhookProcessed(fincartOrderId, eventType)) {
+            // Logged in one insert and applied by the webhook worker, in order per delivery
+            boolean accepted = webhookEventService.enqueue(WebhookEventService.SOURCE_FINCART, fincartOrderId,
+                WebhookEventService.sha256(payload), payload);
+            if (!accepted) {
                 return ResponseEntity.ok(Map.of("success", true, "message", "Already processed"));
             }
             
-            // Log webhook
-            deliveryRepository.insertWebhookLog(fincartOrderId, eventType, payload);
-            
-            // Process webhook data
-            deliveryService.updateDeliveryStatus(fincartOrderId, webhookData);
-            
-            // Mark as processed
-            deliveryRepository.markWebhookProcessed(fincartOrderId);
-            
-            return ResponseEntity.ok(Map.of("success", true, "message", "Webhook processed"));
+            return ResponseEntity.ok(Map.of("success", true, "message", "Webhook accepted"));
             
         } catch (Exception e) {
             log.error("Error processing delivery webhook: " + e.getMessage());
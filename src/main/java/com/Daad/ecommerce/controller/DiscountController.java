@@ -1,14 +1,18 @@
 package com.Daad.ecommerce.controller;
 
+import com.Daad.ecommerce.dto.PriceQuote;
 import com.Daad.ecommerce.repository.UserRepository;
 import com.Daad.ecommerce.security.SecurityUtils;
 import com.Daad.ecommerce.service.DiscountService;
+import com.Daad.ecommerce.service.PricingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -18,6 +22,7 @@ public class DiscountController {
 
 	@Autowired private UserRepository userRepository;
 	@Autowired private DiscountService discountService;
+	@Autowired private PricingService pricingService;
 
 	@PostMapping("/calculate-preview")
 	public ResponseEntity<?> calculateDiscountPreview(@RequestBody Map<String, Object> body) {
@@ -29,10 +34,12 @@ public class DiscountController {
 			java.util.List<Map<String, Object>> cartItems = body.get("cartItems") != null ? 
 				(java.util.List<Map<String, Object>>) body.get("cartItems") : null;
 			
-			if (subtotalObj == null) {
+			// Full cart lines (productId, color, size, quantity) let the server price the cart itself
+			List<PriceQuote.LineRequest> lineRequests = toLineRequests(cartItems);
+			if (subtotalObj == null && lineRequests == null) {
 				return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Subtotal is required"));
 			}
-			double subtotal = Double.parseDouble(subtotalObj.toString());
+			double subtotal = subtotalObj != null ? Double.parseDouble(subtotalObj.toString()) : 0.0;
 
 		// Get userId if authenticated - vouchers require login
 		String userId = null;
@@ -75,7 +82,17 @@ public class DiscountController {
 		}
 
 		// Calculate discount (vouchers require authentication)
-		var result = discountService.calculateDiscount(userId != null ? userId : "guest", subtotal, voucherCode, cartItems);
+		DiscountService.DiscountResult result;
+		String quoteToken = null;
+		if (lineRequests != null) {
+			PriceQuote quote = pricingService.quote(lineRequests, userId, voucherCode, null);
+			subtotal = quote.getSubtotal();
+			result = new DiscountService.DiscountResult(quote.getDiscountAmount(),
+					quote.getDiscountReason() != null ? quote.getDiscountReason() : "No discount", quote.getVoucherCode());
+			quoteToken = quote.getToken();
+		} else {
+			result = discountService.calculateDiscount(userId != null ? userId : "guest", subtotal, voucherCode, cartItems);
+		}
 		double pointsDiscount = pointsToUse; // 1 point = 1 unit
 		double total = subtotal - result.amount - pointsDiscount;
 		int pointsEarned = userId != null ? (int) Math.floor(total / 100.0) : 0;
@@ -85,31 +102,33 @@ public class DiscountController {
 		
 		// If voucher code was provided but discount is 0, it means validation failed
 		if (voucherCode != null && !voucherCode.isBlank() && result.amount == 0) {
-			return ResponseEntity.ok(Map.of(
-				"success", false,
-				"message", result.reason != null && !result.reason.equals("No discount") ? result.reason : "Invalid or inactive voucher code",
-				"subtotal", subtotal,
-				"discountAmount", 0.0,
-				"discountReason", result.reason != null ? result.reason : "Invalid voucher",
-				"voucherCode", "",
-				"pointsDiscount", pointsDiscount,
-				"pointsToUse", pointsToUse,
-				"pointsEarned", pointsEarned,
-				"total", Math.max(0, total)
-			));
+			Map<String, Object> response = new HashMap<>();
+			response.put("success", false);
+			response.put("message", result.reason != null && !result.reason.equals("No discount") ? result.reason : "Invalid or inactive voucher code");
+			response.put("subtotal", subtotal);
+			response.put("discountAmount", 0.0);
+			response.put("discountReason", result.reason != null ? result.reason : "Invalid voucher");
+			response.put("voucherCode", "");
+			response.put("pointsDiscount", pointsDiscount);
+			response.put("pointsToUse", pointsToUse);
+			response.put("pointsEarned", pointsEarned);
+			response.put("total", Math.max(0, total));
+			if (quoteToken != null) response.put("quoteToken", quoteToken);
+			return ResponseEntity.ok(response);
 		}
 
-		return ResponseEntity.ok(Map.of(
-			"success", isSuccess,
-			"subtotal", subtotal,
-			"discountAmount", result.amount,
-			"discountReason", result.reason,
-			"voucherCode", result.voucherCode != null ? result.voucherCode : "",
-			"pointsDiscount", pointsDiscount,
-			"pointsToUse", pointsToUse,
-			"pointsEarned", pointsEarned,
-			"total", Math.max(0, total)
-		));
+		Map<String, Object> response = new HashMap<>();
+		response.put("success", isSuccess);
+		response.put("subtotal", subtotal);
+		response.put("discountAmount", result.amount);
+		response.put("discountReason", result.reason);
+		response.put("voucherCode", result.voucherCode != null ? result.voucherCode : "");
+		response.put("pointsDiscount", pointsDiscount);
+		response.put("pointsToUse", pointsToUse);
+		response.put("pointsEarned", pointsEarned);
+		response.put("total", Math.max(0, total));
+		if (quoteToken != null) response.put("quoteToken", quoteToken);
+		return ResponseEntity.ok(response);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return ResponseEntity.status(500).body(Map.of(
@@ -126,4 +145,20 @@ public class DiscountController {
 			));
 		}
 	}
+
+	// Returns null unless every cart item carries the full (productId, color, size, quantity) line
+	private List<PriceQuote.LineRequest> toLineRequests(List<Map<String, Object>> cartItems) {
+		if (cartItems == null || cartItems.isEmpty()) return null;
+		List<PriceQuote.LineRequest> lineRequests = new ArrayList<>();
+		for (Map<String, Object> item : cartItems) {
+			Object productId = item.get("productId");
+			Object color = item.get("color");
+			Object size = item.get("size");
+			Object quantity = item.get("quantity");
+			if (productId == null || color == null || size == null || quantity == null) return null;
+			lineRequests.add(new PriceQuote.LineRequest(productId.toString(), color.toString(), size.toString(),
+					Integer.parseInt(quantity.toString())));
+		}
+		return lineRequests;
+	}
 }
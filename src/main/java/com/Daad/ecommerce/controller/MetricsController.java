@@ -0,0 +1,66 @@
+package com.Daad.ecommerce.controller;
+
+import com.Daad.ecommerce.http.UpstreamHttpClients;
+import com.Daad.ecommerce.metrics.RequestMetrics;
+import com.Daad.ecommerce.service.NotificationDispatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+@CrossOrigin(origins = "*")
+public class MetricsController {
+
+    @Autowired
+    private RequestMetrics requestMetrics;
+
+    @Autowired
+    private UpstreamHttpClients upstreamHttpClients;
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    // Per-endpoint p50/p95/p99 latency (microseconds) and JDBC statements per request
+    @GetMapping("/endpoints")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getEndpointMetrics() {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "data", requestMetrics.endpointSnapshots()
+        ));
+    }
+
+    // Per-controller-method timings, outcomes and request payload sizes
+    @GetMapping("/methods")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getMethodMetrics() {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "data", requestMetrics.methodSnapshots()
+        ));
+    }
+
+    // Outbound call latency, errors, retries, rejections and circuit state per upstream
+    @GetMapping("/upstreams")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getUpstreamMetrics() {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "data", upstreamHttpClients.snapshots()
+        ));
+    }
+
+    // Email outbox depth and oldest age per priority, send/failure counters, enqueue-to-send latency (ms)
+    @GetMapping("/notifications")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getNotificationMetrics() {
+        return ResponseEntity.ok(Map.of(
+            "success", true,
+            "data", notificationDispatcher.snapshot()
+        ));
+    }
+}
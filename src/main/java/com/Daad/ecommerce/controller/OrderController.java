@@ -1,7 +1,7 @@
 package com.Daad.ecommerce.controller;
 
 import com.Daad.ecommerce.dto.Order;
-import com.Daad.ecommerce.dto.Product;
+import com.Daad.ecommerce.dto.PriceQuote;
 import com.Daad.ecommerce.repository.CartRepository;
 import com.Daad.ecommerce.repository.OrderRepository;
 import com.Daad.ecommerce.repository.ProductRepository;
@@ -12,6 +12,7 @@ import com.Daad.ecommerce.repository.UserRepository;
 import com.Daad.ecommerce.security.SecurityUtils;
 import com.Daad.ecommerce.service.LocalUploadService;
 import com.Daad.ecommerce.service.PaymentService;
+import com.Daad.ecommerce.service.PricingService;
 import com.Daad.ecommerce.service.NotificationService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,6 +40,7 @@ public class OrderController {
 	@Autowired private NotificationService notificationService;
 	@Autowired private PaymentService paymentService;
 	@Autowired private CartRepository cartRepository;
+	@Autowired private PricingService pricingService;
 
 	private int calculatePoints(double amount) { return (int) Math.floor(amount / 100.0); }
 
@@ -64,7 +66,8 @@ public class OrderController {
 				}
 			}
 			
-			// Create delivery order for each vendor
+			// Build one delivery order per vendor
+			List<Map<String, Object>> vendorOrders = new ArrayList<>();
 			for (Map.Entry<String, List<Map<String, Object>>> entry : vendorItems.entrySet()) {
 				String vendorId = entry.getKey();
 				List<Map<String, Object>> items = entry.getValue();
@@ -103,14 +106,16 @@ public class OrderController {
 				deliveryData.put("no_of_items", totalItems);
 				deliveryData.put("description", description.toString());
 				deliveryData.put("reference_number", order.getId());
-				
-				// Create delivery order
-				Map<String, Object> result = deliveryService.createDeliveryOrder(order.getId(), vendorId, deliveryData);
-				
-				if (!(Boolean) result.get("success")) {
-					System.err.println("Failed to create delivery for vendor " + vendorId + ": " + result.get("error"));
+				deliveryData.put("vendor_id", vendorId);
+				vendorOrders.add(deliveryData);
+			}
+			
+			// Vendors are created in parallel; failures are retried in the background
+			for (Map<String, Object> result : deliveryService.createMultiVendorDeliveries(order.getId(), vendorOrders)) {
+				if (!Boolean.TRUE.equals(result.get("success"))) {
+					System.err.println("Failed to create delivery for vendor " + result.get("vendor_id") + ": " + result.get("error"));
 				} else {
-					System.out.println("Created delivery order for vendor " + vendorId + ": " + result.get("fincart_order_id"));
+					System.out.println("Created delivery order for vendor " + result.get("vendor_id") + ": " + result.get("fincart_order_id"));
 				}
 			}
 			
@@ -119,35 +124,6 @@ public class OrderController {
 		}
 	}
 
-	// Compute discounted price on the server to prevent client tampering
-	private double computeDiscountedPrice(Product product) {
-		if (product == null || product.getPrice() == null) return 0.0;
-		double price = product.getPrice().doubleValue();
-		double pct = 0.0;
-
-		// Determine if discount is active and not expired
-		if (product.getDiscount() != null && product.getDiscount().getDiscountValue() != null) {
-			boolean isActive = product.getDiscount().getIsActive() == null || product.getDiscount().getIsActive();
-			boolean notExpired = true;
-			if (product.getDiscount().getEndDate() != null) {
-				try {
-					var end = java.time.LocalDateTime.parse(product.getDiscount().getEndDate());
-					notExpired = end.isAfter(java.time.LocalDateTime.now());
-				} catch (Exception ignored) {}
-			}
-			if (isActive && notExpired) {
-				pct = product.getDiscount().getDiscountValue().doubleValue();
-			}
-		}
-
-		if (pct < 0) pct = 0;
-		if (pct > 100) pct = 100;
-
-		double discounted = price * (1 - pct / 100.0);
-		if (discounted < 0) discounted = 0;
-		return discounted;
-	}
-
 	@PostMapping("/create")
 	@PreAuthorize("isAuthenticated()")
 	public ResponseEntity<Map<String, Object>> createOrderAuth(
@@ -183,10 +159,15 @@ public class OrderController {
 			Map<String, Object> shippingAddressMap = (Map<String, Object>) orderData.get("shippingAddress");
 			@SuppressWarnings("unchecked")
 			Map<String, Object> customerInfoMap = (Map<String, Object>) orderData.get("customerInfo");
-			double subtotal = Double.parseDouble(orderData.get("subtotal").toString());
+			// A quote token (from /api/cart/quote or /api/discount/calculate-preview) makes the server's totals authoritative
+			String quoteToken = orderData.get("quoteToken") != null ? orderData.get("quoteToken").toString() : null;
+			double subtotal = orderData.get("subtotal") != null ? Double.parseDouble(orderData.get("subtotal").toString()) : 0.0;
 			double shippingCharges = orderData.get("shippingCharges") != null ? Double.parseDouble(orderData.get("shippingCharges").toString()) : 0.0;
-			double total = Double.parseDouble(orderData.get("total").toString());
+			double total = orderData.get("total") != null ? Double.parseDouble(orderData.get("total").toString()) : 0.0;
 			double discount = orderData.get("discount") != null ? Double.parseDouble(orderData.get("discount").toString()) : 0.0;
+			if (quoteToken == null && (orderData.get("subtotal") == null || orderData.get("total") == null)) {
+				return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Subtotal and total are required"));
+			}
 			@SuppressWarnings("unchecked")
 			Map<String, Object> discountInfo = (Map<String, Object>) orderData.getOrDefault("discountInfo", Map.of("amount", 0, "reasons", List.of(), "pointsUsed", 0));
 			// Get voucher code from request or discountInfo
@@ -219,43 +200,47 @@ public class OrderController {
 				}
 			}
 
-			List<Order.Item> processedItems = new ArrayList<>();
+			// Price and stock-check every line from one bulk product lookup
+			List<PriceQuote.LineRequest> lineRequests = new ArrayList<>();
 			for (Map<String, Object> item : items) {
-				String productId = item.get("product").toString();
-				var productOpt = productRepository.findById(productId);
-				if (productOpt.isEmpty()) {
-					return ResponseEntity.status(404).body(Map.of("success", false, "message", "Product " + productId + " not found"));
-				}
-				Product product = productOpt.get();
-
-				// find inventory
-				String color = item.get("color").toString();
-				String size = item.get("size").toString();
-				int quantity = Integer.parseInt(item.get("quantity").toString());
-				var invItem = product.getColorInventories().stream()
-						.filter(colorInv -> color.equals(colorInv.getColor()))
-						.flatMap(colorInv -> colorInv.getSizes().stream())
-						.filter(sizeInv -> size.equals(sizeInv.getSize()))
-						.findFirst();
-				if (invItem.isEmpty() || invItem.get().getStock() < quantity) {
-					return ResponseEntity.status(400).body(Map.of("success", false, "message", product.getName() + " is out of stock or has insufficient quantity"));
-				}
-
-				// Compute price with discount (server-side to avoid client tampering)
-				double priceToUse = computeDiscountedPrice(product);
+				lineRequests.add(new PriceQuote.LineRequest(
+						item.get("product").toString(),
+						item.get("color").toString(),
+						item.get("size").toString(),
+						Integer.parseInt(item.get("quantity").toString())));
+			}
+			String shippingCountry = shippingAddressMap != null ? Objects.toString(shippingAddressMap.get("country"), null) : null;
+			PriceQuote quote = pricingService.quoteForCheckout(quoteToken, lineRequests, userId, quoteToken != null ? voucherCode : null, shippingCountry);
 
+			List<Order.Item> processedItems = new ArrayList<>();
+			for (PriceQuote.Line line : quote.getLines()) {
+				if (!line.isAvailable()) {
+					int status = line.getProductName() == null ? 404 : 400;
+					return ResponseEntity.status(status).body(Map.of("success", false, "message", line.getMessage()));
+				}
 				Order.Item oi = new Order.Item();
-				oi.setProduct(productId);
-				oi.setVendorId(product.getVendor() != null ? product.getVendor().getId() : null);
-				oi.setProductName(product.getName());
-				oi.setColor(color);
-				oi.setSize(size);
-				oi.setQuantity(quantity);
-				oi.setPrice(priceToUse);
+				oi.setProduct(line.getProductId());
+				oi.setVendorId(line.getVendorId());
+				oi.setProductName(line.getProductName());
+				oi.setColor(line.getColor());
+				oi.setSize(line.getSize());
+				oi.setQuantity(line.getQuantity());
+				oi.setPrice(line.getFinalUnitPrice());
 				processedItems.add(oi);
+			}
+
+			if (quoteToken != null) {
+				subtotal = quote.getSubtotal();
+				discount = quote.getDiscountAmount();
+				if (quote.getVoucherCode() != null) voucherCode = quote.getVoucherCode();
+				shippingCharges = quote.getShipping();
+				// The quote total is what the customer was shown, tax included; only the points come off it
+				total = Math.max(0, quote.getTotal() - pointsToUse);
+			}
 
-				// deduct stock using repository method
-				productRepository.decrementStock(productId, color, size, quantity);
+			// deduct stock only once every line has been validated
+			for (Order.Item oi : processedItems) {
+				productRepository.decrementStock(oi.getProduct(), oi.getColor(), oi.getSize(), oi.getQuantity());
 			}
 
 			int pointsEarned = calculatePoints(total);
@@ -7,6 +7,7 @@ import com.Daad.ecommerce.dto.PaymentDtos.RefundResponse;
 import com.Daad.ecommerce.dto.PaymentDtos.VoidResponse;
 import com.Daad.ecommerce.repository.OrderRepository;
 import com.Daad.ecommerce.service.PaymentService;
+import com.Daad.ecommerce.service.WebhookEventService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,10 +23,12 @@ public class PaymentController {
 
     private final PaymentService paymentService;
     private final OrderRepository orderRepository;
+    private final WebhookEventService webhookEventService;
 
-    public PaymentController(PaymentService paymentService, OrderRepository orderRepository) {
+    public PaymentController(PaymentService paymentService, OrderRepository orderRepository, WebhookEventService webhookEventService) {
         this.paymentService = paymentService;
         this.orderRepository = orderRepository;
+        this.webhookEventService = webhookEventService;
     }
 
     @PostMapping("/paymob/create-session")
@@ -54,8 +57,17 @@ public class PaymentController {
             String status = extractStatus(event);
             String orderId = extractOrderId(event);
 
+            // Logged in one insert and applied by the webhook worker, in order per order
             if (orderId != null && !orderId.isBlank()) {
-                paymentService.processWebhookEvent(transactionId, status, orderId, toJson(event));
+                Map<String, Object> envelope = new HashMap<>();
+                envelope.put("transactionId", transactionId);
+                envelope.put("status", status);
+                envelope.put("orderId", orderId);
+                envelope.put("event", event);
+                String envelopeJson = toJson(envelope);
+                // Without a transaction id, unrelated events would all share ":<status>"; key them by content instead
+                String dedupKey = !transactionId.isBlank() ? transactionId + ":" + status : WebhookEventService.sha256(envelopeJson);
+                webhookEventService.enqueue(WebhookEventService.SOURCE_PAYMOB_PAYMENT, orderId, dedupKey, envelopeJson);
             }
 
             return ResponseEntity.ok("ok");
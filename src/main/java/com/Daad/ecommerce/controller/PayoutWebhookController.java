@@ -1,7 +1,7 @@
 package com.Daad.ecommerce.controller;
 
-import com.Daad.ecommerce.repository.VendorPayoutRepository;
 import com.Daad.ecommerce.service.PayoutService;
+import com.Daad.ecommerce.service.WebhookEventService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -14,12 +14,12 @@ import java.util.Map;
 @Slf4j
 public class PayoutWebhookController {
 
-    private final VendorPayoutRepository vendorPayoutRepository;
     private final PayoutService payoutService;
+    private final WebhookEventService webhookEventService;
 
-    public PayoutWebhookController(VendorPayoutRepository vendorPayoutRepository, PayoutService payoutService) {
-        this.vendorPayoutRepository = vendorPayoutRepository;
+    public PayoutWebhookController(PayoutService payoutService, WebhookEventService webhookEventService) {
         this.payoutService = payoutService;
+        this.webhookEventService = webhookEventService;
     }
 
     @PostMapping("/webhook")
@@ -36,26 +36,13 @@ public class PayoutWebhookController {
             String merchantReference = payload.get("merchant_reference") != null ? payload.get("merchant_reference").toString() : null;
             String payloadJson = new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(payload);
 
-            // Idempotency check: has a processed log for this paymob id?
-            Boolean alreadyProcessed = vendorPayoutRepository.isWebhookProcessed(paymobPayoutId);
-            if (Boolean.TRUE.equals(alreadyProcessed)) {
+            // Logged in one insert and applied by the webhook worker, in order per payout
+            String entityKey = merchantReference != null ? merchantReference : String.valueOf(paymobPayoutId);
+            String dedupKey = paymobPayoutId != null ? paymobPayoutId + ":" + status : WebhookEventService.sha256(payloadJson);
+            if (!webhookEventService.enqueue(WebhookEventService.SOURCE_PAYMOB_PAYOUT, entityKey, dedupKey, payloadJson)) {
                 return ResponseEntity.ok(Map.of("success", true, "message", "already processed"));
             }
 
-            vendorPayoutRepository.insertWebhookLog(paymobPayoutId, status, payloadJson);
-
-            if (merchantReference != null) {
-                if ("completed".equalsIgnoreCase(status) || "success".equalsIgnoreCase(status)) {
-                    vendorPayoutRepository.markCompleted(merchantReference, paymobPayoutId, payloadJson);
-                    vendorPayoutRepository.markWebhookProcessed(paymobPayoutId);
-                } else if ("failed".equalsIgnoreCase(status) || "declined".equalsIgnoreCase(status)) {
-                    vendorPayoutRepository.markFailed(merchantReference, "Webhook failed: " + status);
-                    vendorPayoutRepository.markWebhookProcessed(paymobPayoutId);
-                } else {
-                    vendorPayoutRepository.markProcessingWithResponse(merchantReference, paymobPayoutId, payloadJson);
-                }
-            }
-
             return ResponseEntity.ok(Map.of("success", true));
         } catch (Exception e) {
             log.error("Payout webhook processing error", e);
@@ -451,18 +451,32 @@ public class ProductController {
         }
     }
 
-    //sync products
+    // Sync products from the vendor's website feed. Runs in the background; poll GET /sync/{jobId} for progress
     @PostMapping("/sync")
     @PreAuthorize("hasRole('VENDOR')")
-    public ResponseEntity<List<Product>> syncProducts(Authentication authentication) {
-        try{
-            String userId = authentication.getName();
-            var products = productService.syncProductsFromVendorWebsite(userId);
-            return ResponseEntity.ok(products);
-        } catch (Exception e){
+    public ResponseEntity<Map<String, Object>> syncProducts(Authentication authentication) {
+        try {
+            Map<String, Object> job = productService.startCatalogSync(authentication.getName());
+            return ResponseEntity.accepted().body(Map.of("success", true, "data", job));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (Exception e) {
             log.error("Error in syncProducts: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(Map.of("success", false, "message", "Error starting product sync"));
+        }
+    }
+
+    @GetMapping("/sync/{jobId}")
+    @PreAuthorize("hasRole('VENDOR')")
+    public ResponseEntity<Map<String, Object>> getSyncJob(@PathVariable String jobId, Authentication authentication) {
+        try {
+            return productService.getCatalogSyncJob(authentication.getName(), jobId)
+                    .map(job -> ResponseEntity.ok(Map.<String, Object>of("success", true, "data", job)))
+                    .orElseGet(() -> ResponseEntity.status(404).body(Map.of("success", false, "message", "Sync job not found")));
+        } catch (Exception e) {
+            log.error("Error in getSyncJob: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(Map.of("success", false, "message", "Error retrieving sync job"));
         }
-        return ResponseEntity.ok(new ArrayList<>());
     }
     
     // Create product
@@ -912,6 +926,7 @@ public class ProductController {
 
             List<String> uploadedUrls = new ArrayList<>();
             List<String> fileIds = new ArrayList<>(); // This will store the B2 keys for deletion
+            List<Map<String, String>> variants = new ArrayList<>();
             
             for (MultipartFile image : images) {
                 if (image != null && !image.isEmpty()) {
@@ -919,11 +934,13 @@ public class ProductController {
                         // Upload to Backblaze B2 instead of local storage
                         BackblazeService.UploadResult uploadResult = backblazeService.uploadMultipart(
                             image, 
-                            "products/" + productId + "/default"
+                            "products/" + productId + "/default",
+                            true
                         );
                         
                         uploadedUrls.add(uploadResult.url);
                         fileIds.add(uploadResult.key); // Store B2 key for future deletion
+                        variants.add(uploadResult.variants);
                         
                     } catch (IOException e) {
                         // Log the error but continue with other images
@@ -940,7 +957,7 @@ public class ProductController {
             }
 
             // Save images to database with B2 keys as file_ids
-            productRepository.saveProductImages(productId, uploadedUrls, null, fileIds);
+            productRepository.saveProductImages(productId, uploadedUrls, null, fileIds, variants);
 
             // Update product status from draft to awaiting_approval
             productRepository.updateStatus(productId, "awaiting_approval");
@@ -68,11 +68,9 @@ public class RatingController {
 		review.setComment(comment);
 		review.setStatus("approved");
 
+		// Product rating aggregates are updated by the reviews trigger in the same statement
 		Review saved = reviewRepository.save(review);
 
-		// Update product average rating
-		updateProductRating(productId);
-
 		return ResponseEntity.status(201).body(Map.of("success", true, "message", "Rating submitted successfully", "data", saved));
 	}
 
@@ -102,13 +100,8 @@ public class RatingController {
 		int end = Math.min(total, start + limit);
 		List<Review> paginated = start < end ? allApproved.subList(start, end) : new ArrayList<>();
 
-		// rating stats
-		Map<Integer, Long> dist = reviewRepository.ratingDistributionForProduct(productId);
-		OptionalDouble avg = reviewRepository.averageRatingForProduct(productId);
-		Map<String, Object> ratingStats = new HashMap<>();
-		ratingStats.put("averageRating", avg.isPresent() ? Math.round(avg.getAsDouble() * 10.0) / 10.0 : 0.0);
-		ratingStats.put("totalReviews", total);
-		ratingStats.put("ratingDistribution", dist);
+		// rating stats, read from the product's maintained aggregates
+		Map<String, Object> ratingStats = reviewRepository.ratingStatsForProduct(productId);
 
 		Map<String, Object> pagination = new HashMap<>();
 		pagination.put("page", page);
@@ -198,7 +191,6 @@ public class RatingController {
 		}
 
 		reviewRepository.save(review);
-		updateProductRating(review.getProductId());
 		return ResponseEntity.ok(Map.of("success", true, "message", "Rating updated successfully", "data", review));
 	}
 
@@ -216,19 +208,7 @@ public class RatingController {
 			return ResponseEntity.status(403).body(Map.of("success", false, "message", "You can only delete your own reviews"));
 		}
 
-		String productId = review.getProductId();
 		reviewRepository.deleteById(reviewId);
-		updateProductRating(productId);
 		return ResponseEntity.ok(Map.of("success", true, "message", "Rating deleted successfully"));
 	}
-
-	// Helper to update product average rating in in-memory product store
-	private void updateProductRating(String productId) {
-		OptionalDouble avg = reviewRepository.averageRatingForProduct(productId);
-		productRepository.findById(productId).ifPresent(p -> {
-			double val = avg.isPresent() ? Math.round(avg.getAsDouble() * 10.0) / 10.0 : 0.0;
-			p.setAverageRating(java.math.BigDecimal.valueOf(val));
-			productRepository.save(p);
-		});
-	}
 }
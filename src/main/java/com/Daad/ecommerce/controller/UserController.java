@@ -5,7 +5,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import com.Daad.ecommerce.security.SecurityUtils;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
@@ -19,6 +18,7 @@ import com.Daad.ecommerce.repository.VendorRepository;
 import com.Daad.ecommerce.service.EmailService;
 import com.Daad.ecommerce.service.JwtService;
 import com.Daad.ecommerce.service.LocalUploadService;
+import com.Daad.ecommerce.service.LoginService;
 import com.Daad.ecommerce.service.NotificationService;
 
 import java.util.*;
@@ -34,7 +34,10 @@ public class UserController {
     private final JwtService jwtService;
     private final EmailService emailService;
     private final LocalUploadService localUploadService;
-    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final LoginService loginService;
+    private final PasswordEncoder passwordEncoder;
+
+    private static final int MAX_ADMIN_PAGE_SIZE = 200;
 
     @Autowired
     private NotificationService notificationService;
@@ -43,12 +46,16 @@ public class UserController {
                           VendorRepository vendorRepository,
                           JwtService jwtService,
                           EmailService emailService,
-                          LocalUploadService localUploadService) {
+                          LocalUploadService localUploadService,
+                          LoginService loginService,
+                          PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
         this.vendorRepository = vendorRepository;
         this.jwtService = jwtService;
         this.emailService = emailService;
         this.localUploadService = localUploadService;
+        this.loginService = loginService;
+        this.passwordEncoder = passwordEncoder;
     }
 
     // Vendor: Get own full details (vendor + linked user + bank details) from JWT
@@ -102,6 +109,11 @@ public class UserController {
             vendorInfo.put("ratingAverage", vendor.getRating());
             vendorInfo.put("description", vendor.getDescription());
             vendorInfo.put("logo", vendor.getLogo());
+            vendorInfo.put("taxId", vendor.getTaxId());
+            vendorInfo.put("policies", vendor.getPolicies());
+            vendorInfo.put("approvedAt", vendor.getApprovedAt());
+            vendorInfo.put("profileCompleted", vendor.getProfileCompleted());
+            vendorInfo.put("createdAt", vendor.getCreatedAt());
             vendorInfo.put("websiteSyncUrl", vendor.getWebsiteSyncUrl());
             if (vendor.getBusinessAddress() != null) {
                 Map<String, Object> addr = new LinkedHashMap<>();
@@ -586,21 +598,18 @@ public class UserController {
         if (body.email == null || body.password == null) {
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Email and password are required"));
         }
-        Optional<User> userOpt = userRepository.findByEmail(body.email.toLowerCase());
-        if (userOpt.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid credentials"));
-        }
-        User user = userOpt.get();
-        if (!passwordEncoder.matches(body.password, user.getPassword())) {
+        Optional<UserRepository.UserWithVendor> account = loginService.authenticate(body.email, body.password);
+        if (account.isEmpty()) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("success", false, "message", "Invalid credentials"));
         }
+        User user = account.get().user;
+        Vendor vendorProfile = account.get().vendor;
 
         if ("vendor".equals(user.getRole())) {
-            Optional<Vendor> v = vendorRepository.findByUser(user);
-            if (v.isEmpty()) {
+            if (vendorProfile == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("success", false, "message", "Vendor profile not found. Please contact support."));
             }
-            String status = v.get().getStatus();
+            String status = vendorProfile.getStatus();
             if ("rejected".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account has been rejected. Please contact support for more information.", "vendorStatus", "rejected"));
             if ("suspended".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account has been suspended. Please contact support to resolve this issue.", "vendorStatus", "suspended"));
             if ("pending".equals(status)) return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("success", false, "message", "Your vendor account is pending approval. You will be notified once your account is reviewed.", "vendorStatus", "pending"));
@@ -620,15 +629,13 @@ public class UserController {
         userData.put("profilePicUrl", user.getProfilePicUrl());
 
         if ("vendor".equals(user.getRole())) {
-            vendorRepository.findByUser(user).ifPresent(v -> {
-                Map<String, Object> vendor = new LinkedHashMap<>();
-                vendor.put("businessName", v.getBusinessName());
-                vendor.put("businessType", v.getBusinessType());
-                vendor.put("status", v.getStatus());
-                vendor.put("profileCompleted", v.getProfileCompleted());
-                vendor.put("rating", v.getRating());
-                userData.put("vendor", vendor);
-            });
+            Map<String, Object> vendor = new LinkedHashMap<>();
+            vendor.put("businessName", vendorProfile.getBusinessName());
+            vendor.put("businessType", vendorProfile.getBusinessType());
+            vendor.put("status", vendorProfile.getStatus());
+            vendor.put("profileCompleted", vendorProfile.getProfileCompleted());
+            vendor.put("rating", vendorProfile.getRating());
+            userData.put("vendor", vendor);
         }
 
         return ResponseEntity.ok(Map.of(
@@ -714,7 +721,8 @@ public class UserController {
                     "data", Map.of(
                             "profilePicUrl", result.url,
                             "imageUrl", result.url,
-                            "filename", result.filename
+                            "filename", result.filename,
+                            "variants", result.variants
                     )
             ));
         } catch (Exception ex) {
@@ -814,55 +822,16 @@ public class UserController {
         ));
     }
 
+    // Admin: vendor list, keyset-paged newest first; full details come from /vendors/{vendorId}/details
     @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/vendors")
-    public ResponseEntity<?> getAllVendors(@RequestParam(required = false) String status) {
-        log.info("getAllVendors called with status: {}", status);
-        List<Vendor> vendors;
-        if (status != null && !status.trim().isEmpty()) {
-            // Filter by status
-            log.info("Calling findByStatus with: {}", status);
-            vendors = vendorRepository.findByStatus(status);
-        } else {
-            // Get all vendors
-            log.info("Calling findAllByOrderByCreatedAtDesc");
-            vendors = vendorRepository.findAllByOrderByCreatedAtDesc();
-        }
-
-        List<Map<String, Object>> transformed = new ArrayList<>();
-        for (Vendor vendor : vendors) {
-            Map<String, Object> v = new LinkedHashMap<>();
-            v.put("vendorId", vendor.getId());
-            v.put("businessName", vendor.getBusinessName());
-            v.put("businessType", vendor.getBusinessType());
-            v.put("phoneNumber", vendor.getPhoneNumber());
-            v.put("businessAddress", vendor.getBusinessAddress());
-            v.put("description", vendor.getDescription());
-            v.put("logo", vendor.getLogo());
-            v.put("status", vendor.getStatus());
-            v.put("approvedBy", vendor.getApprovedBy());
-            v.put("approvedAt", vendor.getApprovedAt());
-            v.put("bankDetails", vendor.getBankDetails());
-            v.put("taxId", vendor.getTaxId());
-            v.put("policies", vendor.getPolicies());
-            v.put("commission", vendor.getCommission());
-            v.put("rating", vendor.getRating());
-            v.put("profileCompleted", vendor.getProfileCompleted());
-            if (vendor.getUser() != null) {
-                Map<String, Object> user = new LinkedHashMap<>();
-                user.put("userId", vendor.getUser().getId());
-                user.put("username", vendor.getUser().getUsername());
-                user.put("email", vendor.getUser().getEmail());
-                user.put("role", vendor.getUser().getRole());
-                user.put("profilePicUrl", vendor.getUser().getProfilePicUrl());
-                user.put("isVerified", vendor.getUser().getIsVerified());
-                v.put("user", user);
-            }
-            v.put("vendorCreatedAt", vendor.getCreatedAt());
-            v.put("vendorUpdatedAt", vendor.getUpdatedAt());
-            transformed.add(v);
-        }
-        return ResponseEntity.ok(Map.of("success", true, "count", transformed.size(), "data", transformed));
+    public ResponseEntity<?> getAllVendors(@RequestParam(required = false) String status,
+                                           @RequestParam(required = false) String search,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "50") Integer limit) {
+        return listPage(cursor, limit, "vendorCreatedAt", "vendorId",
+                (after, pageSize) -> vendorRepository.findListPage(status, search, after.createdAt, after.id, pageSize),
+                () -> vendorRepository.countList(status, search));
     }
 
     // Admin: pending vendor approvals
@@ -950,33 +919,81 @@ public class UserController {
 
     @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/admin/users")
-    public ResponseEntity<?> getAllUsers(@RequestParam(value = "role", required = false) String role) {
-        List<User> users;
-        if (role != null && !role.trim().isEmpty()) {
-            users = userRepository.findByRole(role);
-        } else {
-            users = userRepository.findAll();
+    public ResponseEntity<?> getAllUsers(@RequestParam(value = "role", required = false) String role,
+                                         @RequestParam(required = false) String search,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "50") Integer limit) {
+        return listPage(cursor, limit, "createdAt", "id",
+                (after, pageSize) -> userRepository.findListPage(role, search, after.createdAt, after.id, pageSize),
+                () -> userRepository.countList(role, search));
+    }
+
+    // Admin list cursors are the last row's (created_at, id), opaque to clients; both fields null on the first page
+    private static final class ListCursor {
+        final java.sql.Timestamp createdAt;
+        final UUID id;
+
+        ListCursor(java.sql.Timestamp createdAt, UUID id) {
+            this.createdAt = createdAt;
+            this.id = id;
         }
 
-        List<Map<String, Object>> data = new ArrayList<>();
-        for (User u : users) {
-            Map<String, Object> item = new LinkedHashMap<>();
-            item.put("id", u.getId());
-            item.put("username", u.getUsername());
-            item.put("email", u.getEmail());
-            item.put("role", u.getRole());
-            item.put("isVerified", u.getIsVerified());
-            item.put("profilePicUrl", u.getProfilePicUrl());
-            item.put("createdAt", u.getCreatedAt());
-            item.put("updatedAt", u.getUpdatedAt());
-            data.add(item);
+        String encode() {
+            String raw = createdAt.toLocalDateTime() + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(java.nio.charset.StandardCharsets.UTF_8));
         }
 
-        return ResponseEntity.ok(Map.of(
-                "success", true,
-                "count", data.size(),
-                "data", data
-        ));
+        static ListCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), java.nio.charset.StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new ListCursor(java.sql.Timestamp.valueOf(java.time.LocalDateTime.parse(raw.substring(0, sep))),
+                        UUID.fromString(raw.substring(sep + 1)));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    private interface ListPageQuery {
+        List<Map<String, Object>> fetch(ListCursor after, int limit);
+    }
+
+    /**
+     * Shared by the admin listings: decodes the cursor, fetches one row past the page to learn
+     * whether more follow, and builds the response. The total is only counted for the first page;
+     * later pages skip the COUNT.
+     */
+    private ResponseEntity<?> listPage(String cursor, Integer limit, String createdAtKey, String idKey,
+                                       ListPageQuery query, java.util.function.IntSupplier total) {
+        ListCursor after = cursor != null ? ListCursor.decode(cursor) : new ListCursor(null, null);
+        if (after == null) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", "Invalid cursor"));
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_ADMIN_PAGE_SIZE));
+
+        List<Map<String, Object>> page = query.fetch(after, pageSize + 1);
+        boolean hasMore = page.size() > pageSize;
+        String nextCursor = null;
+        if (hasMore) {
+            page = page.subList(0, pageSize);
+            Map<String, Object> last = page.get(pageSize - 1);
+            // created_at is NOT NULL (V20), so the last row always yields a cursor
+            nextCursor = new ListCursor((java.sql.Timestamp) last.get(createdAtKey), UUID.fromString((String) last.get(idKey))).encode();
+        }
+        Map<String, Object> pagination = new LinkedHashMap<>();
+        pagination.put("limit", pageSize);
+        pagination.put("nextCursor", nextCursor);
+        pagination.put("hasMore", hasMore);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", true);
+        response.put("count", page.size());
+        if (cursor == null) {
+            response.put("total", total.getAsInt());
+        }
+        response.put("pagination", pagination);
+        response.put("data", page);
+        return ResponseEntity.ok(response);
     }
 
     @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN')")
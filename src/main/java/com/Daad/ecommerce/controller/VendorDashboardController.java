@@ -329,39 +329,20 @@ public class VendorDashboardController {
     public ResponseEntity<Map<String, Object>> getPerformanceMetrics(@RequestParam(defaultValue = "30") Integer days) {
         String vendorId = getCurrentVendorId();
         LocalDateTime startDate = LocalDateTime.now().minusDays(days);
-        List<Order> orders = orderRepository.findAllByStatusOptional(null).stream()
-                .filter(o -> o.getCreatedAt().isAfter(startDate))
-                .filter(o -> o.getItems().stream().anyMatch(i -> Objects.equals(i.getVendorId(), vendorId)))
-                .collect(Collectors.toList());
+        Map<String, Object> totals = orderRepository.vendorPeriodTotals(vendorId, startDate);
 
-        double totalRevenue = 0.0;
-        int totalOrders = orders.size();
-        int completedOrders = 0;
-        long totalItems = 0L;
-        for (Order o : orders) {
-            boolean hasVendorItem = false;
-            for (Order.Item i : o.getItems()) {
-                if (Objects.equals(i.getVendorId(), vendorId)) {
-                    totalRevenue += i.getPrice() * i.getQuantity();
-                    totalItems += i.getQuantity();
-                    hasVendorItem = true;
-                }
-            }
-            if (hasVendorItem && "delivered".equalsIgnoreCase(o.getOrderStatus())) {
-                completedOrders++;
-            }
-        }
+        double totalRevenue = (Double) totals.get("totalRevenue");
+        int totalOrders = (Integer) totals.get("totalOrders");
+        int completedOrders = (Integer) totals.get("completedOrders");
+        long totalItems = (Long) totals.get("totalItems");
         double averageOrderValue = totalOrders > 0 ? totalRevenue / totalOrders : 0.0;
 
-        long totalProducts = productRepository.findAll().stream().filter(p -> p.getVendor() != null && Objects.equals(p.getVendor().getId(), vendorId) && Boolean.TRUE.equals(p.getIsActive())).count();
+        int totalProducts = productRepository.countActiveProductsByVendorId(vendorId);
         double conversionRate = totalProducts > 0 ? (double) totalOrders / totalProducts * 100.0 : 0.0;
 
-        // Reviews in period
-        List<Review> allReviews = reviewRepository.findByCustomerIdAndStatus(null, "approved");
-        List<Review> vendorReviews = allReviews.stream()
-                .filter(r -> productRepository.findById(r.getProductId()).map(p -> p.getVendor() != null && Objects.equals(p.getVendor().getId(), vendorId)).orElse(false))
-                .collect(Collectors.toList());
-        double averageRating = vendorReviews.isEmpty() ? 0.0 : vendorReviews.stream().mapToInt(Review::getRating).average().orElse(0.0);
+        // Reviews in period, from the daily rating rollups
+        Map<String, Object> ratingStats = reviewRepository.ratingStatsForVendor(vendorId, startDate.toLocalDate());
+        double averageRating = (Double) ratingStats.get("averageRating");
 
         Map<String, Object> metrics = new HashMap<>();
         metrics.put("totalRevenue", Math.round(totalRevenue * 100.0) / 100.0);
@@ -372,6 +353,8 @@ public class VendorDashboardController {
         metrics.put("conversionRate", Math.round(conversionRate * 100.0) / 100.0);
         metrics.put("averageRating", Math.round(averageRating * 10.0) / 10.0);
         metrics.put("customerSatisfaction", Math.round((averageRating / 5.0) * 100.0));
+        metrics.put("reviewCount", ratingStats.get("totalReviews"));
+        metrics.put("ratingDistribution", ratingStats.get("ratingDistribution"));
 
         return ResponseEntity.ok(Map.of("success", true, "data", Map.of("period", days + " days", "metrics", metrics)));
     }
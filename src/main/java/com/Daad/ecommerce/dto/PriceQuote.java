@@ -0,0 +1,152 @@
+package com.Daad.ecommerce.dto;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class PriceQuote {
+	private String token;
+	private String userId; // null for guests
+	private List<Line> lines = new ArrayList<>();
+	private double subtotal = 0.0;
+	private double discountAmount = 0.0;
+	private String discountReason;
+	private String voucherCode;
+	private double shipping = 0.0;
+	private double tax = 0.0;
+	private double total = 0.0;
+	private Instant createdAt = Instant.now();
+	private Instant expiresAt;
+
+	// One requested cart line: what the client wants to buy
+	public static class LineRequest {
+		private String productId;
+		private String color;
+		private String size;
+		private int quantity;
+		public LineRequest() {}
+		public LineRequest(String productId, String color, String size, int quantity) {
+			this.productId = productId;
+			this.color = color;
+			this.size = size;
+			this.quantity = quantity;
+		}
+		public String getProductId() { return productId; }
+		public void setProductId(String productId) { this.productId = productId; }
+		public String getColor() { return color; }
+		public void setColor(String color) { this.color = color; }
+		public String getSize() { return size; }
+		public void setSize(String size) { this.size = size; }
+		public int getQuantity() { return quantity; }
+		public void setQuantity(int quantity) { this.quantity = quantity; }
+	}
+
+	// One priced line: server-side price, discount and availability for a LineRequest
+	public static class Line {
+		private String productId;
+		private String vendorId;
+		private String productName;
+		private String productDescription;
+		private String defaultImageUrl;
+		private String color;
+		private String size;
+		private int quantity;
+		private double unitPrice;
+		private double discountPercentage;
+		private double finalUnitPrice;
+		private double lineTotal;
+		private int availableStock;
+		private boolean available;
+		private String message; // reason when not available
+		public String getProductId() { return productId; }
+		public void setProductId(String productId) { this.productId = productId; }
+		public String getVendorId() { return vendorId; }
+		public void setVendorId(String vendorId) { this.vendorId = vendorId; }
+		public String getProductName() { return productName; }
+		public void setProductName(String productName) { this.productName = productName; }
+		public String getProductDescription() { return productDescription; }
+		public void setProductDescription(String productDescription) { this.productDescription = productDescription; }
+		public String getDefaultImageUrl() { return defaultImageUrl; }
+		public void setDefaultImageUrl(String defaultImageUrl) { this.defaultImageUrl = defaultImageUrl; }
+		public String getColor() { return color; }
+		public void setColor(String color) { this.color = color; }
+		public String getSize() { return size; }
+		public void setSize(String size) { this.size = size; }
+		public int getQuantity() { return quantity; }
+		public void setQuantity(int quantity) { this.quantity = quantity; }
+		public double getUnitPrice() { return unitPrice; }
+		public void setUnitPrice(double unitPrice) { this.unitPrice = unitPrice; }
+		public double getDiscountPercentage() { return discountPercentage; }
+		public void setDiscountPercentage(double discountPercentage) { this.discountPercentage = discountPercentage; }
+		public double getFinalUnitPrice() { return finalUnitPrice; }
+		public void setFinalUnitPrice(double finalUnitPrice) { this.finalUnitPrice = finalUnitPrice; }
+		public double getLineTotal() { return lineTotal; }
+		public void setLineTotal(double lineTotal) { this.lineTotal = lineTotal; }
+		public int getAvailableStock() { return availableStock; }
+		public void setAvailableStock(int availableStock) { this.availableStock = availableStock; }
+		public boolean isAvailable() { return available; }
+		public void setAvailable(boolean available) { this.available = available; }
+		public String getMessage() { return message; }
+		public void setMessage(String message) { this.message = message; }
+
+		public boolean matches(LineRequest request) {
+			return request != null
+					&& Objects.equals(productId, request.getProductId())
+					&& Objects.equals(color, request.getColor())
+					&& Objects.equals(size, request.getSize())
+					&& quantity == request.getQuantity();
+		}
+	}
+
+	public boolean isFullyAvailable() {
+		return lines.stream().allMatch(Line::isAvailable);
+	}
+
+	public boolean isExpired(Instant now) {
+		return expiresAt != null && !expiresAt.isAfter(now);
+	}
+
+	// Cart items in the shape DiscountService expects for voucher applicability checks
+	public List<Map<String, Object>> toDiscountItems() {
+		List<Map<String, Object>> items = new ArrayList<>();
+		for (Line line : lines) {
+			if (!line.isAvailable()) continue;
+			Map<String, Object> item = new HashMap<>();
+			item.put("productId", line.getProductId());
+			item.put("vendorId", line.getVendorId());
+			item.put("price", line.getFinalUnitPrice());
+			item.put("quantity", line.getQuantity());
+			items.add(item);
+		}
+		return items;
+	}
+
+	// Getters and Setters
+	public String getToken() { return token; }
+	public void setToken(String token) { this.token = token; }
+	public String getUserId() { return userId; }
+	public void setUserId(String userId) { this.userId = userId; }
+	public List<Line> getLines() { return lines; }
+	public void setLines(List<Line> lines) { this.lines = lines; }
+	public double getSubtotal() { return subtotal; }
+	public void setSubtotal(double subtotal) { this.subtotal = subtotal; }
+	public double getDiscountAmount() { return discountAmount; }
+	public void setDiscountAmount(double discountAmount) { this.discountAmount = discountAmount; }
+	public String getDiscountReason() { return discountReason; }
+	public void setDiscountReason(String discountReason) { this.discountReason = discountReason; }
+	public String getVoucherCode() { return voucherCode; }
+	public void setVoucherCode(String voucherCode) { this.voucherCode = voucherCode; }
+	public double getShipping() { return shipping; }
+	public void setShipping(double shipping) { this.shipping = shipping; }
+	public double getTax() { return tax; }
+	public void setTax(double tax) { this.tax = tax; }
+	public double getTotal() { return total; }
+	public void setTotal(double total) { this.total = total; }
+	public Instant getCreatedAt() { return createdAt; }
+	public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+	public Instant getExpiresAt() { return expiresAt; }
+	public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+}
@@ -1,8 +1,11 @@
 package com.Daad.ecommerce.dto;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Product {
     
@@ -333,6 +336,7 @@ public class Product {
         private String alt;
         private Boolean isPrimary;
         private String fileId;
+        private Map<String, String> variants = new HashMap<>(); // thumb / card / detail -> URL
         
         // Getters and Setters
         public String getUrl() { return url; }
@@ -346,6 +350,9 @@ public class Product {
         
         public String getFileId() { return fileId; }
         public void setFileId(String fileId) { this.fileId = fileId; }
+        
+        public Map<String, String> getVariants() { return variants; }
+        public void setVariants(Map<String, String> variants) { this.variants = variants; }
     }
     
     public static class ColorImageSet {
@@ -365,6 +372,9 @@ public class Product {
         private String discountType;
         private String endDate;
         private Boolean isActive;
+        // Parsed form of endDate, resolved once so pricing never re-parses the string per item
+        private transient LocalDateTime endDateTime;
+        private transient boolean endDateResolved;
         
         public Discount() {}
         
@@ -383,9 +393,40 @@ public class Product {
         public void setDiscountType(String discountType) { this.discountType = discountType; }
         
         public String getEndDate() { return endDate; }
-        public void setEndDate(String endDate) { this.endDate = endDate; }
+        public void setEndDate(String endDate) {
+            this.endDate = endDate;
+            this.endDateTime = null;
+            this.endDateResolved = false;
+        }
         
         public Boolean getIsActive() { return isActive; }
         public void setIsActive(Boolean isActive) { this.isActive = isActive; }
+
+        // Sets both representations at once (used by row mappers that already hold a timestamp)
+        public void setEndDateTime(LocalDateTime endDateTime) {
+            this.endDate = endDateTime != null ? endDateTime.toString() : null;
+            this.endDateTime = endDateTime;
+            this.endDateResolved = true;
+        }
+
+        // Unparseable end dates are treated as "no expiry", matching the previous pricing behaviour
+        public LocalDateTime endDateTime() {
+            if (!endDateResolved) {
+                LocalDateTime parsed = null;
+                if (endDate != null) {
+                    try { parsed = LocalDateTime.parse(endDate); } catch (Exception ignored) {}
+                }
+                endDateTime = parsed;
+                endDateResolved = true;
+            }
+            return endDateTime;
+        }
+
+        public boolean isInEffect(LocalDateTime now) {
+            if (discountValue == null) return false;
+            if (isActive != null && !isActive) return false;
+            LocalDateTime end = endDateTime();
+            return end == null || end.isAfter(now);
+        }
     }
 }
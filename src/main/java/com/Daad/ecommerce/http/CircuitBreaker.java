@@ -0,0 +1,72 @@
+package com.Daad.ecommerce.http;
+
+/**
+ * Consecutive-failure circuit breaker. After failureThreshold failures in a row the
+ * circuit opens and calls fail fast for openMillis; then a single trial call is let
+ * through (half-open) and its result closes or re-opens the circuit. A trial that ends
+ * without a result (interrupted, unexpected exception) must be given back with
+ * releaseTrial(), which counts it as a failure so the circuit cannot stay half-open forever.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    // Calls are synchronous, so the thread that took the half-open slot identifies the trial
+    private Thread trialOwner;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) return false;
+            trialInFlight = true;
+            trialOwner = Thread.currentThread();
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        trialOwner = null;
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        trialInFlight = false;
+        trialOwner = null;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    // Called in a finally by whoever called tryAcquire(); a no-op unless this thread's trial is unsettled
+    public synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN && trialInFlight && trialOwner == Thread.currentThread()) {
+            onFailure();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,33 @@
+package com.Daad.ecommerce.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking token bucket for pacing outbound calls: refills at permitsPerSecond and
+ * lets up to burst calls through back-to-back after an idle period. Tracked as the
+ * time the next permit becomes free, so no refill thread is needed.
+ */
+public class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private long nextFreeNanos = System.nanoTime();
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (1_000_000_000L / permitsPerSecond) : 0L;
+        this.burstNanos = (Math.max(1, burst) - 1) * intervalNanos;
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now - burstNanos, nextFreeNanos);
+            nextFreeNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
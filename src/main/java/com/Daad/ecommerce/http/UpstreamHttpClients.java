@@ -0,0 +1,73 @@
+package com.Daad.ecommerce.http;
+
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One RestTemplate per outbound upstream (fincart, paymob, vendor-sync, ...).
+ * Each has its own keep-alive connection pool, connect/read timeouts and an
+ * UpstreamInterceptor for bulkheading, retries, circuit breaking and metrics.
+ */
+@Component
+public class UpstreamHttpClients {
+
+    public static final String FINCART = "fincart";
+    public static final String PAYMOB = "paymob";
+    public static final String VENDOR_SYNC = "vendor-sync";
+
+    private static class Client {
+        final RestTemplate restTemplate;
+        final UpstreamInterceptor interceptor;
+
+        Client(RestTemplate restTemplate, UpstreamInterceptor interceptor) {
+            this.restTemplate = restTemplate;
+            this.interceptor = interceptor;
+        }
+    }
+
+    private final Environment environment;
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    public UpstreamHttpClients(Environment environment) {
+        this.environment = environment;
+    }
+
+    public RestTemplate restTemplate(String upstream) {
+        return clients.computeIfAbsent(upstream, this::createClient).restTemplate;
+    }
+
+    public List<Map<String, Object>> snapshots() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Client client : clients.values()) {
+            result.add(client.interceptor.snapshot());
+        }
+        return result;
+    }
+
+    private Client createClient(String upstream) {
+        UpstreamSettings settings = UpstreamSettings.forUpstream(environment, upstream);
+
+        // The JDK client pools and reuses keep-alive connections per instance
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMillis()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(settings.getReadTimeoutMillis()));
+
+        UpstreamInterceptor interceptor = new UpstreamInterceptor(upstream, settings);
+        // Interceptors receive the body as a byte[], so a retried attempt can resend it
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getInterceptors().add(interceptor);
+        return new Client(restTemplate, interceptor);
+    }
+}
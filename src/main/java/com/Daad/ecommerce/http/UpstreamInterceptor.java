@@ -0,0 +1,171 @@
+package com.Daad.ecommerce.http;
+
+import com.Daad.ecommerce.metrics.LatencyHistogram;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guards every call to one upstream: a bulkhead caps concurrent calls so a slow upstream
+ * cannot hold every request thread, a circuit breaker fails fast while it is down, and
+ * failed attempts are retried with jittered exponential backoff. Non-idempotent requests
+ * are only retried when the connection was never established.
+ *
+ * Upstreams that front many independent hosts (circuit-per-host) get one breaker per host.
+ */
+public class UpstreamInterceptor implements ClientHttpRequestInterceptor {
+
+    private final String upstream;
+    private final UpstreamSettings settings;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final Map<String, CircuitBreaker> hostBreakers = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public UpstreamInterceptor(String upstream, UpstreamSettings settings) {
+        this.upstream = upstream;
+        this.settings = settings;
+        this.bulkhead = new Semaphore(settings.getMaxConcurrent());
+        this.circuitBreaker = new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenMillis());
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        acquireSlot();
+        try {
+            CircuitBreaker breaker = circuitBreakerFor(request);
+            if (!breaker.tryAcquire()) {
+                rejected.increment();
+                throw new UpstreamUnavailableException(upstream + " circuit is open for " + request.getURI().getHost());
+            }
+            try {
+                return executeWithRetries(request, body, execution, breaker);
+            } finally {
+                // A half-open trial that ended without a result must not keep the circuit shut forever
+                breaker.releaseTrial();
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private CircuitBreaker circuitBreakerFor(HttpRequest request) {
+        String host = request.getURI().getHost();
+        if (!settings.isCircuitPerHost() || host == null) {
+            return circuitBreaker;
+        }
+        return hostBreakers.computeIfAbsent(host.toLowerCase(),
+                h -> new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenMillis()));
+    }
+
+    private ClientHttpResponse executeWithRetries(HttpRequest request, byte[] body, ClientHttpRequestExecution execution,
+                                                  CircuitBreaker circuitBreaker) throws IOException {
+        boolean idempotent = isIdempotent(request.getMethod());
+        int attempt = 0;
+        while (true) {
+            long start = System.nanoTime();
+            ClientHttpResponse response;
+            try {
+                response = execution.execute(request, body);
+            } catch (IOException e) {
+                latencyMicros.record((System.nanoTime() - start) / 1000L);
+                errors.increment();
+                boolean notSent = e instanceof ConnectException || e instanceof HttpConnectTimeoutException;
+                if (attempt < settings.getMaxRetries() && (idempotent || notSent)) {
+                    backoff(attempt++);
+                    continue;
+                }
+                circuitBreaker.onFailure();
+                throw e;
+            }
+
+            latencyMicros.record((System.nanoTime() - start) / 1000L);
+            int status = response.getStatusCode().value();
+            if (status >= 500 || status == 429) {
+                errors.increment();
+                if (idempotent && attempt < settings.getMaxRetries()) {
+                    response.close();
+                    backoff(attempt++);
+                    continue;
+                }
+            }
+            if (status >= 500) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            return response;
+        }
+    }
+
+    private void acquireSlot() throws IOException {
+        try {
+            if (!bulkhead.tryAcquire(settings.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new UpstreamUnavailableException(upstream + " has too many calls in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + upstream);
+        }
+    }
+
+    // Full jitter: sleep a random time in [0, base * 2^attempt]
+    private void backoff(int attempt) throws IOException {
+        retries.increment();
+        long ceiling = settings.getRetryBackoffMillis() << Math.min(attempt, 10);
+        long sleepMillis = ceiling > 0 ? ThreadLocalRandom.current().nextLong(0, ceiling + 1) : 0L;
+        try {
+            Thread.sleep(sleepMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted retrying " + upstream);
+        }
+    }
+
+    private boolean isIdempotent(HttpMethod method) {
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method)
+                || HttpMethod.PUT.equals(method) || HttpMethod.DELETE.equals(method);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("upstream", upstream);
+        snapshot.put("latencyMicros", latencyMicros.snapshot());
+        snapshot.put("errors", errors.sum());
+        snapshot.put("retries", retries.sum());
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("inFlight", settings.getMaxConcurrent() - bulkhead.availablePermits());
+        if (settings.isCircuitPerHost()) {
+            Map<String, Object> notClosed = new LinkedHashMap<>();
+            hostBreakers.forEach((host, breaker) -> {
+                CircuitBreaker.State state = breaker.getState();
+                if (state != CircuitBreaker.State.CLOSED) {
+                    notClosed.put(host, state.name().toLowerCase());
+                }
+            });
+            snapshot.put("circuit", notClosed.isEmpty() ? "closed" : notClosed);
+        } else {
+            snapshot.put("circuit", circuitBreaker.getState().name().toLowerCase());
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,47 @@
+package com.Daad.ecommerce.http;
+
+import org.springframework.core.env.Environment;
+
+/**
+ * Per-upstream client limits, read from http.upstreams.&lt;name&gt;.* with shared defaults.
+ */
+public class UpstreamSettings {
+
+    private final long connectTimeoutMillis;
+    private final long readTimeoutMillis;
+    private final int maxConcurrent;
+    private final long acquireTimeoutMillis;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final boolean circuitPerHost;
+
+    private UpstreamSettings(Environment env, String prefix, boolean defaultCircuitPerHost) {
+        this.connectTimeoutMillis = env.getProperty(prefix + "connect-timeout-ms", Long.class, 3000L);
+        this.readTimeoutMillis = env.getProperty(prefix + "read-timeout-ms", Long.class, 15000L);
+        this.maxConcurrent = env.getProperty(prefix + "max-concurrent", Integer.class, 20);
+        this.acquireTimeoutMillis = env.getProperty(prefix + "acquire-timeout-ms", Long.class, 500L);
+        this.maxRetries = env.getProperty(prefix + "max-retries", Integer.class, 2);
+        this.retryBackoffMillis = env.getProperty(prefix + "retry-backoff-ms", Long.class, 200L);
+        this.failureThreshold = env.getProperty(prefix + "failure-threshold", Integer.class, 5);
+        this.openMillis = env.getProperty(prefix + "open-ms", Long.class, 30000L);
+        this.circuitPerHost = env.getProperty(prefix + "circuit-per-host", Boolean.class, defaultCircuitPerHost);
+    }
+
+    public static UpstreamSettings forUpstream(Environment env, String upstream) {
+        // vendor-sync fans out to every vendor's own website, so one dead site must not trip the rest
+        boolean defaultCircuitPerHost = UpstreamHttpClients.VENDOR_SYNC.equals(upstream);
+        return new UpstreamSettings(env, "http.upstreams." + upstream + ".", defaultCircuitPerHost);
+    }
+
+    public long getConnectTimeoutMillis() { return connectTimeoutMillis; }
+    public long getReadTimeoutMillis() { return readTimeoutMillis; }
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public long getAcquireTimeoutMillis() { return acquireTimeoutMillis; }
+    public int getMaxRetries() { return maxRetries; }
+    public long getRetryBackoffMillis() { return retryBackoffMillis; }
+    public int getFailureThreshold() { return failureThreshold; }
+    public long getOpenMillis() { return openMillis; }
+    public boolean isCircuitPerHost() { return circuitPerHost; }
+}
@@ -0,0 +1,14 @@
+package com.Daad.ecommerce.http;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Thrown without contacting the upstream when its circuit is open or all of its
+ * concurrent call slots are taken.
+ */
+public class UpstreamUnavailableException extends ResourceAccessException {
+
+    public UpstreamUnavailableException(String message) {
+        super(message);
+    }
+}
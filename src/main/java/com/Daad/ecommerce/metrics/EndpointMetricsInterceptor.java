@@ -0,0 +1,52 @@
+package com.Daad.ecommerce.metrics;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Records latency and JDBC statements per request, tagged with the matched
+ * controller mapping (e.g. "GET /api/products/{id}") rather than the raw URI.
+ */
+@Component
+public class EndpointMetricsInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = EndpointMetricsInterceptor.class.getName() + ".start";
+
+    private final RequestMetrics requestMetrics;
+
+    public EndpointMetricsInterceptor(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        QueryCounter.begin();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        QueryCounter.Tally tally = QueryCounter.end();
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (!(start instanceof Long)) return;
+
+        long micros = (System.nanoTime() - (Long) start) / 1000L;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = request.getMethod() + " " + (pattern != null ? pattern : "unmapped");
+        int status = ex != null ? 500 : response.getStatus();
+        requestMetrics.recordEndpoint(endpoint, micros,
+                tally != null ? tally.getStatements() : 0,
+                tally != null ? tally.getNanos() / 1000L : 0L,
+                status);
+    }
+
+    // The handler thread is released while async processing continues elsewhere
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryCounter.end();
+    }
+}
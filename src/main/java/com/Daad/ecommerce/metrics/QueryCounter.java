@@ -0,0 +1,38 @@
+package com.Daad.ecommerce.metrics;
+
+/**
+ * Per-thread tally of JDBC statements executed while a request is being handled.
+ * Only counts between begin() and end(), so scheduled jobs and startup queries are ignored.
+ */
+public final class QueryCounter {
+
+    public static final class Tally {
+        private int statements;
+        private long nanos;
+
+        public int getStatements() { return statements; }
+        public long getNanos() { return nanos; }
+    }
+
+    private static final ThreadLocal<Tally> CURRENT = new ThreadLocal<>();
+
+    private QueryCounter() {}
+
+    public static void begin() {
+        CURRENT.set(new Tally());
+    }
+
+    public static void record(long nanos) {
+        Tally tally = CURRENT.get();
+        if (tally != null) {
+            tally.statements++;
+            tally.nanos += nanos;
+        }
+    }
+
+    public static Tally end() {
+        Tally tally = CURRENT.get();
+        CURRENT.remove();
+        return tally;
+    }
+}
@@ -0,0 +1,155 @@
+package com.Daad.ecommerce.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process timing registry. Per-method stats are fed by RequestTimingAspect and keyed
+ * by the handler Method so the hot path does no string building; per-endpoint stats
+ * (latency plus JDBC statements per request) are fed by EndpointMetricsInterceptor.
+ */
+@Component
+@Slf4j
+public class RequestMetrics {
+
+    public enum Outcome { SUCCESS, CLIENT_ERROR, SERVER_ERROR, EXCEPTION }
+
+    public static class MethodStats {
+        private final String name;
+        private final LatencyHistogram durationMicros = new LatencyHistogram();
+        private final LatencyHistogram payloadBytes = new LatencyHistogram();
+        private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+        MethodStats(String name) {
+            this.name = name;
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+        }
+
+        void record(long micros, Outcome outcome, long bytes) {
+            durationMicros.record(micros);
+            outcomes[outcome.ordinal()].increment();
+            if (bytes >= 0) {
+                payloadBytes.record(bytes);
+            }
+        }
+
+        public String getName() { return name; }
+        public LatencyHistogram getDurationMicros() { return durationMicros; }
+        public LatencyHistogram getPayloadBytes() { return payloadBytes; }
+
+        public Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("method", name);
+            snapshot.put("durationMicros", durationMicros.snapshot());
+            snapshot.put("payloadBytes", payloadBytes.snapshot());
+            Map<String, Long> outcomeCounts = new LinkedHashMap<>();
+            for (Outcome outcome : Outcome.values()) {
+                outcomeCounts.put(outcome.name().toLowerCase(), outcomes[outcome.ordinal()].sum());
+            }
+            snapshot.put("outcomes", outcomeCounts);
+            return snapshot;
+        }
+    }
+
+    public static class EndpointStats {
+        private final String endpoint;
+        private final LatencyHistogram durationMicros = new LatencyHistogram();
+        private final LatencyHistogram queries = new LatencyHistogram();
+        private final LatencyHistogram queryMicros = new LatencyHistogram();
+        private final LongAdder serverErrors = new LongAdder();
+
+        EndpointStats(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        void record(long micros, int statements, long statementMicros, int status) {
+            durationMicros.record(micros);
+            queries.record(statements);
+            queryMicros.record(statementMicros);
+            if (status >= 500) {
+                serverErrors.increment();
+            }
+        }
+
+        public String getEndpoint() { return endpoint; }
+        public LatencyHistogram getDurationMicros() { return durationMicros; }
+        public LatencyHistogram getQueries() { return queries; }
+
+        public Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("endpoint", endpoint);
+            snapshot.put("durationMicros", durationMicros.snapshot());
+            snapshot.put("queriesPerRequest", queries.snapshot());
+            snapshot.put("queryMicrosPerRequest", queryMicros.snapshot());
+            snapshot.put("serverErrors", serverErrors.sum());
+            return snapshot;
+        }
+    }
+
+    private final Map<Method, MethodStats> methods = new ConcurrentHashMap<>();
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    public void recordMethod(Method method, long micros, Outcome outcome, long payloadBytes) {
+        MethodStats stats = methods.get(method);
+        if (stats == null) {
+            stats = methods.computeIfAbsent(method,
+                    m -> new MethodStats(m.getDeclaringClass().getSimpleName() + "." + m.getName()));
+        }
+        stats.record(micros, outcome, payloadBytes);
+    }
+
+    public void recordEndpoint(String endpoint, long micros, int statements, long statementMicros, int status) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(endpoint, EndpointStats::new);
+        }
+        stats.record(micros, statements, statementMicros, status);
+    }
+
+    // Slowest endpoints (by p95) first
+    public List<Map<String, Object>> endpointSnapshots() {
+        List<EndpointStats> sorted = new ArrayList<>(endpoints.values());
+        Map<EndpointStats, Long> p95 = new HashMap<>();
+        for (EndpointStats stats : sorted) {
+            p95.put(stats, stats.getDurationMicros().percentile(95));
+        }
+        sorted.sort((a, b) -> Long.compare(p95.get(b), p95.get(a)));
+        List<Map<String, Object>> result = new ArrayList<>(sorted.size());
+        for (EndpointStats stats : sorted) {
+            result.add(stats.snapshot());
+        }
+        return result;
+    }
+
+    public List<Map<String, Object>> methodSnapshots() {
+        List<MethodStats> sorted = new ArrayList<>(methods.values());
+        sorted.sort(Comparator.comparing(MethodStats::getName));
+        List<Map<String, Object>> result = new ArrayList<>(sorted.size());
+        for (MethodStats stats : sorted) {
+            result.add(stats.snapshot());
+        }
+        return result;
+    }
+
+    // One summary line per busy method instead of two log lines per call
+    @Scheduled(fixedDelayString = "${request-logging.summary-interval-ms:300000}")
+    public void logSummary() {
+        if (!log.isInfoEnabled() || methods.isEmpty()) return;
+        List<MethodStats> busiest = new ArrayList<>(methods.values());
+        busiest.sort((a, b) -> Long.compare(b.getDurationMicros().getCount(), a.getDurationMicros().getCount()));
+        int limit = Math.min(10, busiest.size());
+        for (int i = 0; i < limit; i++) {
+            LatencyHistogram h = busiest.get(i).getDurationMicros();
+            log.info("Request timing {}: count={} p50={}us p95={}us p99={}us max={}us",
+                    busiest.get(i).getName(), h.getCount(), h.percentile(50), h.percentile(95), h.percentile(99), h.getMax());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.Daad.ecommerce.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class CatalogSyncJobRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CatalogSyncJobRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Creates a queued job unless the vendor already has one queued or running; returns the new
+     * job id, or null when one is in progress. The partial unique index from V17 makes this atomic:
+     * of two concurrent requests only one insert succeeds. A job whose heartbeat stopped for
+     * staleMinutes (the instance holding it restarted) is failed first so it no longer blocks.
+     */
+    public String createUnlessActive(String vendorId, int staleMinutes) {
+        String expire = "UPDATE catalog_sync_jobs SET status = 'failed', error = 'Abandoned: no heartbeat', " +
+                    "finished_at = NOW(), updated_at = NOW() " +
+                    "WHERE vendor_id = ?::uuid AND status IN ('queued', 'running') AND updated_at <= NOW() - make_interval(mins => ?)";
+        jdbcTemplate.update(expire, vendorId, staleMinutes);
+
+        String sql = "INSERT INTO catalog_sync_jobs (vendor_id) VALUES (?::uuid) " +
+                    "ON CONFLICT (vendor_id) WHERE status IN ('queued', 'running') DO NOTHING RETURNING id::text";
+        List<String> ids = jdbcTemplate.queryForList(sql, String.class, vendorId);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    // Keeps jobs this instance holds (queued in its executor or running) from being taken for abandoned
+    public void heartbeat(Collection<String> jobIds) {
+        if (jobIds.isEmpty()) return;
+        String sql = "UPDATE catalog_sync_jobs SET updated_at = NOW() WHERE id = ANY(?::uuid[]) AND status IN ('queued', 'running')";
+        jdbcTemplate.update(sql, (Object) jobIds.toArray(new String[0]));
+    }
+
+    public Map<String, Object> findActiveByVendor(String vendorId) {
+        String sql = "SELECT * FROM catalog_sync_jobs WHERE vendor_id = ?::uuid AND status IN ('queued', 'running') " +
+                    "ORDER BY created_at DESC LIMIT 1";
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, vendorId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    public Map<String, Object> findByIdAndVendor(String jobId, String vendorId) {
+        String sql = "SELECT * FROM catalog_sync_jobs WHERE id = ?::uuid AND vendor_id = ?::uuid";
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, jobId, vendorId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // False when the job was given up as abandoned while it waited; it must not run then
+    public boolean markRunning(String jobId) {
+        String sql = "UPDATE catalog_sync_jobs SET status = 'running', started_at = NOW(), updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status = 'queued'";
+        return jdbcTemplate.update(sql, jobId) > 0;
+    }
+
+    // Adds one chunk's counts; also serves as the job's heartbeat
+    public void addProgress(String jobId, int seen, int inserted, int updated, int skipped, int inventoryRows, int imagesSaved) {
+        String sql = "UPDATE catalog_sync_jobs SET products_seen = products_seen + ?, products_inserted = products_inserted + ?, " +
+                    "products_updated = products_updated + ?, products_skipped = products_skipped + ?, " +
+                    "inventory_rows = inventory_rows + ?, images_saved = images_saved + ?, updated_at = NOW() WHERE id = ?::uuid";
+        jdbcTemplate.update(sql, seen, inserted, updated, skipped, inventoryRows, imagesSaved, jobId);
+    }
+
+    public void markFinished(String jobId, String status, String error) {
+        String sql = "UPDATE catalog_sync_jobs SET status = ?, error = ?, finished_at = NOW(), updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status IN ('queued', 'running')";
+        jdbcTemplate.update(sql, status, error, jobId);
+    }
+}
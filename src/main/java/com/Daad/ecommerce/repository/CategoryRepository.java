@@ -2,22 +2,66 @@ package com.Daad.ecommerce.repository;
 
 import com.Daad.ecommerce.dto.Product.Category;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Categories are read from an immutable in-memory snapshot of the active hierarchy, indexed by
+ * id, slug, name and parent, so resolving a category never queries the database. save() and
+ * deleteById() rebuild the snapshot and swap it in; it is also reloaded after a TTL to pick up
+ * changes made by other instances; while one caller refreshes an expired snapshot the others keep
+ * reading the old one. Callers always receive copies, never the snapshot's objects.
+ */
 @Repository
 public class CategoryRepository {
     
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Value("${categories.snapshot.ttl-seconds:300}")
+    private long snapshotTtlSeconds;
+
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private static final class Snapshot {
+        final long loadedAtMillis;
+        final List<Category> all;                           // by name, like the old ORDER BY name
+        final Map<String, Category> byId = new HashMap<>();
+        final Map<String, List<Category>> bySlug = new HashMap<>();
+        final Map<String, List<Category>> byName = new HashMap<>(); // lower-cased (ILIKE equality)
+        final Map<String, List<Category>> childrenByParent = new HashMap<>(); // "" = top level
+
+        Snapshot(List<Category> categories, long loadedAtMillis) {
+            this.loadedAtMillis = loadedAtMillis;
+            this.all = Collections.unmodifiableList(categories);
+            for (Category c : categories) {
+                byId.put(c.getId(), c);
+                if (c.getSlug() != null) bySlug.computeIfAbsent(c.getSlug(), k -> new ArrayList<>()).add(c);
+                if (c.getName() != null) byName.computeIfAbsent(lower(c.getName()), k -> new ArrayList<>()).add(c);
+                childrenByParent.computeIfAbsent(parentKey(c.getParentCategoryId()), k -> new ArrayList<>()).add(c);
+            }
+        }
+
+        Category parentOf(Category c) {
+            return c.getParentCategoryId() != null ? byId.get(c.getParentCategoryId()) : null;
+        }
+    }
+
     private final RowMapper<Category> categoryRowMapper = new RowMapper<Category>() {
         @Override
         public Category mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -38,41 +82,30 @@ public class CategoryRepository {
     };
     
     public List<Category> findAll() {
-        String sql = "SELECT * FROM categories WHERE is_active = true ORDER BY name ASC";
-        return jdbcTemplate.query(sql, categoryRowMapper);
+        return copies(snapshot().all);
     }
     
     public Optional<Category> findById(String id) {
-        String sql = "SELECT * FROM categories WHERE id = ? AND is_active = true LIMIT 1";
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, UUID.fromString(id));
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        return copyOf(snapshot().byId.get(UUID.fromString(id).toString()));
     }
     
     public Optional<Category> findByName(String name) {
-        String sql = "SELECT * FROM categories WHERE name ILIKE ? AND is_active = true LIMIT 1";
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, name);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        return copyOf(first(snapshot().byName.get(lower(name))));
     }
     
     public Optional<Category> findBySlug(String slug) {
-        String sql = "SELECT * FROM categories WHERE slug = ? AND is_active = true LIMIT 1";
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, slug);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        return copyOf(first(snapshot().bySlug.get(slug)));
     }
 
     // Find parent category by slug
     public Optional<Category> findParentCategoryBySlug(String slug) {
-        String sql = "SELECT * FROM categories WHERE slug = ? AND parent_category_id IS NULL AND is_active = true LIMIT 1";
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, slug);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        return copyOf(firstTopLevel(snapshot().bySlug.get(slug)));
     }
     
     public Category save(Category category) {
-        if (category.getId() == null) {
-            return insert(category);
-        } else {
-            return update(category);
-        }
+        Category saved = category.getId() == null ? insert(category) : update(category);
+        reload();
+        return saved;
     }
     
     private Category insert(Category category) {
@@ -133,39 +166,32 @@ public class CategoryRepository {
         // Hard delete row
         String sql = "DELETE FROM categories WHERE id = ?";
         jdbcTemplate.update(sql, UUID.fromString(id));
+        reload();
     }
 
     public List<Category> findByParentCategoryId(String parentCategoryId) {
-        String sql = "SELECT * FROM categories WHERE parent_category_id = ? AND is_active = true ORDER BY name ASC";
-        return jdbcTemplate.query(sql, categoryRowMapper, UUID.fromString(parentCategoryId));
+        return copies(snapshot().childrenByParent.getOrDefault(UUID.fromString(parentCategoryId).toString(), List.of()));
     }
 
     public List<Category> findTopLevelCategories() {
-        String sql = "SELECT * FROM categories WHERE parent_category_id IS NULL AND is_active = true ORDER BY name ASC";
-        return jdbcTemplate.query(sql, categoryRowMapper);
+        return copies(snapshot().childrenByParent.getOrDefault(parentKey(null), List.of()));
     }
 
     public List<Category> findByLevel(Integer level) {
-        String sql = "SELECT * FROM categories WHERE level = ? AND is_active = true ORDER BY name ASC";
-        return jdbcTemplate.query(sql, categoryRowMapper, level);
+        List<Category> matches = new ArrayList<>();
+        for (Category c : snapshot().all) {
+            if (level != null && level.equals(c.getLevel())) matches.add(c);
+        }
+        return copies(matches);
     }
 
     public boolean existsBySlug(String slug) {
-        String sql = "SELECT COUNT(*) FROM categories WHERE slug = ? AND is_active = true";
-        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, slug);
-        return count != null && count > 0;
+        return snapshot().bySlug.containsKey(slug);
     }
 
     public boolean existsByNameUnderParent(String name, String parentCategoryId) {
-        if (parentCategoryId == null) {
-            String sql = "SELECT COUNT(*) FROM categories WHERE name ILIKE ? AND parent_category_id IS NULL AND is_active = true";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, name);
-            return count != null && count > 0;
-        } else {
-            String sql = "SELECT COUNT(*) FROM categories WHERE name ILIKE ? AND parent_category_id = ?::uuid AND is_active = true";
-            Integer count = jdbcTemplate.queryForObject(sql, Integer.class, name, UUID.fromString(parentCategoryId));
-            return count != null && count > 0;
-        }
+        String parentKey = parentKey(parentCategoryId != null ? UUID.fromString(parentCategoryId).toString() : null);
+        return childByName(snapshot(), parentKey, name) != null;
     }
 
     public int countProductsInCategory(String categoryId) {
@@ -178,6 +204,27 @@ public class CategoryRepository {
         }
     }
 
+    // Delete guards: any child or product row, active or not, since the FKs would silently SET NULL
+    public boolean hasSubcategories(String categoryId) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM categories WHERE parent_category_id = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, UUID.fromString(categoryId)));
+    }
+
+    public boolean hasProducts(String categoryId) {
+        String sql = "SELECT EXISTS (SELECT 1 FROM products WHERE category_id = ?)";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class, UUID.fromString(categoryId)));
+    }
+
+    // Active product count per category id, in one grouped query
+    public Map<String, Long> countActiveProductsByCategory() {
+        String sql = "SELECT category_id, COUNT(*) AS product_count FROM products WHERE is_active = true AND category_id IS NOT NULL GROUP BY category_id";
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            counts.put(rs.getString("category_id"), rs.getLong("product_count"));
+        });
+        return counts;
+    }
+
     public List<Category> searchCategories(String searchTerm) {
         String sql = "SELECT * FROM categories WHERE (name ILIKE ? OR description ILIKE ?) AND is_active = true ORDER BY name ASC";
         String searchPattern = "%" + searchTerm + "%";
@@ -186,26 +233,26 @@ public class CategoryRepository {
     
     // Find subcategory by parent category name and subcategory name
     public Optional<Category> findSubcategoryByParentAndName(String parentCategoryName, String subcategoryName) {
-        String sql = """
-            SELECT c.* FROM categories c
-            INNER JOIN categories p ON c.parent_category_id = p.id
-            WHERE p.name ILIKE ? AND c.name ILIKE ? AND c.is_active = true AND p.is_active = true
-            LIMIT 1
-            """;
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, parentCategoryName, subcategoryName);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        Snapshot snap = snapshot();
+        for (Category c : snap.byName.getOrDefault(lower(subcategoryName), List.of())) {
+            Category parent = snap.parentOf(c);
+            if (parent != null && parent.getName() != null && lower(parent.getName()).equals(lower(parentCategoryName))) {
+                return copyOf(c);
+            }
+        }
+        return Optional.empty();
     }
     
     // Find subcategory by parent slug and child slug
     public Optional<Category> findSubcategoryByParentSlugAndChildSlug(String parentSlug, String childSlug) {
-        String sql = """
-            SELECT c.* FROM categories c
-            INNER JOIN categories p ON c.parent_category_id = p.id
-            WHERE p.slug = ? AND c.slug = ? AND c.is_active = true AND p.is_active = true
-            LIMIT 1
-            """;
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, parentSlug, childSlug);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        Snapshot snap = snapshot();
+        for (Category c : snap.bySlug.getOrDefault(childSlug, List.of())) {
+            Category parent = snap.parentOf(c);
+            if (parent != null && parentSlug != null && parentSlug.equals(parent.getSlug())) {
+                return copyOf(c);
+            }
+        }
+        return Optional.empty();
     }
 
     // Find subcategory by parent (slug or name) and child (slug or name) generically
@@ -218,20 +265,18 @@ public class CategoryRepository {
         if (bySlugSlug.isPresent()) return bySlugSlug;
 
         // Resolve parent by slug then name
-        Optional<Category> parentCat = findParentCategoryBySlug(parent);
-        if (parentCat.isEmpty()) {
-            parentCat = findParentCategoryByName(parent);
+        Snapshot snap = snapshot();
+        Category parentCat = firstTopLevel(snap.bySlug.get(parent));
+        if (parentCat == null) {
+            parentCat = firstTopLevel(snap.byName.get(lower(parent)));
         }
-        if (parentCat.isPresent()) {
-            String parentId = parentCat.get().getId();
-            // Try child by slug under parent id
-            String byChildSlugSql = "SELECT * FROM categories WHERE parent_category_id = ?::uuid AND slug = ? AND is_active = true LIMIT 1";
-            List<Category> c1 = jdbcTemplate.query(byChildSlugSql, categoryRowMapper, java.util.UUID.fromString(parentId), child);
-            if (!c1.isEmpty()) return Optional.of(c1.get(0));
-            // Try child by name under parent id
-            String byChildNameSql = "SELECT * FROM categories WHERE parent_category_id = ?::uuid AND name ILIKE ? AND is_active = true LIMIT 1";
-            List<Category> c2 = jdbcTemplate.query(byChildNameSql, categoryRowMapper, java.util.UUID.fromString(parentId), child);
-            if (!c2.isEmpty()) return Optional.of(c2.get(0));
+        if (parentCat != null) {
+            // Try child by slug, then by name, under parent id
+            for (Category c : snap.childrenByParent.getOrDefault(parentCat.getId(), List.of())) {
+                if (child.equals(c.getSlug())) return copyOf(c);
+            }
+            Category byName = childByName(snap, parentCat.getId(), child);
+            if (byName != null) return copyOf(byName);
         }
 
         // Try combined slug "parent-child" on child record directly (for legacy combined slugs)
@@ -247,8 +292,93 @@ public class CategoryRepository {
     
     // Find parent category by name
     public Optional<Category> findParentCategoryByName(String parentCategoryName) {
-        String sql = "SELECT * FROM categories WHERE name ILIKE ? AND parent_category_id IS NULL AND is_active = true LIMIT 1";
-        List<Category> categories = jdbcTemplate.query(sql, categoryRowMapper, parentCategoryName);
-        return categories.isEmpty() ? Optional.empty() : Optional.of(categories.get(0));
+        return copyOf(firstTopLevel(snapshot().byName.get(lower(parentCategoryName))));
+    }
+
+    // An expired snapshot is refreshed by one caller; the others keep serving it meanwhile
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return reloadIfStale();
+        }
+        if (isStale(current) && refreshing.compareAndSet(false, true)) {
+            try {
+                current = reloadIfStale();
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return current;
+    }
+
+    private boolean isStale(Snapshot snap) {
+        return System.currentTimeMillis() - snap.loadedAtMillis > snapshotTtlSeconds * 1000L;
+    }
+
+    // Freshness is checked again under the lock: callers queued behind a reload reuse its result
+    private synchronized Snapshot reloadIfStale() {
+        Snapshot current = snapshot;
+        if (current != null && !isStale(current)) {
+            return current;
+        }
+        return reload();
+    }
+
+    // Serialised so a reload that read before a write can never be installed after that write's own reload
+    private synchronized Snapshot reload() {
+        String sql = "SELECT * FROM categories WHERE is_active = true ORDER BY name ASC";
+        Snapshot fresh = new Snapshot(jdbcTemplate.query(sql, categoryRowMapper), System.currentTimeMillis());
+        snapshot = fresh;
+        return fresh;
+    }
+
+    private static Category childByName(Snapshot snap, String parentKey, String name) {
+        if (name == null) return null;
+        for (Category c : snap.childrenByParent.getOrDefault(parentKey, List.of())) {
+            if (c.getName() != null && lower(c.getName()).equals(lower(name))) return c;
+        }
+        return null;
+    }
+
+    private static Category first(List<Category> categories) {
+        return categories == null || categories.isEmpty() ? null : categories.get(0);
+    }
+
+    private static Category firstTopLevel(List<Category> categories) {
+        if (categories == null) return null;
+        for (Category c : categories) {
+            if (c.getParentCategoryId() == null) return c;
+        }
+        return null;
+    }
+
+    private static String parentKey(String parentCategoryId) {
+        return parentCategoryId != null ? parentCategoryId : "";
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static Optional<Category> copyOf(Category c) {
+        return c == null ? Optional.empty() : Optional.of(copy(c));
+    }
+
+    private static List<Category> copies(List<Category> categories) {
+        List<Category> out = new ArrayList<>(categories.size());
+        for (Category c : categories) out.add(copy(c));
+        return out;
+    }
+
+    private static Category copy(Category c) {
+        Category copy = new Category(c.getId(), c.getName(), c.getSlug(), c.getDescription());
+        copy.setNameAr(c.getNameAr());
+        copy.setDescriptionAr(c.getDescriptionAr());
+        copy.setImageUrl(c.getImageUrl());
+        copy.setImagePublicId(c.getImagePublicId());
+        copy.setParentCategoryId(c.getParentCategoryId());
+        copy.setLevel(c.getLevel());
+        copy.setIsActive(c.getIsActive());
+        return copy;
     }
 }
@@ -6,6 +6,7 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -47,6 +48,31 @@ public class DeliveryRepository {
         return results.isEmpty() ? null : results.get(0);
     }
 
+    // All pickup locations keyed by Fincart id, active or not, for sync diffing
+    public Map<String, Map<String, Object>> getPickupLocationsByFincartId() {
+        String sql = "SELECT * FROM pickup_locations";
+        Map<String, Map<String, Object>> byFincartId = new java.util.HashMap<>();
+        for (Map<String, Object> row : jdbcTemplate.query(sql, this::mapPickupLocationRow)) {
+            byFincartId.put((String) row.get("fincart_location_id"), row);
+        }
+        return byFincartId;
+    }
+
+    /**
+     * Batched upsert keyed on fincart_location_id. Each row is
+     * {vendorId, fincartLocationId, name, city, area, address, contactPerson, contactPhone};
+     * an existing location keeps its vendor and is re-activated.
+     */
+    public void upsertPickupLocations(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO pickup_locations (vendor_id, fincart_location_id, name, city, area, address, contact_person, contact_phone) " +
+                    "VALUES (?::uuid, ?, ?, ?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (fincart_location_id) DO UPDATE SET name = EXCLUDED.name, city = EXCLUDED.city, " +
+                    "area = EXCLUDED.area, address = EXCLUDED.address, contact_person = EXCLUDED.contact_person, " +
+                    "contact_phone = EXCLUDED.contact_phone, is_active = TRUE, updated_at = NOW()";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
     // Delivery Areas
     public void insertDeliveryArea(String city, String area, boolean isAvailable) {
         String sql = "INSERT INTO delivery_areas (city, area, is_available) VALUES (?, ?, ?) " +
@@ -54,6 +80,27 @@ public class DeliveryRepository {
         jdbcTemplate.update(sql, city, area, isAvailable);
     }
 
+    // Batched upsert of {city, area, isAvailable} rows
+    public void upsertDeliveryAreas(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO delivery_areas (city, area, is_available) VALUES (?, ?, ?) " +
+                    "ON CONFLICT (city, area) DO UPDATE SET is_available = EXCLUDED.is_available, updated_at = NOW()";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    // Batched disable of {city, area} rows that are no longer offered
+    public void disableDeliveryAreas(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "UPDATE delivery_areas SET is_available = FALSE, updated_at = NOW() " +
+                    "WHERE city = ? AND area = ? AND is_available = TRUE";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    public List<Map<String, Object>> getAllDeliveryAreas() {
+        String sql = "SELECT * FROM delivery_areas";
+        return jdbcTemplate.query(sql, this::mapDeliveryAreaRow);
+    }
+
     public List<Map<String, Object>> getAvailableDeliveryAreas() {
         String sql = "SELECT * FROM delivery_areas WHERE is_available = TRUE ORDER BY city, area";
         return jdbcTemplate.query(sql, this::mapDeliveryAreaRow);
@@ -65,15 +112,24 @@ public class DeliveryRepository {
     }
 
     // Deliveries
-    public void insertDelivery(String orderId, String vendorId, String fincartOrderId, String fincartOrderCode,
+    // Returns the new delivery id, or null when this order already has a delivery for the vendor
+    public String insertDelivery(String orderId, String vendorId, String fincartOrderId, String fincartOrderCode,
                              String paymentType, int amountCents, String serviceType, String packageType,
                              int noOfItems, String description, String referenceNumber, String pickupLocationId) {
         String sql = "INSERT INTO deliveries (order_id, vendor_id, fincart_order_id, fincart_order_code, " +
                     "payment_type, amount_cents, service_type, package_type, no_of_items, description, " +
                     "reference_number, pickup_location_id) " +
-                    "VALUES (?::uuid, ?::uuid, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::uuid)";
-        jdbcTemplate.update(sql, orderId, vendorId, fincartOrderId, fincartOrderCode, paymentType, 
+                    "VALUES (?::uuid, ?::uuid, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::uuid) " +
+                    "ON CONFLICT (order_id, vendor_id) DO NOTHING RETURNING id";
+        List<String> ids = jdbcTemplate.queryForList(sql, String.class, orderId, vendorId, fincartOrderId, fincartOrderCode, paymentType,
                           amountCents, serviceType, packageType, noOfItems, description, referenceNumber, pickupLocationId);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    public Map<String, Object> getDeliveryByOrderAndVendor(String orderId, String vendorId) {
+        String sql = "SELECT * FROM deliveries WHERE order_id = ?::uuid AND vendor_id = ?::uuid LIMIT 1";
+        List<Map<String, Object>> results = jdbcTemplate.query(sql, new Object[]{orderId, vendorId}, this::mapDeliveryRow);
+        return results.isEmpty() ? null : results.get(0);
     }
 
     public void updateDeliveryStatus(String fincartOrderId, String status, String subStatus, 
@@ -89,6 +145,39 @@ public class DeliveryRepository {
                           returnTrackingNumber, courier, courierLogo, invoiced, invoicedAt, invoicedAt, fincartOrderId);
     }
 
+    /**
+     * Webhook form of updateDeliveryStatus: the update and its delivery_logs row are one statement,
+     * and the log row is only written when status or sub-status actually changed, so a replayed
+     * event is a no-op. Returns the order id when a change was logged, otherwise null.
+     */
+    public String applyWebhookStatus(String fincartOrderId, String status, String subStatus,
+                                     String rejectionReason, String supportNote, String trackingNumber,
+                                     String returnTrackingNumber, String courier, String courierLogo,
+                                     Boolean invoiced, Long invoicedAt) {
+        String sql = "WITH previous AS (" +
+                    "  SELECT id, status, sub_status FROM deliveries WHERE fincart_order_id = ? FOR UPDATE" +
+                    "), updated AS (" +
+                    "  UPDATE deliveries d SET status = ?, sub_status = ?, rejection_reason = ?, " +
+                    "  support_note = ?, tracking_number = ?, return_tracking_number = ?, courier = ?, " +
+                    "  courier_logo = ?, invoiced = ?, invoiced_at = CASE WHEN ? IS NOT NULL THEN " +
+                    "  to_timestamp(?/1000) ELSE d.invoiced_at END, updated_at = NOW() " +
+                    "  FROM previous p WHERE d.id = p.id " +
+                    "  RETURNING d.id, d.order_id, (p.status IS DISTINCT FROM d.status OR p.sub_status IS DISTINCT FROM d.sub_status) AS changed" +
+                    "), logged AS (" +
+                    "  INSERT INTO delivery_logs (delivery_id, status, sub_status, rejection_reason, support_note, " +
+                    "  tracking_number, return_tracking_number, courier, courier_logo, invoiced, invoiced_at, notes) " +
+                    "  SELECT id, ?, ?, ?, ?, ?, ?, ?, ?, ?, CASE WHEN ? IS NOT NULL THEN to_timestamp(?/1000) ELSE NULL END, " +
+                    "  'Status updated via webhook' FROM updated WHERE changed" +
+                    ") " +
+                    "SELECT order_id::text FROM updated WHERE changed";
+        List<String> orderIds = jdbcTemplate.queryForList(sql, String.class, fincartOrderId,
+                status, subStatus, rejectionReason, supportNote, trackingNumber, returnTrackingNumber,
+                courier, courierLogo, invoiced, invoicedAt, invoicedAt,
+                status, subStatus, rejectionReason, supportNote, trackingNumber, returnTrackingNumber,
+                courier, courierLogo, invoiced, invoicedAt, invoicedAt);
+        return orderIds.isEmpty() ? null : orderIds.get(0);
+    }
+
     public Map<String, Object> getDeliveryByFincartOrderId(String fincartOrderId) {
         String sql = "SELECT * FROM deliveries WHERE fincart_order_id = ? LIMIT 1";
         List<Map<String, Object>> results = jdbcTemplate.query(sql, new Object[]{fincartOrderId}, this::mapDeliveryRow);
@@ -121,6 +210,111 @@ public class DeliveryRepository {
         return jdbcTemplate.query(sql, new Object[]{status}, this::mapDeliveryRow);
     }
 
+    // Keyset page of deliveries that can still change status, lightest columns only
+    public List<Map<String, Object>> getNonTerminalDeliveriesPage(List<String> terminalStatuses, String afterId, int limit) {
+        String sql = "SELECT id, order_id, fincart_order_id, status, sub_status FROM deliveries " +
+                    "WHERE status <> ALL(?) AND fincart_order_id IS NOT NULL " +
+                    (afterId != null ? "AND id > ?::uuid " : "") +
+                    "ORDER BY id LIMIT ?";
+        List<Object> args = new ArrayList<>();
+        args.add(terminalStatuses.toArray(new String[0]));
+        if (afterId != null) args.add(afterId);
+        args.add(limit);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> row = new java.util.HashMap<>();
+            row.put("id", rs.getString("id"));
+            row.put("order_id", rs.getString("order_id"));
+            row.put("fincart_order_id", rs.getString("fincart_order_id"));
+            row.put("status", rs.getString("status"));
+            row.put("sub_status", rs.getString("sub_status"));
+            return row;
+        }, args.toArray());
+    }
+
+    /**
+     * Batched form of updateDeliveryStatus for the status poller. Each update is
+     * {fincartOrderId, status, subStatus, rejectionReason, supportNote, trackingNumber, courier};
+     * fields the poll did not return (null) keep their stored value. A row whose status and
+     * sub-status already match (e.g. a webhook got there first) is left alone. A delivery_logs row
+     * is written for each change, and the updates that changed a row are returned so the caller
+     * can notify for exactly those.
+     */
+    public List<Object[]> updateDeliveryStatuses(List<Object[]> updates) {
+        List<Object[]> changed = new ArrayList<>();
+        if (updates.isEmpty()) return changed;
+        String updateSql = "UPDATE deliveries SET status = ?, sub_status = ?, " +
+                    "rejection_reason = COALESCE(?, rejection_reason), support_note = COALESCE(?, support_note), " +
+                    "tracking_number = COALESCE(?, tracking_number), courier = COALESCE(?, courier), " +
+                    "updated_at = NOW() WHERE fincart_order_id = ? " +
+                    "AND (status IS DISTINCT FROM ? OR sub_status IS DISTINCT FROM ?)";
+        List<Object[]> updateArgs = new ArrayList<>(updates.size());
+        for (Object[] u : updates) {
+            updateArgs.add(new Object[]{u[1], u[2], u[3], u[4], u[5], u[6], u[0], u[1], u[2]});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(updateSql, updateArgs);
+
+        List<Object[]> logArgs = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                Object[] u = updates.get(i);
+                changed.add(u);
+                logArgs.add(new Object[]{u[1], u[2], u[3], u[4], u[5], u[6], u[0]});
+            }
+        }
+        if (logArgs.isEmpty()) return changed;
+        String logSql = "INSERT INTO delivery_logs (delivery_id, status, sub_status, rejection_reason, " +
+                    "support_note, tracking_number, courier, notes) " +
+                    "SELECT id, ?, ?, ?, ?, ?, ?, 'Status updated via sync' FROM deliveries WHERE fincart_order_id = ?";
+        jdbcTemplate.batchUpdate(logSql, logArgs);
+        return changed;
+    }
+
+    // Delivery creation retries (V21): one row per (order, vendor) until its delivery exists
+
+    // Each row: {orderId, vendorId, requestJson, delaySeconds}; an existing row for the pair is kept
+    public void enqueueDeliveryRetries(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO delivery_create_retries (order_id, vendor_id, request, next_attempt_at) " +
+                    "VALUES (?::uuid, ?::uuid, ?::jsonb, NOW() + ? * INTERVAL '1 second') " +
+                    "ON CONFLICT (order_id, vendor_id) DO NOTHING";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    /**
+     * Claims due retries by pushing next_attempt_at out by the lease, so a worker that dies
+     * mid-attempt is picked up again once the lease expires. Rows locked elsewhere are skipped.
+     */
+    public List<Map<String, Object>> claimDueDeliveryRetries(int limit, long leaseSeconds) {
+        String sql = "UPDATE delivery_create_retries SET next_attempt_at = NOW() + ? * INTERVAL '1 second', updated_at = NOW() " +
+                    "WHERE (order_id, vendor_id) IN (" +
+                    "  SELECT order_id, vendor_id FROM delivery_create_retries WHERE status = 'pending' AND next_attempt_at <= NOW() " +
+                    "  ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED" +
+                    ") RETURNING order_id, vendor_id, request::text AS request, attempts";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> row = new java.util.HashMap<>();
+            row.put("order_id", rs.getString("order_id"));
+            row.put("vendor_id", rs.getString("vendor_id"));
+            row.put("request", rs.getString("request"));
+            row.put("attempts", rs.getInt("attempts"));
+            return row;
+        }, leaseSeconds, limit);
+    }
+
+    public void deleteDeliveryRetry(String orderId, String vendorId) {
+        String sql = "DELETE FROM delivery_create_retries WHERE order_id = ?::uuid AND vendor_id = ?::uuid";
+        jdbcTemplate.update(sql, orderId, vendorId);
+    }
+
+    // Records a failed attempt; gaveUp leaves the row as 'failed' for manual follow-up
+    public void recordDeliveryRetryFailure(String orderId, String vendorId, int attempts, String error,
+                                           long delaySeconds, boolean gaveUp) {
+        String sql = "UPDATE delivery_create_retries SET attempts = ?, last_error = ?, " +
+                    "status = CASE WHEN ? THEN 'failed' ELSE 'pending' END, " +
+                    "next_attempt_at = NOW() + ? * INTERVAL '1 second', updated_at = NOW() " +
+                    "WHERE order_id = ?::uuid AND vendor_id = ?::uuid";
+        jdbcTemplate.update(sql, attempts, error, gaveUp, delaySeconds, orderId, vendorId);
+    }
+
     // Delivery Logs
     public void insertDeliveryLog(String deliveryId, String status, String subStatus, String rejectionReason,
                                 String supportNote, String trackingNumber, String returnTrackingNumber,
@@ -139,23 +333,6 @@ public class DeliveryRepository {
         return jdbcTemplate.query(sql, new Object[]{deliveryId}, this::mapDeliveryLogRow);
     }
 
-    // Webhook Logs
-    public void insertWebhookLog(String fincartOrderId, String eventType, String payload) {
-        String sql = "INSERT INTO delivery_webhook_logs (fincart_order_id, event_type, payload) VALUES (?, ?, to_json(?::text))";
-        jdbcTemplate.update(sql, fincartOrderId, eventType, payload);
-    }
-
-    public void markWebhookProcessed(String fincartOrderId) {
-        String sql = "UPDATE delivery_webhook_logs SET processed = TRUE, processed_at = NOW() WHERE fincart_order_id = ?";
-        jdbcTemplate.update(sql, fincartOrderId);
-    }
-
-    public boolean isWebhookProcessed(String fincartOrderId, String eventType) {
-        String sql = "SELECT COUNT(*) FROM delivery_webhook_logs WHERE fincart_order_id = ? AND event_type = ? AND processed = TRUE";
-        Integer count = jdbcTemplate.queryForObject(sql, new Object[]{fincartOrderId, eventType}, Integer.class);
-        return count != null && count > 0;
-    }
-
     // Fincart Config
     public void updateFincartToken(String accessToken, long expiresAt) {
         // First, deactivate all existing configs
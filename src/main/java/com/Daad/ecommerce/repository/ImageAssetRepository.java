@@ -0,0 +1,60 @@
+package com.Daad.ecommerce.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class ImageAssetRepository {
+
+    private static final TypeReference<Map<String, String>> VARIANTS_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ImageAssetRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Map<String, Object> findBySourceUrl(String sourceUrl) {
+        String sql = "SELECT a.content_hash, a.storage_key, a.url, a.variants::text AS variants FROM image_asset_sources s " +
+                    "JOIN image_assets a ON a.content_hash = s.content_hash WHERE s.source_url = ?";
+        return first(jdbcTemplate.queryForList(sql, sourceUrl));
+    }
+
+    public Map<String, Object> findByHash(String contentHash) {
+        String sql = "SELECT content_hash, storage_key, url, variants::text AS variants FROM image_assets WHERE content_hash = ?";
+        return first(jdbcTemplate.queryForList(sql, contentHash));
+    }
+
+    // Parses variants into a Map<String, String> so callers never see JSON
+    private Map<String, Object> first(List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) return null;
+        Map<String, Object> row = rows.get(0);
+        try {
+            row.put("variants", objectMapper.readValue((String) row.get("variants"), VARIANTS_TYPE));
+        } catch (JsonProcessingException e) {
+            row.put("variants", Map.of());
+        }
+        return row;
+    }
+
+    // Concurrent ingestions of the same bytes write the same key, so the first insert wins
+    public void insertAsset(String contentHash, String storageKey, String url, String contentType, long sizeBytes,
+                            Map<String, String> variants) throws JsonProcessingException {
+        String sql = "INSERT INTO image_assets (content_hash, storage_key, url, content_type, size_bytes, variants) " +
+                    "VALUES (?, ?, ?, ?, ?, ?::jsonb) ON CONFLICT (content_hash) DO NOTHING";
+        jdbcTemplate.update(sql, contentHash, storageKey, url, contentType, sizeBytes, objectMapper.writeValueAsString(variants));
+    }
+
+    public void upsertSource(String sourceUrl, String contentHash) {
+        String sql = "INSERT INTO image_asset_sources (source_url, content_hash) VALUES (?, ?) " +
+                    "ON CONFLICT (source_url) DO UPDATE SET content_hash = EXCLUDED.content_hash, fetched_at = NOW()";
+        jdbcTemplate.update(sql, sourceUrl, contentHash);
+    }
+}
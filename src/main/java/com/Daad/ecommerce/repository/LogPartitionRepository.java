@@ -0,0 +1,72 @@
+package com.Daad.ecommerce.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+@Repository
+public class LogPartitionRepository {
+
+    // Only these parents may be passed to DDL below; names are never taken from input
+    public static final Set<String> PARTITIONED_TABLES = Set.of("webhook_events", "delivery_logs");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Creates the monthly partition containing monthStart if it is missing; returns its name
+    public String ensureMonthlyPartition(String parent, LocalDate monthStart) {
+        requirePartitioned(parent);
+        String sql = "SELECT create_monthly_partition(?, ?)";
+        return jdbcTemplate.queryForObject(sql, String.class, parent, Date.valueOf(monthStart));
+    }
+
+    // Monthly partitions (parent_YYYY_MM) of the given table, oldest first; excludes the default partition
+    public List<String> getMonthlyPartitions(String parent) {
+        requirePartitioned(parent);
+        String sql = "SELECT c.relname FROM pg_inherits i " +
+                    "JOIN pg_class c ON c.oid = i.inhrelid " +
+                    "JOIN pg_class p ON p.oid = i.inhparent " +
+                    "WHERE p.relname = ? AND c.relname ~ ('^' || p.relname || '_[0-9]{4}_[0-9]{2}$') " +
+                    "ORDER BY c.relname";
+        return jdbcTemplate.queryForList(sql, String.class, parent);
+    }
+
+    public boolean hasUnfinishedWebhookEvents(String partition) {
+        requireChildOf("webhook_events", partition);
+        String sql = "SELECT EXISTS (SELECT 1 FROM " + partition + " WHERE status IN ('pending', 'processing', 'failed'))";
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(sql, Boolean.class));
+    }
+
+    // Detach first so concurrent inserts into the parent never wait on the DROP
+    public void dropPartition(String parent, String partition) {
+        requireChildOf(parent, partition);
+        jdbcTemplate.execute("ALTER TABLE " + parent + " DETACH PARTITION " + partition);
+        jdbcTemplate.execute("DROP TABLE " + partition);
+    }
+
+    // The pre-partitioning webhook log tables are no longer written; trim them down to the retention window
+    public int deleteLegacyWebhookLogsBefore(Timestamp cutoff) {
+        int deleted = jdbcTemplate.update("DELETE FROM delivery_webhook_logs WHERE created_at < ?", cutoff);
+        deleted += jdbcTemplate.update("DELETE FROM payout_webhook_logs WHERE created_at < ?", cutoff);
+        return deleted;
+    }
+
+    private void requirePartitioned(String parent) {
+        if (!PARTITIONED_TABLES.contains(parent)) {
+            throw new IllegalArgumentException("Not a partitioned log table: " + parent);
+        }
+    }
+
+    private void requireChildOf(String parent, String partition) {
+        requirePartitioned(parent);
+        if (partition == null || !partition.matches(parent + "_\\d{4}_\\d{2}")) {
+            throw new IllegalArgumentException("Not a monthly partition of " + parent + ": " + partition);
+        }
+    }
+}
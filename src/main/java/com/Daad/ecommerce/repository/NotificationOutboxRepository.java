@@ -0,0 +1,144 @@
+package com.Daad.ecommerce.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class NotificationOutboxRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NotificationOutboxRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insert(int priority, String recipient, String subject, String body, boolean html) {
+        String sql = "INSERT INTO notification_outbox (priority, recipient, subject, body, is_html) VALUES (?, ?, ?, ?, ?)";
+        jdbcTemplate.update(sql, priority, recipient, subject, body, html);
+    }
+
+    /**
+     * Atomically claims up to limit due emails, most urgent priority first. Rows locked by
+     * another instance are skipped. next_attempt_at is stamped so stuck claims can be found.
+     */
+    public List<Map<String, Object>> claimDue(int limit) {
+        String sql = "UPDATE notification_outbox SET status = 'sending', attempts = attempts + 1, next_attempt_at = NOW() " +
+                    "WHERE id IN (" +
+                    "  SELECT id FROM notification_outbox WHERE status IN ('pending', 'failed') AND next_attempt_at <= NOW() " +
+                    "  ORDER BY priority, next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED" +
+                    ") RETURNING id, priority, recipient, subject, body, is_html, attempts, created_at";
+        return jdbcTemplate.query(sql, this::mapRow, limit);
+    }
+
+    // Each row: id
+    public void markSentBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "UPDATE notification_outbox SET status = 'sent', sent_at = NOW(), last_error = NULL WHERE id = ?";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    // Each row: status ('failed' or 'dead'), error, retry delay seconds, id
+    public void markFailedBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "UPDATE notification_outbox SET status = ?, last_error = ?, " +
+                    "next_attempt_at = NOW() + (INTERVAL '1 second' * ?) WHERE id = ?";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    // Emails left 'sending' by a crashed instance become due again
+    public int releaseStuck(int olderThanMinutes) {
+        String sql = "UPDATE notification_outbox SET status = 'failed', last_error = 'Sending interrupted' " +
+                    "WHERE status = 'sending' AND next_attempt_at < NOW() - (INTERVAL '1 minute' * ?)";
+        return jdbcTemplate.update(sql, olderThanMinutes);
+    }
+
+    public int deleteSentBefore(int olderThanDays) {
+        String sql = "DELETE FROM notification_outbox WHERE status = 'sent' AND sent_at < NOW() - (INTERVAL '1 day' * ?)";
+        return jdbcTemplate.update(sql, olderThanDays);
+    }
+
+    // Given-up emails are kept for a while for inspection, then dropped
+    public int deleteDeadBefore(int olderThanDays) {
+        String sql = "DELETE FROM notification_outbox WHERE status = 'dead' AND created_at < NOW() - (INTERVAL '1 day' * ?)";
+        return jdbcTemplate.update(sql, olderThanDays);
+    }
+
+    // Notification events (V23): expanded into emails by the dispatcher
+
+    public void insertEvent(String eventType, String subjectId) {
+        String sql = "INSERT INTO notification_events (event_type, subject_id) VALUES (?, ?)";
+        jdbcTemplate.update(sql, eventType, subjectId);
+    }
+
+    // Same claim scheme as claimDue: rows locked elsewhere are skipped, next_attempt_at marks the claim
+    public List<Map<String, Object>> claimDueEvents(int limit) {
+        String sql = "UPDATE notification_events SET status = 'processing', attempts = attempts + 1, next_attempt_at = NOW() " +
+                    "WHERE id IN (" +
+                    "  SELECT id FROM notification_events WHERE status IN ('pending', 'failed') AND next_attempt_at <= NOW() " +
+                    "  ORDER BY next_attempt_at, id LIMIT ? FOR UPDATE SKIP LOCKED" +
+                    ") RETURNING id, event_type, subject_id, attempts";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", rs.getLong("id"));
+            row.put("event_type", rs.getString("event_type"));
+            row.put("subject_id", rs.getString("subject_id"));
+            row.put("attempts", rs.getInt("attempts"));
+            return row;
+        }, limit);
+    }
+
+    public void markEventDone(long id) {
+        String sql = "UPDATE notification_events SET status = 'done', processed_at = NOW(), last_error = NULL WHERE id = ?";
+        jdbcTemplate.update(sql, id);
+    }
+
+    // status is 'failed' (retried after delaySeconds) or 'dead'
+    public void markEventFailed(long id, String status, String error, long delaySeconds) {
+        String sql = "UPDATE notification_events SET status = ?, last_error = ?, " +
+                    "next_attempt_at = NOW() + (INTERVAL '1 second' * ?) WHERE id = ?";
+        jdbcTemplate.update(sql, status, error, delaySeconds, id);
+    }
+
+    // Events left 'processing' by a crashed instance become due again
+    public int releaseStuckEvents(int olderThanMinutes) {
+        String sql = "UPDATE notification_events SET status = 'failed', last_error = 'Processing interrupted' " +
+                    "WHERE status = 'processing' AND next_attempt_at < NOW() - (INTERVAL '1 minute' * ?)";
+        return jdbcTemplate.update(sql, olderThanMinutes);
+    }
+
+    public int deleteFinishedEventsBefore(int doneOlderThanDays, int deadOlderThanDays) {
+        String sql = "DELETE FROM notification_events WHERE " +
+                    "(status = 'done' AND created_at < NOW() - (INTERVAL '1 day' * ?)) OR " +
+                    "(status = 'dead' AND created_at < NOW() - (INTERVAL '1 day' * ?))";
+        return jdbcTemplate.update(sql, doneOlderThanDays, deadOlderThanDays);
+    }
+
+    // Backlog per priority: queued count and age in seconds of the oldest queued email
+    public List<Map<String, Object>> getBacklog() {
+        String sql = "SELECT priority, COUNT(*) AS queued, " +
+                    "COALESCE(EXTRACT(EPOCH FROM NOW() - MIN(created_at)), 0)::bigint AS oldest_age_seconds, " +
+                    "COUNT(*) FILTER (WHERE status = 'sending') AS sending " +
+                    "FROM notification_outbox WHERE status IN ('pending', 'failed', 'sending') " +
+                    "GROUP BY priority ORDER BY priority";
+        return jdbcTemplate.queryForList(sql);
+    }
+
+    private Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", rs.getLong("id"));
+        row.put("priority", rs.getInt("priority"));
+        row.put("recipient", rs.getString("recipient"));
+        row.put("subject", rs.getString("subject"));
+        row.put("body", rs.getString("body"));
+        row.put("is_html", rs.getBoolean("is_html"));
+        row.put("attempts", rs.getInt("attempts"));
+        row.put("created_at", rs.getTimestamp("created_at"));
+        return row;
+    }
+}
@@ -676,6 +676,27 @@ public class OrderRepository {
         return out;
     }
 
+    // Order totals for the vendor's items in orders placed since the given time
+    public Map<String, Object> vendorPeriodTotals(String vendorId, java.time.LocalDateTime since) {
+        String sql = """
+            SELECT COUNT(DISTINCT o.id) AS total_orders,
+                   COUNT(DISTINCT o.id) FILTER (WHERE o.order_status = 'delivered') AS completed_orders,
+                   COALESCE(SUM(oi.quantity), 0) AS total_items,
+                   COALESCE(SUM(oi.price * oi.quantity), 0) AS total_revenue
+            FROM orders o
+            JOIN order_items oi ON oi.order_id = o.id
+            JOIN products p ON p.id = oi.product_id
+            WHERE p.vendor_id = ? AND o.created_at >= ?
+            """;
+        Map<String, Object> result = jdbcTemplate.queryForMap(sql, parseUUID(vendorId), Timestamp.valueOf(since));
+        Map<String, Object> out = new java.util.HashMap<>();
+        out.put("totalOrders", ((Number) result.get("total_orders")).intValue());
+        out.put("completedOrders", ((Number) result.get("completed_orders")).intValue());
+        out.put("totalItems", ((Number) result.get("total_items")).longValue());
+        out.put("totalRevenue", ((Number) result.get("total_revenue")).doubleValue());
+        return out;
+    }
+
     public Map<String, Object> vendorCustomerInsights(String vendorId) {
         String distinctSql = """
             SELECT COUNT(DISTINCT o.customer_email) AS distinct_customers
@@ -89,7 +89,7 @@ public class ProductRepository {
                 discount.setDiscountType("percentage");
                 Timestamp validUntil = rs.getTimestamp("discount_valid_until");
                 if (validUntil != null) {
-                    discount.setEndDate(validUntil.toLocalDateTime().toString());
+                    discount.setEndDateTime(validUntil.toLocalDateTime());
                 }
                 discount.setIsActive(true);
                 product.setDiscount(discount);
@@ -187,7 +187,10 @@ public class ProductRepository {
                     url, 
                     alt_text, 
                     file_id, 
-                    is_primary
+                    is_primary,
+                    variants->>'thumb' AS thumb_url,
+                    variants->>'card' AS card_url,
+                    variants->>'detail' AS detail_url
                 FROM product_images
                 WHERE product_id = ? AND color IS NULL
                 ORDER BY is_primary DESC, created_at ASC
@@ -202,6 +205,9 @@ public class ProductRepository {
             image.setAlt((String) row.get("alt_text"));
             image.setFileId((String) row.get("file_id"));
             image.setIsPrimary((Boolean) row.get("is_primary"));
+            if (row.get("thumb_url") != null) image.getVariants().put("thumb", (String) row.get("thumb_url"));
+            if (row.get("card_url") != null) image.getVariants().put("card", (String) row.get("card_url"));
+            if (row.get("detail_url") != null) image.getVariants().put("detail", (String) row.get("detail_url"));
             defaultImages.add(image);
             }
             
@@ -216,19 +222,26 @@ public class ProductRepository {
     
     // Method to save product images to database
     public void saveProductImages(String productId, List<String> imageUrls, List<String> altTexts, List<String> fileIds) {
+        saveProductImages(productId, imageUrls, altTexts, fileIds, null);
+    }
+
+    // variants: per image, variant name (thumb / card / detail) -> URL; missing entries fall back to url
+    public void saveProductImages(String productId, List<String> imageUrls, List<String> altTexts, List<String> fileIds,
+                                  List<Map<String, String>> variants) {
         if (imageUrls == null || imageUrls.isEmpty()) {
             return;
         }
         
         String sql = """
-            INSERT INTO product_images (product_id, color, url, alt_text, file_id, is_primary, created_at)
-            VALUES (?, NULL, ?, ?, ?, ?, NOW())
+            INSERT INTO product_images (product_id, color, url, alt_text, file_id, is_primary, variants, created_at)
+            VALUES (?, NULL, ?, ?, ?, ?, jsonb_strip_nulls(jsonb_build_object('thumb', ?::text, 'card', ?::text, 'detail', ?::text)), NOW())
             """;
         
         for (int i = 0; i < imageUrls.size(); i++) {
             String url = imageUrls.get(i);
             String altText = (altTexts != null && i < altTexts.size()) ? altTexts.get(i) : null;
             String fileId = (fileIds != null && i < fileIds.size()) ? fileIds.get(i) : null;
+            Map<String, String> imageVariants = (variants != null && i < variants.size() && variants.get(i) != null) ? variants.get(i) : Map.of();
             boolean isPrimary = (i == 0); // First image is primary
             
             jdbcTemplate.update(sql, 
@@ -236,7 +249,10 @@ public class ProductRepository {
                 url, 
                 altText, 
                 fileId, 
-                isPrimary
+                isPrimary,
+                imageVariants.get("thumb"),
+                imageVariants.get("card"),
+                imageVariants.get("detail")
             );
         }
     }
@@ -355,7 +371,105 @@ public class ProductRepository {
         
         return products;
     }
-    
+
+    // Single-query load of everything pricing needs (price, discount, vendor status, inventory, first default image).
+    // Categories and image sets are not populated; use findById when the full product is needed.
+    public Map<String, Product> findPricingByIds(Collection<String> ids) {
+        Map<String, Product> products = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return products;
+        }
+
+        UUID[] uuids = ids.stream()
+            .filter(Objects::nonNull)
+            .distinct()
+            .map(id -> {
+                try { return UUID.fromString(id); } catch (IllegalArgumentException e) { return null; }
+            })
+            .filter(Objects::nonNull)
+            .toArray(UUID[]::new);
+        if (uuids.length == 0) {
+            return products;
+        }
+
+        String sql = """
+            SELECT p.id, p.name, p.description, p.price, p.status, p.is_active,
+                   p.discount_percentage, p.discount_valid_until,
+                   p.vendor_id, v.business_name as vendor_business_name, v.status as vendor_status,
+                   (SELECT pi.url FROM product_images pi
+                     WHERE pi.product_id = p.id AND pi.color IS NULL
+                     ORDER BY pi.is_primary DESC, pi.created_at ASC LIMIT 1) as default_image_url,
+                   inv.color, inv.color_code, inv."size", inv.stock, inv.is_available
+            FROM products p
+            LEFT JOIN vendors v ON p.vendor_id = v.id
+            LEFT JOIN product_inventory inv ON inv.product_id = p.id
+            WHERE p.id = ANY(?) AND p.is_active = true
+            ORDER BY p.id, inv.color, inv."size"
+            """;
+
+        jdbcTemplate.query(sql, rs -> {
+            String id = rs.getString("id");
+            Product product = products.get(id);
+            if (product == null) {
+                product = new Product();
+                product.setId(id);
+                product.setName(rs.getString("name"));
+                product.setDescription(rs.getString("description"));
+                product.setPrice(rs.getBigDecimal("price"));
+                product.setStatus(rs.getString("status"));
+                product.setIsActive(rs.getBoolean("is_active"));
+
+                Product.Vendor vendor = new Product.Vendor();
+                vendor.setId(rs.getString("vendor_id"));
+                vendor.setBusinessName(rs.getString("vendor_business_name"));
+                vendor.setStatus(rs.getString("vendor_status"));
+                product.setVendor(vendor);
+
+                BigDecimal discountPercentage = rs.getBigDecimal("discount_percentage");
+                if (discountPercentage != null && discountPercentage.compareTo(BigDecimal.ZERO) > 0) {
+                    Product.Discount discount = new Product.Discount();
+                    discount.setDiscountValue(discountPercentage);
+                    discount.setDiscountType("percentage");
+                    Timestamp validUntil = rs.getTimestamp("discount_valid_until");
+                    if (validUntil != null) {
+                        discount.setEndDateTime(validUntil.toLocalDateTime());
+                    }
+                    discount.setIsActive(true);
+                    product.setDiscount(discount);
+                }
+
+                String imageUrl = rs.getString("default_image_url");
+                if (imageUrl != null) {
+                    Product.Image image = new Product.Image();
+                    image.setUrl(imageUrl);
+                    image.setIsPrimary(true);
+                    product.getDefaultImages().add(image);
+                }
+                products.put(id, product);
+            }
+
+            String color = rs.getString("color");
+            if (color != null) {
+                Product.ColorInventory colorInventory = null;
+                for (Product.ColorInventory ci : product.getColorInventories()) {
+                    if (color.equals(ci.getColor())) { colorInventory = ci; break; }
+                }
+                if (colorInventory == null) {
+                    colorInventory = new Product.ColorInventory(color, rs.getString("color_code"));
+                    product.getColorInventories().add(colorInventory);
+                }
+                Product.SizeInventory sizeInventory = new Product.SizeInventory(rs.getString("size"), rs.getInt("stock"));
+                sizeInventory.setIsAvailable(rs.getBoolean("is_available"));
+                colorInventory.getSizes().add(sizeInventory);
+            }
+        }, (Object) uuids);
+
+        for (Product product : products.values()) {
+            product.calculateTotalStock();
+        }
+        return products;
+    }
+
     public Product save(Product product) {
         if (product.getId() == null) {
             return insert(product);
@@ -434,12 +548,13 @@ public class ProductRepository {
         return product;
     }
     
+    // average_rating is left out: trg_reviews_rating_aggregate owns it (V18)
     private Product update(Product product) {
         String sql = """
             UPDATE products SET 
                 name = ?, name_ar = ?, description = ?, description_ar = ?, price = ?, category_id = ?, vendor_id = ?,
                 gender = ?::product_gender, age_range = ?, total_stock = ?, discount_percentage = ?,
-                discount_valid_until = ?, average_rating = ?, status = ?::product_status,
+                discount_valid_until = ?, status = ?::product_status,
                 is_active = ?, is_customers_also_bought = ?, reference_id = ?, updated_at = NOW()
             WHERE id = ?
             """;
@@ -469,7 +584,6 @@ public class ProductRepository {
             product.getTotalStock(),
             product.getDiscount() != null ? product.getDiscount().getDiscountValue() : BigDecimal.ZERO,
             discountUntil,
-            product.getAverageRating(),
             product.getStatus(),
             product.getIsActive(),
             product.getIsCustomersAlsoBought(),
@@ -480,6 +594,140 @@ public class ProductRepository {
         return product;
     }
     
+    // Catalog sync: bulk diff of one feed chunk against the vendor's products. Returns reference_id -> product id
+    public Map<String, String> findIdsByReferenceIds(String vendorId, Collection<String> referenceIds) {
+        Map<String, String> ids = new HashMap<>();
+        if (referenceIds.isEmpty()) return ids;
+        String sql = """
+            SELECT id::text AS id, reference_id
+            FROM products
+            WHERE vendor_id = ?::uuid AND reference_id = ANY(?)
+            """;
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString("reference_id"), rs.getString("id"));
+        }, vendorId, referenceIds.toArray(new String[0]));
+        return ids;
+    }
+
+    /** Catalog sync: the given products that have no product_images row yet. */
+    public Set<String> findIdsWithoutImages(Collection<String> productIds) {
+        Set<String> ids = new HashSet<>();
+        if (productIds.isEmpty()) return ids;
+        String sql = """
+            SELECT p.id::text AS id
+            FROM products p
+            WHERE p.id = ANY(?)
+              AND NOT EXISTS (SELECT 1 FROM product_images pi WHERE pi.product_id = p.id)
+            """;
+        java.util.UUID[] uuids = productIds.stream().map(java.util.UUID::fromString).toArray(java.util.UUID[]::new);
+        jdbcTemplate.query(sql, rs -> {
+            ids.add(rs.getString("id"));
+        }, (Object) uuids);
+        return ids;
+    }
+
+    /**
+     * Catalog sync: inserts new products in one statement. Each row: name, description, price, gender, reference_id
+     * (gender is normalized, defaulting to Unisex). Returns reference_id -> generated product id.
+     */
+    public Map<String, String> insertSyncedProducts(String vendorId, List<Object[]> rows) {
+        Map<String, String> ids = new HashMap<>();
+        if (rows.isEmpty()) return ids;
+        String[] names = new String[rows.size()];
+        String[] descriptions = new String[rows.size()];
+        String[] prices = new String[rows.size()];
+        String[] genders = new String[rows.size()];
+        String[] referenceIds = new String[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            names[i] = (String) row[0];
+            descriptions[i] = (String) row[1];
+            prices[i] = row[2] != null ? row[2].toString() : null;
+            genders[i] = normalizeProductGender((String) row[3]);
+            referenceIds[i] = (String) row[4];
+        }
+        String sql = """
+            INSERT INTO products (
+                name, description, price, vendor_id, gender, total_stock, discount_percentage,
+                average_rating, status, is_active, is_customers_also_bought, reference_id, created_at, updated_at
+            )
+            SELECT r.name, r.description, r.price::numeric, ?::uuid, r.gender::product_gender, 0, 0,
+                   0, 'awaiting_approval'::product_status, TRUE, FALSE, r.reference_id, NOW(), NOW()
+            FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::text[]) AS r(name, description, price, gender, reference_id)
+            RETURNING id::text AS id, reference_id
+            """;
+        jdbcTemplate.query(sql, rs -> {
+            ids.put(rs.getString("reference_id"), rs.getString("id"));
+        }, vendorId, names, descriptions, prices, genders, referenceIds);
+        return ids;
+    }
+
+    // Catalog sync: each row: name, description, price (null keeps current), gender (null keeps current), product id
+    public void updateSyncedProducts(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        List<Object[]> normalized = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            normalized.add(new Object[]{row[0], row[1], row[2], row[3] != null ? normalizeProductGender((String) row[3]) : null, row[4]});
+        }
+        String sql = """
+            UPDATE products SET
+                name = ?, description = ?, price = COALESCE(?::numeric, price),
+                gender = COALESCE(?::product_gender, gender), category_id = NULL,
+                status = 'awaiting_approval'::product_status, is_active = TRUE, updated_at = NOW()
+            WHERE id = ?::uuid
+            """;
+        jdbcTemplate.batchUpdate(sql, normalized);
+    }
+
+    /**
+     * Catalog sync: batched form of addSizeToColor. Each row: product id, color, color code, size, stock.
+     * Existing (product, color, size) rows are updated in one batch and the rest inserted in a second;
+     * call refreshTotalStock for the touched products afterwards.
+     */
+    public void upsertInventoryBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String updateSql = """
+            UPDATE product_inventory
+            SET stock = ?, is_available = ?, color_code = ?, updated_at = NOW()
+            WHERE product_id = ?::uuid AND color = ? AND "size" = ?
+            """;
+        String insertSql = """
+            INSERT INTO product_inventory (product_id, color, color_code, "size", stock, is_available, min_stock_threshold)
+            VALUES (?::uuid, ?, ?, ?, ?, ?, 5)
+            """;
+
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            int stock = (Integer) row[4];
+            updates.add(new Object[]{stock, stock > 0, row[2], row[0], row[1], row[3]});
+        }
+        int[] counts = jdbcTemplate.batchUpdate(updateSql, updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (counts[i] == 0) {
+                Object[] row = rows.get(i);
+                int stock = (Integer) row[4];
+                inserts.add(new Object[]{row[0], row[1], row[2], row[3], stock, stock > 0});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql, inserts);
+        }
+    }
+
+    public void refreshTotalStock(Collection<String> productIds) {
+        if (productIds.isEmpty()) return;
+        String sql = """
+            UPDATE products p
+            SET total_stock = (SELECT COALESCE(SUM(stock), 0) FROM product_inventory WHERE product_id = p.id),
+                updated_at = NOW()
+            WHERE p.id = ANY(?)
+            """;
+        java.util.UUID[] ids = productIds.stream().map(java.util.UUID::fromString).toArray(java.util.UUID[]::new);
+        jdbcTemplate.update(sql, (Object) ids);
+    }
+
     public void deleteById(String id) {
         // Soft delete by setting is_active to false
         String sql = "UPDATE products SET is_active = false, updated_at = NOW() WHERE id = ?::uuid";
@@ -669,12 +917,6 @@ public class ProductRepository {
         jdbcTemplate.update(sql, newStock, productId);
     }
     
-    // Update rating
-    public void updateAverageRating(String productId, BigDecimal averageRating) {
-        String sql = "UPDATE products SET average_rating = ?, updated_at = NOW() WHERE id = ?::uuid";
-        jdbcTemplate.update(sql, averageRating, productId);
-    }
-    
     // Update status
     public void updateStatus(String productId, String status) {
         String sql = "UPDATE products SET status = ?::product_status, updated_at = NOW() WHERE id = ?::uuid";
@@ -939,7 +1181,7 @@ public class ProductRepository {
             UPDATE products SET 
                 name = ?, name_ar = ?, description = ?, description_ar = ?, price = ?, category_id = ?, vendor_id = ?, 
                 gender = ?::product_gender, age_range = ?, total_stock = ?, discount_percentage = ?, 
-                discount_valid_until = ?, average_rating = ?, status = ?::product_status, 
+                discount_valid_until = ?, status = ?::product_status, 
                 is_active = ?, is_customers_also_bought = ?, reference_id = ?, updated_at = NOW()
             WHERE id = ?
             """;
@@ -969,7 +1211,6 @@ public class ProductRepository {
             product.getTotalStock(),
             product.getDiscount() != null ? product.getDiscount().getDiscountValue() : null,
             discountUntil,
-            product.getAverageRating(),
             product.getStatus(),
             product.getIsActive(),
             product.getIsCustomersAlsoBought(),
@@ -1153,7 +1394,8 @@ public class ProductRepository {
         } catch (Exception ignored) {}
     }
 
-    // Lightweight fetch without inventory/images loading on Java side
+    // Lightweight fetch without inventory/images loading on Java side.
+    // Images are the card-sized variant, or the original for images uploaded without variants.
     public List<Map<String, Object>> findLightweight(
             String categoryId,
             boolean includeChildren,
@@ -1190,7 +1432,7 @@ public class ProductRepository {
             LEFT JOIN categories c ON p.category_id = c.id
             LEFT JOIN LATERAL (
                 SELECT ARRAY(
-                    SELECT pi.url 
+                    SELECT COALESCE(pi.variants->>'card', pi.url)
                     FROM product_images pi 
                     WHERE pi.product_id = p.id AND pi.color IS NULL
                     ORDER BY pi.is_primary DESC, pi.created_at ASC
@@ -1368,7 +1610,7 @@ public class ProductRepository {
             LEFT JOIN categories c ON p.category_id = c.id
             LEFT JOIN LATERAL (
                 SELECT ARRAY(
-                    SELECT pi.url 
+                    SELECT COALESCE(pi.variants->>'card', pi.url)
                     FROM product_images pi 
                     WHERE pi.product_id = p.id AND pi.color IS NULL
                     ORDER BY pi.is_primary DESC, pi.created_at ASC
@@ -1553,7 +1795,7 @@ public class ProductRepository {
             LEFT JOIN categories c ON p.category_id = c.id
             LEFT JOIN LATERAL (
                 SELECT ARRAY(
-                    SELECT pi.url 
+                    SELECT COALESCE(pi.variants->>'card', pi.url)
                     FROM product_images pi 
                     WHERE pi.product_id = p.id AND pi.color IS NULL
                     ORDER BY pi.is_primary DESC, pi.created_at ASC
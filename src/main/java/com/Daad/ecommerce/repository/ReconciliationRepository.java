@@ -0,0 +1,94 @@
+package com.Daad.ecommerce.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class ReconciliationRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReconciliationRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * One page of Paymob payment transactions created in [from, to), in (created_at, id) order,
+     * starting after the given keyset position (null for the first page). Each page is a short
+     * standalone query, so no transaction or cursor stays open while the caller talks to Paymob.
+     * Columns: id, order_id, match_key, provider_id, status, is_refunded, outcome_unknown, amount, event_time.
+     */
+    public <T> List<T> findPaymentsPage(LocalDateTime from, LocalDateTime to, LocalDateTime afterTime, String afterId,
+                                        int limit, RowMapper<T> mapper) {
+        String sql = "SELECT id::text AS id, order_id::text AS order_id, payment_reference AS match_key, " +
+                    "transaction_id AS provider_id, status, COALESCE(is_refunded, FALSE) AS is_refunded, FALSE AS outcome_unknown, amount, created_at AS event_time " +
+                    "FROM payment_transactions WHERE payment_provider = 'paymob' AND payment_reference IS NOT NULL " +
+                    "AND created_at >= ? AND created_at < ? AND (created_at, id) > (?, ?::uuid) ORDER BY created_at, id LIMIT ?";
+        return page(sql, from, to, afterTime, afterId, limit, mapper);
+    }
+
+    /**
+     * One page of vendor payouts that were sent (or attempted) in [from, to); same paging and columns
+     * as findPaymentsPage. The event time is when the payout was claimed for sending, which is when
+     * Paymob creates its record (scheduled_for for rows claimed before V22).
+     */
+    public <T> List<T> findPayoutsPage(LocalDateTime from, LocalDateTime to, LocalDateTime afterTime, String afterId,
+                                       int limit, RowMapper<T> mapper) {
+        String sql = "SELECT id::text AS id, NULL AS order_id, id::text AS match_key, paymob_payout_id AS provider_id, status, " +
+                    "FALSE AS is_refunded, outcome_unknown, net_amount AS amount, COALESCE(claimed_at, scheduled_for) AS event_time " +
+                    "FROM vendor_payouts WHERE status IN ('processing', 'completed', 'failed') " +
+                    "AND COALESCE(claimed_at, scheduled_for) >= ? AND COALESCE(claimed_at, scheduled_for) < ? " +
+                    "AND (COALESCE(claimed_at, scheduled_for), id) > (?, ?::uuid) " +
+                    "ORDER BY COALESCE(claimed_at, scheduled_for), id LIMIT ?";
+        return page(sql, from, to, afterTime, afterId, limit, mapper);
+    }
+
+    // Each row: run_started_at, kind, reference, type, local_status, provider_status, local_amount, provider_amount, provider_id, fixed
+    public void insertDiscrepancies(List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+        String sql = "INSERT INTO reconciliation_discrepancies (run_started_at, kind, reference, discrepancy_type, local_status, " +
+                    "provider_status, local_amount, provider_amount, provider_id, fixed) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    /**
+     * Applies the provider's final state to payments still pending locally (e.g. a lost webhook).
+     * Guarded on the transaction still being pending, so a webhook that settled it meanwhile wins;
+     * returns how many were applied.
+     * Each row: transaction status, provider transaction id, payment_transactions id, order payment_status, order id
+     */
+    public int applyPaymentFixes(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "WITH v AS (SELECT ?::text AS tx_status, ?::text AS provider_id, ?::uuid AS tx_id, ?::text AS payment_status, ?::uuid AS order_id), " +
+                    "t AS (UPDATE payment_transactions p SET status = v.tx_status, transaction_id = COALESCE(p.transaction_id, v.provider_id), " +
+                    "  updated_at = NOW() FROM v WHERE p.id = v.tx_id AND p.status IN ('pending', 'initiated') " +
+                    "  AND COALESCE(p.is_refunded, FALSE) = FALSE RETURNING p.transaction_id) " +
+                    "UPDATE orders o SET payment_status = v.payment_status, " +
+                    "transaction_id = COALESCE(o.transaction_id, t.transaction_id), " +
+                    "paid_at = CASE WHEN v.payment_status = 'paid' THEN COALESCE(o.paid_at, NOW()) ELSE o.paid_at END, " +
+                    "updated_at = NOW() FROM v, t WHERE o.id = v.order_id";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
+    }
+
+    private <T> List<T> page(String sql, LocalDateTime from, LocalDateTime to, LocalDateTime afterTime, String afterId,
+                             int limit, RowMapper<T> mapper) {
+        // The window start is a valid keyset floor for the first page: every row has time >= from
+        Timestamp keysetTime = Timestamp.valueOf(afterTime != null ? afterTime : from);
+        String keysetId = afterId != null ? afterId : "00000000-0000-0000-0000-000000000000";
+        return jdbcTemplate.query(sql, mapper, Timestamp.valueOf(from), Timestamp.valueOf(to), keysetTime, keysetId, limit);
+    }
+
+    private static int updated(int[] counts) {
+        int updated = 0;
+        for (int count : counts) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) updated++;
+        }
+        return updated;
+    }
+}
@@ -154,32 +154,59 @@ public class ReviewRepository {
         return jdbcTemplate.query(sql, reviewRowMapper, parseUUID(customerId), status);
     }
 
-    public Map<Integer, Long> ratingDistributionForProduct(String productId) {
-        String sql = "SELECT rating, COUNT(*) as count FROM reviews WHERE product_id = ? AND status = 'approved' GROUP BY rating ORDER BY rating";
-        Map<Integer, Long> distribution = new HashMap<>();
-        
-        // Initialize with 0 counts
-        for (int i = 1; i <= 5; i++) {
-            distribution.put(i, 0L);
-        }
-        
-        // Get actual counts from database
-        List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, parseUUID(productId));
-        for (Map<String, Object> row : results) {
-            Integer rating = (Integer) row.get("rating");
-            Long count = (Long) row.get("count");
-            if (rating != null && count != null) {
-                distribution.put(rating, count);
+    /**
+     * Rating stats from the aggregates kept on products by trg_reviews_rating_aggregate (V18):
+     * averageRating, totalReviews and ratingDistribution (1..5 -> count). No aggregation over reviews.
+     */
+    public Map<String, Object> ratingStatsForProduct(String productId) {
+        String sql = "SELECT rating_count, average_rating, rating_1, rating_2, rating_3, rating_4, rating_5 FROM products WHERE id = ?";
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, parseUUID(productId));
+
+        Map<Integer, Long> distribution = new LinkedHashMap<>();
+        Map<String, Object> stats = new HashMap<>();
+        if (rows.isEmpty()) {
+            for (int i = 1; i <= 5; i++) {
+                distribution.put(i, 0L);
+            }
+            stats.put("averageRating", 0.0);
+            stats.put("totalReviews", 0);
+        } else {
+            Map<String, Object> row = rows.get(0);
+            for (int i = 1; i <= 5; i++) {
+                distribution.put(i, ((Number) row.get("rating_" + i)).longValue());
             }
+            Number average = (Number) row.get("average_rating");
+            stats.put("averageRating", average != null ? average.doubleValue() : 0.0);
+            stats.put("totalReviews", ((Number) row.get("rating_count")).intValue());
         }
-        
-        return distribution;
+        stats.put("ratingDistribution", distribution);
+        return stats;
     }
 
-    public OptionalDouble averageRatingForProduct(String productId) {
-        String sql = "SELECT AVG(rating) as avg_rating FROM reviews WHERE product_id = ? AND status = 'approved'";
-        Double avgRating = jdbcTemplate.queryForObject(sql, Double.class, parseUUID(productId));
-        return avgRating != null ? OptionalDouble.of(avgRating) : OptionalDouble.empty();
+    // Sums the vendor's daily rating buckets (vendor_rating_rollups, V19) from the given day on
+    public Map<String, Object> ratingStatsForVendor(String vendorId, java.time.LocalDate since) {
+        String sql = """
+            SELECT COALESCE(SUM(rating_count), 0) AS rating_count, COALESCE(SUM(rating_sum), 0) AS rating_sum,
+                   COALESCE(SUM(rating_1), 0) AS rating_1, COALESCE(SUM(rating_2), 0) AS rating_2,
+                   COALESCE(SUM(rating_3), 0) AS rating_3, COALESCE(SUM(rating_4), 0) AS rating_4,
+                   COALESCE(SUM(rating_5), 0) AS rating_5
+            FROM vendor_rating_rollups
+            WHERE vendor_id = ? AND bucket >= ?
+            """;
+        Map<String, Object> row = jdbcTemplate.queryForMap(sql, parseUUID(vendorId), java.sql.Date.valueOf(since));
+
+        Map<Integer, Long> distribution = new LinkedHashMap<>();
+        for (int i = 1; i <= 5; i++) {
+            distribution.put(i, ((Number) row.get("rating_" + i)).longValue());
+        }
+        long count = ((Number) row.get("rating_count")).longValue();
+        long sum = ((Number) row.get("rating_sum")).longValue();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("averageRating", count > 0 ? (double) sum / count : 0.0);
+        stats.put("totalReviews", count);
+        stats.put("ratingDistribution", distribution);
+        return stats;
     }
 
     public List<Review> findByProductId(String productId) {
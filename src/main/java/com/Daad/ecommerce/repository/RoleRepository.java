@@ -2,6 +2,7 @@ package com.Daad.ecommerce.repository;
 
 import com.Daad.ecommerce.model.Permission;
 import com.Daad.ecommerce.model.Role;
+import com.Daad.ecommerce.security.PermissionCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -19,6 +20,9 @@ public class RoleRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private PermissionCache permissionCache;
+
     // Permission RowMapper
     private final RowMapper<Permission> permissionRowMapper = new RowMapper<Permission>() {
         @Override
@@ -190,7 +194,11 @@ public class RoleRepository {
             }
             UUID roleUuid = UUID.fromString(id);
             String sql = "DELETE FROM roles WHERE id = ? AND is_system_role = FALSE";
-            return jdbcTemplate.update(sql, roleUuid);
+            int deleted = jdbcTemplate.update(sql, roleUuid);
+            if (deleted > 0) {
+                permissionCache.invalidateAll();
+            }
+            return deleted;
         } catch (IllegalArgumentException e) {
             System.err.println("Invalid UUID format for role id: " + id);
             return 0;
@@ -203,6 +211,15 @@ public class RoleRepository {
 
     // Assign permissions to role
     public void assignPermissionsToRole(String roleId, List<String> permissionIds) {
+        try {
+            assignPermissionsToRoleInternal(roleId, permissionIds);
+        } finally {
+            // Any user holding this role may have gained or lost permissions (even on partial failure)
+            permissionCache.invalidateAll();
+        }
+    }
+
+    private void assignPermissionsToRoleInternal(String roleId, List<String> permissionIds) {
         try {
             if (roleId == null || roleId.trim().isEmpty()) {
                 throw new IllegalArgumentException("Role ID cannot be null or empty");
@@ -290,25 +307,31 @@ public class RoleRepository {
 
     // Assign roles to user
     public void assignRolesToUser(String userId, List<String> roleIds, String assignedBy) {
-        // First, remove all existing roles
-        String deleteSql = "DELETE FROM user_roles WHERE user_id = ?";
-        jdbcTemplate.update(deleteSql, UUID.fromString(userId));
+        try {
+            // First, remove all existing roles
+            String deleteSql = "DELETE FROM user_roles WHERE user_id = ?";
+            jdbcTemplate.update(deleteSql, UUID.fromString(userId));
 
-        // Then, insert new roles
-        if (roleIds != null && !roleIds.isEmpty()) {
-            String insertSql = "INSERT INTO user_roles (user_id, role_id, assigned_by, assigned_at) VALUES (?, ?, ?, NOW())";
-            UUID userUuid = UUID.fromString(userId);
-            UUID assignedByUuid = assignedBy != null ? UUID.fromString(assignedBy) : null;
-            for (String roleId : roleIds) {
-                jdbcTemplate.update(insertSql, userUuid, UUID.fromString(roleId), assignedByUuid);
+            // Then, insert new roles
+            if (roleIds != null && !roleIds.isEmpty()) {
+                String insertSql = "INSERT INTO user_roles (user_id, role_id, assigned_by, assigned_at) VALUES (?, ?, ?, NOW())";
+                UUID userUuid = UUID.fromString(userId);
+                UUID assignedByUuid = assignedBy != null ? UUID.fromString(assignedBy) : null;
+                for (String roleId : roleIds) {
+                    jdbcTemplate.update(insertSql, userUuid, UUID.fromString(roleId), assignedByUuid);
+                }
             }
+        } finally {
+            permissionCache.invalidate(userId);
         }
     }
 
     // Remove role from user
     public int removeRoleFromUser(String userId, String roleId) {
         String sql = "DELETE FROM user_roles WHERE user_id = ? AND role_id = ?";
-        return jdbcTemplate.update(sql, UUID.fromString(userId), UUID.fromString(roleId));
+        int removed = jdbcTemplate.update(sql, UUID.fromString(userId), UUID.fromString(roleId));
+        permissionCache.invalidate(userId);
+        return removed;
     }
 
     // Check if user has permission
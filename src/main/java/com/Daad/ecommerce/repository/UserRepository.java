@@ -1,6 +1,7 @@
 package com.Daad.ecommerce.repository;
 
 import com.Daad.ecommerce.model.User;
+import com.Daad.ecommerce.model.Vendor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -10,7 +11,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -69,6 +73,46 @@ public class UserRepository {
         return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
     }
 
+    // A user together with the vendor profile fields login needs (vendor is null for non-vendors)
+    public static class UserWithVendor {
+        public final User user;
+        public final Vendor vendor;
+
+        public UserWithVendor(User user, Vendor vendor) {
+            this.user = user;
+            this.vendor = vendor;
+        }
+    }
+
+    // Login lookup: the user row and its vendor projection in one round trip
+    public Optional<UserWithVendor> findByEmailWithVendor(String email) {
+        String sql = """
+            SELECT u.*, v.id AS vendor_id, v.status AS vendor_status, v.business_name AS vendor_business_name,
+                   v.business_type AS vendor_business_type, v.profile_completed AS vendor_profile_completed,
+                   v.rating_average AS vendor_rating_average
+            FROM users u
+            LEFT JOIN vendors v ON v.user_id = u.id
+            WHERE u.email = ?
+            LIMIT 1
+            """;
+        List<UserWithVendor> rows = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            User user = userRowMapper.mapRow(rs, rowNum);
+            Vendor vendor = null;
+            if (rs.getString("vendor_id") != null) {
+                vendor = new Vendor();
+                vendor.setId(rs.getString("vendor_id"));
+                vendor.setStatus(rs.getString("vendor_status"));
+                vendor.setBusinessName(rs.getString("vendor_business_name"));
+                vendor.setBusinessType(rs.getString("vendor_business_type"));
+                vendor.setProfileCompleted(rs.getBoolean("vendor_profile_completed"));
+                vendor.setRating(rs.getDouble("vendor_rating_average"));
+                vendor.setUser(user);
+            }
+            return new UserWithVendor(user, vendor);
+        }, email);
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
     public Optional<User> findByUsername(String username) {
         String sql = "SELECT * FROM users WHERE username = ? LIMIT 1";
         List<User> users = jdbcTemplate.query(sql, userRowMapper, username);
@@ -207,6 +251,12 @@ public class UserRepository {
         jdbcTemplate.update(sql, newPassword, Timestamp.from(Instant.now()), UUID.fromString(userId));
     }
 
+    // Replaces the hash only if it is still the one the caller verified, so a concurrent password change wins
+    public boolean updatePasswordIfUnchanged(String userId, String newPassword, String expectedPassword) {
+        String sql = "UPDATE users SET password = ?, updated_at = ? WHERE id = ? AND password = ?";
+        return jdbcTemplate.update(sql, newPassword, Timestamp.from(Instant.now()), UUID.fromString(userId), expectedPassword) > 0;
+    }
+
     public void updateRole(String userId, String role) {
         String sql = "UPDATE users SET role = ?::user_role, updated_at = ? WHERE id = ?";
         jdbcTemplate.update(sql, role, Timestamp.from(Instant.now()), UUID.fromString(userId));
@@ -244,4 +294,55 @@ public class UserRepository {
         String sql = "UPDATE users SET first_order_placed = true, updated_at = ? WHERE id = ?";
         jdbcTemplate.update(sql, Timestamp.from(Instant.now()), UUID.fromString(userId));
     }
+
+    // Admin user list: one keyset page of list-view columns, newest first (null cursor = first page)
+    public List<Map<String, Object>> findListPage(String role, String search, Timestamp cursorCreatedAt, UUID cursorId, int limit) {
+        StringBuilder sql = new StringBuilder("""
+            SELECT id, username, email, role, is_verified, profile_pic_url, created_at, updated_at
+            FROM users
+            WHERE 1 = 1
+            """);
+        List<Object> params = new ArrayList<>();
+        appendListFilters(sql, params, role, search);
+        if (cursorCreatedAt != null && cursorId != null) {
+            sql.append(" AND (created_at, id) < (?, ?)");
+            params.add(cursorCreatedAt);
+            params.add(cursorId);
+        }
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", rs.getString("id"));
+            item.put("username", rs.getString("username"));
+            item.put("email", rs.getString("email"));
+            item.put("role", rs.getString("role"));
+            item.put("isVerified", rs.getBoolean("is_verified"));
+            item.put("profilePicUrl", rs.getString("profile_pic_url"));
+            item.put("createdAt", rs.getTimestamp("created_at"));
+            item.put("updatedAt", rs.getTimestamp("updated_at"));
+            return item;
+        }, params.toArray());
+    }
+
+    public int countList(String role, String search) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM users WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        appendListFilters(sql, params, role, search);
+        Integer count = jdbcTemplate.queryForObject(sql.toString(), Integer.class, params.toArray());
+        return count != null ? count : 0;
+    }
+
+    private void appendListFilters(StringBuilder sql, List<Object> params, String role, String search) {
+        if (role != null && !role.trim().isEmpty()) {
+            sql.append(" AND role = ?::user_role");
+            params.add(role.trim());
+        }
+        if (search != null && !search.trim().isEmpty()) {
+            sql.append(" AND (username ILIKE ? OR email ILIKE ?)");
+            params.add("%" + search.trim() + "%");
+            params.add("%" + search.trim() + "%");
+        }
+    }
 }
\ No newline at end of file
@@ -5,7 +5,9 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -41,34 +43,123 @@ public class VendorPayoutRepository {
         );
     }
 
-    public List<Map<String, Object>> findDuePayouts(int limit) {
-        String sql = "SELECT vp.* FROM vendor_payouts vp JOIN orders o ON o.id = vp.order_id WHERE vp.status = 'pending' AND vp.scheduled_for <= NOW() AND o.order_status != 'cancelled' ORDER BY vp.scheduled_for ASC LIMIT ?";
-        return jdbcTemplate.query(sql, new Object[]{limit}, (rs, rowNum) -> mapRow(rs));
+    /**
+     * Atomically moves up to limit due payouts to 'processing' and returns them. Rows locked
+     * by another instance are skipped, so several executors never pick the same payout.
+     */
+    public List<Map<String, Object>> claimDuePayouts(int limit) {
+        String sql = "UPDATE vendor_payouts SET status = 'processing', claimed_at = NOW(), outcome_unknown = FALSE, updated_at = NOW() " +
+                    "WHERE id IN (" +
+                    "  SELECT vp.id FROM vendor_payouts vp JOIN orders o ON o.id = vp.order_id " +
+                    "  WHERE vp.status = 'pending' AND vp.scheduled_for <= NOW() AND o.order_status != 'cancelled' " +
+                    "  ORDER BY vp.scheduled_for ASC LIMIT ? FOR UPDATE OF vp SKIP LOCKED" +
+                    ") RETURNING *";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRow(rs), limit);
     }
 
-    public void markProcessing(String payoutId) {
-        String sql = "UPDATE vendor_payouts SET status = 'processing', updated_at = NOW() WHERE id = ?::uuid AND status = 'pending'";
-        jdbcTemplate.update(sql, UUID.fromString(payoutId));
+    /*
+     * Batch transitions out of 'processing'. Every one is guarded on status = 'processing', so a
+     * payout a webhook or reconciliation already settled is never moved back; each returns how
+     * many rows it actually updated and the caller treats the rest as lost races.
+     */
+
+    // Each row: paymob_payout_id, response json, payout id
+    public int markCompletedBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET status = 'completed', paymob_payout_id = ?, paymob_response = to_json(?::text), " +
+                    "outcome_unknown = FALSE, processed_at = NOW(), updated_at = NOW() WHERE id = ?::uuid AND status = 'processing'";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
     }
 
-    public void markCompleted(String payoutId, String paymobPayoutId, String responseJson) {
-        String sql = "UPDATE vendor_payouts SET status = 'completed', paymob_payout_id = ?, paymob_response = to_json(?::text), processed_at = NOW(), updated_at = NOW() WHERE id = ?::uuid";
-        jdbcTemplate.update(sql, paymobPayoutId, responseJson, UUID.fromString(payoutId));
+    // Paymob accepted the payout and will report the result by webhook. Each row: paymob_payout_id, response json, payout id
+    public int markProcessingWithResponseBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET paymob_payout_id = ?, paymob_response = to_json(?::text), outcome_unknown = FALSE, " +
+                    "updated_at = NOW() WHERE id = ?::uuid AND status = 'processing'";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
     }
 
-    public void markProcessingWithResponse(String payoutId, String paymobPayoutId, String responseJson) {
-        String sql = "UPDATE vendor_payouts SET status = 'processing', paymob_payout_id = ?, paymob_response = to_json(?::text), updated_at = NOW() WHERE id = ?::uuid";
-        jdbcTemplate.update(sql, paymobPayoutId, responseJson, UUID.fromString(payoutId));
+    /**
+     * Records a failure that proves Paymob did not pay (never sent, or declined) and puts the payout
+     * back to 'pending', or ends it as 'failed' once it has used maxAttempts.
+     * Each row: error message, retry delay minutes, payout id
+     */
+    public int markFailedForRetryBatch(List<Object[]> rows, int maxAttempts) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET status = (CASE WHEN COALESCE(retry_count, 0) + 1 >= ? THEN 'failed' ELSE 'pending' END)::payout_status, " +
+                    "retry_count = COALESCE(retry_count, 0) + 1, error_message = ?, outcome_unknown = FALSE, " +
+                    "scheduled_for = NOW() + (INTERVAL '1 minute' * ?), updated_at = NOW() WHERE id = ?::uuid AND status = 'processing'";
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            args.add(new Object[]{maxAttempts, row[0], row[1], row[2]});
+        }
+        return updated(jdbcTemplate.batchUpdate(sql, args));
     }
 
-    public void markFailed(String payoutId, String errorMessage) {
-        String sql = "UPDATE vendor_payouts SET status = 'failed', retry_count = retry_count + 1, error_message = ?, updated_at = NOW() WHERE id = ?::uuid";
-        jdbcTemplate.update(sql, errorMessage, UUID.fromString(payoutId));
+    // Hands back claimed payouts that were never sent (e.g. auth failed) without using up an attempt. Each row: payout id
+    public int releaseClaimedBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET status = 'pending', claimed_at = NULL, updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status = 'processing' AND outcome_unknown = FALSE";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
     }
 
-    public void rescheduleForRetry(String payoutId, int minutes) {
-        String sql = "UPDATE vendor_payouts SET status = 'pending', scheduled_for = NOW() + (INTERVAL '1 minute' * ?), updated_at = NOW() WHERE id = ?::uuid";
-        jdbcTemplate.update(sql, minutes, UUID.fromString(payoutId));
+    /**
+     * The call may have reached Paymob (timeout, 5xx): the payout stays in 'processing', flagged,
+     * until a webhook or reconciliation settles it. Each row: error message, payout id
+     */
+    public int markOutcomeUnknownBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET outcome_unknown = TRUE, error_message = ?, updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status = 'processing'";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
+    }
+
+    // Terminal failure for payouts that can never be sent as they are (e.g. invalid amount). Each row: error message, payout id
+    public int markFailedBatch(List<Object[]> rows) {
+        if (rows.isEmpty()) return 0;
+        String sql = "UPDATE vendor_payouts SET status = 'failed', error_message = ?, outcome_unknown = FALSE, updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status = 'processing'";
+        return updated(jdbcTemplate.batchUpdate(sql, rows));
+    }
+
+    /**
+     * Flags payouts left in 'processing' by a crashed or killed run (claimed long ago, no Paymob id,
+     * not yet flagged) as outcome unknown, so reconciliation settles them instead of the executor.
+     */
+    public int flagStaleProcessing(int staleMinutes) {
+        String sql = "UPDATE vendor_payouts SET outcome_unknown = TRUE, error_message = 'Left in processing; outcome unknown', updated_at = NOW() " +
+                    "WHERE status = 'processing' AND outcome_unknown = FALSE AND paymob_payout_id IS NULL " +
+                    "AND COALESCE(claimed_at, updated_at) < NOW() - (INTERVAL '1 minute' * ?)";
+        return jdbcTemplate.update(sql, staleMinutes);
+    }
+
+    // Webhook transitions. A success report is the truth about money moved, so it also settles pending or failed rows.
+    public int markCompleted(String payoutId, String paymobPayoutId, String responseJson) {
+        String sql = "UPDATE vendor_payouts SET status = 'completed', paymob_payout_id = ?, paymob_response = to_json(?::text), " +
+                    "outcome_unknown = FALSE, processed_at = NOW(), updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status IN ('processing', 'pending', 'failed')";
+        return jdbcTemplate.update(sql, paymobPayoutId, responseJson, UUID.fromString(payoutId));
+    }
+
+    public int markProcessingWithResponse(String payoutId, String paymobPayoutId, String responseJson) {
+        String sql = "UPDATE vendor_payouts SET paymob_payout_id = ?, paymob_response = to_json(?::text), updated_at = NOW() " +
+                    "WHERE id = ?::uuid AND status = 'processing'";
+        return jdbcTemplate.update(sql, paymobPayoutId, responseJson, UUID.fromString(payoutId));
+    }
+
+    public int markFailed(String payoutId, String errorMessage) {
+        String sql = "UPDATE vendor_payouts SET status = 'failed', retry_count = COALESCE(retry_count, 0) + 1, error_message = ?, " +
+                    "outcome_unknown = FALSE, updated_at = NOW() WHERE id = ?::uuid AND status = 'processing'";
+        return jdbcTemplate.update(sql, errorMessage, UUID.fromString(payoutId));
+    }
+
+    private static int updated(int[] counts) {
+        int updated = 0;
+        for (int count : counts) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) updated++;
+        }
+        return updated;
     }
 
     public Map<String, Object> findById(String payoutId) {
@@ -82,22 +173,6 @@ public class VendorPayoutRepository {
         jdbcTemplate.update(sql, reason, reason, UUID.fromString(orderId));
     }
 
-    public void insertWebhookLog(String paymobPayoutId, String eventType, String payloadJson) {
-        String sql = "INSERT INTO payout_webhook_logs (paymob_payout_id, event_type, payload) VALUES (?, ?, to_json(?::text))";
-        jdbcTemplate.update(sql, paymobPayoutId, eventType, payloadJson);
-    }
-
-    public Boolean isWebhookProcessed(String paymobPayoutId) {
-        String sql = "SELECT processed FROM payout_webhook_logs WHERE paymob_payout_id = ? AND processed = TRUE ORDER BY created_at DESC LIMIT 1";
-        List<Boolean> list = jdbcTemplate.query(sql, new Object[]{paymobPayoutId}, (rs, i) -> rs.getBoolean("processed"));
-        return list.isEmpty() ? false : list.get(0);
-    }
-
-    public void markWebhookProcessed(String paymobPayoutId) {
-        String sql = "UPDATE payout_webhook_logs SET processed = TRUE, processed_at = NOW() WHERE paymob_payout_id = ? AND processed = FALSE";
-        jdbcTemplate.update(sql, paymobPayoutId);
-    }
-
     private Map<String, Object> mapRow(ResultSet rs) throws SQLException {
         java.util.Map<String, Object> row = new java.util.HashMap<>();
         row.put("id", rs.getString("id"));
@@ -112,6 +187,8 @@ public class VendorPayoutRepository {
         row.put("paymob_payout_id", rs.getString("paymob_payout_id"));
         row.put("retry_count", rs.getInt("retry_count"));
         row.put("error_message", rs.getString("error_message"));
+        row.put("claimed_at", rs.getTimestamp("claimed_at"));
+        row.put("outcome_unknown", rs.getBoolean("outcome_unknown"));
         row.put("bank_account_number", rs.getString("bank_account_number"));
         row.put("bank_routing_number", rs.getString("bank_routing_number"));
         row.put("bank_account_holder_name", rs.getString("bank_account_holder_name"));
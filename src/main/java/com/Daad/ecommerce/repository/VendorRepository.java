@@ -11,7 +11,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -261,16 +264,6 @@ public class VendorRepository {
         return vendors.isEmpty() ? Optional.empty() : Optional.of(vendors.get(0));
     }
     
-    public List<Vendor> findAllByOrderByCreatedAtDesc() {
-        String sql = """
-            SELECT v.*, u.username, u.email, u.role, u.profile_pic_url, u.is_verified
-            FROM vendors v
-            LEFT JOIN users u ON v.user_id::uuid = u.id::uuid
-            ORDER BY v.created_at DESC
-        """;
-        return jdbcTemplate.query(sql, vendorWithUserRowMapper);
-    }
-    
     public Vendor save(Vendor vendor) {
         if (vendor.getId() == null) {
             return insert(vendor);
@@ -338,6 +331,7 @@ public class VendorRepository {
         return vendor;
     }
     
+    // rating_average / rating_count are left out: the review rating trigger maintains them (V19)
     private Vendor update(Vendor vendor) {
         vendor.setUpdatedAt(Instant.now());
 
@@ -347,7 +341,7 @@ public class VendorRepository {
                 business_address_line1 = ?, business_address_line2 = ?, business_city = ?,
                 business_state = ?, business_postal_code = ?, business_country = ?,
                 description = ?, logo_url = ?, status = ?::vendor_status, approved_by = ?,
-                approved_at = ?, tax_id = ?, commission = ?, rating_average = ?,
+                approved_at = ?, tax_id = ?, commission = ?,
                 profile_completed = ?, updated_at = ?
             WHERE id = ?
             """;
@@ -371,7 +365,6 @@ public class VendorRepository {
                 vendor.getApprovedAt() != null ? Timestamp.from(vendor.getApprovedAt()) : null,
                 vendor.getTaxId(),
                 vendor.getCommission() != null ? vendor.getCommission() : 10.0,
-                vendor.getRating() != null ? vendor.getRating() : 0.0,
                 vendor.getProfileCompleted() != null ? vendor.getProfileCompleted() : false,
                 Timestamp.from(vendor.getUpdatedAt()),
                 parseUUID(vendor.getId())
@@ -454,8 +447,76 @@ public class VendorRepository {
         jdbcTemplate.update(sql, completed, Timestamp.from(Instant.now()), parseUUID(vendorId));
     }
 
-    public void updateRating(String vendorId, Double rating) {
-        String sql = "UPDATE vendors SET rating_average = ?, updated_at = ? WHERE id = ?";
-        jdbcTemplate.update(sql, rating, Timestamp.from(Instant.now()), parseUUID(vendorId));
+    // Admin vendor list: one keyset page of the columns the list view shows, newest first.
+    // Pass a null cursor for the first page; bank details, policies etc. stay on the detail endpoint.
+    public List<Map<String, Object>> findListPage(String status, String search, Timestamp cursorCreatedAt, UUID cursorId, int limit) {
+        StringBuilder sql = new StringBuilder("""
+            SELECT v.id, v.business_name, v.business_type, v.phone_number, v.logo_url, v.status,
+                   v.commission, v.rating_average, v.rating_count, v.profile_completed, v.created_at,
+                   u.id AS user_id, u.username, u.email, u.role, u.profile_pic_url, u.is_verified
+            FROM vendors v
+            LEFT JOIN users u ON u.id = v.user_id
+            WHERE 1 = 1
+            """);
+        List<Object> params = new ArrayList<>();
+        appendListFilters(sql, params, status, search);
+        if (cursorCreatedAt != null && cursorId != null) {
+            sql.append(" AND (v.created_at, v.id) < (?, ?)");
+            params.add(cursorCreatedAt);
+            params.add(cursorId);
+        }
+        sql.append(" ORDER BY v.created_at DESC, v.id DESC LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Map<String, Object> v = new LinkedHashMap<>();
+            v.put("vendorId", rs.getString("id"));
+            v.put("businessName", rs.getString("business_name"));
+            v.put("businessType", rs.getString("business_type"));
+            v.put("phoneNumber", rs.getString("phone_number"));
+            v.put("logo", rs.getString("logo_url"));
+            v.put("status", rs.getString("status"));
+            v.put("commission", rs.getDouble("commission"));
+            v.put("rating", rs.getDouble("rating_average"));
+            v.put("ratingCount", rs.getInt("rating_count"));
+            v.put("profileCompleted", rs.getBoolean("profile_completed"));
+            if (rs.getString("user_id") != null) {
+                Map<String, Object> user = new LinkedHashMap<>();
+                user.put("userId", rs.getString("user_id"));
+                user.put("username", rs.getString("username"));
+                user.put("email", rs.getString("email"));
+                user.put("role", rs.getString("role"));
+                user.put("profilePicUrl", rs.getString("profile_pic_url"));
+                user.put("isVerified", rs.getBoolean("is_verified"));
+                v.put("user", user);
+            }
+            v.put("vendorCreatedAt", rs.getTimestamp("created_at"));
+            return v;
+        }, params.toArray());
+    }
+
+    public int countList(String status, String search) {
+        StringBuilder sql = new StringBuilder("""
+            SELECT COUNT(*)
+            FROM vendors v
+            LEFT JOIN users u ON u.id = v.user_id
+            WHERE 1 = 1
+            """);
+        List<Object> params = new ArrayList<>();
+        appendListFilters(sql, params, status, search);
+        Integer count = jdbcTemplate.queryForObject(sql.toString(), Integer.class, params.toArray());
+        return count != null ? count : 0;
+    }
+
+    private void appendListFilters(StringBuilder sql, List<Object> params, String status, String search) {
+        if (status != null && !status.trim().isEmpty()) {
+            sql.append(" AND v.status = ?::vendor_status");
+            params.add(status.trim());
+        }
+        if (search != null && !search.trim().isEmpty()) {
+            sql.append(" AND (v.business_name ILIKE ? OR u.email ILIKE ?)");
+            params.add("%" + search.trim() + "%");
+            params.add("%" + search.trim() + "%");
+        }
     }
 }
\ No newline at end of file
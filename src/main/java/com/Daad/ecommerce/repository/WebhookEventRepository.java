@@ -0,0 +1,84 @@
+package com.Daad.ecommerce.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class WebhookEventRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns false when an event with the same dedup key was already received. The key is
+     * claimed in the unpartitioned webhook_event_keys table and the event is only written when
+     * that insert succeeded, all in one statement.
+     */
+    public boolean append(String source, String entityKey, String dedupKey, String payload) {
+        String sql = "WITH k AS (INSERT INTO webhook_event_keys (source, dedup_key) VALUES (?, ?) " +
+                    "  ON CONFLICT DO NOTHING RETURNING source) " +
+                    "INSERT INTO webhook_events (source, entity_key, dedup_key, payload) " +
+                    "SELECT k.source, ?, ?, ?::jsonb FROM k";
+        return jdbcTemplate.update(sql, source, dedupKey, entityKey, dedupKey, payload) > 0;
+    }
+
+    /**
+     * Atomically claims up to limit due events. Only the oldest unfinished event of each
+     * entity is eligible, so events for one entity are never processed out of order or
+     * concurrently; rows locked by another instance are skipped.
+     */
+    public List<Map<String, Object>> claimDueEvents(int limit) {
+        String sql = "UPDATE webhook_events SET status = 'processing', attempts = attempts + 1, next_attempt_at = NOW() " +
+                    "WHERE id IN (" +
+                    "  SELECT e.id FROM webhook_events e " +
+                    "  WHERE e.status IN ('pending', 'failed') AND e.next_attempt_at <= NOW() " +
+                    "  AND NOT EXISTS (SELECT 1 FROM webhook_events p WHERE p.source = e.source " +
+                    "    AND p.entity_key = e.entity_key AND p.id < e.id AND p.status IN ('pending', 'processing', 'failed')) " +
+                    "  ORDER BY e.id LIMIT ? FOR UPDATE SKIP LOCKED" +
+                    ") RETURNING id, source, entity_key, payload::text AS payload, attempts";
+        return jdbcTemplate.query(sql, this::mapEventRow, limit);
+    }
+
+    public void markDone(long id) {
+        String sql = "UPDATE webhook_events SET status = 'done', processed_at = NOW(), last_error = NULL WHERE id = ?";
+        jdbcTemplate.update(sql, id);
+    }
+
+    // Schedules another attempt, or parks the event as 'dead' so it stops blocking its entity
+    public void markFailed(long id, String error, boolean dead, long retryDelaySeconds) {
+        String sql = "UPDATE webhook_events SET status = ?, last_error = ?, " +
+                    "next_attempt_at = NOW() + (INTERVAL '1 second' * ?) WHERE id = ?";
+        jdbcTemplate.update(sql, dead ? "dead" : "failed", error, retryDelaySeconds, id);
+    }
+
+    // Events left 'processing' by a crashed worker become due again
+    public int releaseStuckEvents(int olderThanMinutes) {
+        String sql = "UPDATE webhook_events SET status = 'failed', last_error = 'Processing interrupted' " +
+                    "WHERE status = 'processing' AND next_attempt_at < NOW() - (INTERVAL '1 minute' * ?)";
+        return jdbcTemplate.update(sql, olderThanMinutes);
+    }
+
+    // Dedup keys only need to outlive the partitions holding their events
+    public int deleteKeysReceivedBefore(Timestamp cutoff) {
+        String sql = "DELETE FROM webhook_event_keys WHERE received_at < ?";
+        return jdbcTemplate.update(sql, cutoff);
+    }
+
+    private Map<String, Object> mapEventRow(ResultSet rs, int rowNum) throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", rs.getLong("id"));
+        row.put("source", rs.getString("source"));
+        row.put("entity_key", rs.getString("entity_key"));
+        row.put("payload", rs.getString("payload"));
+        row.put("attempts", rs.getInt("attempts"));
+        return row;
+    }
+}
@@ -0,0 +1,37 @@
+package com.Daad.ecommerce.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned authority objects. Roles and permissions come from a small fixed vocabulary,
+ * so each authority (and each single-role authority list) is built once and shared.
+ */
+public final class Authorities {
+
+    public static final String ROLE_PREFIX = "ROLE_";
+    public static final String PERMISSION_PREFIX = "PERMISSION_";
+
+    private static final Map<String, GrantedAuthority> ROLES = new ConcurrentHashMap<>();
+    private static final Map<String, List<GrantedAuthority>> ROLE_LISTS = new ConcurrentHashMap<>();
+    private static final Map<String, GrantedAuthority> PERMISSIONS = new ConcurrentHashMap<>();
+
+    private Authorities() {}
+
+    public static GrantedAuthority role(String role) {
+        return ROLES.computeIfAbsent(role, r -> new SimpleGrantedAuthority(ROLE_PREFIX + r.toUpperCase()));
+    }
+
+    // Immutable one-element list for principals that only carry their role
+    public static List<GrantedAuthority> roleOnly(String role) {
+        return ROLE_LISTS.computeIfAbsent(role, r -> List.of(role(r)));
+    }
+
+    public static GrantedAuthority permission(String permissionName) {
+        return PERMISSIONS.computeIfAbsent(permissionName, p -> new SimpleGrantedAuthority(PERMISSION_PREFIX + p));
+    }
+}
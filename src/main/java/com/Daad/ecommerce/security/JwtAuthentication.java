@@ -0,0 +1,21 @@
+package com.Daad.ecommerce.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+/**
+ * Authentication produced by JwtAuthenticationFilter. Carries the user's resolved
+ * permissions so PermissionChecker can answer with a set lookup instead of scanning authorities.
+ */
+public class JwtAuthentication extends UsernamePasswordAuthenticationToken {
+
+    private final transient UserPermissions permissions;
+
+    public JwtAuthentication(String userId, UserPermissions permissions) {
+        super(userId, null, permissions.getAuthorities());
+        this.permissions = permissions;
+    }
+
+    public boolean hasPermission(String permissionName) {
+        return permissions.hasPermission(permissionName);
+    }
+}
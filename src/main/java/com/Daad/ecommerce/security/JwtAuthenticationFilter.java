@@ -3,6 +3,7 @@ package com.Daad.ecommerce.security;
 import com.Daad.ecommerce.model.Permission;
 import com.Daad.ecommerce.repository.RoleRepository;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import jakarta.servlet.FilterChain;
@@ -11,9 +12,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -21,19 +20,22 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import javax.crypto.SecretKey;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    private final SecretKey accessSecretKey;
+    // JwtParser is immutable and thread-safe, so one instance serves every request
+    private final JwtParser accessTokenParser;
+    private final PermissionCache permissionCache;
     
     @Autowired(required = false)
     private RoleRepository roleRepository;
 
-    public JwtAuthenticationFilter(@Value("${jwt.access.secret}") String accessSecret) {
-        this.accessSecretKey = Keys.hmacShaKeyFor(accessSecret.getBytes());
+    public JwtAuthenticationFilter(@Value("${jwt.access.secret}") String accessSecret, PermissionCache permissionCache) {
+        SecretKey accessSecretKey = Keys.hmacShaKeyFor(accessSecret.getBytes());
+        this.accessTokenParser = Jwts.parserBuilder().setSigningKey(accessSecretKey).build();
+        this.permissionCache = permissionCache;
     }
 
     @Override
@@ -54,33 +56,36 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.trim().startsWith("Bearer ")) {
             String token = authHeader.trim().substring(7).trim();
             try {
-                Claims claims = Jwts.parserBuilder().setSigningKey(accessSecretKey).build().parseClaimsJws(token).getBody();
+                Claims claims = accessTokenParser.parseClaimsJws(token).getBody();
                 String userId = claims.get("id", String.class);
                 String role = claims.get("role", String.class);
                 
-                List<SimpleGrantedAuthority> authorities = new ArrayList<>();
-                authorities.add(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()));
+                UserPermissions permissions = UserPermissions.roleOnly(role);
                 
                 // Add permissions as authorities if role is admin and repository is available
+                // (cached per user so admin requests don't re-run the permission join every time)
                 if ("admin".equalsIgnoreCase(role) && roleRepository != null) {
                     try {
-                        List<Permission> permissions = roleRepository.getPermissionsByUserId(userId);
-                        for (Permission permission : permissions) {
-                            authorities.add(new SimpleGrantedAuthority("PERMISSION_" + permission.getName()));
-                        }
+                        permissions = permissionCache.get(userId, () -> {
+                            List<String> names = new ArrayList<>();
+                            for (Permission permission : roleRepository.getPermissionsByUserId(userId)) {
+                                names.add(permission.getName());
+                            }
+                            return UserPermissions.of(role, names);
+                        });
                     } catch (Exception e) {
                         // If permission loading fails, continue with role-based auth only
                         // This ensures backward compatibility
                     }
                 }
                 
-                Authentication auth = new UsernamePasswordAuthenticationToken(userId, null, authorities);
+                Authentication auth = new JwtAuthentication(userId, permissions);
                 SecurityContextHolder.getContext().setAuthentication(auth);
                 
                 // Log successful authentication for discount endpoints
                 if (path != null && path.contains("/discount")) {
                     System.out.println("✅ JWT Filter - Authentication successful for user: " + userId + ", role: " + role);
-                    System.out.println("✅ JWT Filter - Authorities: " + authorities);
+                    System.out.println("✅ JWT Filter - Authorities: " + auth.getAuthorities());
                 }
             } catch (Exception e) {
                 // Log JWT parsing errors for discount endpoints
@@ -0,0 +1,65 @@
+package com.Daad.ecommerce.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Short-lived cache of the permissions resolved for each admin user.
+ * Entries expire after a TTL and are dropped explicitly by RoleRepository whenever
+ * role or permission assignments change.
+ */
+@Component
+public class PermissionCache {
+
+    private static class Entry {
+        final UserPermissions permissions;
+        final long expiresAtMillis;
+
+        Entry(UserPermissions permissions, long expiresAtMillis) {
+            this.permissions = permissions;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Bumped on every invalidation so a load that raced with it is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final long ttlMillis;
+
+    public PermissionCache(@Value("${security.permission-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    public UserPermissions get(String userId, Supplier<UserPermissions> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.expiresAtMillis > now) {
+            return entry.permissions;
+        }
+
+        long startGeneration = generation.get();
+        UserPermissions permissions = loader.get();
+        if (ttlMillis > 0 && generation.get() == startGeneration) {
+            entries.put(userId, new Entry(permissions, now + ttlMillis));
+        }
+        return permissions;
+    }
+
+    public void invalidate(String userId) {
+        generation.incrementAndGet();
+        if (userId != null) {
+            entries.remove(userId);
+        }
+    }
+
+    // Role-level changes can affect any user holding the role
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+}
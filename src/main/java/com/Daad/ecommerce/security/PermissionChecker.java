@@ -17,9 +17,18 @@ public class PermissionChecker {
             return false;
         }
         
-        String permissionAuthority = "PERMISSION_" + permissionName;
-        return auth.getAuthorities().stream()
-            .anyMatch(authority -> authority.getAuthority().equals(permissionAuthority));
+        if (auth instanceof JwtAuthentication) {
+            return ((JwtAuthentication) auth).hasPermission(permissionName);
+        }
+        
+        // Other authentication types: compare against the interned authority without building strings
+        String permissionAuthority = Authorities.permission(permissionName).getAuthority();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            if (permissionAuthority.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
     }
     
     /**
@@ -1,6 +1,7 @@
 package com.Daad.ecommerce.security;
 
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 public class SecurityUtils {
@@ -15,7 +16,11 @@ public class SecurityUtils {
     public static boolean hasRole(String role) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null) return false;
-        return auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_" + role.toUpperCase()));
+        String roleAuthority = Authorities.role(role).getAuthority();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            if (roleAuthority.equals(authority.getAuthority())) return true;
+        }
+        return false;
     }
 }
 
@@ -0,0 +1,46 @@
+package com.Daad.ecommerce.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolved authorities for one user, built once per permission load: the full authority
+ * list handed to Spring Security plus a hash set of permission names for O(1) checks.
+ */
+public final class UserPermissions {
+
+    private final List<GrantedAuthority> authorities;
+    private final Set<String> permissionNames;
+
+    private UserPermissions(List<GrantedAuthority> authorities, Set<String> permissionNames) {
+        this.authorities = authorities;
+        this.permissionNames = permissionNames;
+    }
+
+    public static UserPermissions of(String role, Collection<String> permissionNames) {
+        List<GrantedAuthority> authorities = new ArrayList<>(permissionNames.size() + 1);
+        Set<String> names = new HashSet<>();
+        authorities.add(Authorities.role(role));
+        for (String name : permissionNames) {
+            if (name != null && names.add(name)) {
+                authorities.add(Authorities.permission(name));
+            }
+        }
+        return new UserPermissions(List.copyOf(authorities), Set.copyOf(names));
+    }
+
+    public static UserPermissions roleOnly(String role) {
+        return new UserPermissions(Authorities.roleOnly(role), Set.of());
+    }
+
+    public List<GrantedAuthority> getAuthorities() { return authorities; }
+
+    public boolean hasPermission(String permissionName) {
+        return permissionNames.contains(permissionName);
+    }
+}
@@ -2,7 +2,6 @@ package com.Daad.ecommerce.service;
 
 import com.Daad.ecommerce.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -14,7 +13,6 @@ public class AccountEmailService {
     @Autowired
     private EmailTemplateService emailTemplateService;
 
-    @Async("emailTaskExecutor")
     public void sendWelcomeNotification(User user) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("userName", user.getUsername());
@@ -30,7 +28,6 @@ public class AccountEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendEmailVerificationNotification(User user, String verificationToken) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("userName", user.getUsername());
@@ -42,11 +39,11 @@ public class AccountEmailService {
             user.getEmail(),
             "Verify Your Email Address",
             "email-verification",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_CRITICAL
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendPasswordResetNotification(User user, String resetToken) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("userName", user.getUsername());
@@ -59,11 +56,11 @@ public class AccountEmailService {
             user.getEmail(),
             "Password Reset Request",
             "password-reset",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_CRITICAL
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendAccountStatusNotification(User user, String newStatus) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("userName", user.getUsername());
@@ -81,7 +78,6 @@ public class AccountEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendOtpNotification(User user, String otp) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("userName", user.getUsername());
@@ -93,7 +89,8 @@ public class AccountEmailService {
             user.getEmail(),
             "Your OTP Code",
             "otp-notification",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_CRITICAL
         );
     }
 }
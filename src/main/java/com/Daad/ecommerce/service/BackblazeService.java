@@ -1,6 +1,8 @@
 package com.Daad.ecommerce.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
@@ -11,13 +13,15 @@ import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
 import jakarta.annotation.PostConstruct;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -38,17 +42,29 @@ public class BackblazeService {
     @Value("${backblaze.b2.region}")
     private String region;
 
+    @Autowired
+    private ImageVariantService imageVariantService;
+
     private S3Client s3Client;
 
+    // Keys are unique per upload (timestamp + id, or content hash), so objects never change
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     public static class UploadResult {
         public final String url;
         public final String key;
         public final String filename;
+        public final Map<String, String> variants; // variant name -> URL, empty when none were generated
         
         public UploadResult(String url, String key, String filename) {
+            this(url, key, filename, Map.of());
+        }
+
+        public UploadResult(String url, String key, String filename, Map<String, String> variants) {
             this.url = url;
             this.key = key;
             this.filename = filename;
+            this.variants = variants;
         }
     }
 
@@ -119,6 +135,13 @@ public class BackblazeService {
     }
 
     public UploadResult uploadMultipart(MultipartFile file, String folder) throws IOException {
+        return uploadMultipart(file, folder, false);
+    }
+
+    /**
+     * @param withVariants also store thumb/card/detail variants (product images); see uploadVariants
+     */
+    public UploadResult uploadMultipart(MultipartFile file, String folder, boolean withVariants) throws IOException {
         // Generate unique filename
         String originalFilename = file.getOriginalFilename();
         String safeFilename = sanitizeFilename(originalFilename);
@@ -139,14 +162,15 @@ public class BackblazeService {
                     .key(key)
                     .contentType(contentType)
                     .contentLength(file.getSize())
+                    .cacheControl(IMMUTABLE_CACHE_CONTROL)
                     .build();
 
             s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
             
             // Generate public URL
-            String publicUrl = String.format("https://%s.s3.%s.backblazeb2.com/%s", bucketName, region, key);
+            String publicUrl = publicUrl(key);
             
-            return new UploadResult(publicUrl, key, filename);
+            return new UploadResult(publicUrl, key, filename, withVariants ? uploadVariants(file, key, contentType) : Map.of());
             
         } catch (S3Exception e) {
             throw new IOException("Failed to upload file to Backblaze B2: " + e.getMessage(), e);
@@ -154,57 +178,64 @@ public class BackblazeService {
     }
 
     /**
-     * Download an image from a remote URL and upload it to Backblaze B2.
-     * Returns the public URL and key similar to uploadMultipart.
+     * Upload a local file under an exact key, streaming it from disk rather than the heap, plus its
+     * image variants. Used by ImageIngestionService for content-addressed remote product images.
      */
-    public UploadResult uploadFromUrl(String imageUrl, String folder) throws IOException {
-        // Download bytes from imageUrl
-        try (InputStream in = new URL(imageUrl).openStream();
-             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-
-            byte[] buffer = new byte[8192];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                baos.write(buffer, 0, read);
-            }
-
-            byte[] bytes = baos.toByteArray();
+    public UploadResult uploadFile(Path file, String key, String contentType) throws IOException {
+        try {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentLength(Files.size(file))
+                    .cacheControl(IMMUTABLE_CACHE_CONTROL)
+                    .build();
 
-            // Derive filename from URL path
-            String path = new URL(imageUrl).getPath();
-            String originalFilename = path.substring(path.lastIndexOf('/') + 1);
-            if (originalFilename == null || originalFilename.isBlank()) originalFilename = "file";
-            String safeFilename = sanitizeFilename(originalFilename);
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
-            String uniqueId = UUID.randomUUID().toString().substring(0, 8);
-            String filename = timestamp + "-" + uniqueId + "-" + safeFilename;
+            s3Client.putObject(putObjectRequest, RequestBody.fromFile(file));
 
-            String key = folder + "/" + filename;
+            return new UploadResult(publicUrl(key), key, key.substring(key.lastIndexOf('/') + 1),
+                    uploadVariants(() -> Files.newInputStream(file), key, contentType));
 
-            // Attempt to guess content type from filename
-            String contentType = determineContentType(null, safeFilename);
+        } catch (S3Exception e) {
+            throw new IOException("Failed to upload file to Backblaze B2: " + e.getMessage(), e);
+        }
+    }
 
-            try {
+    /**
+     * Generate and store the thumb/card/detail variants of an image stored under key. Variants
+     * sit next to the original as {key without extension}-{variant}.{ext}, so one CDN rule covers
+     * them all. Failures only cost the variants: callers fall back to the original URL.
+     */
+    private Map<String, String> uploadVariants(InputStreamSource source, String key, String contentType) {
+        if (!ImageVariantService.isDecodable(contentType)) {
+            return Map.of();
+        }
+        String base = key.lastIndexOf('.') > key.lastIndexOf('/') ? key.substring(0, key.lastIndexOf('.')) : key;
+        Map<String, String> urls = new LinkedHashMap<>();
+        try (InputStream in = source.getInputStream()) {
+            for (ImageVariantService.Variant variant : imageVariantService.generate(in)) {
+                String variantKey = base + "-" + variant.name + "." + variant.extension;
                 PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                         .bucket(bucketName)
-                        .key(key)
-                        .contentType(contentType)
-                        .contentLength((long) bytes.length)
+                        .key(variantKey)
+                        .contentType(variant.contentType)
+                        .contentLength((long) variant.data.length)
+                        .cacheControl(IMMUTABLE_CACHE_CONTROL)
                         .build();
-
-                s3Client.putObject(putObjectRequest, RequestBody.fromBytes(bytes));
-
-                String publicUrl = String.format("https://%s.s3.%s.backblazeb2.com/%s", bucketName, region, key);
-                return new UploadResult(publicUrl, key, filename);
-
-            } catch (S3Exception e) {
-                throw new IOException("Failed to upload file to Backblaze B2: " + e.getMessage(), e);
+                s3Client.putObject(putObjectRequest, RequestBody.fromBytes(variant.data));
+                urls.put(variant.name, publicUrl(variantKey));
             }
-        } catch (IOException e) {
-            throw new IOException("Failed to download image from URL: " + imageUrl + " -> " + e.getMessage(), e);
+            return urls;
+        } catch (Exception e) {
+            System.err.println("Failed to generate image variants for " + key + ": " + e.getMessage());
+            return Map.of();
         }
     }
 
+    private String publicUrl(String key) {
+        return String.format("https://%s.s3.%s.backblazeb2.com/%s", bucketName, region, key);
+    }
+
     public boolean deleteFile(String key) {
         try {
             DeleteObjectRequest deleteObjectRequest = DeleteObjectRequest.builder()
@@ -252,7 +283,7 @@ public class BackblazeService {
         return safe.isEmpty() ? "file" : safe;
     }
 
-    private String determineContentType(String providedContentType, String filename) {
+    String determineContentType(String providedContentType, String filename) {
         if (providedContentType != null && !providedContentType.equals("application/octet-stream")) {
             return providedContentType;
         }
@@ -1,13 +1,17 @@
 package com.Daad.ecommerce.service;
 
 import com.Daad.ecommerce.repository.DeliveryRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class DeliveryService {
@@ -20,14 +24,53 @@ public class DeliveryService {
     
     @Autowired
     private OrderEmailService orderEmailService;
+
+    @Autowired
+    private FincartTokenManager fincartTokenManager;
     
+    @Autowired
+    @Qualifier("deliveryTaskExecutor")
+    private ThreadPoolTaskExecutor deliveryTaskExecutor;
+
+    @Value("${delivery.create.timeout-seconds:10}")
+    private long createTimeoutSeconds;
+
+    @Value("${delivery.create.max-attempts:5}")
+    private int createMaxAttempts;
+
+    @Value("${delivery.create.retry-delay-seconds:60}")
+    private long createRetryDelaySeconds;
+
+    @Value("${delivery.create.retry-batch-size:50}")
+    private int retryBatchSize;
+
+    @Value("${delivery.create.retry-lease-seconds:600}")
+    private long retryLeaseSeconds;
+
+    @Value("${delivery.areas.snapshot-ttl-minutes:60}")
+    private long areaSnapshotTtlMinutes;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final AtomicReference<DeliveryAreaSnapshot> deliveryAreaSnapshot = new AtomicReference<>();
+
     /**
      * Create delivery order for a single vendor
      */
     public Map<String, Object> createDeliveryOrder(String orderId, String vendorId, Map<String, Object> orderData) {
         try {
+            // Idempotent: a retry or duplicate call must not create a second shipment
+            Map<String, Object> existing = deliveryRepository.getDeliveryByOrderAndVendor(orderId, vendorId);
+            if (existing != null) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("fincart_order_id", existing.get("fincart_order_id"));
+                result.put("tracking_number", existing.get("tracking_number"));
+                result.put("courier", existing.get("courier"));
+                result.put("already_exists", true);
+                return result;
+            }
+
             // Get access token
             String accessToken = getValidAccessToken();
             
@@ -62,17 +105,32 @@ public class DeliveryService {
             String courier = (String) response.get("courier");
             
             // Save delivery record
-            deliveryRepository.insertDelivery(
+            String deliveryId = deliveryRepository.insertDelivery(
                 orderId, vendorId, fincartOrderId, fincartOrderCode,
                 paymentType, amountCents, (String) orderData.get("service_type"),
                 "parcel", (Integer) orderData.get("no_of_items"),
                 (String) orderData.get("description"), orderId,
                 (String) pickupLocation.get("id")
             );
+            if (deliveryId == null) {
+                // A concurrent attempt already stored this vendor's delivery; drop the duplicate shipment
+                System.err.println("Delivery for order " + orderId + " vendor " + vendorId + " already exists, cancelling duplicate " + fincartOrderId);
+                try {
+                    fincartApiService.cancelOrder(accessToken, List.of(fincartOrderId));
+                } catch (Exception e) {
+                    System.err.println("Error cancelling duplicate delivery " + fincartOrderId + ": " + e.getMessage());
+                }
+                Map<String, Object> stored = deliveryRepository.getDeliveryByOrderAndVendor(orderId, vendorId);
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("fincart_order_id", stored != null ? stored.get("fincart_order_id") : null);
+                result.put("already_exists", true);
+                return result;
+            }
             
             // Log initial status
             deliveryRepository.insertDeliveryLog(
-                fincartOrderId, "pending", "created", null, null,
+                deliveryId, "pending", "created", null, null,
                 trackingNumber, null, courier, null, false, null,
                 "Delivery order created successfully"
             );
@@ -80,38 +138,141 @@ public class DeliveryService {
             // Send tracking info to customer
             sendTrackingNotification(orderId, fincartOrderId, trackingNumber, trackURL);
             
-            return Map.of(
-                "success", true,
-                "fincart_order_id", fincartOrderId,
-                "tracking_number", trackingNumber,
-                "track_url", trackURL,
-                "courier", courier
-            );
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("fincart_order_id", fincartOrderId);
+            result.put("tracking_number", trackingNumber);
+            result.put("track_url", trackURL);
+            result.put("courier", courier);
+            return result;
             
         } catch (Exception e) {
             System.err.println("Error creating delivery order: " + e.getMessage());
-            return Map.of("success", false, "error", e.getMessage());
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", false);
+            result.put("error", String.valueOf(e.getMessage()));
+            return result;
         }
     }
 
     /**
-     * Create delivery orders for multi-vendor order
+     * Create delivery orders for multi-vendor order. Vendors are created in parallel on the
+     * delivery executor; the caller waits at most delivery.create.timeout-seconds overall.
+     * A retry row is stored for every vendor before any attempt starts and removed once its
+     * delivery exists, so vendors that fail, time out or are lost to a restart are picked up
+     * by retryPendingDeliveries() and one slow or failing vendor does not hold up checkout.
      */
     public List<Map<String, Object>> createMultiVendorDeliveries(String orderId, List<Map<String, Object>> vendorOrders) {
+        enqueueDeliveryRetries(orderId, vendorOrders);
+
+        Map<String, Future<Map<String, Object>>> pending = new LinkedHashMap<>();
         List<Map<String, Object>> results = new ArrayList<>();
-        
+
         for (Map<String, Object> vendorOrder : vendorOrders) {
             String vendorId = (String) vendorOrder.get("vendor_id");
-            Map<String, Object> result = createDeliveryOrder(orderId, vendorId, vendorOrder);
-            result.put("vendor_id", vendorId);
-            results.add(result);
+            try {
+                pending.put(vendorId, deliveryTaskExecutor.submit(() -> attemptDelivery(orderId, vendorId, vendorOrder, 1)));
+            } catch (RejectedExecutionException e) {
+                results.add(deliveryResult(vendorId, false, "Delivery queue full, retrying in background"));
+            }
         }
-        
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(createTimeoutSeconds);
+        for (Map.Entry<String, Future<Map<String, Object>>> entry : pending.entrySet()) {
+            String vendorId = entry.getKey();
+            try {
+                Map<String, Object> result = new HashMap<>(entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                result.put("vendor_id", vendorId);
+                results.add(result);
+            } catch (TimeoutException e) {
+                // Left running: it records its own outcome on the retry row
+                results.add(deliveryResult(vendorId, false, "Delivery creation still in progress"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(deliveryResult(vendorId, false, "Interrupted"));
+            } catch (ExecutionException e) {
+                results.add(deliveryResult(vendorId, false, String.valueOf(e.getCause().getMessage())));
+            }
+        }
+
         return results;
     }
 
     /**
-     * Update delivery status from webhook
+     * Runs due delivery retries on the delivery executor; called by DeliverySyncService.
+     * Claimed rows are leased, so a retry lost to a crash or a full queue comes back later.
+     */
+    public int retryPendingDeliveries() {
+        List<Map<String, Object>> due = deliveryRepository.claimDueDeliveryRetries(retryBatchSize, retryLeaseSeconds);
+        for (Map<String, Object> row : due) {
+            String orderId = (String) row.get("order_id");
+            String vendorId = (String) row.get("vendor_id");
+            int attempt = (Integer) row.get("attempts") + 1;
+            Map<String, Object> vendorOrder;
+            try {
+                vendorOrder = objectMapper.readValue((String) row.get("request"), new TypeReference<Map<String, Object>>() {});
+            } catch (Exception e) {
+                deliveryRepository.recordDeliveryRetryFailure(orderId, vendorId, attempt, "Unreadable request: " + e.getMessage(), 0, true);
+                continue;
+            }
+            try {
+                deliveryTaskExecutor.submit(() -> attemptDelivery(orderId, vendorId, vendorOrder, attempt));
+            } catch (RejectedExecutionException e) {
+                // The rest stay leased and are claimed again once the lease runs out
+                System.err.println("Delivery queue full, deferring remaining delivery retries until their lease expires");
+                break;
+            }
+        }
+        return due.size();
+    }
+
+    private void enqueueDeliveryRetries(String orderId, List<Map<String, Object>> vendorOrders) {
+        try {
+            // First retry only after the checkout attempt has had its full window
+            long firstDelaySeconds = createTimeoutSeconds + createRetryDelaySeconds;
+            List<Object[]> rows = new ArrayList<>(vendorOrders.size());
+            for (Map<String, Object> vendorOrder : vendorOrders) {
+                rows.add(new Object[]{orderId, vendorOrder.get("vendor_id"), objectMapper.writeValueAsString(vendorOrder), firstDelaySeconds});
+            }
+            deliveryRepository.enqueueDeliveryRetries(rows);
+        } catch (Exception e) {
+            // Checkout still attempts every vendor; only the background safety net is missing
+            System.err.println("Error recording delivery retries for order " + orderId + ": " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> attemptDelivery(String orderId, String vendorId, Map<String, Object> vendorOrder, int attempt) {
+        Map<String, Object> result = createDeliveryOrder(orderId, vendorId, vendorOrder);
+        try {
+            if (Boolean.TRUE.equals(result.get("success"))) {
+                deliveryRepository.deleteDeliveryRetry(orderId, vendorId);
+            } else {
+                boolean gaveUp = attempt >= createMaxAttempts;
+                long delaySeconds = createRetryDelaySeconds * (1L << Math.min(attempt - 1, 6));
+                deliveryRepository.recordDeliveryRetryFailure(orderId, vendorId, attempt,
+                    String.valueOf(result.get("error")), delaySeconds, gaveUp);
+                if (gaveUp) {
+                    System.err.println("Giving up creating delivery for order " + orderId + " vendor " + vendorId + " after " + attempt + " attempts");
+                } else {
+                    System.out.println("Retrying delivery for order " + orderId + " vendor " + vendorId + " in " + delaySeconds + "s (attempt " + (attempt + 1) + ")");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error recording delivery attempt for order " + orderId + " vendor " + vendorId + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private Map<String, Object> deliveryResult(String vendorId, boolean success, String error) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("vendor_id", vendorId);
+        result.put("success", success);
+        result.put("error", error);
+        return result;
+    }
+
+    /**
+     * Update delivery status from webhook. Idempotent: the webhook worker may replay an event.
      */
     public void updateDeliveryStatus(String fincartOrderId, Map<String, Object> webhookData) {
         try {
@@ -127,26 +288,16 @@ public class DeliveryService {
             Long invoicedAt = webhookData.get("invoicedAt") != null ? 
                 ((Number) webhookData.get("invoicedAt")).longValue() : null;
             
-            // Update delivery record
-            deliveryRepository.updateDeliveryStatus(fincartOrderId, status, subStatus, rejectionReason,
+            // Update and log in one statement; a replayed event with an unchanged status writes no log and sends no email
+            String orderId = deliveryRepository.applyWebhookStatus(fincartOrderId, status, subStatus, rejectionReason,
                 supportNote, trackingNumber, returnTrackingNumber, courier, courierLogo, invoiced, invoicedAt);
-            
-            // Get delivery details for logging
-            Map<String, Object> delivery = deliveryRepository.getDeliveryByFincartOrderId(fincartOrderId);
-            if (delivery != null) {
-                // Log status change
-                deliveryRepository.insertDeliveryLog(
-                    (String) delivery.get("id"), status, subStatus, rejectionReason, supportNote,
-                    trackingNumber, returnTrackingNumber, courier, courierLogo, invoiced, invoicedAt,
-                    "Status updated via webhook"
-                );
-                
-                // Send customer notification
-                sendStatusUpdateNotification((String) delivery.get("order_id"), fincartOrderId, status, subStatus);
+            if (orderId != null) {
+                sendStatusUpdateNotification(orderId, fincartOrderId, status, subStatus);
             }
             
         } catch (Exception e) {
             System.err.println("Error updating delivery status: " + e.getMessage());
+            throw new RuntimeException("Failed to update delivery status", e);
         }
     }
 
@@ -205,36 +356,36 @@ public class DeliveryService {
     }
 
     /**
-     * Sync pickup locations from Fincart
+     * Sync pickup locations from Fincart: diff against the table and upsert only new or changed rows in one batch
      */
     public void syncPickupLocations() {
         try {
             String accessToken = getValidAccessToken();
             List<Map<String, Object>> locations = fincartApiService.getPickupLocations(accessToken);
+            Map<String, Map<String, Object>> existing = deliveryRepository.getPickupLocationsByFincartId();
             
+            List<Object[]> upserts = new ArrayList<>();
             for (Map<String, Object> location : locations) {
                 String fincartId = (String) location.get("id");
-                String name = (String) location.get("name");
-                String city = (String) location.get("city");
-                String area = (String) location.get("area");
-                String address = (String) location.get("address");
-                String contactPerson = (String) location.get("contact_person");
-                String contactPhone = (String) location.get("contact_phone");
+                if (fincartId == null) continue;
+                Object[] row = new Object[]{
+                    // New locations are not tied to a vendor yet (you'll need to map vendor_id somehow)
+                    "00000000-0000-0000-0000-000000000000", fincartId,
+                    location.get("name"), location.get("city"), location.get("area"),
+                    location.get("address"), location.get("contact_person"), location.get("contact_phone")
+                };
                 
-                // Check if location exists
-                Map<String, Object> existing = deliveryRepository.getPickupLocationByFincartId(fincartId);
-                if (existing == null) {
-                    // Insert new location (you'll need to map vendor_id somehow)
-                    deliveryRepository.insertPickupLocation("00000000-0000-0000-0000-000000000000", 
-                        fincartId, name, city, area, address, contactPerson, contactPhone);
-                } else {
-                    // Update existing
-                    deliveryRepository.updatePickupLocation((String) existing.get("id"), name, city, area, 
-                        address, contactPerson, contactPhone, true);
+                Map<String, Object> current = existing.get(fincartId);
+                if (current == null || !Boolean.TRUE.equals(current.get("is_active"))
+                        || !Objects.equals(current.get("name"), row[2]) || !Objects.equals(current.get("city"), row[3])
+                        || !Objects.equals(current.get("area"), row[4]) || !Objects.equals(current.get("address"), row[5])
+                        || !Objects.equals(current.get("contact_person"), row[6]) || !Objects.equals(current.get("contact_phone"), row[7])) {
+                    upserts.add(row);
                 }
             }
+            deliveryRepository.upsertPickupLocations(upserts);
             
-            System.out.println("Synced " + locations.size() + " pickup locations");
+            System.out.println("Synced " + locations.size() + " pickup locations (" + upserts.size() + " changed)");
             
         } catch (Exception e) {
             System.err.println("Error syncing pickup locations: " + e.getMessage());
@@ -242,28 +393,102 @@ public class DeliveryService {
     }
 
     /**
-     * Sync delivery areas from Fincart
+     * Sync delivery areas from Fincart: one batched upsert for new or changed areas, one batched
+     * disable for areas Fincart no longer returns, then swap the in-memory snapshot
      */
     public void syncDeliveryAreas() {
         try {
             String accessToken = getValidAccessToken();
             List<Map<String, Object>> areas = fincartApiService.getCitiesAndAreas(accessToken);
             
+            Map<String, Boolean> current = new HashMap<>();
+            for (Map<String, Object> row : deliveryRepository.getAllDeliveryAreas()) {
+                current.put(areaKey((String) row.get("city"), (String) row.get("area")), (Boolean) row.get("is_available"));
+            }
+            
+            List<Object[]> upserts = new ArrayList<>();
+            Set<String> fetched = new HashSet<>();
             for (Map<String, Object> area : areas) {
                 String city = (String) area.get("city");
                 String areaName = (String) area.get("area");
+                if (city == null || areaName == null) continue;
                 Boolean isAvailable = (Boolean) area.get("is_available");
+                boolean available = isAvailable != null ? isAvailable : true;
                 
-                deliveryRepository.insertDeliveryArea(city, areaName, isAvailable != null ? isAvailable : true);
+                String key = areaKey(city, areaName);
+                fetched.add(key);
+                if (!Objects.equals(current.get(key), available)) {
+                    upserts.add(new Object[]{city, areaName, available});
+                }
+            }
+            
+            List<Object[]> removals = new ArrayList<>();
+            long currentlyAvailable = current.values().stream().filter(Boolean.TRUE::equals).count();
+            // A failed or partial fetch must not switch off most of the country
+            if (fetched.size() * 2L >= currentlyAvailable) {
+                for (Map.Entry<String, Boolean> entry : current.entrySet()) {
+                    if (Boolean.TRUE.equals(entry.getValue()) && !fetched.contains(entry.getKey())) {
+                        String[] parts = entry.getKey().split("\0", 2);
+                        removals.add(new Object[]{parts[0], parts[1]});
+                    }
+                }
+            } else {
+                System.err.println("Fincart returned " + fetched.size() + " areas for " + currentlyAvailable + " available; not disabling missing areas");
             }
             
-            System.out.println("Synced " + areas.size() + " delivery areas");
+            deliveryRepository.upsertDeliveryAreas(upserts);
+            deliveryRepository.disableDeliveryAreas(removals);
+            refreshDeliveryAreaSnapshot();
+            
+            System.out.println("Synced " + areas.size() + " delivery areas (" + upserts.size() + " changed, " + removals.size() + " disabled)");
             
         } catch (Exception e) {
             System.err.println("Error syncing delivery areas: " + e.getMessage());
         }
     }
 
+    /**
+     * Available delivery areas, optionally for one city, served from the in-memory snapshot
+     */
+    public List<Map<String, Object>> getAvailableDeliveryAreas(String city) {
+        DeliveryAreaSnapshot snapshot = deliveryAreaSnapshot.get();
+        if (snapshot == null || System.currentTimeMillis() - snapshot.loadedAtMillis > TimeUnit.MINUTES.toMillis(areaSnapshotTtlMinutes)) {
+            snapshot = refreshDeliveryAreaSnapshot();
+        }
+        if (city == null) return snapshot.all;
+        return snapshot.byCity.getOrDefault(city, List.of());
+    }
+
+    private DeliveryAreaSnapshot refreshDeliveryAreaSnapshot() {
+        DeliveryAreaSnapshot snapshot = new DeliveryAreaSnapshot(deliveryRepository.getAvailableDeliveryAreas());
+        deliveryAreaSnapshot.set(snapshot);
+        return snapshot;
+    }
+
+    private static String areaKey(String city, String area) {
+        return city + "\0" + area;
+    }
+
+    // Immutable view of available areas; replaced as a whole so readers never see a partial sync
+    private static class DeliveryAreaSnapshot {
+        final List<Map<String, Object>> all;
+        final Map<String, List<Map<String, Object>>> byCity;
+        final long loadedAtMillis = System.currentTimeMillis();
+
+        DeliveryAreaSnapshot(List<Map<String, Object>> rows) {
+            List<Map<String, Object>> areas = new ArrayList<>(rows.size());
+            Map<String, List<Map<String, Object>>> cities = new HashMap<>();
+            for (Map<String, Object> row : rows) {
+                Map<String, Object> area = Collections.unmodifiableMap(row);
+                areas.add(area);
+                cities.computeIfAbsent((String) row.get("city"), c -> new ArrayList<>()).add(area);
+            }
+            cities.replaceAll((c, list) -> Collections.unmodifiableList(list));
+            this.all = Collections.unmodifiableList(areas);
+            this.byCity = cities;
+        }
+    }
+
     /**
      * Generate delivery labels
      */
@@ -292,22 +517,8 @@ public class DeliveryService {
 
     // Helper Methods
 
-    private String getValidAccessToken() {
-        // Check if we have a valid token in database
-        Map<String, Object> config = deliveryRepository.getFincartConfig();
-        if (config != null) {
-            LocalDateTime expiresAt = ((java.sql.Timestamp) config.get("token_expires_at")).toLocalDateTime();
-            if (expiresAt.isAfter(LocalDateTime.now().plusMinutes(5))) {
-                return (String) config.get("access_token");
-            }
-        }
-        
-        // Get new token
-        String newToken = fincartApiService.authenticate();
-        long expiresAt = LocalDateTime.now().plusHours(24).toEpochSecond(ZoneOffset.UTC);
-        deliveryRepository.updateFincartToken(newToken, expiresAt);
-        
-        return newToken;
+    public String getValidAccessToken() {
+        return fincartTokenManager.getAccessToken();
     }
 
     private Map<String, Object> buildFincartOrderRequest(Map<String, Object> orderData, 
@@ -370,7 +581,8 @@ public class DeliveryService {
         }
     }
 
-    private void sendStatusUpdateNotification(String orderId, String fincartOrderId, String status, String subStatus) {
+    // Also used by DeliverySyncService for status changes picked up by the poller
+    public void sendStatusUpdateNotification(String orderId, String fincartOrderId, String status, String subStatus) {
         try {
             // Send email notification for status update
             Map<String, Object> emailData = new HashMap<>();
@@ -1,10 +1,20 @@
 package com.Daad.ecommerce.service;
 
+import com.Daad.ecommerce.http.TokenBucket;
 import com.Daad.ecommerce.repository.DeliveryRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 @Service
 public class DeliverySyncService {
 
@@ -14,6 +24,26 @@ public class DeliverySyncService {
     @Autowired
     private DeliveryRepository deliveryRepository;
 
+    @Autowired
+    private FincartApiService fincartApiService;
+
+    @Value("${delivery.sync.parallelism:4}")
+    private int syncParallelism;
+
+    @Value("${delivery.sync.requests-per-second:5}")
+    private double syncRequestsPerSecond;
+
+    @Value("${delivery.sync.page-size:200}")
+    private int syncPageSize;
+
+    @Value("${delivery.sync.poll-timeout-seconds:30}")
+    private long syncPollTimeoutSeconds;
+
+    // Statuses Fincart never moves a delivery out of
+    private static final List<String> TERMINAL_STATUSES = List.of("delivered", "cancelled", "returned", "rejected");
+
+    private final AtomicBoolean deliveryPollRunning = new AtomicBoolean(false);
+
     /**
      * Sync pickup locations daily at 2 AM
      */
@@ -43,74 +73,142 @@ public class DeliverySyncService {
     }
 
     /**
-     * Sync pending delivery statuses hourly
+     * Run delivery creations that failed or were interrupted at checkout (delivery_create_retries)
+     */
+    @Scheduled(fixedDelayString = "${delivery.create.retry-poll-ms:30000}")
+    public void retryPendingDeliveries() {
+        try {
+            int claimed = deliveryService.retryPendingDeliveries();
+            if (claimed > 0) {
+                System.out.println("Resubmitted " + claimed + " pending delivery creations");
+            }
+        } catch (Exception e) {
+            System.err.println("Error retrying pending deliveries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Poll Fincart hourly for deliveries that can still change status. Deliveries are paged
+     * by id, their logs fetched concurrently (bounded pool plus a request rate limit), and only
+     * actual status changes are written back, one batch per page.
      */
     @Scheduled(cron = "0 0 * * * *")
     public void syncPendingDeliveries() {
+        if (!deliveryPollRunning.compareAndSet(false, true)) {
+            System.out.println("Delivery status sync already running, skipping");
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, syncParallelism));
         try {
-            System.out.println("Starting hourly pending deliveries sync...");
-            
-            // Get all pending and processing deliveries
-            var pendingDeliveries = deliveryRepository.getDeliveriesByStatus("pending");
-            var processingDeliveries = deliveryRepository.getDeliveriesByStatus("processing");
-            
-            int syncedCount = 0;
-            
-            // Sync pending deliveries
-            for (var delivery : pendingDeliveries) {
-                try {
-                    String fincartOrderId = (String) delivery.get("fincart_order_id");
-                    if (fincartOrderId != null) {
-                        // In a real implementation, you would call Fincart API to get latest status
-                        // For now, we'll just log that we would sync this
-                        System.out.println("Would sync pending delivery: " + fincartOrderId);
-                        syncedCount++;
+            System.out.println("Starting hourly delivery status sync...");
+
+            String accessToken = deliveryService.getValidAccessToken();
+            if (accessToken == null || accessToken.startsWith("dummy_")) {
+                System.out.println("Fincart access token not configured, skipping delivery status sync");
+                return;
+            }
+
+            // Burst of 1 spaces calls evenly so the poll never exceeds the configured rate
+            TokenBucket rateLimiter = new TokenBucket(syncRequestsPerSecond, 1);
+            int checkedCount = 0;
+            int changedCount = 0;
+            String afterId = null;
+
+            while (true) {
+                List<Map<String, Object>> page = deliveryRepository.getNonTerminalDeliveriesPage(TERMINAL_STATUSES, afterId, syncPageSize);
+                if (page.isEmpty()) break;
+
+                List<Future<Object[]>> polls = new ArrayList<>(page.size());
+                Map<String, String> orderIds = new HashMap<>();
+                for (Map<String, Object> delivery : page) {
+                    orderIds.put((String) delivery.get("fincart_order_id"), (String) delivery.get("order_id"));
+                    polls.add(executor.submit(() -> {
+                        rateLimiter.acquire();
+                        return pollStatusChange(accessToken, delivery);
+                    }));
+                }
+
+                List<Object[]> updates = new ArrayList<>();
+                for (int i = 0; i < polls.size(); i++) {
+                    Future<Object[]> poll = polls.get(i);
+                    try {
+                        Object[] update = poll.get(syncPollTimeoutSeconds, TimeUnit.SECONDS);
+                        if (update != null) updates.add(update);
+                    } catch (TimeoutException e) {
+                        poll.cancel(true);
+                        System.err.println("Timed out polling delivery " + page.get(i).get("fincart_order_id"));
+                    } catch (ExecutionException e) {
+                        System.err.println("Error syncing delivery " + page.get(i).get("fincart_order_id") + ": " + e.getCause().getMessage());
                     }
-                } catch (Exception e) {
-                    System.err.println("Error syncing pending delivery: " + e.getMessage());
                 }
-            }
-            
-            // Sync processing deliveries
-            for (var delivery : processingDeliveries) {
-                try {
-                    String fincartOrderId = (String) delivery.get("fincart_order_id");
-                    if (fincartOrderId != null) {
-                        // In a real implementation, you would call Fincart API to get latest status
-                        // For now, we'll just log that we would sync this
-                        System.out.println("Would sync processing delivery: " + fincartOrderId);
-                        syncedCount++;
+
+                // Same email the webhook path sends; a later webhook for this status is then a no-op
+                List<Object[]> changed = deliveryRepository.updateDeliveryStatuses(updates);
+                for (Object[] update : changed) {
+                    String orderId = orderIds.get((String) update[0]);
+                    if (orderId != null) {
+                        deliveryService.sendStatusUpdateNotification(orderId, (String) update[0], (String) update[1], (String) update[2]);
                     }
-                } catch (Exception e) {
-                    System.err.println("Error syncing processing delivery: " + e.getMessage());
                 }
+                checkedCount += page.size();
+                changedCount += changed.size();
+
+                if (page.size() < syncPageSize) break;
+                afterId = (String) page.get(page.size() - 1).get("id");
             }
-            
-            System.out.println("Pending deliveries sync completed. Synced: " + syncedCount);
-            
+
+            System.out.println("Delivery status sync completed. Checked: " + checkedCount + ", updated: " + changedCount);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Delivery status sync interrupted");
         } catch (Exception e) {
-            System.err.println("Error in hourly pending deliveries sync: " + e.getMessage());
+            System.err.println("Error in hourly delivery status sync: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            deliveryPollRunning.set(false);
         }
     }
 
-    /**
-     * Clean up old webhook logs weekly (keep last 30 days)
-     */
-    @Scheduled(cron = "0 0 3 * * SUN")
-    public void cleanupOldWebhookLogs() {
-        try {
-            System.out.println("Starting weekly webhook logs cleanup...");
-            
-            // Delete webhook logs older than 30 days
-            String sql = "DELETE FROM delivery_webhook_logs WHERE created_at < NOW() - INTERVAL '30 days'";
-            // This would need to be implemented in DeliveryRepository
-            // deliveryRepository.cleanupOldWebhookLogs();
-            
-            System.out.println("Webhook logs cleanup completed");
-            
-        } catch (Exception e) {
-            System.err.println("Error in webhook logs cleanup: " + e.getMessage());
+    // Returns a batch row for DeliveryRepository.updateDeliveryStatuses, or null when nothing changed
+    private Object[] pollStatusChange(String accessToken, Map<String, Object> delivery) {
+        String fincartOrderId = (String) delivery.get("fincart_order_id");
+        List<Map<String, Object>> logs = fincartApiService.getOrderLogs(accessToken, fincartOrderId);
+        Map<String, Object> latest = latestLog(logs);
+        if (latest == null) return null;
+
+        String status = asString(latest.get("status"));
+        String subStatus = asString(latest.get("subStatus"));
+        if (status == null) return null;
+        if (status.equals(delivery.get("status")) && Objects.equals(subStatus, delivery.get("sub_status"))) {
+            return null;
         }
+        return new Object[]{
+            fincartOrderId, status, subStatus,
+            asString(latest.get("rejectionReason")), asString(latest.get("supportNote")),
+            asString(latest.get("trackingNumber")), asString(latest.get("courier"))
+        };
+    }
+
+    // Newest entry by createdAt when the logs carry one, otherwise the last entry
+    private Map<String, Object> latestLog(List<Map<String, Object>> logs) {
+        if (logs == null || logs.isEmpty()) return null;
+        Map<String, Object> latest = logs.get(logs.size() - 1);
+        long latestAt = Long.MIN_VALUE;
+        for (Map<String, Object> log : logs) {
+            if (log.get("createdAt") instanceof Number) {
+                long at = ((Number) log.get("createdAt")).longValue();
+                if (at >= latestAt) {
+                    latestAt = at;
+                    latest = log;
+                }
+            }
+        }
+        return latest;
+    }
+
+    private String asString(Object value) {
+        return value != null ? value.toString() : null;
     }
 
     /**
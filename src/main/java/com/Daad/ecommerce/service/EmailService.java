@@ -1,8 +1,6 @@
 package com.Daad.ecommerce.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.stereotype.Service;
 
 import com.Daad.ecommerce.model.User;
@@ -15,9 +13,6 @@ public class EmailService {
     @Autowired
     private AccountEmailService accountEmailService;
 
-    @Value("${spring.mail.username}")
-    private String fromEmail;
-
     @Autowired
     EmailTemplateService emailTemplateService;
 
@@ -38,7 +33,7 @@ public class EmailService {
             user.getUsername(), otp
         );
         
-        sendEmail(user.getEmail(), subject, body);
+        sendEmail(user.getEmail(), subject, body, NotificationDispatcher.PRIORITY_CRITICAL);
     }
 
     public void reSendOtp(User user) {
@@ -46,19 +41,11 @@ public class EmailService {
     }
 
     public void sendEmail(String to, String subject, String body) {
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(body);
+        sendEmail(to, subject, body, NotificationDispatcher.PRIORITY_TRANSACTIONAL);
+    }
 
-            emailTemplateService.sendTextEmail(to, subject, body);
-        } catch (Exception e) {
-            System.err.println("❌ Failed to send email to: " + to);
-            System.err.println("Error: " + e.getMessage());
-            e.printStackTrace();
-        }
+    public void sendEmail(String to, String subject, String body, int priority) {
+        emailTemplateService.sendTextEmail(to, subject, body, priority);
     }
 
     public void sendWelcomeEmail(User user) {
@@ -0,0 +1,155 @@
+package com.Daad.ecommerce.service;
+
+import com.azure.identity.ClientSecretCredential;
+import com.azure.identity.ClientSecretCredentialBuilder;
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import com.microsoft.graph.serviceclient.GraphServiceClient;
+import com.microsoft.graph.users.item.sendmail.SendMailPostRequestBody;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Delivers already rendered emails over the configured transport (notifications.transport).
+ * graph: one shared GraphServiceClient, so every send reuses its pooled HTTPS connections.
+ * smtp: each batch goes out through a single JavaMailSender.send(MimeMessage...) call, i.e.
+ * one SMTP session per batch instead of one per email.
+ */
+@Service
+@Slf4j
+public class EmailTransport {
+
+    @Value("${notifications.transport:graph}")
+    private String transport;
+
+    @Value("${microsoft.graph.client-id}")
+    private String clientId;
+
+    @Value("${microsoft.graph.tenant-id}")
+    private String tenantId;
+
+    @Value("${microsoft.graph.secret}")
+    private String clientSecret;
+
+    @Value("${microsoft.graph.sender-email}")
+    private String graphSenderEmail;
+
+    @Value("${spring.mail.username}")
+    private String smtpFromEmail;
+
+    @Autowired
+    private JavaMailSender javaMailSender;
+
+    private volatile GraphServiceClient graphClient;
+
+    /**
+     * Send a batch of outbox rows (id, recipient, subject, body, is_html). Returns the error
+     * for each email that could not be sent; an empty map means the whole batch went out.
+     */
+    public Map<Long, String> sendBatch(List<Map<String, Object>> emails) {
+        if (emails.isEmpty()) return Map.of();
+        return "smtp".equalsIgnoreCase(transport) ? sendViaSmtp(emails) : sendViaGraph(emails);
+    }
+
+    private Map<Long, String> sendViaGraph(List<Map<String, Object>> emails) {
+        Map<Long, String> failures = new HashMap<>();
+        GraphServiceClient client = graphClient();
+        for (Map<String, Object> email : emails) {
+            try {
+                client.users().byUserId(graphSenderEmail).sendMail().post(toGraphRequest(email));
+            } catch (Exception e) {
+                failures.put((Long) email.get("id"), String.valueOf(e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
+    private Map<Long, String> sendViaSmtp(List<Map<String, Object>> emails) {
+        Map<Long, String> failures = new HashMap<>();
+        List<MimeMessage> messages = new ArrayList<>(emails.size());
+        Map<MimeMessage, Long> ids = new IdentityHashMap<>();
+        for (Map<String, Object> email : emails) {
+            try {
+                MimeMessage message = javaMailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+                helper.setFrom(smtpFromEmail);
+                helper.setTo((String) email.get("recipient"));
+                helper.setSubject((String) email.get("subject"));
+                helper.setText((String) email.get("body"), Boolean.TRUE.equals(email.get("is_html")));
+                messages.add(message);
+                ids.put(message, (Long) email.get("id"));
+            } catch (MessagingException e) {
+                failures.put((Long) email.get("id"), String.valueOf(e.getMessage()));
+            }
+        }
+        if (messages.isEmpty()) return failures;
+
+        try {
+            javaMailSender.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                ids.values().forEach(id -> failures.put(id, String.valueOf(e.getMessage())));
+            }
+            for (Map.Entry<Object, Exception> failed : e.getFailedMessages().entrySet()) {
+                Long id = ids.get(failed.getKey());
+                if (id != null) failures.put(id, String.valueOf(failed.getValue().getMessage()));
+            }
+        } catch (MailException e) {
+            ids.values().forEach(id -> failures.put(id, String.valueOf(e.getMessage())));
+        }
+        return failures;
+    }
+
+    private SendMailPostRequestBody toGraphRequest(Map<String, Object> email) {
+        Message message = new Message();
+        message.setSubject((String) email.get("subject"));
+
+        ItemBody body = new ItemBody();
+        body.setContentType(Boolean.TRUE.equals(email.get("is_html")) ? BodyType.Html : BodyType.Text);
+        body.setContent((String) email.get("body"));
+        message.setBody(body);
+
+        Recipient toRecipient = new Recipient();
+        EmailAddress emailAddress = new EmailAddress();
+        emailAddress.setAddress((String) email.get("recipient"));
+        toRecipient.setEmailAddress(emailAddress);
+        message.setToRecipients(List.of(toRecipient));
+
+        SendMailPostRequestBody sendMailPostRequestBody = new SendMailPostRequestBody();
+        sendMailPostRequestBody.setMessage(message);
+        sendMailPostRequestBody.setSaveToSentItems(true);
+        return sendMailPostRequestBody;
+    }
+
+    private GraphServiceClient graphClient() {
+        GraphServiceClient client = graphClient;
+        if (client == null) {
+            synchronized (this) {
+                client = graphClient;
+                if (client == null) {
+                    ClientSecretCredential credential = new ClientSecretCredentialBuilder()
+                            .clientId(clientId)
+                            .clientSecret(clientSecret)
+                            .tenantId(tenantId)
+                            .build();
+                    client = new GraphServiceClient(credential, "https://graph.microsoft.com/.default");
+                    graphClient = client;
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -1,5 +1,6 @@
 package com.Daad.ecommerce.service;
 
+import com.Daad.ecommerce.http.UpstreamHttpClients;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
@@ -25,8 +26,8 @@ public class FincartApiService {
     @Value("${fincart.webhook.secret:}")
     private String webhookSecret;
 
-    public FincartApiService() {
-        this.restTemplate = new RestTemplate();
+    public FincartApiService(UpstreamHttpClients upstreamHttpClients) {
+        this.restTemplate = upstreamHttpClients.restTemplate(UpstreamHttpClients.FINCART);
         this.objectMapper = new ObjectMapper();
     }
 
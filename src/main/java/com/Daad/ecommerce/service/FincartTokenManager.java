@@ -0,0 +1,144 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.repository.DeliveryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the live Fincart access token in memory and refreshes it ahead of expiry.
+ * Only one refresh runs at a time; concurrent callers wait for and share its result.
+ * The fincart_config table is only read when nothing usable is in memory (e.g. after a restart).
+ */
+@Service
+public class FincartTokenManager {
+
+    private static class CachedToken {
+        final String token;
+        final LocalDateTime expiresAt;
+
+        CachedToken(String token, LocalDateTime expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isValidAt(LocalDateTime time) {
+            return expiresAt.isAfter(time);
+        }
+    }
+
+    @Autowired
+    private FincartApiService fincartApiService;
+
+    @Autowired
+    private DeliveryRepository deliveryRepository;
+
+    @Value("${fincart.token.lifetime-hours:24}")
+    private long tokenLifetimeHours;
+
+    @Value("${fincart.token.refresh-margin-minutes:30}")
+    private long refreshMarginMinutes;
+
+    private volatile CachedToken current;
+    private final AtomicReference<CompletableFuture<CachedToken>> inFlightRefresh = new AtomicReference<>();
+
+    /**
+     * Get a token that is valid for at least the next few minutes
+     */
+    public String getAccessToken() {
+        CachedToken token = current;
+        if (token != null && token.isValidAt(LocalDateTime.now().plusMinutes(5))) {
+            return token.token;
+        }
+
+        if (token == null) {
+            token = loadPersistedToken();
+            if (token != null) {
+                current = token;
+                return token.token;
+            }
+        }
+
+        return refresh().token;
+    }
+
+    /**
+     * Proactively refresh shortly before expiry so request threads never wait on it
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refreshIfExpiring() {
+        CachedToken token = current;
+        if (token != null && token.isValidAt(LocalDateTime.now().plusMinutes(refreshMarginMinutes))) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            System.err.println("Error refreshing Fincart token: " + e.getMessage());
+        }
+    }
+
+    // Single-flight: the first caller refreshes, everyone arriving meanwhile joins its result
+    private CachedToken refresh() {
+        CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = inFlightRefresh.compareAndExchange(null, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            CachedToken token = fetchNewToken();
+            current = token;
+            mine.complete(token);
+            return token;
+        } catch (RuntimeException e) {
+            CachedToken stale = current;
+            if (stale != null && stale.isValidAt(LocalDateTime.now())) {
+                // Keep serving the old token until it actually expires
+                System.err.println("Fincart token refresh failed, using current token: " + e.getMessage());
+                mine.complete(stale);
+                return stale;
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRefresh.set(null);
+        }
+    }
+
+    private CachedToken fetchNewToken() {
+        String newToken = fincartApiService.authenticate();
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(tokenLifetimeHours);
+        // Development placeholders are not worth persisting across restarts
+        if (!newToken.startsWith("dummy_")) {
+            deliveryRepository.updateFincartToken(newToken, expiresAt.toEpochSecond(ZoneOffset.UTC));
+        }
+        return new CachedToken(newToken, expiresAt);
+    }
+
+    private CachedToken loadPersistedToken() {
+        try {
+            Map<String, Object> config = deliveryRepository.getFincartConfig();
+            if (config == null || config.get("token_expires_at") == null) return null;
+            LocalDateTime expiresAt = ((Timestamp) config.get("token_expires_at")).toLocalDateTime();
+            if (!expiresAt.isAfter(LocalDateTime.now().plusMinutes(5))) return null;
+            return new CachedToken((String) config.get("access_token"), expiresAt);
+        } catch (Exception e) {
+            System.err.println("Error loading persisted Fincart token: " + e.getMessage());
+            return null;
+        }
+    }
+}
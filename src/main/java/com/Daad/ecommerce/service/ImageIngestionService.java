@@ -0,0 +1,287 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.repository.ImageAssetRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies remote images (vendor product sync) into Backblaze.
+ *
+ * Downloads stream to a temp file while being hashed, so an image never sits in the heap;
+ * the file is then streamed to B2 under a content-addressed key. A URL fetched before is not
+ * downloaded again, and bytes already stored (same SHA-256) are not uploaded again. Work runs
+ * on a bounded pool. Downloads beyond the per-host limit wait in that host's queue rather than
+ * in a worker, and each download has a deadline covering the body, so one slow vendor site
+ * cannot take every worker.
+ */
+@Service
+@Slf4j
+public class ImageIngestionService {
+
+    @Autowired
+    private BackblazeService backblazeService;
+
+    @Autowired
+    private ImageAssetRepository imageAssetRepository;
+
+    @Value("${images.ingest.per-host:4}")
+    private int perHostLimit;
+
+    @Value("${images.ingest.read-timeout-ms:20000}")
+    private long readTimeoutMillis;
+
+    @Value("${images.ingest.download-timeout-ms:60000}")
+    private long downloadTimeoutMillis;
+
+    @Value("${images.ingest.max-bytes:26214400}")
+    private long maxBytes;
+
+    @Value("${images.ingest.key-prefix:products/images}")
+    private String keyPrefix;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService deadlines;
+    private final HttpClient httpClient;
+    private final Map<String, HostQueue> hostQueues = new ConcurrentHashMap<>();
+
+    public ImageIngestionService(@Value("${images.ingest.parallelism:8}") int parallelism,
+                                 @Value("${images.ingest.connect-timeout-ms:5000}") long connectTimeoutMillis) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "Image-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Image-ingest-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Ingest the given URLs in parallel. The future completes with the stored images in input
+     * order; images that fail are logged and left out.
+     */
+    public CompletableFuture<List<BackblazeService.UploadResult>> ingestAll(List<String> imageUrls) {
+        List<CompletableFuture<BackblazeService.UploadResult>> futures = new ArrayList<>(imageUrls.size());
+        for (String imageUrl : imageUrls) {
+            CompletableFuture<BackblazeService.UploadResult> future = new CompletableFuture<>();
+            futures.add(future);
+            hostQueue(imageUrl).submit(() -> {
+                try {
+                    future.complete(ingest(imageUrl));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.complete(null);
+                } catch (Exception e) {
+                    log.warn("Failed to ingest remote image {}: {}", imageUrl, e.getMessage());
+                    future.complete(null);
+                }
+            });
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+    }
+
+    public BackblazeService.UploadResult ingest(String imageUrl) throws IOException, InterruptedException {
+        Map<String, Object> known = imageAssetRepository.findBySourceUrl(imageUrl);
+        if (known != null) {
+            return toResult(known);
+        }
+
+        Path temp = Files.createTempFile("image-ingest-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            String contentType = download(URI.create(imageUrl), temp, digest);
+            String hash = HexFormat.of().formatHex(digest.digest());
+
+            Map<String, Object> asset = imageAssetRepository.findByHash(hash);
+            if (asset == null) {
+                String filename = imageUrl.substring(imageUrl.lastIndexOf('/') + 1);
+                contentType = backblazeService.determineContentType(contentType, filename.toLowerCase());
+                String key = keyPrefix + "/" + hash.substring(0, 2) + "/" + hash + extensionFor(contentType);
+                BackblazeService.UploadResult uploaded = backblazeService.uploadFile(temp, key, contentType);
+                imageAssetRepository.insertAsset(hash, key, uploaded.url, contentType, Files.size(temp), uploaded.variants);
+                asset = imageAssetRepository.findByHash(hash);
+            }
+            imageAssetRepository.upsertSource(imageUrl, hash);
+            return toResult(asset);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private HostQueue hostQueue(String imageUrl) {
+        String host;
+        try {
+            host = String.valueOf(URI.create(imageUrl).getHost());
+        } catch (IllegalArgumentException e) {
+            host = "";
+        }
+        return hostQueues.computeIfAbsent(host, h -> new HostQueue());
+    }
+
+    /**
+     * Streams the body into target while hashing it; returns the response Content-Type, if any.
+     * The request timeout only covers the wait for headers, so the body read has its own deadline:
+     * when it passes, the stream is closed, which cancels the exchange and unblocks the read.
+     */
+    private String download(URI uri, Path target, MessageDigest digest) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(readTimeoutMillis))
+                .GET()
+                .build();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        InputStream body = response.body();
+        AtomicBoolean expired = new AtomicBoolean(false);
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+            expired.set(true);
+            try {
+                body.close();
+            } catch (IOException ignored) {
+                // the reader fails either way
+            }
+        }, downloadTimeoutMillis, TimeUnit.MILLISECONDS);
+        try (InputStream in = new DigestInputStream(body, digest);
+             OutputStream out = Files.newOutputStream(target)) {
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new IOException("Image larger than " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            if (expired.get()) {
+                throw new IOException("Download exceeded " + downloadTimeoutMillis + " ms", e);
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+        }
+        // A stream closed by the deadline reads as end of body
+        if (expired.get()) {
+            throw new IOException("Download exceeded " + downloadTimeoutMillis + " ms");
+        }
+        return response.headers().firstValue("Content-Type")
+                .map(value -> value.split(";")[0].trim())
+                .filter(value -> value.startsWith("image/"))
+                .orElse(null);
+    }
+
+    /**
+     * Admits at most perHostLimit downloads of one host to the pool. Work over the limit waits
+     * here, not in a pool worker, and is handed to the pool as the host's running work finishes.
+     */
+    private class HostQueue {
+        private final Deque<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+
+        void submit(Runnable task) {
+            Runnable admitted;
+            synchronized (this) {
+                if (running >= Math.max(1, perHostLimit)) {
+                    waiting.addLast(task);
+                    return;
+                }
+                running++;
+                admitted = task;
+            }
+            start(admitted);
+        }
+
+        private void start(Runnable task) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        next();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                next();
+            }
+        }
+
+        private void next() {
+            Runnable task;
+            synchronized (this) {
+                task = waiting.pollFirst();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            start(task);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BackblazeService.UploadResult toResult(Map<String, Object> asset) {
+        String key = (String) asset.get("storage_key");
+        return new BackblazeService.UploadResult((String) asset.get("url"), key, key.substring(key.lastIndexOf('/') + 1),
+                (Map<String, String>) asset.get("variants"));
+    }
+
+    private static String extensionFor(String contentType) {
+        switch (contentType) {
+            case "image/jpeg": return ".jpg";
+            case "image/png": return ".png";
+            case "image/gif": return ".gif";
+            case "image/webp": return ".webp";
+            default: return "";
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        deadlines.shutdownNow();
+    }
+}
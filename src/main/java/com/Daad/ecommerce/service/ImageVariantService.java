@@ -0,0 +1,187 @@
+package com.Daad.ecommerce.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resized, re-encoded copies of uploaded images so listings never ship full-size originals.
+ * Pure JDK (ImageIO + Java2D), no native libraries. Variants are bounded by their longest
+ * side, never upscaled, and written as JPEG (PNG when the source has transparency).
+ *
+ * Sources are untrusted (vendor feeds, uploads), so the dimensions are read from the header
+ * first and images over images.variants.max-pixels are rejected before any pixel is decoded.
+ * Large sources are decoded with subsampling, down to about twice the largest variant.
+ */
+@Service
+public class ImageVariantService {
+
+    public static final String THUMB = "thumb";
+    public static final String CARD = "card";
+    public static final String DETAIL = "detail";
+
+    // Longest side in pixels, largest first so each variant is scaled from the previous one
+    private static final Map<String, Integer> SIZES = new LinkedHashMap<>();
+    static {
+        SIZES.put(DETAIL, 1200);
+        SIZES.put(CARD, 480);
+        SIZES.put(THUMB, 160);
+    }
+
+    @Value("${images.variants.jpeg-quality:0.82}")
+    private float jpegQuality;
+
+    // 50 megapixels; a decoded ARGB image of this size is ~200 MB
+    @Value("${images.variants.max-pixels:50000000}")
+    private long maxPixels;
+
+    public static class Variant {
+        public final String name;
+        public final String contentType;
+        public final String extension;
+        public final byte[] data;
+
+        public Variant(String name, String contentType, String extension, byte[] data) {
+            this.name = name;
+            this.contentType = contentType;
+            this.extension = extension;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Decode the image and produce every variant; returns an empty list when ImageIO cannot
+     * decode the format (e.g. WebP, SVG), in which case callers keep serving the original.
+     * Throws IOException for images larger than the pixel cap.
+     */
+    public List<Variant> generate(InputStream in) throws IOException {
+        BufferedImage source = decode(in);
+        if (source == null) {
+            return List.of();
+        }
+        boolean alpha = source.getColorModel().hasAlpha();
+
+        List<Variant> variants = new ArrayList<>(SIZES.size());
+        BufferedImage current = source;
+        for (Map.Entry<String, Integer> size : SIZES.entrySet()) {
+            current = scaleDown(current, size.getValue(), alpha);
+            variants.add(alpha
+                    ? new Variant(size.getKey(), "image/png", "png", encodePng(current))
+                    : new Variant(size.getKey(), "image/jpeg", "jpg", encodeJpeg(current)));
+        }
+        return variants;
+    }
+
+    private BufferedImage decode(InputStream in) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(in)) {
+            if (iis == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image is " + width + "x" + height + ", over the " + maxPixels + " pixel limit");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (2 * SIZES.get(DETAIL)));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public static boolean isDecodable(String contentType) {
+        return contentType != null && (contentType.equals("image/jpeg") || contentType.equals("image/png")
+                || contentType.equals("image/gif") || contentType.equals("image/bmp"));
+    }
+
+    // Halves repeatedly with bilinear filtering before the final step, which keeps detail
+    // that a single large bilinear step would alias away
+    private static BufferedImage scaleDown(BufferedImage image, int maxSide, boolean alpha) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxSide / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = image;
+        do {
+            if (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+                width /= 2;
+                height /= 2;
+            } else {
+                width = targetWidth;
+                height = targetHeight;
+            }
+            current = draw(current, width, height, alpha);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage image, int width, int height, boolean alpha) {
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!alpha) {
+                // Palette or grey sources may still carry a transparent index; flatten onto white
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -1,5 +1,6 @@
 package com.Daad.ecommerce.service;
 
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -18,6 +19,9 @@ public class JwtService {
 
     private final SecretKey accessSecretKey;
     private final SecretKey resetSecretKey;
+    // Parsers are immutable and thread-safe; build them once instead of per call
+    private final JwtParser accessTokenParser;
+    private final JwtParser resetTokenParser;
     private final int expirationHours;
 
     public JwtService(
@@ -27,6 +31,8 @@ public class JwtService {
     ) {
         this.accessSecretKey = Keys.hmacShaKeyFor(accessSecret.getBytes());
         this.resetSecretKey = Keys.hmacShaKeyFor(resetSecret.getBytes());
+        this.accessTokenParser = Jwts.parserBuilder().setSigningKey(accessSecretKey).build();
+        this.resetTokenParser = Jwts.parserBuilder().setSigningKey(resetSecretKey).build();
         this.expirationHours = expirationHours;
     }
 
@@ -51,11 +57,11 @@ public class JwtService {
     }
 
     public Claims parseAccessToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(accessSecretKey).build().parseClaimsJws(token).getBody();
+        return accessTokenParser.parseClaimsJws(token).getBody();
     }
 
     public Claims parseResetToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(resetSecretKey).build().parseClaimsJws(token).getBody();
+        return resetTokenParser.parseClaimsJws(token).getBody();
     }
 
     public String extractUserIdFromResetToken(String bearerTokenHeader) {
@@ -1,28 +1,43 @@
 package com.Daad.ecommerce.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Service
 public class LocalUploadService {
 
+    // Served by LocalMediaController under /uploads/**
+    public static final Path UPLOADS_ROOT = Path.of("uploads");
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
     public static class UploadResult {
         public final String url;
         public final String filename;
+        public final Map<String, String> variants; // variant name -> URL, empty when none were generated
         public UploadResult(String url, String filename) {
+            this(url, filename, Map.of());
+        }
+        public UploadResult(String url, String filename, Map<String, String> variants) {
             this.url = url;
             this.filename = filename;
+            this.variants = variants;
         }
     }
 
     public UploadResult uploadToLocal(Path sourcePath, String subdirectory) throws IOException {
-        Path uploadsRoot = Path.of("uploads");
-        Path targetDir = uploadsRoot.resolve(subdirectory);
+        Path targetDir = UPLOADS_ROOT.resolve(subdirectory);
         Files.createDirectories(targetDir);
 
         String filename = sourcePath.getFileName().toString();
@@ -31,12 +46,11 @@ public class LocalUploadService {
         Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
 
         String url = "/uploads/" + subdirectory + "/" + filename;
-        return new UploadResult(url, filename);
+        return new UploadResult(url, filename, writeVariants(targetPath, Files.probeContentType(targetPath), subdirectory));
     }
 
     public UploadResult uploadMultipart(MultipartFile file, String subdirectory) throws IOException {
-        Path uploadsRoot = Path.of("uploads");
-        Path targetDir = uploadsRoot.resolve(subdirectory);
+        Path targetDir = UPLOADS_ROOT.resolve(subdirectory);
         Files.createDirectories(targetDir);
         
         String original = file.getOriginalFilename();
@@ -65,11 +79,44 @@ public class LocalUploadService {
         }
         
         Path targetPath = targetDir.resolve(filename);
-        Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+        // The container already spooled the upload to its temp dir; transferTo(File) lets it rename that
+        // file into a staging name instead of copying the bytes, and the atomic move publishes it whole
+        Path staging = targetDir.resolve("." + filename + ".part");
+        file.transferTo(staging.toAbsolutePath().toFile());
+        publish(staging, targetPath);
         
         String url = "/uploads/" + subdirectory + "/" + filename;
-        return new UploadResult(url, filename);
+        return new UploadResult(url, filename, writeVariants(targetPath, file.getContentType(), subdirectory));
     }
-}
 
+    // Same naming as BackblazeService: {name without extension}-{variant}.{ext} next to the original
+    private Map<String, String> writeVariants(Path original, String contentType, String subdirectory) {
+        if (!ImageVariantService.isDecodable(contentType)) {
+            return Map.of();
+        }
+        String filename = original.getFileName().toString();
+        String base = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+        Map<String, String> urls = new LinkedHashMap<>();
+        try (InputStream in = Files.newInputStream(original)) {
+            for (ImageVariantService.Variant variant : imageVariantService.generate(in)) {
+                String variantName = base + "-" + variant.name + "." + variant.extension;
+                Path staging = original.resolveSibling("." + variantName + ".part");
+                Files.write(staging, variant.data);
+                publish(staging, original.resolveSibling(variantName));
+                urls.put(variant.name, "/uploads/" + subdirectory + "/" + variantName);
+            }
+            return urls;
+        } catch (Exception e) {
+            System.err.println("Failed to generate image variants for " + original + ": " + e.getMessage());
+            return Map.of();
+        }
+    }
 
+    private static void publish(Path staging, Path target) throws IOException {
+        try {
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
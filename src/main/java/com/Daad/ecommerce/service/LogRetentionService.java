@@ -0,0 +1,100 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.repository.LogPartitionRepository;
+import com.Daad.ecommerce.repository.WebhookEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Keeps the monthly partitions of webhook_events and delivery_logs ahead of time and drops
+ * whole partitions once they fall out of the retention window, so the tables (and their
+ * indexes) stay bounded without row-by-row deletes.
+ */
+@Service
+@Slf4j
+public class LogRetentionService {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    @Autowired
+    private LogPartitionRepository logPartitionRepository;
+
+    @Autowired
+    private WebhookEventRepository webhookEventRepository;
+
+    @Value("${logs.partitions.months-ahead:2}")
+    private int monthsAhead;
+
+    @Value("${logs.retention.webhook-events-months:3}")
+    private int webhookEventsRetentionMonths;
+
+    @Value("${logs.retention.delivery-logs-months:12}")
+    private int deliveryLogsRetentionMonths;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        try {
+            createUpcomingPartitions();
+        } catch (Exception e) {
+            log.error("Error creating log partitions on startup: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "0 15 3 * * *")
+    public void maintainPartitions() {
+        try {
+            createUpcomingPartitions();
+            dropExpiredPartitions("webhook_events", webhookEventsRetentionMonths);
+            dropExpiredPartitions("delivery_logs", deliveryLogsRetentionMonths);
+
+            Timestamp webhookCutoff = Timestamp.valueOf(oldestRetainedMonth(webhookEventsRetentionMonths).atStartOfDay());
+            int keys = webhookEventRepository.deleteKeysReceivedBefore(webhookCutoff);
+            int legacy = logPartitionRepository.deleteLegacyWebhookLogsBefore(webhookCutoff);
+            if (keys > 0 || legacy > 0) {
+                log.info("Pruned {} webhook dedup keys and {} legacy webhook log rows", keys, legacy);
+            }
+        } catch (Exception e) {
+            log.error("Error maintaining log partitions: {}", e.getMessage());
+        }
+    }
+
+    private void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now();
+        for (String table : LogPartitionRepository.PARTITIONED_TABLES) {
+            for (int i = 0; i <= monthsAhead; i++) {
+                logPartitionRepository.ensureMonthlyPartition(table, current.plusMonths(i).atDay(1));
+            }
+        }
+    }
+
+    private void dropExpiredPartitions(String table, int retentionMonths) {
+        YearMonth oldestRetained = YearMonth.from(oldestRetainedMonth(retentionMonths));
+        for (String partition : logPartitionRepository.getMonthlyPartitions(table)) {
+            YearMonth month = YearMonth.parse(partition.substring(table.length() + 1), PARTITION_SUFFIX);
+            if (!month.isBefore(oldestRetained)) {
+                break;
+            }
+            // Never drop events that are still waiting to be processed
+            if ("webhook_events".equals(table) && logPartitionRepository.hasUnfinishedWebhookEvents(partition)) {
+                log.warn("Keeping expired partition {}: it still has unfinished events", partition);
+                continue;
+            }
+            logPartitionRepository.dropPartition(table, partition);
+            log.info("Dropped expired log partition {}", partition);
+        }
+    }
+
+    private LocalDate oldestRetainedMonth(int retentionMonths) {
+        return YearMonth.now().minusMonths(retentionMonths).atDay(1);
+    }
+}
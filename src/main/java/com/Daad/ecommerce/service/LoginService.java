@@ -0,0 +1,75 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Password login shared by /api/users/login and /api/auth/login.
+ *
+ * The user and its vendor profile come back from one query. A password that verifies against
+ * a hash made with a different bcrypt cost is re-hashed at the configured cost, so stored
+ * hashes converge on security.bcrypt.strength as users log in. The re-hash only replaces the
+ * hash that was verified, never a password changed in the meantime.
+ */
+@Service
+@Slf4j
+public class LoginService {
+
+    private static final Pattern BCRYPT = Pattern.compile("\\$2[aby]?\\$(\\d\\d)\\$[./A-Za-z0-9]{53}");
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final int strength;
+    // Verified against when the email is unknown, so response time does not reveal which emails exist
+    private final String unknownUserHash;
+
+    public LoginService(UserRepository userRepository,
+                        PasswordEncoder passwordEncoder,
+                        @Value("${security.bcrypt.strength:10}") int strength) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.strength = strength;
+        this.unknownUserHash = passwordEncoder.encode("unknown-user");
+    }
+
+    /**
+     * Returns the user (and vendor projection) when the credentials match, otherwise empty.
+     */
+    public Optional<UserRepository.UserWithVendor> authenticate(String email, String rawPassword) {
+        Optional<UserRepository.UserWithVendor> account = userRepository.findByEmailWithVendor(email.toLowerCase());
+        String hash = account.map(a -> a.user.getPassword()).orElse(null);
+        if (hash == null) {
+            passwordEncoder.matches(rawPassword, unknownUserHash);
+            return Optional.empty();
+        }
+        if (!passwordEncoder.matches(rawPassword, hash)) {
+            return Optional.empty();
+        }
+
+        if (needsRehash(hash)) {
+            try {
+                String upgraded = passwordEncoder.encode(rawPassword);
+                // Compare-and-set on the verified hash: a reset or change that landed meanwhile is kept
+                if (userRepository.updatePasswordIfUnchanged(account.get().user.getId(), upgraded, hash)) {
+                    account.get().user.setPassword(upgraded);
+                }
+            } catch (Exception e) {
+                // The login itself succeeded; the next one retries the upgrade
+                log.warn("Failed to re-hash password for user {}: {}", account.get().user.getId(), e.getMessage());
+            }
+        }
+        return account;
+    }
+
+    private boolean needsRehash(String hash) {
+        Matcher matcher = BCRYPT.matcher(hash);
+        return matcher.matches() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+}
@@ -0,0 +1,231 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.metrics.LatencyHistogram;
+import com.Daad.ecommerce.repository.NotificationOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Outgoing email pipeline. enqueue() writes one row to notification_outbox and returns, so
+ * callers such as order placement never wait on (or lose) an email when the mail provider is
+ * slow. The dispatcher claims due emails most-urgent-priority first, sends each claim as one
+ * batch over the EmailTransport and records the outcomes in batches, retrying with backoff.
+ * Drains run on the dispatcher's own thread and stop after max-batches-per-tick, so a mail
+ * backlog never holds Spring's shared scheduler thread.
+ *
+ * Notifications that need lookups or fan out to several recipients (an order placed) are
+ * enqueued as one notification_events row instead; each drain first expands due events into
+ * emails through the handler registered for their type, off the caller's thread.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    public static final int PRIORITY_CRITICAL = 0;      // OTPs, password resets, email verification
+    public static final int PRIORITY_TRANSACTIONAL = 1; // orders, payments, deliveries, account changes
+    public static final int PRIORITY_BULK = 2;          // admin digests, stock alerts, marketing
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private EmailTransport emailTransport;
+
+    @Value("${notifications.dispatcher.batch-size:25}")
+    private int batchSize;
+
+    @Value("${notifications.dispatcher.max-attempts:6}")
+    private int maxAttempts;
+
+    @Value("${notifications.dispatcher.max-batches-per-tick:20}")
+    private int maxBatchesPerTick;
+
+    @Value("${notifications.retention-days:14}")
+    private int retentionDays;
+
+    // Given-up emails and events are kept longer than sent ones so they can be looked into
+    @Value("${notifications.dead-retention-days:30}")
+    private int deadRetentionDays;
+
+    private final Map<String, Consumer<String>> eventHandlers = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Notification-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dead = new LongAdder();
+    private final LatencyHistogram deliveryLatencyMillis = new LatencyHistogram();
+
+    public void enqueue(int priority, String recipient, String subject, String body, boolean html) {
+        if (recipient == null || recipient.isBlank()) {
+            log.warn("Dropping email '{}' without a recipient", subject);
+            return;
+        }
+        outboxRepository.insert(priority, recipient, subject, body, html);
+        enqueued.increment();
+        // Critical mail should not wait for the next poll; a drain already running claims it next round
+        if (priority == PRIORITY_CRITICAL) {
+            drain();
+        }
+    }
+
+    // Handler for an event type; it gets the event's subject id and enqueues the emails
+    public void registerEventHandler(String eventType, Consumer<String> handler) {
+        eventHandlers.put(eventType, handler);
+    }
+
+    public void enqueueEvent(String eventType, String subjectId) {
+        outboxRepository.insertEvent(eventType, subjectId);
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.dispatcher.poll-ms:1000}")
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) return;
+        try {
+            dispatchExecutor.execute(() -> {
+                try {
+                    drainBatches();
+                } finally {
+                    draining.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; another instance sends it
+            draining.set(false);
+        }
+    }
+
+    // Bounded per tick; whatever is left is picked up on the next one
+    private void drainBatches() {
+        try {
+            expandEvents();
+            for (int round = 0; round < maxBatchesPerTick; round++) {
+                // Re-claimed every round, so newly queued critical mail overtakes a bulk backlog
+                List<Map<String, Object>> batch = outboxRepository.claimDue(batchSize);
+                if (batch.isEmpty()) break;
+                sendBatch(batch);
+            }
+        } catch (Exception e) {
+            log.error("Error dispatching notifications: {}", e.getMessage());
+        }
+    }
+
+    private void expandEvents() {
+        for (Map<String, Object> event : outboxRepository.claimDueEvents(batchSize)) {
+            long id = (Long) event.get("id");
+            Consumer<String> handler = eventHandlers.get((String) event.get("event_type"));
+            try {
+                if (handler == null) {
+                    throw new IllegalStateException("No handler for event type " + event.get("event_type"));
+                }
+                handler.accept((String) event.get("subject_id"));
+                outboxRepository.markEventDone(id);
+            } catch (Exception e) {
+                int attempts = (Integer) event.get("attempts");
+                boolean giveUp = attempts >= maxAttempts;
+                long delaySeconds = Math.min(3600L, 30L << Math.min(attempts, 10));
+                outboxRepository.markEventFailed(id, giveUp ? "dead" : "failed", String.valueOf(e.getMessage()), delaySeconds);
+                log.warn("Notification event {} ({}) failed on attempt {}: {}", id, event.get("event_type"), attempts, e.getMessage());
+            }
+        }
+    }
+
+    private void sendBatch(List<Map<String, Object>> batch) {
+        Map<Long, String> failures;
+        try {
+            failures = emailTransport.sendBatch(batch);
+        } catch (Exception e) {
+            failures = new HashMap<>();
+            for (Map<String, Object> email : batch) {
+                failures.put((Long) email.get("id"), String.valueOf(e.getMessage()));
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        List<Object[]> sentRows = new ArrayList<>();
+        List<Object[]> failedRows = new ArrayList<>();
+        for (Map<String, Object> email : batch) {
+            Long id = (Long) email.get("id");
+            String error = failures.get(id);
+            if (error == null) {
+                sentRows.add(new Object[]{id});
+                deliveryLatencyMillis.record(now - ((Timestamp) email.get("created_at")).getTime());
+                continue;
+            }
+            int attempts = (Integer) email.get("attempts");
+            boolean giveUp = attempts >= maxAttempts;
+            long delaySeconds = Math.min(3600L, 30L << Math.min(attempts, 10));
+            failedRows.add(new Object[]{giveUp ? "dead" : "failed", error, delaySeconds, id});
+            (giveUp ? dead : failed).increment();
+            log.warn("Email {} to {} failed on attempt {}: {}", id, email.get("recipient"), attempts, error);
+        }
+
+        outboxRepository.markSentBatch(sentRows);
+        outboxRepository.markFailedBatch(failedRows);
+        sent.add(sentRows.size());
+    }
+
+    @Scheduled(fixedDelay = 300000)
+    public void releaseStuck() {
+        try {
+            int released = outboxRepository.releaseStuck(10);
+            if (released > 0) {
+                log.warn("Released {} emails stuck in sending", released);
+            }
+            int releasedEvents = outboxRepository.releaseStuckEvents(10);
+            if (releasedEvents > 0) {
+                log.warn("Released {} notification events stuck in processing", releasedEvents);
+            }
+        } catch (Exception e) {
+            log.error("Error releasing stuck emails: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "0 45 3 * * *")
+    public void pruneSent() {
+        try {
+            outboxRepository.deleteSentBefore(retentionDays);
+            outboxRepository.deleteDeadBefore(deadRetentionDays);
+            outboxRepository.deleteFinishedEventsBefore(retentionDays, deadRetentionDays);
+        } catch (Exception e) {
+            log.error("Error pruning notification outbox: {}", e.getMessage());
+        }
+    }
+
+    // Backpressure view: queue depth and oldest age per priority, throughput counters, delivery latency
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("backlog", outboxRepository.getBacklog());
+        snapshot.put("enqueued", enqueued.sum());
+        snapshot.put("sent", sent.sum());
+        snapshot.put("failed", failed.sum());
+        snapshot.put("dead", dead.sum());
+        snapshot.put("deliveryLatencyMillis", deliveryLatencyMillis.snapshot());
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatchExecutor.shutdown();
+    }
+}
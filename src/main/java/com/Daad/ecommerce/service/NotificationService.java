@@ -5,10 +5,11 @@ import com.Daad.ecommerce.dto.Review;
 import com.Daad.ecommerce.model.User;
 import com.Daad.ecommerce.model.Vendor;
 import com.Daad.ecommerce.dto.Product;
+import com.Daad.ecommerce.repository.OrderRepository;
 import com.Daad.ecommerce.repository.UserRepository;
 import com.Daad.ecommerce.repository.VendorRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -33,8 +34,20 @@ public class NotificationService {
     @Autowired
     private VendorRepository vendorRepository;
 
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    private static final String ORDER_PLACED = "order_placed";
+
+    @PostConstruct
+    void registerEventHandlers() {
+        notificationDispatcher.registerEventHandler(ORDER_PLACED, this::sendOrderPlaced);
+    }
+
     // Vendor Management Notifications
-    @Async("emailTaskExecutor")
     public void notifyVendorRegistration(Vendor vendor) {
         // Notify admin
         List<User> admins = userRepository.findByRole("admin");
@@ -46,7 +59,6 @@ public class NotificationService {
         vendorEmailService.sendVendorRegistrationConfirmation(vendor);
     }
 
-    @Async("emailTaskExecutor")
     public void notifyVendorApproval(Vendor vendor, boolean isApproved, String reason) {
         // Notify vendor
         vendorEmailService.sendVendorApprovalNotification(vendor, isApproved, reason);
@@ -60,7 +72,6 @@ public class NotificationService {
     }
 
     // Product Management Notifications
-    @Async("emailTaskExecutor")
     public void notifyProductSubmission(Product product, Vendor vendor) {
         // Notify admin
         List<User> admins = userRepository.findByRole("admin");
@@ -69,7 +80,6 @@ public class NotificationService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void notifyProductApproval(Product product, Vendor vendor, boolean isApproved, String reason) {
         // Notify vendor
         vendorEmailService.sendProductApprovalNotification(product, vendor, isApproved, reason);
@@ -82,14 +92,24 @@ public class NotificationService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void notifyStockAlert(Product product, Vendor vendor, int stockLevel) {
         vendorEmailService.sendStockAlertNotification(product, vendor, stockLevel);
     }
 
     // Order Management Notifications
-    @Async("emailTaskExecutor")
+
+    // Checkout only writes the event; lookups, rendering and the vendor fan-out run on the dispatcher thread
     public void notifyOrderPlaced(Order order) {
+        notificationDispatcher.enqueueEvent(ORDER_PLACED, order.getId());
+    }
+
+    private void sendOrderPlaced(String orderId) {
+        Order order = orderRepository.findById(orderId).orElse(null);
+        if (order == null) {
+            System.err.println("Warning: Order " + orderId + " not found for order placed notification");
+            return;
+        }
+
         // Notify customer
         String customerEmail = order.getCustomerEmail();
         if (customerEmail != null && !customerEmail.trim().isEmpty()) {
@@ -130,12 +150,10 @@ public class NotificationService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void notifyOrderStatusUpdate(Order order, String newStatus) {
         orderEmailService.sendOrderStatusUpdateNotification(order, order.getCustomerEmail(), newStatus);
     }
 
-    @Async("emailTaskExecutor")
     public void notifyOrderCancellation(Order order, String cancelledBy) {
         orderEmailService.sendOrderCancellationNotification(order, order.getCustomerEmail(), 
             order.getItems().stream()
@@ -149,23 +167,19 @@ public class NotificationService {
     }
 
     // Account Management Notifications
-    @Async("emailTaskExecutor")
     public void notifyUserRegistration(User user) {
         accountEmailService.sendWelcomeNotification(user);
     }
 
-    @Async("emailTaskExecutor")
     public void notifyPasswordReset(User user, String resetToken) {
         accountEmailService.sendPasswordResetNotification(user, resetToken);
     }
 
-    @Async("emailTaskExecutor")
     public void notifyAccountStatusChange(User user, String newStatus) {
         accountEmailService.sendAccountStatusNotification(user, newStatus);
     }
 
     // Review Notifications
-    @Async("emailTaskExecutor")
     public void notifyReviewSubmitted(Review review, Product product) {
         if (product.getVendor() != null) {
             vendorRepository.findById(product.getVendor().getId()).ifPresent(vendor -> {
@@ -176,7 +190,6 @@ public class NotificationService {
     }
 
     // System Notifications
-    @Async("emailTaskExecutor")
     public void notifySystemMaintenance(String message, List<String> userEmails) {
         for (String email : userEmails) {
             // Implementation for system maintenance notification
@@ -184,7 +197,6 @@ public class NotificationService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void notifySecurityAlert(String message, List<String> adminEmails) {
         for (String email : adminEmails) {
             // Implementation for security alert notification
@@ -5,7 +5,6 @@ import com.Daad.ecommerce.repository.OrderRepository;
 import com.Daad.ecommerce.repository.UserRepository;
 import com.Daad.ecommerce.repository.VendorRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -28,7 +27,6 @@ public class OrderEmailService {
     @Autowired
     private OrderRepository orderRepository;
 
-    @Async("emailTaskExecutor")
     public void sendOrderConfirmationNotification(Order order, String customerEmail) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -47,7 +45,6 @@ public class OrderEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendNewOrderNotification(Order order, String vendorEmail) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -67,7 +64,6 @@ public class OrderEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendOrderStatusUpdateNotification(Order order, String customerEmail, String newStatus) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -85,7 +81,6 @@ public class OrderEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendOrderCancellationNotification(Order order, String customerEmail, String vendorEmail, String cancelledBy) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -115,7 +110,6 @@ public class OrderEmailService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void sendPaymentConfirmationNotification(Order order, String customerEmail, String vendorEmail) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -144,7 +138,6 @@ public class OrderEmailService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void sendPaymentFailureNotification(Order order, String customerEmail) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -161,7 +154,6 @@ public class OrderEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendRefundNotification(Order order, String customerEmail, String vendorEmail, double refundAmount) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("orderId", order.getId());
@@ -3,6 +3,7 @@ package com.Daad.ecommerce.service;
 import com.Daad.ecommerce.dto.PaymentDtos.CreatePaymentSessionRequest;
 import com.Daad.ecommerce.dto.PaymentDtos.CreatePaymentSessionResponse;
 import com.Daad.ecommerce.dto.PaymentDtos.PaymobWebhookEvent;
+import com.Daad.ecommerce.http.UpstreamHttpClients;
 import com.Daad.ecommerce.repository.PaymentRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -46,10 +47,11 @@ public class PaymentService {
     private String paymobIframeId;
 
     private final PaymentRepository paymentRepository;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
 
-    public PaymentService(PaymentRepository paymentRepository) {
+    public PaymentService(PaymentRepository paymentRepository, UpstreamHttpClients upstreamHttpClients) {
         this.paymentRepository = paymentRepository;
+        this.restTemplate = upstreamHttpClients.restTemplate(UpstreamHttpClients.PAYMOB);
     }
 
     public CreatePaymentSessionResponse createPaymentSession(CreatePaymentSessionRequest req, double amountCents, String orderId) {
@@ -95,7 +97,7 @@ public class PaymentService {
         }
     }
 
-    private String authenticateWithPaymob() {
+    public String authenticateWithPaymob() {
         try {
             Map<String, String> authRequest = new HashMap<>();
             authRequest.put("api_key", paymobApiKey);
@@ -242,6 +244,7 @@ public class PaymentService {
             paymentRepository.updateOrderPaymentFields(orderId, fields);
         } catch (Exception e) {
             System.err.println("Error processing webhook event: " + e.getMessage());
+            throw new RuntimeException("Failed to process payment webhook", e);
         }
     }
 
@@ -1,23 +1,39 @@
 package com.Daad.ecommerce.service;
 
+import com.Daad.ecommerce.http.TokenBucket;
+import com.Daad.ecommerce.http.UpstreamHttpClients;
+import com.Daad.ecommerce.http.UpstreamUnavailableException;
 import com.Daad.ecommerce.repository.VendorPayoutRepository;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class PayoutService {
 
+    private static final int RETRY_DELAY_MINUTES = 60;
+
     private final VendorPayoutRepository vendorPayoutRepository;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+    private final TokenBucket rateLimiter;
+    private final AtomicBoolean running = new AtomicBoolean(false);
 
     @Value("${payouts.paymob.api-base-url:https://accept.paymob.com/api}")
     private String payoutBaseUrl;
@@ -25,9 +41,30 @@ public class PayoutService {
     private String payoutApiKey;
     @Value("${payouts.paymob.secret-key:}")
     private String payoutSecretKey;
+    @Value("${payouts.executor.page-size:100}")
+    private int pageSize;
+    @Value("${payouts.executor.max-per-run:2000}")
+    private int maxPerRun;
+    @Value("${payouts.executor.call-timeout-seconds:30}")
+    private long callTimeoutSeconds;
+    @Value("${payouts.executor.max-attempts:5}")
+    private int maxAttempts;
+    @Value("${payouts.executor.stale-processing-minutes:30}")
+    private int staleProcessingMinutes;
 
-    public PayoutService(VendorPayoutRepository vendorPayoutRepository) {
+    public PayoutService(VendorPayoutRepository vendorPayoutRepository,
+                         UpstreamHttpClients upstreamHttpClients,
+                         @Value("${payouts.executor.parallelism:8}") int parallelism,
+                         @Value("${payouts.executor.requests-per-second:10}") double requestsPerSecond,
+                         @Value("${payouts.executor.burst:10}") int burst) {
         this.vendorPayoutRepository = vendorPayoutRepository;
+        this.restTemplate = upstreamHttpClients.restTemplate(UpstreamHttpClients.PAYMOB);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "Payout-executor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rateLimiter = new TokenBucket(requestsPerSecond, burst);
     }
 
     public boolean verifyPayoutWebhookSignature(Map<String, Object> payload, String signatureHeader) {
@@ -44,6 +81,30 @@ public class PayoutService {
         }
     }
 
+    /**
+     * Apply a verified payout webhook (called by the webhook worker, in order per payout)
+     */
+    public void applyPayoutWebhook(Map<String, Object> payload, String payloadJson) {
+        String paymobPayoutId = payload.get("id") != null ? payload.get("id").toString() : null;
+        String status = payload.get("status") != null ? payload.get("status").toString() : "processing";
+        String merchantReference = payload.get("merchant_reference") != null ? payload.get("merchant_reference").toString() : null;
+        if (merchantReference == null) {
+            return;
+        }
+
+        int updated;
+        if ("completed".equalsIgnoreCase(status) || "success".equalsIgnoreCase(status)) {
+            updated = vendorPayoutRepository.markCompleted(merchantReference, paymobPayoutId, payloadJson);
+        } else if ("failed".equalsIgnoreCase(status) || "declined".equalsIgnoreCase(status)) {
+            updated = vendorPayoutRepository.markFailed(merchantReference, "Webhook failed: " + status);
+        } else {
+            updated = vendorPayoutRepository.markProcessingWithResponse(merchantReference, paymobPayoutId, payloadJson);
+        }
+        if (updated == 0) {
+            System.out.println("PayoutService: webhook " + status + " for payout " + merchantReference + " ignored; payout already settled");
+        }
+    }
+
     private String calculateHMAC(String data, String key) {
         try {
             javax.crypto.Mac mac = javax.crypto.Mac.getInstance("HmacSHA512");
@@ -58,7 +119,7 @@ public class PayoutService {
         }
     }
 
-    private String getAuthToken() {
+    public String getAuthToken() {
         Map<String, Object> body = new HashMap<>();
         body.put("api_key", payoutApiKey);
 
@@ -74,29 +135,138 @@ public class PayoutService {
         return response.get("token").toString();
     }
 
+    /**
+     * Drain due payouts: claim them in pages, call Paymob with bounded concurrency under a
+     * shared rate limit, then write each page's outcomes back in batches.
+     *
+     * A payout is only put back to 'pending' when the failure proves Paymob did not pay it (the
+     * request never left, or Paymob declined it). Timeouts and 5xx responses may have reached
+     * Paymob, so those payouts stay in 'processing' flagged outcome_unknown for the webhook or
+     * reconciliation to settle. Each attempt carries an idempotency key derived from the payout id.
+     */
     public void processDuePayoutsBatch(int limit) {
         if (payoutApiKey == null || payoutApiKey.isBlank()) {
             System.out.println("PayoutService: payouts disabled (missing payouts.paymob.api-key). Skipping batch.");
             return;
         }
-        List<Map<String, Object>> due = vendorPayoutRepository.findDuePayouts(limit);
-        if (due.isEmpty()) return;
-        String token = getAuthToken();
-        for (Map<String, Object> p : due) {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("PayoutService: payout run already in progress, skipping");
+            return;
+        }
+        try {
+            String token = null;
+            int processed = 0;
+            while (processed < limit) {
+                List<Map<String, Object>> due = vendorPayoutRepository.claimDuePayouts(Math.min(pageSize, limit - processed));
+                if (due.isEmpty()) break;
+
+                if (token == null) {
+                    try {
+                        token = getAuthToken();
+                    } catch (RuntimeException e) {
+                        // Nothing was sent: hand the claimed payouts back without using up an attempt
+                        List<Object[]> released = new ArrayList<>();
+                        for (Map<String, Object> p : due) {
+                            released.add(new Object[]{p.get("id").toString()});
+                        }
+                        vendorPayoutRepository.releaseClaimedBatch(released);
+                        throw e;
+                    }
+                }
+
+                executePage(due, token);
+                processed += due.size();
+            }
+            if (processed > 0) {
+                System.out.println("PayoutService: processed " + processed + " payouts");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void executePage(List<Map<String, Object>> due, String token) throws InterruptedException {
+        List<Future<Object[]>> calls = new ArrayList<>(due.size());
+        for (Map<String, Object> payout : due) {
+            calls.add(executor.submit(() -> {
+                rateLimiter.acquire();
+                return executePayout(payout, token);
+            }));
+        }
+
+        List<Object[]> completed = new ArrayList<>();
+        List<Object[]> accepted = new ArrayList<>();
+        List<Object[]> retry = new ArrayList<>();
+        List<Object[]> unknown = new ArrayList<>();
+        List<Object[]> invalid = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            String payoutId = due.get(i).get("id").toString();
+            Future<Object[]> call = calls.get(i);
             try {
-                String payoutId = p.get("id").toString();
-                vendorPayoutRepository.markProcessing(payoutId);
-                executePayout(p, token);
-            } catch (Exception e) {
-                try {
-                    vendorPayoutRepository.markFailed(p.get("id").toString(), e.getMessage());
-                    vendorPayoutRepository.rescheduleForRetry(p.get("id").toString(), 60);
-                } catch (Exception ignored) {}
+                Object[] outcome = call.get(callTimeoutSeconds, TimeUnit.SECONDS);
+                String status = (String) outcome[0];
+                if ("completed".equalsIgnoreCase(status) || "success".equalsIgnoreCase(status)) {
+                    completed.add(new Object[]{outcome[1], outcome[2], payoutId});
+                } else if ("failed".equalsIgnoreCase(status) || "declined".equalsIgnoreCase(status)) {
+                    // Paymob answered and did not pay; the next attempt gets a new idempotency key
+                    retry.add(new Object[]{"Paymob failed: " + status, RETRY_DELAY_MINUTES, payoutId});
+                } else {
+                    accepted.add(new Object[]{outcome[1], outcome[2], payoutId});
+                }
+            } catch (TimeoutException e) {
+                call.cancel(true);
+                unknown.add(new Object[]{"Paymob payout timed out; outcome unknown", payoutId});
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IllegalArgumentException) {
+                    invalid.add(new Object[]{cause.getMessage(), payoutId});
+                } else if (neverSent(cause)) {
+                    retry.add(new Object[]{"Not sent: " + cause.getMessage(), RETRY_DELAY_MINUTES, payoutId});
+                } else {
+                    unknown.add(new Object[]{"Outcome unknown: " + cause.getMessage(), payoutId});
+                }
+            }
+        }
+
+        int applied = vendorPayoutRepository.markCompletedBatch(completed)
+                + vendorPayoutRepository.markProcessingWithResponseBatch(accepted)
+                + vendorPayoutRepository.markFailedForRetryBatch(retry, maxAttempts)
+                + vendorPayoutRepository.markOutcomeUnknownBatch(unknown)
+                + vendorPayoutRepository.markFailedBatch(invalid);
+        int lost = due.size() - applied;
+        if (lost > 0) {
+            System.out.println("PayoutService: " + lost + " payouts were settled by a webhook or reconciliation during the run; kept their status");
+        }
+        if (!unknown.isEmpty()) {
+            System.err.println("PayoutService: " + unknown.size() + " payouts left in processing with unknown outcome");
+        }
+    }
+
+    /**
+     * True only when the failure proves the request never reached Paymob: the connection could not
+     * be opened, the circuit or bulkhead refused the call, or Paymob throttled it before processing.
+     */
+    static boolean neverSent(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ConnectException || t instanceof HttpConnectTimeoutException
+                    || t instanceof UnknownHostException || t instanceof UpstreamUnavailableException
+                    || t instanceof HttpClientErrorException.TooManyRequests) {
+                return true;
             }
         }
+        return false;
+    }
+
+    // Stable across re-sends of the same attempt; a new attempt only follows a proven non-payment
+    static String idempotencyKey(Map<String, Object> payout) {
+        Object attempt = payout.get("retry_count");
+        return "payout-" + payout.get("id") + "-" + (attempt != null ? attempt : 0);
     }
 
-    private void executePayout(Map<String, Object> payout, String token) {
+    // Returns {status, paymob payout id, response json}; the caller records it
+    private Object[] executePayout(Map<String, Object> payout, String token) {
         double netAmount = ((java.math.BigDecimal) payout.get("net_amount")).doubleValue();
         if (netAmount <= 0) throw new IllegalArgumentException("Net amount must be > 0");
 
@@ -117,27 +287,17 @@ public class PayoutService {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.set("Authorization", "Bearer " + token);
+        headers.set("Idempotency-Key", idempotencyKey(payout));
         HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
 
         @SuppressWarnings("unchecked")
         Map<String, Object> response = restTemplate.postForObject(payoutBaseUrl + "/acceptance/payouts", entity, Map.class);
-        String responseJson = toJson(response != null ? response : Map.of("message", "null response"));
-        String payoutId = payout.get("id").toString();
-
-        if (response != null) {
-            String status = String.valueOf(response.getOrDefault("status", "processing"));
-            String paymobId = response.get("id") != null ? response.get("id").toString() : null;
-            if ("completed".equalsIgnoreCase(status) || "success".equalsIgnoreCase(status)) {
-                vendorPayoutRepository.markCompleted(payoutId, paymobId, responseJson);
-            } else if ("failed".equalsIgnoreCase(status) || "declined".equalsIgnoreCase(status)) {
-                vendorPayoutRepository.markFailed(payoutId, "Paymob failed: " + status);
-                vendorPayoutRepository.rescheduleForRetry(payoutId, 60);
-            } else {
-                vendorPayoutRepository.markProcessingWithResponse(payoutId, paymobId, responseJson);
-            }
-        } else {
+        if (response == null) {
             throw new RuntimeException("Paymob payout returned null response");
         }
+        String status = String.valueOf(response.getOrDefault("status", "processing"));
+        String paymobId = response.get("id") != null ? response.get("id").toString() : null;
+        return new Object[]{status, paymobId, toJson(response)};
     }
 
     private String toJson(Object o) {
@@ -148,18 +308,34 @@ public class PayoutService {
         }
     }
 
-    @Scheduled(cron = "0 0 * * * *")
-    public void scheduledHourlyPayouts() {
+    @Scheduled(fixedDelayString = "${payouts.executor.poll-ms:60000}")
+    public void scheduledPayouts() {
         try {
             if (payoutApiKey == null || payoutApiKey.isBlank()) {
                 // No credentials yet, silently skip to keep app running
                 return;
             }
-            processDuePayoutsBatch(50);
+            processDuePayoutsBatch(maxPerRun);
         } catch (Exception e) {
             System.err.println("Scheduled payouts failed: " + e.getMessage());
         }
     }
-}
 
+    // Payouts left in 'processing' by a crashed run are flagged for reconciliation, never re-sent blindly
+    @Scheduled(fixedDelay = 300000)
+    public void reapStaleProcessing() {
+        try {
+            int flagged = vendorPayoutRepository.flagStaleProcessing(staleProcessingMinutes);
+            if (flagged > 0) {
+                System.err.println("PayoutService: flagged " + flagged + " payouts stuck in processing as outcome unknown");
+            }
+        } catch (Exception e) {
+            System.err.println("Payout reaper failed: " + e.getMessage());
+        }
+    }
 
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,302 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.dto.PriceQuote;
+import com.Daad.ecommerce.dto.Product;
+import com.Daad.ecommerce.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Server-side pricing shared by cart views, the discount preview and checkout.
+ * A quote prices every line from one bulk product lookup, applies the voucher once,
+ * and is kept for a short time under a token so checkout can reuse it. At most
+ * pricing.max-quotes are held; the oldest (first to expire) are dropped beyond that.
+ */
+@Service
+public class PricingService {
+	public static class ShippingEstimate {
+		public final double shipping;
+		public final double tax;
+		public final int minDays;
+		public final int maxDays;
+		public ShippingEstimate(double shipping, double tax, int minDays, int maxDays) {
+			this.shipping = shipping;
+			this.tax = tax;
+			this.minDays = minDays;
+			this.maxDays = maxDays;
+		}
+	}
+
+	private final ProductRepository productRepository;
+	private final DiscountService discountService;
+	private final Duration quoteTtl;
+	// Insertion order == expiry order, since every quote gets the same TTL when stored
+	private final LinkedHashMap<String, PriceQuote> quotes;
+
+	public PricingService(ProductRepository productRepository,
+						  DiscountService discountService,
+						  @Value("${pricing.quote-ttl-minutes:15}") long quoteTtlMinutes,
+						  @Value("${pricing.max-quotes:20000}") int maxQuotes) {
+		this.productRepository = productRepository;
+		this.discountService = discountService;
+		this.quoteTtl = Duration.ofMinutes(quoteTtlMinutes);
+		this.quotes = new LinkedHashMap<>(1024, 0.75f, false) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PriceQuote> eldest) {
+				return size() > maxQuotes;
+			}
+		};
+	}
+
+	// Price a set of lines, apply an optional voucher and store the quote under a new token
+	public PriceQuote quote(List<PriceQuote.LineRequest> requests, String userId, String voucherCode, String shippingCountry) {
+		Map<String, Product> products = loadProducts(requests);
+		PriceQuote quote = price(requests, products, userId, voucherCode, shippingCountry);
+		store(quote);
+		return quote;
+	}
+
+	// Prices lines without storing a quote, for views that are not a step towards checkout (the cart page);
+	// only the checkout previews hold a slot in the bounded quote store
+	public PriceQuote priceOnly(List<PriceQuote.LineRequest> requests, String userId) {
+		return price(requests, loadProducts(requests), userId, null, null);
+	}
+
+	// Checkout consumes the token: it is removed atomically, so two checkouts cannot both reuse one quote.
+	// The stored quote is reused (on a copy) only while every line's availability is unchanged; otherwise
+	// the purchase is priced afresh, since the stored subtotal and voucher only cover the lines available then.
+	// Shipping is always priced here from the shipping country, never taken from the client.
+	public PriceQuote quoteForCheckout(String token, List<PriceQuote.LineRequest> requests, String userId,
+									   String voucherCode, String shippingCountry) {
+		Map<String, Product> products = loadProducts(requests);
+		PriceQuote cached = consumeQuote(token);
+		if (cached != null && describesSamePurchase(cached, requests, userId, voucherCode)) {
+			PriceQuote reused = copyOf(cached);
+			boolean availabilityChanged = false;
+			for (PriceQuote.Line line : reused.getLines()) {
+				boolean wasAvailable = line.isAvailable();
+				applyAvailability(line, products.get(line.getProductId()));
+				availabilityChanged |= wasAvailable != line.isAvailable();
+			}
+			if (!availabilityChanged) {
+				applyShipping(reused, shippingCountry);
+				return reused;
+			}
+		}
+		return price(requests, products, userId, voucherCode, shippingCountry);
+	}
+
+	public Optional<PriceQuote> findQuote(String token) {
+		if (token == null || token.isBlank()) return Optional.empty();
+		synchronized (quotes) {
+			PriceQuote quote = quotes.get(token);
+			if (quote == null) return Optional.empty();
+			if (quote.isExpired(Instant.now())) {
+				quotes.remove(token);
+				return Optional.empty();
+			}
+			return Optional.of(quote);
+		}
+	}
+
+	private PriceQuote consumeQuote(String token) {
+		if (token == null || token.isBlank()) return null;
+		PriceQuote quote;
+		synchronized (quotes) {
+			quote = quotes.remove(token);
+		}
+		return quote == null || quote.isExpired(Instant.now()) ? null : quote;
+	}
+
+	// Discounted unit price for a product, using the pre-parsed discount expiry
+	public double unitPrice(Product product) {
+		return unitPrice(product, LocalDateTime.now());
+	}
+
+	public double unitPrice(Product product, LocalDateTime now) {
+		if (product == null || product.getPrice() == null) return 0.0;
+		double price = product.getPrice().doubleValue();
+		double discounted = price * (1 - discountPercentage(product, now) / 100.0);
+		return discounted < 0 ? 0 : discounted;
+	}
+
+	public ShippingEstimate estimateShipping(String country, double subtotal) {
+		if (country == null) {
+			return new ShippingEstimate(0.0, 0.0, 3, 7);
+		}
+		if ("Pakistan".equalsIgnoreCase(country)) {
+			return new ShippingEstimate(subtotal > 5000 ? 0.0 : 200.0, subtotal * 0.05, 2, 5);
+		}
+		return new ShippingEstimate(500.0, 0.0, 7, 14);
+	}
+
+	@Scheduled(fixedDelay = 300000)
+	public void evictExpiredQuotes() {
+		Instant now = Instant.now();
+		synchronized (quotes) {
+			Iterator<PriceQuote> it = quotes.values().iterator();
+			while (it.hasNext() && it.next().isExpired(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	private Map<String, Product> loadProducts(List<PriceQuote.LineRequest> requests) {
+		Set<String> ids = new LinkedHashSet<>();
+		if (requests != null) {
+			for (PriceQuote.LineRequest r : requests) {
+				if (r.getProductId() != null) ids.add(r.getProductId());
+			}
+		}
+		return productRepository.findPricingByIds(ids);
+	}
+
+	private PriceQuote price(List<PriceQuote.LineRequest> requests, Map<String, Product> products,
+							 String userId, String voucherCode, String shippingCountry) {
+		LocalDateTime now = LocalDateTime.now();
+		PriceQuote quote = new PriceQuote();
+		quote.setUserId(userId);
+
+		double subtotal = 0.0;
+		if (requests != null) {
+			for (PriceQuote.LineRequest r : requests) {
+				Product product = products.get(r.getProductId());
+				PriceQuote.Line line = new PriceQuote.Line();
+				line.setProductId(r.getProductId());
+				line.setColor(r.getColor());
+				line.setSize(r.getSize());
+				line.setQuantity(r.getQuantity());
+				if (product != null) {
+					line.setVendorId(product.getVendor() != null ? product.getVendor().getId() : null);
+					line.setProductName(product.getName());
+					line.setProductDescription(product.getDescription());
+					if (!product.getDefaultImages().isEmpty()) {
+						line.setDefaultImageUrl(product.getDefaultImages().get(0).getUrl());
+					}
+					line.setUnitPrice(product.getPrice() != null ? product.getPrice().doubleValue() : 0.0);
+					line.setDiscountPercentage(discountPercentage(product, now));
+					line.setFinalUnitPrice(unitPrice(product, now));
+					line.setLineTotal(line.getFinalUnitPrice() * line.getQuantity());
+				}
+				applyAvailability(line, product);
+				if (line.isAvailable()) {
+					subtotal += line.getLineTotal();
+				}
+				quote.getLines().add(line);
+			}
+		}
+		quote.setSubtotal(subtotal);
+
+		if (voucherCode != null && !voucherCode.isBlank()) {
+			DiscountService.DiscountResult result = discountService.calculateDiscount(
+					userId != null ? userId : "guest", subtotal, voucherCode, quote.toDiscountItems());
+			quote.setDiscountAmount(result.amount);
+			quote.setDiscountReason(result.reason);
+			quote.setVoucherCode(result.voucherCode);
+		}
+
+		applyShipping(quote, shippingCountry);
+		return quote;
+	}
+
+	private void applyShipping(PriceQuote quote, String shippingCountry) {
+		if (shippingCountry != null) {
+			ShippingEstimate estimate = estimateShipping(shippingCountry, quote.getSubtotal());
+			quote.setShipping(estimate.shipping);
+			quote.setTax(estimate.tax);
+		}
+		quote.setTotal(Math.max(0, quote.getSubtotal() - quote.getDiscountAmount() + quote.getShipping() + quote.getTax()));
+	}
+
+	private void applyAvailability(PriceQuote.Line line, Product product) {
+		if (product == null) {
+			line.setAvailable(false);
+			line.setAvailableStock(0);
+			line.setMessage("Product " + line.getProductId() + " not found");
+			return;
+		}
+		int stock = product.getStock(line.getColor(), line.getSize());
+		line.setAvailableStock(stock);
+		if (line.getQuantity() < 1) {
+			line.setAvailable(false);
+			line.setMessage("Quantity must be at least 1");
+		} else if (stock < line.getQuantity()) {
+			line.setAvailable(false);
+			line.setMessage(product.getName() + " is out of stock or has insufficient quantity");
+		} else {
+			line.setAvailable(true);
+			line.setMessage(null);
+		}
+	}
+
+	private double discountPercentage(Product product, LocalDateTime now) {
+		Product.Discount discount = product.getDiscount();
+		if (discount == null || !discount.isInEffect(now)) return 0.0;
+		double pct = discount.getDiscountValue().doubleValue();
+		if (pct < 0) pct = 0;
+		if (pct > 100) pct = 100;
+		return pct;
+	}
+
+	private boolean describesSamePurchase(PriceQuote quote, List<PriceQuote.LineRequest> requests, String userId, String voucherCode) {
+		if (!Objects.equals(quote.getUserId(), userId)) return false;
+		String quotedVoucher = quote.getVoucherCode() != null ? quote.getVoucherCode() : "";
+		String requestedVoucher = voucherCode != null ? voucherCode.trim().replaceAll("\\s+", " ").toUpperCase() : "";
+		if (!quotedVoucher.equalsIgnoreCase(requestedVoucher)) return false;
+		if (requests == null || requests.size() != quote.getLines().size()) return false;
+		for (int i = 0; i < requests.size(); i++) {
+			if (!quote.getLines().get(i).matches(requests.get(i))) return false;
+		}
+		return true;
+	}
+
+	private void store(PriceQuote quote) {
+		Instant now = Instant.now();
+		quote.setToken(UUID.randomUUID().toString());
+		quote.setCreatedAt(now);
+		quote.setExpiresAt(now.plus(quoteTtl));
+		synchronized (quotes) {
+			quotes.put(quote.getToken(), quote);
+		}
+	}
+
+	private static PriceQuote copyOf(PriceQuote source) {
+		PriceQuote copy = new PriceQuote();
+		copy.setUserId(source.getUserId());
+		copy.setSubtotal(source.getSubtotal());
+		copy.setDiscountAmount(source.getDiscountAmount());
+		copy.setDiscountReason(source.getDiscountReason());
+		copy.setVoucherCode(source.getVoucherCode());
+		copy.setShipping(source.getShipping());
+		copy.setTax(source.getTax());
+		copy.setTotal(source.getTotal());
+		copy.setCreatedAt(source.getCreatedAt());
+		copy.setExpiresAt(source.getExpiresAt());
+		for (PriceQuote.Line line : source.getLines()) {
+			PriceQuote.Line l = new PriceQuote.Line();
+			l.setProductId(line.getProductId());
+			l.setVendorId(line.getVendorId());
+			l.setProductName(line.getProductName());
+			l.setProductDescription(line.getProductDescription());
+			l.setDefaultImageUrl(line.getDefaultImageUrl());
+			l.setColor(line.getColor());
+			l.setSize(line.getSize());
+			l.setQuantity(line.getQuantity());
+			l.setUnitPrice(line.getUnitPrice());
+			l.setDiscountPercentage(line.getDiscountPercentage());
+			l.setFinalUnitPrice(line.getFinalUnitPrice());
+			l.setLineTotal(line.getLineTotal());
+			l.setAvailableStock(line.getAvailableStock());
+			l.setAvailable(line.isAvailable());
+			l.setMessage(line.getMessage());
+			copy.getLines().add(l);
+		}
+		return copy;
+	}
+}
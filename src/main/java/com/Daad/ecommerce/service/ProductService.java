@@ -1,198 +1,352 @@
 package com.Daad.ecommerce.service;
 
-import com.Daad.ecommerce.dto.Product;
+import com.Daad.ecommerce.http.UpstreamHttpClients;
 import com.Daad.ecommerce.model.Vendor;
-import com.Daad.ecommerce.repository.CategoryRepository;
+import com.Daad.ecommerce.repository.CatalogSyncJobRepository;
 import com.Daad.ecommerce.repository.ProductRepository;
 import com.Daad.ecommerce.repository.VendorRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Vendor catalog sync from the vendor's website feed (a JSON array of WooCommerce-style products).
+ *
+ * A sync runs as a background job: the feed is stream-parsed and applied in chunks, each chunk
+ * diffed against the vendor's products by reference_id with one query and written with batched
+ * inserts, updates and inventory upserts. Progress is recorded on the catalog_sync_jobs row.
+ * Images are downloaded in the background and each product's images are saved as soon as they
+ * are ready; the job completes once every product's images are saved or have failed.
+ */
 @Service
 @Slf4j
 public class ProductService {
 
+	private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
 	@Autowired
 	private ProductRepository productRepository;
 
 	@Autowired
 	private VendorRepository vendorRepository;
 
+	@Autowired
+	private CatalogSyncJobRepository catalogSyncJobRepository;
+
 	// Intentionally not mapping categories from remote source per sync requirements
 
 	@Autowired
-	private BackblazeService backblazeService;
+	private ImageIngestionService imageIngestionService;
+
+	@Autowired
+	private UpstreamHttpClients upstreamHttpClients;
+
+	@Value("${products.sync.chunk-size:500}")
+	private int chunkSize;
+
+	@Value("${products.sync.stale-minutes:15}")
+	private int staleMinutes;
 
-	private final RestTemplate restTemplate = new RestTemplate();
 	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final TransactionTemplate chunkTransaction;
+	private final ExecutorService syncExecutor;
+	// Jobs queued in or run by this instance's executor; their heartbeat keeps them from looking abandoned
+	private final Set<String> heldJobs = ConcurrentHashMap.newKeySet();
+
+	public ProductService(@Value("${products.sync.parallelism:2}") int parallelism,
+						  PlatformTransactionManager transactionManager) {
+		this.chunkTransaction = new TransactionTemplate(transactionManager);
+		this.syncExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+			Thread thread = new Thread(r, "Catalog-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
 
 	/**
-	 * Fetches products from a vendor's website sync URL (expects a JSON array)
-	 * and saves them as new products for the given vendor.
+	 * Queues a catalog sync for the vendor owned by userId and returns its job row. When the vendor
+	 * already has a sync queued or running, that job is returned instead of starting another.
 	 *
-	 * The remote product JSON is expected to contain at least: name, price, category (id)
-	 * Optional fields: description, gender, colorInventories (list), images (list of urls)
-	 *
-	 * Products without a valid category id will be skipped.
-	 *
-	 * @param userId vendor id to attach products to
-	 * @return list of saved products
-	 * @throws Exception when the fetch or mapping fails
+	 * The remote product JSON is expected to contain at least: id (reference id), name, price
+	 * Optional fields: description, gender, colorInventories (list), images (list of urls or {src})
 	 */
-	public List<Product> syncProductsFromVendorWebsite(String userId) throws Exception {
-		Optional<Vendor> vendorOpt = vendorRepository.findByUserId(userId);
-		if (vendorOpt.isEmpty()) {
-			throw new IllegalArgumentException("Vendor not found: " + userId);
+	public Map<String, Object> startCatalogSync(String userId) {
+		Vendor vendor = vendorRepository.findByUserId(userId)
+				.orElseThrow(() -> new IllegalArgumentException("Vendor not found: " + userId));
+		if (vendor.getWebsiteSyncUrl() == null || vendor.getWebsiteSyncUrl().isBlank()) {
+			throw new IllegalArgumentException("Vendor has no website sync URL");
 		}
 
-		Vendor vendor = vendorOpt.get();
-        String websiteSyncUrl = vendor.getWebsiteSyncUrl();
-
-		String resp = restTemplate.getForObject(websiteSyncUrl, String.class);
-		if (resp == null || resp.isBlank()) {
-			log.warn("Empty response from vendor sync URL: {}", websiteSyncUrl);
-			return new ArrayList<>();
+		String jobId = catalogSyncJobRepository.createUnlessActive(vendor.getId(), staleMinutes);
+		if (jobId == null) {
+			Map<String, Object> active = catalogSyncJobRepository.findActiveByVendor(vendor.getId());
+			if (active == null) {
+				throw new IllegalStateException("A catalog sync for this vendor just finished; try again");
+			}
+			return active;
 		}
 
-		List<Map<String, Object>> remoteProducts = objectMapper.readValue(resp, new TypeReference<>() {});
-		List<Product> saved = new ArrayList<>();
+		heldJobs.add(jobId);
+		try {
+			// Held (and heartbeated) until the images have been attached too, not just the feed applied
+			syncExecutor.execute(() -> runCatalogSync(jobId, vendor).whenComplete((v, e) -> heldJobs.remove(jobId)));
+		} catch (RejectedExecutionException e) {
+			heldJobs.remove(jobId);
+			catalogSyncJobRepository.markFinished(jobId, "failed", "Server is shutting down");
+		}
+		return catalogSyncJobRepository.findByIdAndVendor(jobId, vendor.getId());
+	}
 
-		for (Map<String, Object> rp : remoteProducts) {
-			try {
-				String name = rp.get("name") != null ? rp.get("name").toString() : null;
-				if (name == null || name.isBlank()) {
-					log.debug("Skipping remote product without name: {}", rp);
-					continue;
-				}
+	public Optional<Map<String, Object>> getCatalogSyncJob(String userId, String jobId) {
+		Optional<Vendor> vendorOpt = vendorRepository.findByUserId(userId);
+		if (vendorOpt.isEmpty()) {
+			return Optional.empty();
+		}
+		try {
+			UUID.fromString(jobId);
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(catalogSyncJobRepository.findByIdAndVendor(jobId, vendorOpt.get().getId()));
+	}
 
-				// reference id from remote source (WooCommerce id)
-				String referenceId = rp.get("id") != null ? rp.get("id").toString() : null;
-				if (referenceId == null || referenceId.isBlank()) {
-					log.debug("Skipping remote product without remote id: {}", rp);
-					continue;
-				}
+	// Queued jobs send no progress, so held jobs are touched on a timer well inside stale-minutes
+	@Scheduled(fixedDelayString = "${products.sync.heartbeat-ms:60000}")
+	public void heartbeatHeldJobs() {
+		if (heldJobs.isEmpty()) return;
+		try {
+			catalogSyncJobRepository.heartbeat(new ArrayList<>(heldJobs));
+		} catch (Exception e) {
+			log.warn("Catalog sync heartbeat failed: {}", e.getMessage());
+		}
+	}
 
-				// Try to find existing product by reference id
-				Optional<Product> existingOpt = productRepository.findByReferenceId(referenceId);
-				Product product = existingOpt.orElseGet(Product::new);
-				product.setReferenceId(referenceId);
-				product.setName(name);
-				product.setDescription(rp.get("description") != null ? parseDescription(rp.get("description").toString()) : null);
-
-				if (rp.get("price") != null) {
-					try {
-						product.setPrice(new BigDecimal(rp.get("price").toString()));
-					} catch (Exception e) {
-						log.warn("Invalid price for product {}: {}", name, rp.get("price"));
+	// Applies the feed on the calling thread; the returned future completes once the job is finished
+	private CompletableFuture<Void> runCatalogSync(String jobId, Vendor vendor) {
+		String websiteSyncUrl = vendor.getWebsiteSyncUrl();
+		try {
+			if (!catalogSyncJobRepository.markRunning(jobId)) {
+				log.warn("Catalog sync {} for vendor {} was given up while queued; not running it", jobId, vendor.getId());
+				return CompletableFuture.completedFuture(null);
+			}
+			// Image downloads run in parallel with the rest of the sync; each product's are saved when ready
+			List<CompletableFuture<Void>> pendingImages = new ArrayList<>();
+
+			upstreamHttpClients.restTemplate(UpstreamHttpClients.VENDOR_SYNC).execute(websiteSyncUrl, HttpMethod.GET, null, response -> {
+				try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+					JsonToken token = parser.nextToken();
+					if (token == null) {
+						log.warn("Empty response from vendor sync URL: {}", websiteSyncUrl);
+						return null;
+					}
+					if (token != JsonToken.START_ARRAY) {
+						throw new IOException("Vendor feed is not a JSON array");
+					}
+					List<Map<String, Object>> chunk = new ArrayList<>(chunkSize);
+					while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+						if (token != JsonToken.START_OBJECT) {
+							parser.skipChildren();
+							continue;
+						}
+						chunk.add(objectMapper.readValue(parser, MAP_TYPE));
+						if (chunk.size() >= chunkSize) {
+							applyChunk(jobId, vendor, chunk, pendingImages);
+							chunk.clear();
+						}
+					}
+					if (!chunk.isEmpty()) {
+						applyChunk(jobId, vendor, chunk, pendingImages);
 					}
 				}
+				return null;
+			});
+
+			// Every pending future handles its own failure, so this only waits for them to settle
+			return CompletableFuture.allOf(pendingImages.toArray(new CompletableFuture<?>[0]))
+					.whenComplete((v, e) -> catalogSyncJobRepository.markFinished(jobId, "completed", null));
+		} catch (Exception e) {
+			log.error("Catalog sync {} for vendor {} failed: {}", jobId, vendor.getId(), e.getMessage(), e);
+			catalogSyncJobRepository.markFinished(jobId, "failed", String.valueOf(e.getMessage()));
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	// One chunk of the feed: bulk diff by reference_id, then batched writes in a single transaction
+	private void applyChunk(String jobId, Vendor vendor, List<Map<String, Object>> chunk,
+							List<CompletableFuture<Void>> pendingImages) {
+		int skipped = 0;
+		Map<String, Map<String, Object>> byReference = new LinkedHashMap<>();
+		for (Map<String, Object> rp : chunk) {
+			String name = rp.get("name") != null ? rp.get("name").toString() : null;
+			// reference id from remote source (WooCommerce id)
+			String referenceId = rp.get("id") != null ? rp.get("id").toString() : null;
+			if (name == null || name.isBlank() || referenceId == null || referenceId.isBlank()) {
+				log.debug("Skipping remote product without name or remote id: {}", rp);
+				skipped++;
+				continue;
+			}
+			if (byReference.put(referenceId, rp) != null) {
+				skipped++; // repeated in the feed; the later entry wins
+			}
+		}
 
-				// gender if provided
-				if (rp.get("gender") != null) {
-					product.setGender(rp.get("gender").toString());
+		Map<String, String> existing = productRepository.findIdsByReferenceIds(vendor.getId(), byReference.keySet());
+		List<Object[]> updates = new ArrayList<>();
+		List<Object[]> inserts = new ArrayList<>();
+		for (Map.Entry<String, Map<String, Object>> entry : byReference.entrySet()) {
+			Map<String, Object> rp = entry.getValue();
+			String name = rp.get("name").toString();
+			String description = rp.get("description") != null ? parseDescription(rp.get("description").toString()) : null;
+			String gender = rp.get("gender") != null ? rp.get("gender").toString() : null;
+			BigDecimal price = null;
+			if (rp.get("price") != null) {
+				try {
+					price = new BigDecimal(rp.get("price").toString());
+				} catch (Exception e) {
+					log.warn("Invalid price for product {}: {}", name, rp.get("price"));
 				}
+			}
 
-				// require category id (remote must provide category id that maps to existing category)
-				// Per request: do not map categories from remote source. Leave category empty/null.
-				product.setCategory(null);
-
-
-
-				product.setStatus("awaiting_approval");
-				product.setIsActive(true);
-
-				// Ensure vendor info attached
-				Product.Vendor pv = new Product.Vendor();
-				pv.setId(vendor.getId());
-				pv.setBusinessName(vendor.getBusinessName());
-				pv.setBusinessType(vendor.getBusinessType());
-				pv.setStatus(vendor.getStatus());
-				pv.setRating(vendor.getRating());
-				product.setVendor(pv);
-
-				// Save product (insert or update)
-				Product savedProduct = productRepository.save(product);
-
-				// color inventories: expect structure [{"color":"Red","colorCode":"#ff0000","sizes":[{"size":"M","stock":10}]}]
-				Object colorInvObj = rp.get("colorInventories");
-				if (colorInvObj instanceof List) {
-					List<?> colorList = (List<?>) colorInvObj;
-					for (Object ciObj : colorList) {
-						if (!(ciObj instanceof Map)) continue;
-						Map<?,?> ci = (Map<?,?>) ciObj;
-						String color = ci.get("color") != null ? ci.get("color").toString() : null;
-						String colorCode = ci.get("colorCode") != null ? ci.get("colorCode").toString() : null;
-						Object sizesObj = ci.get("sizes");
-						if (sizesObj instanceof List) {
-							List<?> sizes = (List<?>) sizesObj;
-							for (Object sObj : sizes) {
-								if (!(sObj instanceof Map)) continue;
-								Map<?,?> s = (Map<?,?>) sObj;
-								String size = s.get("size") != null ? s.get("size").toString() : null;
-								int stock = 0;
-								try { stock = s.get("stock") != null ? Integer.parseInt(s.get("stock").toString()) : 0; } catch (Exception ignored) {}
-								if (color != null && size != null) {
-									productRepository.addSizeToColor(savedProduct.getId(), color, colorCode, size, stock);
-								}
-							}
-						}
-					}
-					// reload inventory counts in savedProduct by fetching from repo
-					try { savedProduct = productRepository.findById(savedProduct.getId()).orElse(savedProduct); } catch (Exception ignored) {}
+			String productId = existing.get(entry.getKey());
+			if (productId != null) {
+				updates.add(new Object[]{name, description, price, gender, productId});
+			} else if (price != null) {
+				inserts.add(new Object[]{name, description, price, gender, entry.getKey()});
+			} else {
+				log.debug("Skipping new remote product without a valid price: {}", name);
+				skipped++;
+			}
+		}
+
+		Map<String, String> inserted = new HashMap<>();
+		// Keyed by product/color/size so a size listed twice is written once, last entry winning
+		Map<String, Object[]> inventoryRows = new LinkedHashMap<>();
+		chunkTransaction.executeWithoutResult(status -> {
+			productRepository.updateSyncedProducts(updates);
+			inserted.putAll(productRepository.insertSyncedProducts(vendor.getId(), inserts));
+
+			Map<String, String> productIds = new HashMap<>(existing);
+			productIds.putAll(inserted);
+			Set<String> stockedIds = new LinkedHashSet<>();
+			for (Map.Entry<String, Map<String, Object>> entry : byReference.entrySet()) {
+				String productId = productIds.get(entry.getKey());
+				if (productId != null && collectInventory(productId, entry.getValue().get("colorInventories"), inventoryRows)) {
+					stockedIds.add(productId);
 				}
+			}
+			productRepository.upsertInventoryBatch(new ArrayList<>(inventoryRows.values()));
+			productRepository.refreshTotalStock(stockedIds);
+		});
+
+		// images: uploaded for new products, and for existing ones that still have none (e.g. an earlier
+		// sync's downloads failed); products that already have images keep them
+		Map<String, String> needImages = new HashMap<>(inserted);
+		if (!existing.isEmpty()) {
+			Set<String> withoutImages = productRepository.findIdsWithoutImages(existing.values());
+			for (Map.Entry<String, String> entry : existing.entrySet()) {
+				if (withoutImages.contains(entry.getValue())) needImages.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (Map.Entry<String, String> entry : needImages.entrySet()) {
+			List<String> imageUrls = imageUrls(byReference.get(entry.getKey()).get("images"));
+			if (!imageUrls.isEmpty()) {
+				pendingImages.add(attachImages(jobId, entry.getValue(), imageIngestionService.ingestAll(imageUrls)));
+			}
+		}
 
-				// images: only upload and save images when creating a new local product.
-				if (existingOpt.isEmpty()) {
-					Object imagesObj = rp.get("images");
-					if (imagesObj instanceof List) {
-						List<String> urls = new ArrayList<>();
-						List<String> fileKeys = new ArrayList<>();
-						for (Object iu : (List<?>) imagesObj) {
-							if (iu == null) continue;
-							// WooCommerce images objects may be maps with 'src'
-							String imageUrl = null;
-							if (iu instanceof Map) {
-								Object src = ((Map<?,?>) iu).get("src");
-								if (src != null) imageUrl = src.toString();
-							} else {
-								imageUrl = iu.toString();
-							}
-							if (imageUrl == null) continue;
-							try {
-								BackblazeService.UploadResult ur = backblazeService.uploadFromUrl(imageUrl, "products/" + savedProduct.getId());
-								urls.add(ur.url);
-								fileKeys.add(ur.key);
-							} catch (Exception e) {
-								log.warn("Failed to upload remote image {} for product {}: {}", imageUrl, savedProduct.getId(), e.getMessage());
-							}
-						}
-						if (!urls.isEmpty()) {
-							productRepository.saveProductImages(savedProduct.getId(), urls, null, fileKeys);
-						}
-					}
+		catalogSyncJobRepository.addProgress(jobId, chunk.size(), inserted.size(), updates.size(), skipped, inventoryRows.size(), 0);
+	}
+
+	// color inventories: expect structure [{"color":"Red","colorCode":"#ff0000","sizes":[{"size":"M","stock":10}]}]
+	private boolean collectInventory(String productId, Object colorInvObj, Map<String, Object[]> rows) {
+		if (!(colorInvObj instanceof List)) return false;
+		boolean any = false;
+		for (Object ciObj : (List<?>) colorInvObj) {
+			if (!(ciObj instanceof Map)) continue;
+			Map<?,?> ci = (Map<?,?>) ciObj;
+			String color = ci.get("color") != null ? ci.get("color").toString() : null;
+			String colorCode = ci.get("colorCode") != null ? ci.get("colorCode").toString() : null;
+			Object sizesObj = ci.get("sizes");
+			if (color == null || !(sizesObj instanceof List)) continue;
+			for (Object sObj : (List<?>) sizesObj) {
+				if (!(sObj instanceof Map)) continue;
+				Map<?,?> s = (Map<?,?>) sObj;
+				String size = s.get("size") != null ? s.get("size").toString() : null;
+				int stock = 0;
+				try { stock = s.get("stock") != null ? Integer.parseInt(s.get("stock").toString()) : 0; } catch (Exception ignored) {}
+				if (size != null) {
+					rows.put(productId + "\0" + color + "\0" + size, new Object[]{productId, color, colorCode, size, stock});
+					any = true;
 				}
+			}
+		}
+		return any;
+	}
 
-				saved.add(savedProduct);
-			} catch (Exception e) {
-				log.error("Failed to sync a remote product: {}", e.getMessage(), e);
+	private List<String> imageUrls(Object imagesObj) {
+		List<String> imageUrls = new ArrayList<>();
+		if (!(imagesObj instanceof List)) return imageUrls;
+		for (Object iu : (List<?>) imagesObj) {
+			if (iu == null) continue;
+			// WooCommerce images objects may be maps with 'src'
+			if (iu instanceof Map) {
+				Object src = ((Map<?,?>) iu).get("src");
+				if (src != null) imageUrls.add(src.toString());
+			} else {
+				imageUrls.add(iu.toString());
 			}
 		}
+		return imageUrls;
+	}
 
-		return saved;
+	// Saves a product's images as soon as its downloads finish; failures are logged, never propagated
+	private CompletableFuture<Void> attachImages(String jobId, String productId,
+												 CompletableFuture<List<BackblazeService.UploadResult>> ingestion) {
+		return ingestion.thenAccept(images -> {
+			List<String> urls = new ArrayList<>();
+			List<String> fileKeys = new ArrayList<>();
+			List<Map<String, String>> variants = new ArrayList<>();
+			for (BackblazeService.UploadResult ur : images) {
+				urls.add(ur.url);
+				fileKeys.add(ur.key);
+				variants.add(ur.variants);
+			}
+			if (urls.isEmpty()) return;
+			productRepository.saveProductImages(productId, urls, null, fileKeys, variants);
+			catalogSyncJobRepository.addProgress(jobId, 0, 0, 0, 0, 0, urls.size());
+		}).exceptionally(e -> {
+			log.warn("Failed to save images for product {}: {}", productId, e.getMessage());
+			return null;
+		});
 	}
 
     private String parseDescription(String description) {
@@ -218,4 +372,8 @@ public class ProductService {
         return result.toString();
     }
 
+	@PreDestroy
+	public void shutdown() {
+		syncExecutor.shutdownNow();
+	}
 }
@@ -1,25 +1,492 @@
 package com.Daad.ecommerce.service;
 
+import com.Daad.ecommerce.http.UpstreamHttpClients;
+import com.Daad.ecommerce.repository.ReconciliationRepository;
 import com.Daad.ecommerce.repository.VendorPayoutRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Nightly reconciliation of local payments and vendor payouts against Paymob.
+ *
+ * Local rows are read in time order, one keyset page (chunk) at a time, so no transaction or
+ * cursor is held open while Paymob is called. For each chunk the provider records covering the
+ * same time range (plus the match skew) are fetched page by page and hash-joined against it on
+ * the merchant reference; several local rows or provider attempts may share a reference. Provider
+ * records that could still match a later chunk are carried for at most the skew, so memory is
+ * bounded by the chunk size rather than the length of the window. Discrepancies, and fixes for
+ * records stuck in a non-final state locally, are written in batches.
+ */
 @Service
 public class ReconciliationService {
 
+    private static final String KIND_PAYMENT = "payment";
+    private static final String KIND_PAYOUT = "payout";
+
+    private final ReconciliationRepository reconciliationRepository;
     private final VendorPayoutRepository vendorPayoutRepository;
+    private final PaymentService paymentService;
+    private final PayoutService payoutService;
+    private final RestTemplate restTemplate;
+    private final TransactionTemplate writeTransaction;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    @Value("${payments.paymob.api-base-url}")
+    private String paymentsBaseUrl;
+    @Value("${payouts.paymob.api-base-url:https://accept.paymob.com/api}")
+    private String payoutsBaseUrl;
+    @Value("${payouts.paymob.api-key:}")
+    private String payoutApiKey;
+    @Value("${reconciliation.paymob.transactions-path:/acceptance/transactions}")
+    private String transactionsPath;
+    @Value("${reconciliation.paymob.payouts-path:/acceptance/payouts}")
+    private String payoutsPath;
+    @Value("${reconciliation.window-days:30}")
+    private int windowDays;
+    @Value("${reconciliation.chunk-size:500}")
+    private int chunkSize;
+    @Value("${reconciliation.provider-page-size:100}")
+    private int providerPageSize;
+    @Value("${reconciliation.match-skew-minutes:90}")
+    private long matchSkewMinutes;
+    @Value("${reconciliation.write-batch-size:200}")
+    private int writeBatchSize;
+    @Value("${payouts.executor.max-attempts:5}")
+    private int payoutMaxAttempts;
 
-    public ReconciliationService(VendorPayoutRepository vendorPayoutRepository) {
+    public ReconciliationService(ReconciliationRepository reconciliationRepository,
+                                 VendorPayoutRepository vendorPayoutRepository,
+                                 PaymentService paymentService,
+                                 PayoutService payoutService,
+                                 UpstreamHttpClients upstreamHttpClients,
+                                 PlatformTransactionManager transactionManager) {
+        this.reconciliationRepository = reconciliationRepository;
         this.vendorPayoutRepository = vendorPayoutRepository;
+        this.paymentService = paymentService;
+        this.payoutService = payoutService;
+        this.restTemplate = upstreamHttpClients.restTemplate(UpstreamHttpClients.PAYMOB);
+        // Each flush commits on its own
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
-    // Skeleton daily reconciliation job at 2 AM (server time)
+    // Daily reconciliation job at 2 AM (server time)
     @Scheduled(cron = "0 0 2 * * *")
     public void reconcilePaymentsAndPayouts() {
-        // Placeholder: implement querying recent processing/pending transactions and payouts,
-        // call Paymob APIs to fetch actual status, compare and update local records, and log discrepancies.
-        System.out.println("Reconciliation job placeholder executed at 2 AM");
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("Reconciliation already running, skipping");
+            return;
+        }
+        try {
+            LocalDateTime runStartedAt = LocalDateTime.now();
+            LocalDateTime from = runStartedAt.minusDays(windowDays);
+
+            String paymentToken = paymentService.authenticateWithPaymob();
+            if (paymentToken != null) {
+                Run payments = new Run(KIND_PAYMENT, runStartedAt, from, paymentsBaseUrl + transactionsPath, paymentToken);
+                payments.run((afterTime, afterId) ->
+                    reconciliationRepository.findPaymentsPage(from, runStartedAt, afterTime, afterId, chunkSize, (rs, n) -> readLocal(rs)));
+                System.out.println("Payment reconciliation completed. " + payments.summary());
+            } else {
+                System.out.println("Paymob authentication failed, skipping payment reconciliation");
+            }
+
+            if (payoutApiKey != null && !payoutApiKey.isBlank()) {
+                String payoutToken = payoutService.getAuthToken();
+                Run payouts = new Run(KIND_PAYOUT, runStartedAt, from, payoutsBaseUrl + payoutsPath, payoutToken);
+                payouts.run((afterTime, afterId) ->
+                    reconciliationRepository.findPayoutsPage(from, runStartedAt, afterTime, afterId, chunkSize, (rs, n) -> readLocal(rs)));
+                System.out.println("Payout reconciliation completed. " + payouts.summary());
+            }
+        } catch (Exception e) {
+            System.err.println("Error in reconciliation job: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
     }
-}
 
+    // Reads the page of local rows after the keyset position (null, null for the first page)
+    interface LocalPageLoader {
+        List<Map<String, Object>> load(LocalDateTime afterTime, String afterId);
+    }
+
+    /**
+     * State of one reconciliation pass (payments or payouts): the current chunk of local rows
+     * (the hash-join build side), provider records still within the skew of a later chunk, and
+     * the pending writes.
+     */
+    private class Run {
+        final String kind;
+        final LocalDateTime runStartedAt;
+        final LocalDateTime windowStart;
+        final String providerUrl;
+        final String token;
+
+        final Map<String, List<Map<String, Object>>> chunk = new HashMap<>();
+        // Provider records by reference, kept until they fall out of the skew so later rows sharing the reference still match
+        final Map<String, List<Map<String, Object>>> carried = new LinkedHashMap<>();
+        final Set<String> matchedKeys = new HashSet<>();
+        LocalDateTime providerFetchedTo;
+
+        final List<Object[]> discrepancies = new ArrayList<>();
+        final List<Object[]> paymentFixes = new ArrayList<>();
+        final List<Object[]> payoutsCompleted = new ArrayList<>();
+        final List<Object[]> payoutsToRetry = new ArrayList<>();
+        int localCount;
+        int matchedCount;
+        int discrepancyCount;
+        int fixedCount;
+        int lostFixCount;
+
+        Run(String kind, LocalDateTime runStartedAt, LocalDateTime windowStart, String providerUrl, String token) {
+            this.kind = kind;
+            this.runStartedAt = runStartedAt;
+            this.windowStart = windowStart;
+            this.providerUrl = providerUrl;
+            this.token = token;
+            this.providerFetchedTo = windowStart;
+        }
+
+        void run(LocalPageLoader loader) {
+            LocalDateTime afterTime = null;
+            String afterId = null;
+            while (true) {
+                List<Map<String, Object>> page = loader.load(afterTime, afterId);
+                if (page.isEmpty()) break;
+                for (Map<String, Object> row : page) {
+                    chunk.computeIfAbsent((String) row.get("match_key"), k -> new ArrayList<>()).add(row);
+                }
+                localCount += page.size();
+                Map<String, Object> last = page.get(page.size() - 1);
+                afterTime = (LocalDateTime) last.get("event_time");
+                afterId = (String) last.get("id");
+                if (page.size() < chunkSize) break;
+                processChunk(afterTime);
+            }
+            finish(runStartedAt);
+        }
+
+        void finish(LocalDateTime windowEnd) {
+            processChunk(windowEnd);
+            for (Map.Entry<String, List<Map<String, Object>>> entry : carried.entrySet()) {
+                if (!matchedKeys.contains(entry.getKey())) {
+                    reportMissingLocally(best(entry.getValue()));
+                }
+            }
+            carried.clear();
+            matchedKeys.clear();
+            flush();
+        }
+
+        String summary() {
+            return "Local: " + localCount + ", matched: " + matchedCount + ", discrepancies: " + discrepancyCount
+                    + ", fixed: " + (fixedCount - lostFixCount) + (lostFixCount > 0 ? ", fixes skipped (settled meanwhile): " + lostFixCount : "");
+        }
+
+        private void processChunk(LocalDateTime upTo) {
+            LocalDateTime fetchTo = upTo.plusMinutes(matchSkewMinutes);
+            if (fetchTo.isAfter(providerFetchedTo)) {
+                fetchProviderRecords(providerFetchedTo, fetchTo);
+                providerFetchedTo = fetchTo;
+            }
+
+            // The provider has been read up to each row's time plus the skew
+            for (Map.Entry<String, List<Map<String, Object>>> entry : chunk.entrySet()) {
+                List<Map<String, Object>> providers = carried.get(entry.getKey());
+                for (Map<String, Object> local : entry.getValue()) {
+                    if (providers != null) {
+                        compare(local, pick(local, providers));
+                    } else if (claimsProviderRecord(local)) {
+                        addDiscrepancy(local, null, "MISSING_AT_PROVIDER", requeueUnsent(local));
+                    }
+                }
+                if (providers != null) {
+                    matchedKeys.add(entry.getKey());
+                }
+            }
+            chunk.clear();
+
+            // Provider records older than the skew can no longer match a later local row
+            LocalDateTime expired = upTo.minusMinutes(matchSkewMinutes);
+            Iterator<Map.Entry<String, List<Map<String, Object>>>> it = carried.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, List<Map<String, Object>>> entry = it.next();
+                if (!expiredBefore(entry.getValue(), expired)) continue;
+                if (!matchedKeys.remove(entry.getKey())) {
+                    reportMissingLocally(best(entry.getValue()));
+                }
+                it.remove();
+            }
+
+            if (discrepancies.size() + paymentFixes.size() + payoutsCompleted.size() + payoutsToRetry.size() >= writeBatchSize) {
+                flush();
+            }
+        }
+
+        private void fetchProviderRecords(LocalDateTime from, LocalDateTime to) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set("Authorization", "Bearer " + token);
+            HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+            int page = 1;
+            while (true) {
+                String url = UriComponentsBuilder.fromHttpUrl(providerUrl)
+                        .queryParam("created_at__gte", from)
+                        .queryParam("created_at__lt", to)
+                        .queryParam("page_size", providerPageSize)
+                        .queryParam("page", page)
+                        .toUriString();
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                ResponseEntity<Map> response = restTemplate.exchange(url, HttpMethod.GET, entity, Map.class);
+                Map<String, Object> body = response.getBody();
+                if (body == null) break;
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> results = (List<Map<String, Object>>) body.get("results");
+                if (results == null || results.isEmpty()) break;
+
+                // Several attempts can share a reference (e.g. a declined card, then a retry); all are kept
+                for (Map<String, Object> record : results) {
+                    String key = providerKey(record);
+                    if (key != null) {
+                        carried.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+                    }
+                }
+
+                if (body.get("next") == null) break;
+                page++;
+            }
+        }
+
+        // The attempt a local row recorded, if any; otherwise the most settled attempt for the reference
+        private Map<String, Object> pick(Map<String, Object> local, List<Map<String, Object>> providers) {
+            Object providerId = local.get("provider_id");
+            if (providerId != null) {
+                for (Map<String, Object> provider : providers) {
+                    if (provider.get("id") != null && providerId.equals(provider.get("id").toString())) return provider;
+                }
+            }
+            return best(providers);
+        }
+
+        private Map<String, Object> best(List<Map<String, Object>> providers) {
+            Map<String, Object> best = providers.get(0);
+            for (Map<String, Object> provider : providers) {
+                if (settledRank(provider) >= settledRank(best)) best = provider;
+            }
+            return best;
+        }
 
+        private boolean expiredBefore(List<Map<String, Object>> providers, LocalDateTime expired) {
+            for (Map<String, Object> provider : providers) {
+                LocalDateTime time = providerTime(provider);
+                if (time == null || !time.isBefore(expired)) return false;
+            }
+            return true;
+        }
+
+        private void compare(Map<String, Object> local, Map<String, Object> provider) {
+            matchedCount++;
+            BigDecimal localAmount = (BigDecimal) local.get("amount");
+            BigDecimal providerAmount = providerAmount(provider);
+            if (localAmount != null && providerAmount != null && localAmount.setScale(2, RoundingMode.HALF_UP).compareTo(providerAmount) != 0) {
+                addDiscrepancy(local, provider, "AMOUNT_MISMATCH", false);
+            }
+
+            String localStatus = localStatus(local);
+            String providerStatus = providerStatus(provider);
+            if (!localStatus.equals(providerStatus)) {
+                addDiscrepancy(local, provider, "STATUS_MISMATCH", applyFix(local, provider, localStatus, providerStatus));
+            }
+        }
+
+        // Only records still waiting on the provider are corrected; anything else needs a human
+        private boolean applyFix(Map<String, Object> local, Map<String, Object> provider, String localStatus, String providerStatus) {
+            String providerId = provider.get("id") != null ? provider.get("id").toString() : null;
+            if (KIND_PAYMENT.equals(kind)) {
+                if (!"pending".equals(localStatus) || !isFinal(providerStatus)) return false;
+                String orderPaymentStatus = "success".equals(providerStatus) ? "paid" : "failed";
+                paymentFixes.add(new Object[]{providerStatus, providerId, local.get("id"), orderPaymentStatus, local.get("order_id")});
+            } else {
+                if (!"processing".equals(localStatus) || !isFinal(providerStatus)) return false;
+                if ("completed".equals(providerStatus)) {
+                    payoutsCompleted.add(new Object[]{providerId, toJson(provider), local.get("id")});
+                } else {
+                    payoutsToRetry.add(new Object[]{"Reconciliation: Paymob reported failed", 60, local.get("id")});
+                }
+            }
+            fixedCount++;
+            return true;
+        }
+
+        // A payout whose send had an unknown outcome and that Paymob has no record of was never paid
+        private boolean requeueUnsent(Map<String, Object> local) {
+            if (!KIND_PAYOUT.equals(kind) || !"processing".equals(localStatus(local)) || !Boolean.TRUE.equals(local.get("outcome_unknown"))) {
+                return false;
+            }
+            payoutsToRetry.add(new Object[]{"Reconciliation: no Paymob record, re-sending", 0, local.get("id")});
+            fixedCount++;
+            return true;
+        }
+
+        private void reportMissingLocally(Map<String, Object> provider) {
+            // May belong to a local row from just before the window
+            LocalDateTime time = providerTime(provider);
+            if (time != null && time.isBefore(windowStart.plusMinutes(matchSkewMinutes))) return;
+            addDiscrepancy(null, provider, "MISSING_LOCALLY", false);
+        }
+
+        private void addDiscrepancy(Map<String, Object> local, Map<String, Object> provider, String type, boolean fixed) {
+            discrepancyCount++;
+            discrepancies.add(new Object[]{
+                runStartedAt,
+                kind,
+                local != null ? local.get("match_key") : providerKey(provider),
+                type,
+                local != null ? localStatus(local) : null,
+                provider != null ? providerStatus(provider) : null,
+                local != null ? local.get("amount") : null,
+                provider != null ? providerAmount(provider) : null,
+                provider != null && provider.get("id") != null ? provider.get("id").toString() : (local != null ? local.get("provider_id") : null),
+                fixed
+            });
+        }
+
+        private void flush() {
+            int queued = paymentFixes.size() + payoutsCompleted.size() + payoutsToRetry.size();
+            // Fixes are guarded on the local row still waiting (payments pending, payouts processing);
+            // rows a webhook or the executor settled since they were read are left alone
+            Integer applied = writeTransaction.execute(status -> {
+                int count = reconciliationRepository.applyPaymentFixes(paymentFixes)
+                        + vendorPayoutRepository.markCompletedBatch(payoutsCompleted)
+                        + vendorPayoutRepository.markFailedForRetryBatch(payoutsToRetry, payoutMaxAttempts);
+                reconciliationRepository.insertDiscrepancies(discrepancies);
+                return count;
+            });
+            lostFixCount += queued - (applied != null ? applied : 0);
+            paymentFixes.clear();
+            payoutsCompleted.clear();
+            payoutsToRetry.clear();
+            discrepancies.clear();
+        }
+
+        private boolean claimsProviderRecord(Map<String, Object> local) {
+            String status = localStatus(local);
+            // Abandoned checkouts never reach Paymob; payouts that failed before the call have no record either
+            return KIND_PAYMENT.equals(kind) ? !"pending".equals(status) : !"failed".equals(status);
+        }
+
+        private String providerKey(Map<String, Object> provider) {
+            Object key;
+            if (KIND_PAYMENT.equals(kind)) {
+                Object order = provider.get("order");
+                key = order instanceof Map ? ((Map<?, ?>) order).get("merchant_order_id") : provider.get("merchant_order_id");
+            } else {
+                key = provider.get("merchant_reference");
+            }
+            return key != null ? key.toString() : null;
+        }
+
+        private String localStatus(Map<String, Object> local) {
+            String status = String.valueOf(local.get("status")).toLowerCase();
+            if (KIND_PAYMENT.equals(kind)) {
+                if (Boolean.TRUE.equals(local.get("is_refunded"))) return "refunded";
+                // payment_transactions.status holds the raw webhook status (see PaymentService.processWebhookEvent)
+                switch (status) {
+                    case "success": case "paid": case "captured": case "completed": return "success";
+                    case "failed": case "declined": return "failed";
+                    case "voided": return "voided";
+                    case "refunded": return "refunded";
+                    default: return "pending";
+                }
+            }
+            return status;
+        }
+
+        private String providerStatus(Map<String, Object> provider) {
+            if (KIND_PAYMENT.equals(kind)) {
+                if (Boolean.TRUE.equals(provider.get("is_refunded"))) return "refunded";
+                if (Boolean.TRUE.equals(provider.get("is_voided"))) return "voided";
+                if (Boolean.TRUE.equals(provider.get("pending"))) return "pending";
+                return Boolean.TRUE.equals(provider.get("success")) ? "success" : "failed";
+            }
+            String status = String.valueOf(provider.getOrDefault("status", "processing")).toLowerCase();
+            if ("completed".equals(status) || "success".equals(status)) return "completed";
+            if ("failed".equals(status) || "declined".equals(status)) return "failed";
+            return "processing";
+        }
+
+        // Successful attempts win over failed ones, which win over attempts still in flight
+        private int settledRank(Map<String, Object> provider) {
+            String status = providerStatus(provider);
+            if ("success".equals(status) || "completed".equals(status)) return 2;
+            return isFinal(status) ? 1 : 0;
+        }
+
+        private boolean isFinal(String providerStatus) {
+            return !"pending".equals(providerStatus) && !"processing".equals(providerStatus);
+        }
+    }
+
+    private Map<String, Object> readLocal(ResultSet rs) throws SQLException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", rs.getString("id"));
+        row.put("order_id", rs.getString("order_id"));
+        row.put("match_key", rs.getString("match_key"));
+        row.put("provider_id", rs.getString("provider_id"));
+        row.put("status", rs.getString("status"));
+        row.put("is_refunded", rs.getBoolean("is_refunded"));
+        row.put("outcome_unknown", rs.getBoolean("outcome_unknown"));
+        row.put("amount", rs.getBigDecimal("amount"));
+        row.put("event_time", rs.getTimestamp("event_time").toLocalDateTime());
+        return row;
+    }
+
+    private static BigDecimal providerAmount(Map<String, Object> provider) {
+        Object cents = provider.get("amount_cents");
+        if (!(cents instanceof Number)) return null;
+        return BigDecimal.valueOf(((Number) cents).longValue()).movePointLeft(2);
+    }
+
+    private static LocalDateTime providerTime(Map<String, Object> provider) {
+        Object value = provider.get("created_at");
+        if (value == null) return null;
+        String text = value.toString();
+        try {
+            return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (Exception e) {
+            try {
+                return LocalDateTime.parse(text);
+            } catch (Exception ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static String toJson(Object o) {
+        try {
+            return new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(o);
+        } catch (Exception e) {
+            return "{}";
+        }
+    }
+}
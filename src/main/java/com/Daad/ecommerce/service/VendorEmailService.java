@@ -5,7 +5,6 @@ import com.Daad.ecommerce.model.Vendor;
 import com.Daad.ecommerce.dto.Product;
 import com.Daad.ecommerce.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -20,7 +19,6 @@ public class VendorEmailService {
     @Autowired
     private UserRepository userRepository;
 
-    @Async("emailTaskExecutor")
     public void sendVendorRegistrationNotification(Vendor vendor, User admin) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("vendorName", vendor.getBusinessName());
@@ -38,7 +36,6 @@ public class VendorEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendVendorRegistrationConfirmation(Vendor vendor) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("vendorName", vendor.getBusinessName());
@@ -53,7 +50,6 @@ public class VendorEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendVendorApprovalNotification(Vendor vendor, boolean isApproved, String reason) {
         System.out.println("sendVendorApprovalNotification called for vendor: " + vendor.getId());
         System.out.println("Vendor business name: " + vendor.getBusinessName());
@@ -99,7 +95,6 @@ public class VendorEmailService {
         }
     }
 
-    @Async("emailTaskExecutor")
     public void sendAdminVendorActionNotification(User admin, Vendor vendor, String action) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("adminName", admin.getUsername());
@@ -111,11 +106,11 @@ public class VendorEmailService {
             admin.getEmail(),
             "Vendor Action Completed - " + action,
             "admin-vendor-action",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_BULK
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendProductSubmissionNotification(Product product, Vendor vendor, User admin) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("productName", product.getName());
@@ -128,11 +123,11 @@ public class VendorEmailService {
             admin.getEmail(),
             "New Product Submitted for Approval - " + product.getName(),
             "product-submission-admin",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_BULK
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendProductApprovalNotification(Product product, Vendor vendor, boolean isApproved, String reason) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("productName", product.getName());
@@ -153,7 +148,6 @@ public class VendorEmailService {
         );
     }
 
-    @Async("emailTaskExecutor")
     public void sendStockAlertNotification(Product product, Vendor vendor, int stockLevel) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("productName", product.getName());
@@ -169,7 +163,8 @@ public class VendorEmailService {
             vendor.getUser().getEmail(),
             subject,
             "stock-alert",
-            variables
+            variables,
+            NotificationDispatcher.PRIORITY_BULK
         );
     }
 }
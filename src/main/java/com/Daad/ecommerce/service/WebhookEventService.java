@@ -0,0 +1,181 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.repository.WebhookEventRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Durable inbound webhook pipeline. Controllers verify the signature, append the raw
+ * event with one insert (duplicates are dropped by the dedup key) and acknowledge at once.
+ * A worker pool then drains the log, handling events for the same entity one at a time
+ * in arrival order and retrying failures with backoff.
+ *
+ * The scheduled tick only hands the drain to its own thread, and each drain stops after
+ * max-batches-per-tick, so a backlog never holds Spring's shared scheduler thread.
+ */
+@Service
+@Slf4j
+public class WebhookEventService {
+
+    public static final String SOURCE_FINCART = "fincart";
+    public static final String SOURCE_PAYMOB_PAYMENT = "paymob_payment";
+    public static final String SOURCE_PAYMOB_PAYOUT = "paymob_payout";
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    @Autowired
+    private WebhookEventRepository webhookEventRepository;
+
+    @Autowired
+    private DeliveryService deliveryService;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private PayoutService payoutService;
+
+    @Value("${webhooks.worker.batch-size:50}")
+    private int batchSize;
+
+    @Value("${webhooks.worker.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${webhooks.worker.max-batches-per-tick:20}")
+    private int maxBatchesPerTick;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final ExecutorService workers;
+    private final ExecutorService drainExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Webhook-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public WebhookEventService(@Value("${webhooks.worker.threads:4}") int workerThreads) {
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), r -> {
+            Thread thread = new Thread(r, "Webhook-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Append a verified event; returns false when it is a duplicate of one already received
+     */
+    public boolean enqueue(String source, String entityKey, String dedupKey, String payloadJson) {
+        return webhookEventRepository.append(source, entityKey, dedupKey, payloadJson);
+    }
+
+    public static String sha256(String payload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webhooks.worker.poll-ms:1000}")
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) return;
+        try {
+            drainExecutor.execute(() -> {
+                try {
+                    drainBatches();
+                } finally {
+                    draining.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+        }
+    }
+
+    // Bounded per tick; whatever is left is picked up on the next one
+    private void drainBatches() {
+        try {
+            for (int batch = 0; batch < maxBatchesPerTick; batch++) {
+                List<Map<String, Object>> events = webhookEventRepository.claimDueEvents(batchSize);
+                if (events.isEmpty()) break;
+
+                List<Callable<Void>> tasks = new ArrayList<>(events.size());
+                for (Map<String, Object> event : events) {
+                    tasks.add(() -> {
+                        processEvent(event);
+                        return null;
+                    });
+                }
+                workers.invokeAll(tasks);
+                if (events.size() < batchSize) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error draining webhook events: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 300000)
+    public void releaseStuckEvents() {
+        try {
+            int released = webhookEventRepository.releaseStuckEvents(10);
+            if (released > 0) {
+                log.warn("Released {} webhook events stuck in processing", released);
+            }
+        } catch (Exception e) {
+            log.error("Error releasing stuck webhook events: {}", e.getMessage());
+        }
+    }
+
+    private void processEvent(Map<String, Object> event) {
+        long id = (Long) event.get("id");
+        String source = (String) event.get("source");
+        int attempts = (Integer) event.get("attempts");
+        try {
+            Map<String, Object> payload = objectMapper.readValue((String) event.get("payload"), MAP_TYPE);
+            switch (source) {
+                case SOURCE_FINCART:
+                    deliveryService.updateDeliveryStatus((String) event.get("entity_key"), payload);
+                    break;
+                case SOURCE_PAYMOB_PAYMENT:
+                    paymentService.processWebhookEvent((String) payload.get("transactionId"), (String) payload.get("status"),
+                            (String) payload.get("orderId"), objectMapper.writeValueAsString(payload.get("event")));
+                    break;
+                case SOURCE_PAYMOB_PAYOUT:
+                    payoutService.applyPayoutWebhook(payload, (String) event.get("payload"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown webhook source: " + source);
+            }
+            webhookEventRepository.markDone(id);
+        } catch (Exception e) {
+            boolean dead = attempts >= maxAttempts;
+            long delaySeconds = Math.min(3600L, 5L << Math.min(attempts, 10));
+            log.error("Webhook event {} ({}) failed on attempt {}: {}", id, source, attempts, e.getMessage());
+            webhookEventRepository.markFailed(id, String.valueOf(e.getMessage()), dead, delaySeconds);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainExecutor.shutdownNow();
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+-- One delivery per vendor per order, so retried delivery creation cannot insert duplicates
+
+-- Existing duplicates would make the unique index fail. Keep the oldest delivery per (order, vendor),
+-- move the others' status history onto it, and park the removed rows for manual review (each is a
+-- real Fincart shipment that may need cancelling).
+CREATE TABLE IF NOT EXISTS deliveries_v10_duplicates AS SELECT * FROM deliveries WITH NO DATA;
+
+CREATE TEMP TABLE v10_duplicate_deliveries AS
+SELECT id, kept_id
+FROM (
+    SELECT id,
+           FIRST_VALUE(id) OVER (PARTITION BY order_id, vendor_id ORDER BY created_at, id) AS kept_id
+    FROM deliveries
+) ranked
+WHERE id <> kept_id;
+
+UPDATE delivery_logs l
+SET delivery_id = d.kept_id,
+    notes = COALESCE(l.notes || ' ', '') || '[merged from duplicate delivery ' || d.id || ']'
+FROM v10_duplicate_deliveries d
+WHERE l.delivery_id = d.id;
+
+INSERT INTO deliveries_v10_duplicates
+SELECT del.* FROM deliveries del JOIN v10_duplicate_deliveries d ON d.id = del.id;
+
+DELETE FROM deliveries del USING v10_duplicate_deliveries d WHERE del.id = d.id;
+DROP TABLE v10_duplicate_deliveries;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_deliveries_order_vendor ON deliveries(order_id, vendor_id);
@@ -0,0 +1,61 @@
+-- Durable ingest log for inbound webhooks (Fincart deliveries, Paymob payments and payouts)
+-- V11__webhook_events.sql
+-- Created partitioned from the start (monthly by received_at) so retention drops whole partitions
+
+-- 1) Helper used here, by V12 and by LogRetentionService to add partitions ahead of time
+CREATE OR REPLACE FUNCTION create_monthly_partition(parent TEXT, month_start DATE) RETURNS TEXT AS $$
+DECLARE
+    start_date DATE := date_trunc('month', month_start)::date;
+    partition_name TEXT := parent || '_' || to_char(start_date, 'YYYY_MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, parent, start_date, (start_date + INTERVAL '1 month')::date);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 2) Dedup keys live in a small unpartitioned table so uniqueness stays global
+CREATE TABLE IF NOT EXISTS webhook_event_keys (
+    source VARCHAR(30) NOT NULL,
+    dedup_key VARCHAR(255) NOT NULL,
+    received_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (source, dedup_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_event_keys_received ON webhook_event_keys(received_at);
+
+-- 3) The events themselves
+CREATE TABLE IF NOT EXISTS webhook_events (
+    id BIGSERIAL NOT NULL,
+    source VARCHAR(30) NOT NULL,              -- 'fincart', 'paymob_payment', 'paymob_payout'
+    entity_key VARCHAR(255) NOT NULL,         -- events for the same entity are processed in id order
+    dedup_key VARCHAR(255) NOT NULL,
+    payload JSONB NOT NULL,
+    status VARCHAR(20) NOT NULL DEFAULT 'pending', -- pending, processing, done, failed, dead
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    received_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    processed_at TIMESTAMP,
+    PRIMARY KEY (id, received_at)
+) PARTITION BY RANGE (received_at);
+
+CREATE TABLE IF NOT EXISTS webhook_events_default PARTITION OF webhook_events DEFAULT;
+
+DO $$
+DECLARE
+    m DATE := date_trunc('month', NOW())::date;
+BEGIN
+    WHILE m <= (date_trunc('month', NOW()) + INTERVAL '2 months')::date LOOP
+        PERFORM create_monthly_partition('webhook_events', m);
+        m := (m + INTERVAL '1 month')::date;
+    END LOOP;
+END;
+$$;
+
+CREATE INDEX IF NOT EXISTS idx_webhook_events_entity ON webhook_events(source, entity_key, id);
+CREATE INDEX IF NOT EXISTS idx_webhook_events_due ON webhook_events(next_attempt_at, id)
+    WHERE status IN ('pending', 'failed', 'processing');
+
+COMMENT ON TABLE webhook_events IS 'Raw inbound webhook events, acknowledged on insert and processed by WebhookEventService; partitioned monthly by received_at';
+COMMENT ON TABLE webhook_event_keys IS 'Dedup keys for webhook_events, pruned together with expired partitions';
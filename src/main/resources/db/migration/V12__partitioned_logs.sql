@@ -0,0 +1,55 @@
+-- Monthly range partitions for delivery_logs so retention drops whole partitions
+-- V12__partitioned_logs.sql
+
+-- create_monthly_partition() and the partitioned webhook_events table come from V11
+
+-- delivery_logs partitioned by logged_at
+DROP INDEX IF EXISTS idx_delivery_logs_delivery;
+DROP INDEX IF EXISTS idx_delivery_logs_status;
+ALTER TABLE delivery_logs RENAME TO delivery_logs_unpartitioned;
+ALTER TABLE delivery_logs_unpartitioned RENAME CONSTRAINT delivery_logs_pkey TO delivery_logs_unpartitioned_pkey;
+
+CREATE TABLE delivery_logs (
+    id UUID NOT NULL DEFAULT gen_random_uuid(),
+    delivery_id UUID NOT NULL REFERENCES deliveries(id) ON DELETE CASCADE,
+    status VARCHAR(50) NOT NULL,
+    sub_status VARCHAR(100),
+    rejection_reason TEXT,
+    support_note TEXT,
+    tracking_number VARCHAR(100),
+    return_tracking_number VARCHAR(100),
+    courier VARCHAR(100),
+    courier_logo VARCHAR(500),
+    invoiced BOOLEAN DEFAULT FALSE,
+    invoiced_at TIMESTAMP,
+    logged_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    notes TEXT,
+    PRIMARY KEY (id, logged_at)
+) PARTITION BY RANGE (logged_at);
+
+CREATE TABLE IF NOT EXISTS delivery_logs_default PARTITION OF delivery_logs DEFAULT;
+
+-- Partitions covering existing rows plus the next two months, then copy the data across
+DO $$
+DECLARE
+    m DATE;
+BEGIN
+    m := date_trunc('month', COALESCE((SELECT MIN(logged_at) FROM delivery_logs_unpartitioned), NOW()))::date;
+    WHILE m <= (date_trunc('month', NOW()) + INTERVAL '2 months')::date LOOP
+        PERFORM create_monthly_partition('delivery_logs', m);
+        m := (m + INTERVAL '1 month')::date;
+    END LOOP;
+END;
+$$;
+
+INSERT INTO delivery_logs
+SELECT id, delivery_id, status, sub_status, rejection_reason, support_note, tracking_number, return_tracking_number,
+       courier, courier_logo, invoiced, invoiced_at, COALESCE(logged_at, NOW()), notes
+FROM delivery_logs_unpartitioned;
+
+DROP TABLE delivery_logs_unpartitioned;
+
+CREATE INDEX IF NOT EXISTS idx_delivery_logs_delivery ON delivery_logs(delivery_id, logged_at);
+CREATE INDEX IF NOT EXISTS idx_delivery_logs_status ON delivery_logs(status);
+
+COMMENT ON TABLE delivery_logs IS 'Status change history for each delivery, partitioned monthly by logged_at';
@@ -0,0 +1,20 @@
+-- Findings of the nightly Paymob reconciliation (payments and vendor payouts)
+-- V13__reconciliation_discrepancies.sql
+
+CREATE TABLE IF NOT EXISTS reconciliation_discrepancies (
+    id BIGSERIAL PRIMARY KEY,
+    run_started_at TIMESTAMP NOT NULL,
+    kind VARCHAR(20) NOT NULL,                -- 'payment', 'payout'
+    reference VARCHAR(255) NOT NULL,          -- merchant order id for payments, payout id for payouts
+    discrepancy_type VARCHAR(40) NOT NULL,    -- STATUS_MISMATCH, AMOUNT_MISMATCH, MISSING_AT_PROVIDER, MISSING_LOCALLY
+    local_status VARCHAR(50),
+    provider_status VARCHAR(50),
+    local_amount DECIMAL(12,2),
+    provider_amount DECIMAL(12,2),
+    provider_id VARCHAR(100),
+    fixed BOOLEAN NOT NULL DEFAULT FALSE,     -- local record was corrected from the provider's state
+    created_at TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_reconciliation_discrepancies_run ON reconciliation_discrepancies(run_started_at);
+CREATE INDEX IF NOT EXISTS idx_reconciliation_discrepancies_reference ON reconciliation_discrepancies(kind, reference);
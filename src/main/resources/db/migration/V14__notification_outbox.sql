@@ -0,0 +1,26 @@
+-- Durable queue for outgoing email, drained by NotificationDispatcher
+-- V14__notification_outbox.sql
+
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    priority SMALLINT NOT NULL DEFAULT 1,     -- 0 = critical (OTP, password reset), 1 = transactional, 2 = bulk
+    recipient VARCHAR(255) NOT NULL,
+    subject VARCHAR(500) NOT NULL,
+    body TEXT NOT NULL,                       -- rendered when enqueued
+    is_html BOOLEAN NOT NULL DEFAULT TRUE,
+    status VARCHAR(20) NOT NULL DEFAULT 'pending', -- pending, sending, sent, failed, dead
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    sent_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_due ON notification_outbox(priority, next_attempt_at, id)
+    WHERE status IN ('pending', 'failed');
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_sending ON notification_outbox(next_attempt_at)
+    WHERE status = 'sending';
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_sent ON notification_outbox(sent_at)
+    WHERE status = 'sent';
+
+COMMENT ON TABLE notification_outbox IS 'Outgoing emails; written in the caller''s thread, sent in batches by NotificationDispatcher';
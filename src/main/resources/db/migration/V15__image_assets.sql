@@ -0,0 +1,20 @@
+-- Content-addressed store of remote images ingested into Backblaze (vendor product sync)
+-- V15__image_assets.sql
+
+CREATE TABLE IF NOT EXISTS image_assets (
+    content_hash CHAR(64) PRIMARY KEY,        -- SHA-256 of the image bytes
+    storage_key VARCHAR(500) NOT NULL,
+    url VARCHAR(1000) NOT NULL,
+    content_type VARCHAR(100),
+    size_bytes BIGINT,
+    created_at TIMESTAMP DEFAULT NOW()
+);
+
+-- Remote URLs already fetched, so a re-sync does not download them again
+CREATE TABLE IF NOT EXISTS image_asset_sources (
+    source_url TEXT PRIMARY KEY,
+    content_hash CHAR(64) NOT NULL REFERENCES image_assets(content_hash) ON DELETE CASCADE,
+    fetched_at TIMESTAMP DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_image_asset_sources_hash ON image_asset_sources(content_hash);
@@ -0,0 +1,7 @@
+-- Resized variants (thumb, card, detail) generated at upload time, stored as {"thumb": url, ...}
+-- V16__image_variants.sql
+
+ALTER TABLE product_images ADD COLUMN IF NOT EXISTS variants JSONB NOT NULL DEFAULT '{}'::jsonb;
+ALTER TABLE image_assets ADD COLUMN IF NOT EXISTS variants JSONB NOT NULL DEFAULT '{}'::jsonb;
+
+COMMENT ON COLUMN product_images.variants IS 'Variant name -> URL; empty for images uploaded before V16 or not decodable, which are served at url';
@@ -0,0 +1,36 @@
+-- Background vendor catalog sync jobs (POST /api/products/sync) and their progress
+-- V17__catalog_sync_jobs.sql
+
+CREATE TABLE IF NOT EXISTS catalog_sync_jobs (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    vendor_id UUID NOT NULL REFERENCES vendors(id) ON DELETE CASCADE,
+    status VARCHAR(20) NOT NULL DEFAULT 'queued',   -- queued, running, completed, failed
+    products_seen INTEGER NOT NULL DEFAULT 0,
+    products_inserted INTEGER NOT NULL DEFAULT 0,
+    products_updated INTEGER NOT NULL DEFAULT 0,
+    products_skipped INTEGER NOT NULL DEFAULT 0,
+    inventory_rows INTEGER NOT NULL DEFAULT 0,
+    images_saved INTEGER NOT NULL DEFAULT 0,
+    error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_catalog_sync_jobs_vendor ON catalog_sync_jobs(vendor_id, created_at DESC);
+
+-- Bulk diff of a feed chunk against the vendor's existing products
+CREATE INDEX IF NOT EXISTS idx_products_vendor_reference ON products(vendor_id, reference_id) WHERE reference_id IS NOT NULL;
+
+-- At most one queued or running sync per vendor, enforced by the database rather than a NOT EXISTS
+-- check (which two concurrent requests can both pass). Older duplicates are ended first.
+UPDATE catalog_sync_jobs j
+SET status = 'failed', error = 'Superseded by a newer sync', finished_at = NOW(), updated_at = NOW()
+WHERE j.status IN ('queued', 'running')
+  AND EXISTS (SELECT 1 FROM catalog_sync_jobs n
+              WHERE n.vendor_id = j.vendor_id AND n.status IN ('queued', 'running')
+                AND (n.created_at, n.id) > (j.created_at, j.id));
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_catalog_sync_jobs_one_active ON catalog_sync_jobs(vendor_id)
+    WHERE status IN ('queued', 'running');
@@ -0,0 +1,80 @@
+-- Per-product rating aggregates kept current by a trigger on reviews, so review writes cost one
+-- row update on products and product pages read the distribution without aggregating
+-- V18__product_rating_aggregates.sql
+
+ALTER TABLE products
+    ADD COLUMN IF NOT EXISTS rating_count INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_sum BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_1 INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_2 INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_3 INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_4 INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS rating_5 INTEGER NOT NULL DEFAULT 0;
+
+-- 1) Adds (delta = 1) or removes (delta = -1) one approved rating
+CREATE OR REPLACE FUNCTION apply_product_rating_delta(p_product_id UUID, p_rating INTEGER, p_delta INTEGER) RETURNS VOID AS $$
+BEGIN
+    UPDATE products SET
+        rating_count = rating_count + p_delta,
+        rating_sum = rating_sum + p_rating * p_delta,
+        rating_1 = rating_1 + CASE WHEN p_rating = 1 THEN p_delta ELSE 0 END,
+        rating_2 = rating_2 + CASE WHEN p_rating = 2 THEN p_delta ELSE 0 END,
+        rating_3 = rating_3 + CASE WHEN p_rating = 3 THEN p_delta ELSE 0 END,
+        rating_4 = rating_4 + CASE WHEN p_rating = 4 THEN p_delta ELSE 0 END,
+        rating_5 = rating_5 + CASE WHEN p_rating = 5 THEN p_delta ELSE 0 END,
+        average_rating = CASE WHEN rating_count + p_delta > 0
+                              THEN ROUND((rating_sum + p_rating * p_delta)::numeric / (rating_count + p_delta), 1)
+                              ELSE 0 END
+    WHERE id = p_product_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 2) Only approved reviews count; moving into or out of 'approved' adds or removes the rating
+CREATE OR REPLACE FUNCTION reviews_rating_aggregate() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        IF OLD.status::text = 'approved' THEN
+            PERFORM apply_product_rating_delta(OLD.product_id, OLD.rating, -1);
+        END IF;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        IF NEW.status::text = 'approved' THEN
+            PERFORM apply_product_rating_delta(NEW.product_id, NEW.rating, 1);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_reviews_rating_aggregate ON reviews;
+CREATE TRIGGER trg_reviews_rating_aggregate
+    AFTER INSERT OR DELETE ON reviews
+    FOR EACH ROW EXECUTE FUNCTION reviews_rating_aggregate();
+
+-- Edits to title/comment/helpful counts leave the aggregates alone
+DROP TRIGGER IF EXISTS trg_reviews_rating_aggregate_update ON reviews;
+CREATE TRIGGER trg_reviews_rating_aggregate_update
+    AFTER UPDATE ON reviews
+    FOR EACH ROW
+    WHEN (OLD.rating IS DISTINCT FROM NEW.rating OR OLD.status IS DISTINCT FROM NEW.status
+          OR OLD.product_id IS DISTINCT FROM NEW.product_id)
+    EXECUTE FUNCTION reviews_rating_aggregate();
+
+-- 3) Backfill from existing approved reviews
+UPDATE products p SET
+    rating_count = s.cnt,
+    rating_sum = s.total,
+    rating_1 = s.r1, rating_2 = s.r2, rating_3 = s.r3, rating_4 = s.r4, rating_5 = s.r5,
+    average_rating = ROUND(s.total::numeric / s.cnt, 1)
+FROM (
+    SELECT product_id, COUNT(*) AS cnt, SUM(rating) AS total,
+           COUNT(*) FILTER (WHERE rating = 1) AS r1, COUNT(*) FILTER (WHERE rating = 2) AS r2,
+           COUNT(*) FILTER (WHERE rating = 3) AS r3, COUNT(*) FILTER (WHERE rating = 4) AS r4,
+           COUNT(*) FILTER (WHERE rating = 5) AS r5
+    FROM reviews
+    WHERE status::text = 'approved'
+    GROUP BY product_id
+) s
+WHERE p.id = s.product_id;
+
+COMMENT ON COLUMN products.rating_count IS 'Approved reviews; rating_sum / rating_1..rating_5 and average_rating are maintained by trg_reviews_rating_aggregate';
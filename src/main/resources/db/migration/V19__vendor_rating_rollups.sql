@@ -0,0 +1,124 @@
+-- Vendor rating rollups: lifetime totals on vendors plus daily buckets for period metrics,
+-- maintained from the same review deltas as the product aggregates (V18)
+-- V19__vendor_rating_rollups.sql
+
+ALTER TABLE vendors ADD COLUMN IF NOT EXISTS rating_sum BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS vendor_rating_rollups (
+    vendor_id UUID NOT NULL REFERENCES vendors(id) ON DELETE CASCADE,
+    bucket DATE NOT NULL,                      -- day the reviews were written
+    rating_count INTEGER NOT NULL DEFAULT 0,
+    rating_sum BIGINT NOT NULL DEFAULT 0,
+    rating_1 INTEGER NOT NULL DEFAULT 0,
+    rating_2 INTEGER NOT NULL DEFAULT 0,
+    rating_3 INTEGER NOT NULL DEFAULT 0,
+    rating_4 INTEGER NOT NULL DEFAULT 0,
+    rating_5 INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (vendor_id, bucket)
+);
+
+-- 1) Adds or removes p_count ratings of one value, written on p_reviewed_at, for a vendor
+CREATE OR REPLACE FUNCTION apply_vendor_rating_delta(p_vendor_id UUID, p_rating INTEGER, p_reviewed_at TIMESTAMP, p_count INTEGER)
+RETURNS VOID AS $$
+BEGIN
+    IF p_vendor_id IS NULL OR p_count = 0 THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO vendor_rating_rollups (vendor_id, bucket, rating_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5)
+    VALUES (p_vendor_id, COALESCE(p_reviewed_at, NOW())::date, p_count, p_rating * p_count,
+            CASE WHEN p_rating = 1 THEN p_count ELSE 0 END, CASE WHEN p_rating = 2 THEN p_count ELSE 0 END,
+            CASE WHEN p_rating = 3 THEN p_count ELSE 0 END, CASE WHEN p_rating = 4 THEN p_count ELSE 0 END,
+            CASE WHEN p_rating = 5 THEN p_count ELSE 0 END)
+    ON CONFLICT (vendor_id, bucket) DO UPDATE SET
+        rating_count = vendor_rating_rollups.rating_count + EXCLUDED.rating_count,
+        rating_sum = vendor_rating_rollups.rating_sum + EXCLUDED.rating_sum,
+        rating_1 = vendor_rating_rollups.rating_1 + EXCLUDED.rating_1,
+        rating_2 = vendor_rating_rollups.rating_2 + EXCLUDED.rating_2,
+        rating_3 = vendor_rating_rollups.rating_3 + EXCLUDED.rating_3,
+        rating_4 = vendor_rating_rollups.rating_4 + EXCLUDED.rating_4,
+        rating_5 = vendor_rating_rollups.rating_5 + EXCLUDED.rating_5;
+
+    UPDATE vendors SET
+        rating_count = rating_count + p_count,
+        rating_sum = rating_sum + p_rating * p_count,
+        rating_average = CASE WHEN rating_count + p_count > 0
+                              THEN ROUND((rating_sum + p_rating * p_count)::numeric / (rating_count + p_count), 2)
+                              ELSE 0 END
+    WHERE id = p_vendor_id;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 2) Review trigger from V18, now feeding the vendor rollups as well
+CREATE OR REPLACE FUNCTION reviews_rating_aggregate() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        IF OLD.status::text = 'approved' THEN
+            PERFORM apply_product_rating_delta(OLD.product_id, OLD.rating, -1);
+            PERFORM apply_vendor_rating_delta((SELECT vendor_id FROM products WHERE id = OLD.product_id),
+                                              OLD.rating, OLD.created_at, -1);
+        END IF;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        IF NEW.status::text = 'approved' THEN
+            PERFORM apply_product_rating_delta(NEW.product_id, NEW.rating, 1);
+            PERFORM apply_vendor_rating_delta((SELECT vendor_id FROM products WHERE id = NEW.product_id),
+                                              NEW.rating, NEW.created_at, 1);
+        END IF;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 3) A product moving to another vendor takes its approved ratings with it
+CREATE OR REPLACE FUNCTION products_vendor_rating_move() RETURNS TRIGGER AS $$
+DECLARE
+    r RECORD;
+BEGIN
+    FOR r IN
+        SELECT rating, created_at::date AS bucket, COUNT(*)::integer AS cnt
+        FROM reviews
+        WHERE product_id = NEW.id AND status::text = 'approved'
+        GROUP BY rating, created_at::date
+    LOOP
+        PERFORM apply_vendor_rating_delta(OLD.vendor_id, r.rating, r.bucket::timestamp, -r.cnt);
+        PERFORM apply_vendor_rating_delta(NEW.vendor_id, r.rating, r.bucket::timestamp, r.cnt);
+    END LOOP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_products_vendor_rating_move ON products;
+CREATE TRIGGER trg_products_vendor_rating_move
+    AFTER UPDATE OF vendor_id ON products
+    FOR EACH ROW
+    WHEN (OLD.vendor_id IS DISTINCT FROM NEW.vendor_id)
+    EXECUTE FUNCTION products_vendor_rating_move();
+
+-- 4) Backfill from existing approved reviews
+INSERT INTO vendor_rating_rollups (vendor_id, bucket, rating_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5)
+SELECT p.vendor_id, COALESCE(r.created_at, NOW())::date, COUNT(*), SUM(r.rating),
+       COUNT(*) FILTER (WHERE r.rating = 1), COUNT(*) FILTER (WHERE r.rating = 2),
+       COUNT(*) FILTER (WHERE r.rating = 3), COUNT(*) FILTER (WHERE r.rating = 4),
+       COUNT(*) FILTER (WHERE r.rating = 5)
+FROM reviews r
+JOIN products p ON p.id = r.product_id
+WHERE r.status::text = 'approved' AND p.vendor_id IS NOT NULL
+GROUP BY p.vendor_id, COALESCE(r.created_at, NOW())::date
+ON CONFLICT (vendor_id, bucket) DO NOTHING;
+
+-- Vendor totals are derived from now on, so vendors without approved reviews start at zero
+UPDATE vendors SET rating_count = 0, rating_sum = 0, rating_average = 0;
+
+UPDATE vendors v SET
+    rating_count = s.cnt,
+    rating_sum = s.total,
+    rating_average = ROUND(s.total::numeric / s.cnt, 2)
+FROM (
+    SELECT vendor_id, SUM(rating_count) AS cnt, SUM(rating_sum) AS total
+    FROM vendor_rating_rollups
+    GROUP BY vendor_id
+) s
+WHERE v.id = s.vendor_id;
+
+COMMENT ON TABLE vendor_rating_rollups IS 'Approved review ratings per vendor per day, maintained by trg_reviews_rating_aggregate';
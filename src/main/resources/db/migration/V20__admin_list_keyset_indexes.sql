@@ -0,0 +1,16 @@
+-- Keyset pagination for the admin vendor and user listings (newest first, id as tie-breaker)
+-- V20__admin_list_keyset_indexes.sql
+
+-- The keyset is (created_at, id); a NULL created_at sorts first under DESC and never compares
+-- less than a cursor, so such rows would break paging. Backfill and forbid them.
+UPDATE vendors SET created_at = COALESCE(updated_at, NOW()) WHERE created_at IS NULL;
+ALTER TABLE vendors ALTER COLUMN created_at SET DEFAULT NOW(), ALTER COLUMN created_at SET NOT NULL;
+
+UPDATE users SET created_at = COALESCE(updated_at, NOW()) WHERE created_at IS NULL;
+ALTER TABLE users ALTER COLUMN created_at SET DEFAULT NOW(), ALTER COLUMN created_at SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_vendors_created_at_id ON vendors (created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_vendors_status_created_at_id ON vendors (status, created_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_users_role_created_at_id ON users (role, created_at DESC, id DESC);
@@ -0,0 +1,20 @@
+-- Pending delivery creations, so retries survive restarts and deploys
+-- V21__delivery_create_retries.sql
+
+CREATE TABLE IF NOT EXISTS delivery_create_retries (
+    order_id UUID NOT NULL REFERENCES orders(id) ON DELETE CASCADE,
+    vendor_id UUID NOT NULL REFERENCES vendors(id) ON DELETE CASCADE,
+    request JSONB NOT NULL,                      -- the vendor order handed to DeliveryService.createDeliveryOrder
+    status VARCHAR(20) NOT NULL DEFAULT 'pending', -- pending, failed (gave up after delivery.create.max-attempts)
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    updated_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (order_id, vendor_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_delivery_create_retries_due ON delivery_create_retries(next_attempt_at)
+    WHERE status = 'pending';
+
+COMMENT ON TABLE delivery_create_retries IS 'Written at checkout before delivery creation starts, deleted once the delivery exists; polled by DeliverySyncService';
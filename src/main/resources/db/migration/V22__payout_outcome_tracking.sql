@@ -0,0 +1,16 @@
+-- Track when a payout was handed to Paymob and whether the outcome of that call is known
+-- V22__payout_outcome_tracking.sql
+
+-- Set when the executor claims the payout (moves it to 'processing'); the reaper and reconciliation key on it
+ALTER TABLE vendor_payouts ADD COLUMN IF NOT EXISTS claimed_at TIMESTAMP;
+
+-- TRUE while a payout sits in 'processing' after a call that may or may not have reached Paymob
+-- (timeout, 5xx, crash mid-run). Such payouts are never re-sent by the executor; a webhook or
+-- reconciliation settles them.
+ALTER TABLE vendor_payouts ADD COLUMN IF NOT EXISTS outcome_unknown BOOLEAN NOT NULL DEFAULT FALSE;
+
+UPDATE vendor_payouts SET claimed_at = updated_at WHERE status = 'processing' AND claimed_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_vendor_payouts_processing ON vendor_payouts(claimed_at)
+    WHERE status = 'processing';
+CREATE INDEX IF NOT EXISTS idx_vendor_payouts_sent_time ON vendor_payouts((COALESCE(claimed_at, scheduled_for)), id);
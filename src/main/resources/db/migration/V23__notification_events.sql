@@ -0,0 +1,25 @@
+-- Notification events whose emails are rendered later, on the NotificationDispatcher thread
+-- V23__notification_events.sql
+
+CREATE TABLE IF NOT EXISTS notification_events (
+    id BIGSERIAL PRIMARY KEY,
+    event_type VARCHAR(50) NOT NULL,          -- order_placed
+    subject_id VARCHAR(64) NOT NULL,          -- the order id for order_placed
+    status VARCHAR(20) NOT NULL DEFAULT 'pending', -- pending, processing, done, failed, dead
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    created_at TIMESTAMP NOT NULL DEFAULT NOW(),
+    processed_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_events_due ON notification_events(next_attempt_at, id)
+    WHERE status IN ('pending', 'failed');
+CREATE INDEX IF NOT EXISTS idx_notification_events_processing ON notification_events(next_attempt_at)
+    WHERE status = 'processing';
+
+-- Retention of given-up emails; created_at is the only time every dead row has
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_dead ON notification_outbox(created_at)
+    WHERE status = 'dead';
+
+COMMENT ON TABLE notification_events IS 'Written in the caller''s thread (e.g. checkout); expanded into notification_outbox emails by NotificationDispatcher';
@@ -0,0 +1,125 @@
+package com.Daad.ecommerce.security;
+
+import com.Daad.ecommerce.model.Permission;
+import com.Daad.ecommerce.repository.RoleRepository;
+import com.Daad.ecommerce.service.JwtService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the JWT filter path: signature check and claim parsing, authority
+ * resolution and building the Authentication, plus the permission checks a request makes.
+ *
+ * Tokens carry the same claims the login endpoints issue (id, email, role, iat, exp), about
+ * 250 bytes. Admin tokens resolve through a warm PermissionCache holding a realistic
+ * permission set, which is the steady state for repeat admin requests.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=JwtFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class JwtFilterBenchmark {
+
+    private static final String ACCESS_SECRET = "benchmark-access-secret-0123456789-abcdefghijklmnopqrstuvwxyz";
+    private static final String[] RESOURCES = {"users", "vendors", "products", "orders", "categories", "discounts", "payouts", "reviews"};
+    private static final String[] ACTIONS = {"read", "create", "update", "delete", "approve"};
+
+    @Param({"customer", "vendor", "admin"})
+    public String role;
+
+    private JwtAuthenticationFilter filter;
+    private JwtService jwtService;
+    private String token;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        List<Permission> permissions = new ArrayList<>();
+        for (String resource : RESOURCES) {
+            for (String action : ACTIONS) {
+                Permission permission = new Permission();
+                permission.setName(resource + "." + action);
+                permission.setResource(resource);
+                permission.setAction(action);
+                permissions.add(permission);
+            }
+        }
+        RoleRepository roleRepository = new RoleRepository() {
+            @Override
+            public List<Permission> getPermissionsByUserId(String userId) {
+                return permissions;
+            }
+        };
+
+        PermissionCache permissionCache = new PermissionCache(3600);
+        filter = new JwtAuthenticationFilter(ACCESS_SECRET, permissionCache);
+        ReflectionTestUtils.setField(filter, "roleRepository", roleRepository);
+        jwtService = new JwtService(ACCESS_SECRET, ACCESS_SECRET + "-reset", 24);
+
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("id", UUID.randomUUID().toString());
+        claims.put("email", "firstname.lastname+" + role + "@example-store.com");
+        claims.put("role", role);
+        token = jwtService.generateAccessToken(claims);
+        authorizationHeader = "Bearer " + token;
+    }
+
+    @Benchmark
+    public Object parseToken() {
+        return jwtService.parseAccessToken(token);
+    }
+
+    @Benchmark
+    public Authentication filterRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader("Authorization", authorizationHeader);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public boolean filterAndCheckPermissions() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/admin/orders");
+        request.addHeader("Authorization", authorizationHeader);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return PermissionChecker.hasPermission("orders.read")
+                    | PermissionChecker.hasPermission("payouts.approve")
+                    | PermissionChecker.hasPermission("missing.permission");
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.model.User;
+import com.Daad.ecommerce.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login throughput through LoginService at the configured bcrypt cost: a successful login
+ * (including issuing the access token, as the login endpoints do), a wrong password, an
+ * unknown email (verified against the dummy hash), and a login that re-hashes a password
+ * stored at an older cost.
+ *
+ * The database is replaced by an in-memory lookup, so the numbers are the CPU cost per login
+ * that sizes how many logins an instance can absorb. The re-hash case keeps its old hash (the
+ * compare-and-set reports a lost race) so every call pays for the upgrade.
+ *
+ * Run with: mvn -Pbench test-compile exec:exec -Dbench=LoginServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(4)
+public class LoginServiceBenchmark {
+
+    private static final String ACCESS_SECRET = "benchmark-access-secret-0123456789-abcdefghijklmnopqrstuvwxyz";
+    private static final String PASSWORD = "correct horse battery staple";
+    private static final String CURRENT_EMAIL = "current@example-store.com";
+    private static final String LEGACY_EMAIL = "legacy@example-store.com";
+
+    // security.bcrypt.strength
+    @Param({"10", "12"})
+    public int strength;
+
+    private LoginService loginService;
+    private JwtService jwtService;
+
+    @Setup
+    public void setUp() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        Map<String, User> users = new HashMap<>();
+        users.put(CURRENT_EMAIL, user(CURRENT_EMAIL, encoder.encode(PASSWORD)));
+        users.put(LEGACY_EMAIL, user(LEGACY_EMAIL, new BCryptPasswordEncoder(strength - 2).encode(PASSWORD)));
+
+        UserRepository userRepository = new UserRepository() {
+            @Override
+            public Optional<UserWithVendor> findByEmailWithVendor(String email) {
+                User user = users.get(email);
+                return user == null ? Optional.empty() : Optional.of(new UserWithVendor(copy(user), null));
+            }
+
+            @Override
+            public boolean updatePasswordIfUnchanged(String userId, String newPassword, String expectedPassword) {
+                return false;
+            }
+        };
+        loginService = new LoginService(userRepository, encoder, strength);
+        jwtService = new JwtService(ACCESS_SECRET, ACCESS_SECRET + "-reset", 24);
+    }
+
+    @Benchmark
+    public String loginAndIssueToken() {
+        User user = loginService.authenticate(CURRENT_EMAIL, PASSWORD).orElseThrow().user;
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("id", user.getId());
+        claims.put("email", user.getEmail());
+        claims.put("role", user.getRole());
+        return jwtService.generateAccessToken(claims);
+    }
+
+    @Benchmark
+    public boolean wrongPassword() {
+        return loginService.authenticate(CURRENT_EMAIL, "wrong password").isPresent();
+    }
+
+    @Benchmark
+    public boolean unknownEmail() {
+        return loginService.authenticate("nobody@example-store.com", PASSWORD).isPresent();
+    }
+
+    @Benchmark
+    public boolean loginWithRehash() {
+        return loginService.authenticate(LEGACY_EMAIL, PASSWORD).isPresent();
+    }
+
+    private static User user(String email, String hash) {
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setEmail(email);
+        user.setRole("customer");
+        user.setPassword(hash);
+        return user;
+    }
+
+    // A fresh row per lookup, as the repository returns
+    private static User copy(User source) {
+        User user = user(source.getEmail(), source.getPassword());
+        user.setId(source.getId());
+        return user;
+    }
+}
@@ -0,0 +1,333 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.http.UpstreamHttpClients;
+import com.Daad.ecommerce.repository.VendorPayoutRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the payout executor against a local Paymob stub. The repository is an in-memory stand-in
+ * that applies the same status guards as the SQL in VendorPayoutRepository.
+ */
+class PayoutServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Consumer<HttpExchange>> behaviours = new ConcurrentHashMap<>();
+    private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+
+    private HttpServer paymob;
+    private InMemoryPayouts payouts;
+    private PayoutService payoutService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        paymob = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        paymob.setExecutor(Executors.newCachedThreadPool());
+        paymob.createContext("/api/auth/tokens", exchange -> respond(exchange, 200, Map.of("token", "stub-token")));
+        paymob.createContext("/api/acceptance/payouts", exchange -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+            idempotencyKeys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            String reference = (String) body.get("merchant_reference");
+            behaviours.getOrDefault(reference, ex -> respond(ex, 200, Map.of("id", "pm-" + reference, "status", "completed")))
+                    .accept(exchange);
+        });
+        paymob.start();
+
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("http.upstreams.paymob.max-retries", "0")
+                .withProperty("http.upstreams.paymob.read-timeout-ms", "10000");
+        payouts = new InMemoryPayouts();
+        payoutService = new PayoutService(payouts, new UpstreamHttpClients(environment), 4, 1000, 1000);
+        ReflectionTestUtils.setField(payoutService, "payoutBaseUrl", "http://127.0.0.1:" + paymob.getAddress().getPort() + "/api");
+        ReflectionTestUtils.setField(payoutService, "payoutApiKey", "stub-key");
+        ReflectionTestUtils.setField(payoutService, "pageSize", 100);
+        ReflectionTestUtils.setField(payoutService, "maxPerRun", 100);
+        ReflectionTestUtils.setField(payoutService, "callTimeoutSeconds", 1L);
+        ReflectionTestUtils.setField(payoutService, "maxAttempts", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        payoutService.shutdown();
+        paymob.stop(0);
+    }
+
+    @Test
+    void completedResponseCompletesPayout() {
+        payouts.add("p1");
+
+        payoutService.processDuePayoutsBatch(100);
+
+        assertEquals("completed", payouts.status("p1"));
+        assertEquals(List.of("payout-p1-0"), idempotencyKeys);
+    }
+
+    @Test
+    void timeoutLeavesPayoutProcessingWithUnknownOutcome() {
+        payouts.add("p1");
+        behaviours.put("p1", exchange -> {
+            sleep(3000);
+            respond(exchange, 200, Map.of("id", "pm-p1", "status", "completed"));
+        });
+
+        payoutService.processDuePayoutsBatch(100);
+
+        assertEquals("processing", payouts.status("p1"));
+        assertTrue(payouts.outcomeUnknown("p1"));
+        assertEquals(0, payouts.retryCount("p1"));
+
+        // Not claimed again by the next run
+        payoutService.processDuePayoutsBatch(100);
+        assertEquals(1, idempotencyKeys.size());
+    }
+
+    @Test
+    void serverErrorLeavesPayoutProcessingWithUnknownOutcome() {
+        payouts.add("p1");
+        behaviours.put("p1", exchange -> respond(exchange, 502, Map.of("detail", "bad gateway")));
+
+        payoutService.processDuePayoutsBatch(100);
+        payoutService.processDuePayoutsBatch(100);
+
+        assertEquals("processing", payouts.status("p1"));
+        assertTrue(payouts.outcomeUnknown("p1"));
+        assertEquals(1, idempotencyKeys.size());
+    }
+
+    @Test
+    void throttledPayoutIsRequeuedWithANewKeyAndFailsAfterMaxAttempts() {
+        payouts.add("p1");
+        behaviours.put("p1", exchange -> respond(exchange, 429, Map.of("detail", "slow down")));
+
+        payoutService.processDuePayoutsBatch(100);
+        assertEquals("pending", payouts.status("p1"));
+        assertEquals(1, payouts.retryCount("p1"));
+
+        payouts.makeDue("p1");
+        payoutService.processDuePayoutsBatch(100);
+        assertEquals("failed", payouts.status("p1"));
+        assertEquals(List.of("payout-p1-0", "payout-p1-1"), idempotencyKeys);
+    }
+
+    @Test
+    void webhookSettlingDuringTheCallIsNotOverwrittenByTheBatch() {
+        payouts.add("p1");
+        payouts.add("p2");
+        // The completion webhook is applied while Paymob's own response is still on its way
+        behaviours.put("p1", exchange -> {
+            payoutService.applyPayoutWebhook(Map.of("id", "pm-p1", "status", "completed", "merchant_reference", "p1"), "{}");
+            respond(exchange, 500, Map.of("detail", "upstream error"));
+        });
+        behaviours.put("p2", exchange -> {
+            payoutService.applyPayoutWebhook(Map.of("id", "pm-p2", "status", "completed", "merchant_reference", "p2"), "{}");
+            respond(exchange, 429, Map.of("detail", "slow down"));
+        });
+
+        payoutService.processDuePayoutsBatch(100);
+        payoutService.processDuePayoutsBatch(100);
+
+        assertEquals("completed", payouts.status("p1"));
+        assertFalse(payouts.outcomeUnknown("p1"));
+        assertEquals("completed", payouts.status("p2"));
+        assertEquals(0, payouts.retryCount("p2"));
+        assertEquals(2, idempotencyKeys.size());
+    }
+
+    @Test
+    void onlyFailuresBeforeSendingCountAsNeverSent() {
+        assertTrue(PayoutService.neverSent(new ResourceAccessException("refused", new ConnectException("Connection refused"))));
+        assertTrue(PayoutService.neverSent(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", null, null, null)));
+        assertFalse(PayoutService.neverSent(new ResourceAccessException("timeout", new HttpTimeoutException("request timed out"))));
+        assertFalse(PayoutService.neverSent(HttpServerErrorException.create(HttpStatus.INTERNAL_SERVER_ERROR, "", null, null, null)));
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, Object> body) {
+        try {
+            byte[] bytes = objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (IOException e) {
+            // Client gave up (timeout test)
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * vendor_payouts in memory. Transitions mirror the WHERE clauses of the SQL they replace:
+     * batch updates only touch rows still in 'processing'.
+     */
+    private static class InMemoryPayouts extends VendorPayoutRepository {
+
+        private final Map<String, Map<String, Object>> rows = new ConcurrentHashMap<>();
+
+        InMemoryPayouts() {
+            super(null);
+        }
+
+        void add(String id) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("net_amount", new BigDecimal("125.50"));
+            row.put("status", "pending");
+            row.put("retry_count", 0);
+            row.put("outcome_unknown", false);
+            row.put("due", true);
+            rows.put(id, row);
+        }
+
+        void makeDue(String id) {
+            rows.get(id).put("due", true);
+        }
+
+        String status(String id) {
+            return (String) rows.get(id).get("status");
+        }
+
+        boolean outcomeUnknown(String id) {
+            return (Boolean) rows.get(id).get("outcome_unknown");
+        }
+
+        int retryCount(String id) {
+            return (Integer) rows.get(id).get("retry_count");
+        }
+
+        @Override
+        public synchronized List<Map<String, Object>> claimDuePayouts(int limit) {
+            List<Map<String, Object>> claimed = new ArrayList<>();
+            for (Map<String, Object> row : rows.values()) {
+                if (claimed.size() < limit && "pending".equals(row.get("status")) && Boolean.TRUE.equals(row.get("due"))) {
+                    row.put("status", "processing");
+                    row.put("outcome_unknown", false);
+                    claimed.add(new HashMap<>(row));
+                }
+            }
+            return claimed;
+        }
+
+        private synchronized boolean transition(String id, String requiredStatus, Consumer<Map<String, Object>> change) {
+            Map<String, Object> row = rows.get(id);
+            if (row == null || !requiredStatus.equals(row.get("status"))) return false;
+            change.accept(row);
+            return true;
+        }
+
+        @Override
+        public int markCompletedBatch(List<Object[]> batch) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[2], "processing", row -> { row.put("status", "completed"); row.put("outcome_unknown", false); })) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public int markProcessingWithResponseBatch(List<Object[]> batch) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[2], "processing", row -> row.put("outcome_unknown", false))) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public int markFailedForRetryBatch(List<Object[]> batch, int maxAttempts) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[2], "processing", row -> {
+                    int attempts = (Integer) row.get("retry_count") + 1;
+                    row.put("retry_count", attempts);
+                    row.put("status", attempts >= maxAttempts ? "failed" : "pending");
+                    row.put("outcome_unknown", false);
+                    row.put("due", false);
+                })) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public int releaseClaimedBatch(List<Object[]> batch) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[0], "processing", row -> row.put("status", "pending"))) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public int markOutcomeUnknownBatch(List<Object[]> batch) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[1], "processing", row -> row.put("outcome_unknown", true))) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public int markFailedBatch(List<Object[]> batch) {
+            int updated = 0;
+            for (Object[] r : batch) {
+                if (transition((String) r[1], "processing", row -> row.put("status", "failed"))) updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public synchronized int markCompleted(String payoutId, String paymobPayoutId, String responseJson) {
+            Map<String, Object> row = rows.get(payoutId);
+            if (row == null || "completed".equals(row.get("status")) || "cancelled".equals(row.get("status"))) return 0;
+            row.put("status", "completed");
+            row.put("outcome_unknown", false);
+            return 1;
+        }
+
+        @Override
+        public int markProcessingWithResponse(String payoutId, String paymobPayoutId, String responseJson) {
+            return transition(payoutId, "processing", row -> { }) ? 1 : 0;
+        }
+
+        @Override
+        public int markFailed(String payoutId, String errorMessage) {
+            return transition(payoutId, "processing", row -> row.put("status", "failed")) ? 1 : 0;
+        }
+    }
+}
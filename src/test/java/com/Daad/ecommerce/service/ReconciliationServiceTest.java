@@ -0,0 +1,362 @@
+package com.Daad.ecommerce.service;
+
+import com.Daad.ecommerce.http.UpstreamHttpClients;
+import com.Daad.ecommerce.repository.ReconciliationRepository;
+import com.Daad.ecommerce.repository.VendorPayoutRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs reconciliation against a local fake of Paymob's transaction and payout listings, with the
+ * local side paged from memory in the same (event_time, id) order as ReconciliationRepository.
+ */
+class ReconciliationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LocalDateTime base = LocalDateTime.now().withNano(0).minusDays(2);
+
+    private final List<Map<String, Object>> providerTransactions = new CopyOnWriteArrayList<>();
+    private final List<Map<String, Object>> providerPayouts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger providerCalls = new AtomicInteger();
+    private final AtomicBoolean calledInsideTransaction = new AtomicBoolean();
+
+    private HttpServer paymob;
+    private FakeTransactionManager transactionManager;
+    private InMemoryReconciliation reconciliation;
+    private RecordingPayouts payouts;
+    private ReconciliationService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        transactionManager = new FakeTransactionManager();
+        paymob = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        paymob.createContext("/api/acceptance/transactions", exchange -> list(exchange, providerTransactions));
+        paymob.createContext("/api/acceptance/payouts", exchange -> list(exchange, providerPayouts));
+        paymob.start();
+        String baseUrl = "http://127.0.0.1:" + paymob.getAddress().getPort() + "/api";
+
+        UpstreamHttpClients clients = new UpstreamHttpClients(new MockEnvironment());
+        PaymentService paymentService = new PaymentService(null, clients) {
+            @Override
+            public String authenticateWithPaymob() {
+                return "payments-token";
+            }
+        };
+        payouts = new RecordingPayouts();
+        PayoutService payoutService = new PayoutService(payouts, clients, 1, 10, 10) {
+            @Override
+            public String getAuthToken() {
+                return "payouts-token";
+            }
+        };
+        reconciliation = new InMemoryReconciliation();
+        service = new ReconciliationService(reconciliation, payouts, paymentService, payoutService, clients, transactionManager);
+        ReflectionTestUtils.setField(service, "paymentsBaseUrl", baseUrl);
+        ReflectionTestUtils.setField(service, "payoutsBaseUrl", baseUrl);
+        ReflectionTestUtils.setField(service, "payoutApiKey", "key");
+        ReflectionTestUtils.setField(service, "transactionsPath", "/acceptance/transactions");
+        ReflectionTestUtils.setField(service, "payoutsPath", "/acceptance/payouts");
+        ReflectionTestUtils.setField(service, "windowDays", 30);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+        ReflectionTestUtils.setField(service, "providerPageSize", 2);
+        ReflectionTestUtils.setField(service, "matchSkewMinutes", 90L);
+        ReflectionTestUtils.setField(service, "writeBatchSize", 200);
+        ReflectionTestUtils.setField(service, "payoutMaxAttempts", 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        paymob.stop(0);
+    }
+
+    @Test
+    void paymentsSharingAReferenceEachMatchTheirOwnAttempt() {
+        reconciliation.payment("11111111-0000-0000-0000-000000000001", "ORD-1", "tx-1", "failed", base);
+        reconciliation.payment("11111111-0000-0000-0000-000000000002", "ORD-1", "tx-2", "success", base.plusMinutes(3));
+        reconciliation.payment("11111111-0000-0000-0000-000000000003", "ORD-2", "tx-3", "success", base.plusMinutes(5));
+        providerTransactions.add(transaction("tx-1", "ORD-1", false, base.plusMinutes(1)));
+        providerTransactions.add(transaction("tx-2", "ORD-1", true, base.plusMinutes(4)));
+        providerTransactions.add(transaction("tx-3", "ORD-2", true, base.plusMinutes(6)));
+
+        service.reconcilePaymentsAndPayouts();
+
+        assertTrue(reconciliation.discrepancyTypes().isEmpty(), "unexpected " + reconciliation.discrepancyTypes());
+    }
+
+    @Test
+    void rawWebhookStatusesCompareAsTheirSettledEquivalents() {
+        reconciliation.payment("55555555-0000-0000-0000-000000000001", "ORD-5", "tx-5", "paid", base);
+        reconciliation.payment("55555555-0000-0000-0000-000000000002", "ORD-6", "tx-6", "captured", base.plusMinutes(2));
+        reconciliation.payment("55555555-0000-0000-0000-000000000003", "ORD-7", "tx-7", "declined", base.plusMinutes(4));
+        providerTransactions.add(transaction("tx-5", "ORD-5", true, base.plusMinutes(1)));
+        providerTransactions.add(transaction("tx-6", "ORD-6", true, base.plusMinutes(3)));
+        providerTransactions.add(transaction("tx-7", "ORD-7", false, base.plusMinutes(5)));
+
+        service.reconcilePaymentsAndPayouts();
+
+        assertTrue(reconciliation.discrepancyTypes().isEmpty(), "unexpected " + reconciliation.discrepancyTypes());
+    }
+
+    @Test
+    void settlesStuckPayoutsAndRequeuesOnlyUnsentOnes() {
+        reconciliation.payout("22222222-0000-0000-0000-000000000001", "processing", false, base);
+        reconciliation.payout("22222222-0000-0000-0000-000000000002", "processing", true, base.plusMinutes(10));
+        reconciliation.payout("22222222-0000-0000-0000-000000000003", "processing", true, base.plusHours(5));
+        reconciliation.payout("22222222-0000-0000-0000-000000000004", "completed", false, base.plusHours(6));
+        reconciliation.payout("22222222-0000-0000-0000-000000000005", "completed", false, base.plusHours(9));
+        providerPayouts.add(payout("pm-1", "22222222-0000-0000-0000-000000000001", "completed", base.plusMinutes(1)));
+        // 0002 reached Paymob after all (timed out locally), 0003 never did
+        providerPayouts.add(payout("pm-2", "22222222-0000-0000-0000-000000000002", "failed", base.plusMinutes(11)));
+        providerPayouts.add(payout("pm-4", "22222222-0000-0000-0000-000000000004", "completed", base.plusHours(6).plusMinutes(1)));
+        providerPayouts.add(payout("pm-5", "22222222-0000-0000-0000-000000000005", "completed", base.plusHours(9).plusMinutes(1)));
+        providerPayouts.add(payout("pm-9", "22222222-0000-0000-0000-000000000009", "completed", base.plusHours(12)));
+
+        service.reconcilePaymentsAndPayouts();
+
+        assertEquals(List.of("22222222-0000-0000-0000-000000000001"), payouts.completedIds);
+        assertEquals(List.of("22222222-0000-0000-0000-000000000002", "22222222-0000-0000-0000-000000000003"), payouts.retriedIds);
+        assertEquals(List.of(60, 0), payouts.retryDelays);
+        assertEquals(List.of("STATUS_MISMATCH", "STATUS_MISMATCH", "MISSING_AT_PROVIDER", "MISSING_LOCALLY"),
+                reconciliation.discrepancyTypes());
+    }
+
+    @Test
+    void fixesLosingARaceAreNotCountedAsApplied() {
+        reconciliation.payout("33333333-0000-0000-0000-000000000001", "processing", false, base);
+        providerPayouts.add(payout("pm-1", "33333333-0000-0000-0000-000000000001", "completed", base.plusMinutes(1)));
+        // A webhook settled the payout after it was read; the guarded update matches nothing
+        payouts.settledMeanwhile = true;
+
+        service.reconcilePaymentsAndPayouts();
+
+        assertEquals(List.of("33333333-0000-0000-0000-000000000001"), payouts.completedIds);
+        assertEquals(1, reconciliation.discrepancyTypes().size());
+    }
+
+    @Test
+    void providerIsNeverCalledWithATransactionOpen() {
+        for (int i = 0; i < 7; i++) {
+            String id = "44444444-0000-0000-0000-00000000000" + i;
+            reconciliation.payout(id, "completed", false, base.plusHours(i * 3L));
+            providerPayouts.add(payout("pm-" + i, id, "completed", base.plusHours(i * 3L).plusMinutes(1)));
+        }
+
+        service.reconcilePaymentsAndPayouts();
+
+        assertTrue(providerCalls.get() > 3);
+        assertFalse(calledInsideTransaction.get());
+        assertTrue(reconciliation.discrepancyTypes().isEmpty(), "unexpected " + reconciliation.discrepancyTypes());
+    }
+
+    private void list(HttpExchange exchange, List<Map<String, Object>> records) throws IOException {
+        providerCalls.incrementAndGet();
+        if (transactionManager.active) calledInsideTransaction.set(true);
+        Map<String, String> query = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getQuery().split("&")) {
+            String[] kv = pair.split("=", 2);
+            query.put(kv[0], kv.length > 1 ? kv[1] : "");
+        }
+        LocalDateTime from = LocalDateTime.parse(query.get("created_at__gte"));
+        LocalDateTime to = LocalDateTime.parse(query.get("created_at__lt"));
+        int pageSize = Integer.parseInt(query.get("page_size"));
+        int page = Integer.parseInt(query.get("page"));
+
+        List<Map<String, Object>> inRange = new ArrayList<>();
+        for (Map<String, Object> record : records) {
+            LocalDateTime createdAt = LocalDateTime.parse((String) record.get("created_at"));
+            if (!createdAt.isBefore(from) && createdAt.isBefore(to)) inRange.add(record);
+        }
+        int start = Math.min((page - 1) * pageSize, inRange.size());
+        int end = Math.min(start + pageSize, inRange.size());
+        Map<String, Object> body = new HashMap<>();
+        body.put("results", inRange.subList(start, end));
+        body.put("next", end < inRange.size() ? "page=" + (page + 1) : null);
+
+        byte[] bytes = objectMapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static Map<String, Object> transaction(String id, String merchantOrderId, boolean success, LocalDateTime createdAt) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("order", Map.of("merchant_order_id", merchantOrderId));
+        record.put("success", success);
+        record.put("pending", false);
+        record.put("amount_cents", 10000);
+        record.put("created_at", createdAt.toString());
+        return record;
+    }
+
+    private static Map<String, Object> payout(String id, String reference, String status, LocalDateTime createdAt) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("id", id);
+        record.put("merchant_reference", reference);
+        record.put("status", status);
+        record.put("amount_cents", 5000);
+        record.put("created_at", createdAt.toString());
+        return record;
+    }
+
+    private static class FakeTransactionManager extends AbstractPlatformTransactionManager {
+        volatile boolean active;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            active = true;
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            active = false;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            active = false;
+        }
+    }
+
+    private static class InMemoryReconciliation extends ReconciliationRepository {
+        private final List<Map<String, Object>> payments = new ArrayList<>();
+        private final List<Map<String, Object>> payoutRows = new ArrayList<>();
+        private final List<Object[]> discrepancies = new ArrayList<>();
+
+        InMemoryReconciliation() {
+            super(null);
+        }
+
+        void payment(String id, String reference, String providerId, String status, LocalDateTime createdAt) {
+            payments.add(local(id, reference, providerId, status, false, new BigDecimal("100.00"), createdAt));
+        }
+
+        void payout(String id, String status, boolean outcomeUnknown, LocalDateTime claimedAt) {
+            payoutRows.add(local(id, id, null, status, outcomeUnknown, new BigDecimal("50.00"), claimedAt));
+        }
+
+        List<String> discrepancyTypes() {
+            List<String> types = new ArrayList<>();
+            for (Object[] row : discrepancies) types.add((String) row[3]);
+            return types;
+        }
+
+        private static Map<String, Object> local(String id, String reference, String providerId, String status,
+                                                 boolean outcomeUnknown, BigDecimal amount, LocalDateTime time) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", id);
+            row.put("order_id", null);
+            row.put("match_key", reference);
+            row.put("provider_id", providerId);
+            row.put("status", status);
+            row.put("is_refunded", false);
+            row.put("outcome_unknown", outcomeUnknown);
+            row.put("amount", amount);
+            row.put("event_time", time);
+            return row;
+        }
+
+        @Override
+        public <T> List<T> findPaymentsPage(LocalDateTime from, LocalDateTime to, LocalDateTime afterTime, String afterId,
+                                            int limit, RowMapper<T> mapper) {
+            return page(payments, from, to, afterTime, afterId, limit);
+        }
+
+        @Override
+        public <T> List<T> findPayoutsPage(LocalDateTime from, LocalDateTime to, LocalDateTime afterTime, String afterId,
+                                           int limit, RowMapper<T> mapper) {
+            return page(payoutRows, from, to, afterTime, afterId, limit);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> page(List<Map<String, Object>> rows, LocalDateTime from, LocalDateTime to,
+                                 LocalDateTime afterTime, String afterId, int limit) {
+            Comparator<Map<String, Object>> order = Comparator.<Map<String, Object>, LocalDateTime>comparing(r -> (LocalDateTime) r.get("event_time"))
+                    .thenComparing(r -> (String) r.get("id"));
+            List<Map<String, Object>> sorted = new ArrayList<>(rows);
+            sorted.sort(order);
+            List<T> page = new ArrayList<>();
+            for (Map<String, Object> row : sorted) {
+                LocalDateTime time = (LocalDateTime) row.get("event_time");
+                if (time.isBefore(from) || !time.isBefore(to)) continue;
+                if (afterTime != null) {
+                    int c = time.compareTo(afterTime);
+                    if (c < 0 || (c == 0 && ((String) row.get("id")).compareTo(afterId) <= 0)) continue;
+                }
+                if (page.size() == limit) break;
+                page.add((T) new HashMap<>(row));
+            }
+            return page;
+        }
+
+        @Override
+        public void insertDiscrepancies(List<Object[]> rows) {
+            discrepancies.addAll(rows);
+        }
+
+        @Override
+        public int applyPaymentFixes(List<Object[]> rows) {
+            return rows.size();
+        }
+    }
+
+    private static class RecordingPayouts extends VendorPayoutRepository {
+        final List<String> completedIds = new ArrayList<>();
+        final List<String> retriedIds = new ArrayList<>();
+        final List<Object> retryDelays = new ArrayList<>();
+        boolean settledMeanwhile;
+
+        RecordingPayouts() {
+            super(null);
+        }
+
+        @Override
+        public int markCompletedBatch(List<Object[]> rows) {
+            for (Object[] row : rows) completedIds.add((String) row[2]);
+            return settledMeanwhile ? 0 : rows.size();
+        }
+
+        @Override
+        public int markFailedForRetryBatch(List<Object[]> rows, int maxAttempts) {
+            for (Object[] row : rows) {
+                retryDelays.add(row[1]);
+                retriedIds.add((String) row[2]);
+            }
+            return settledMeanwhile ? 0 : rows.size();
+        }
+    }
+}